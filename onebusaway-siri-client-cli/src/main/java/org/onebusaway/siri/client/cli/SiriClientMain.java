@@ -23,8 +23,10 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -47,6 +49,7 @@ import org.onebusaway.siri.core.exceptions.SiriUnknownVersionException;
 import org.onebusaway.siri.core.handlers.SiriServiceDeliveryHandler;
 import org.onebusaway.siri.core.services.SchedulingService;
 import org.onebusaway.siri.core.versioning.ESiriVersion;
+import org.onebusaway.siri.jetty.SiriJettyConfiguration;
 import org.onebusaway.siri.jetty.SiriJettyModule;
 import org.onebusaway.status_exporter.StatusServletSource;
 import org.slf4j.Logger;
@@ -87,6 +90,8 @@ public class SiriClientMain {
 
   private static final String ARG_TERMINATE_SUBSCRIPTION = "terminateSubscription";
 
+  private static final String ARG_JETTY = "jetty";
+
   private SiriClient _client;
 
   private SchedulingService _schedulingService;
@@ -155,7 +160,8 @@ public class SiriClientMain {
 
     Set<Module> modules = new HashSet<Module>();
     SiriCoreModule.addModuleAndDependencies(modules);
-    SiriJettyModule.addModuleAndDependencies(modules);
+    SiriJettyModule.addModuleAndDependencies(modules,
+        getJettyConfiguration(cli));
     Injector injector = Guice.createInjector(modules);
 
     injector.injectMembers(this);
@@ -210,9 +216,15 @@ public class SiriClientMain {
     ERequestType requestType = getRequestType(cli);
     SiriClientRequestFactory factory = new SiriClientRequestFactory();
 
-    for (String arg : args) {
-      SiriClientRequest request = getLineAsRequest(requestType, factory, arg);
-      Siri delivery = _client.handleRequestWithResponse(request);
+    List<SiriClientRequest> requests = new ArrayList<SiriClientRequest>();
+    for (String arg : args)
+      requests.add(getLineAsRequest(requestType, factory, arg));
+
+    /**
+     * Subscription requests to the same endpoint are merged into a single
+     * request
+     */
+    for (Siri delivery : _client.handleRequestsWithResponse(requests)) {
       if (delivery != null)
         printAsXml(delivery);
     }
@@ -222,6 +234,13 @@ public class SiriClientMain {
    * Private Methods
    ****/
 
+  private SiriJettyConfiguration getJettyConfiguration(CommandLine cli) {
+    if (!cli.hasOption(ARG_JETTY))
+      return new SiriJettyConfiguration();
+    Map<String, String> jettyArgs = SiriLibrary.getLineAsMap(cli.getOptionValue(ARG_JETTY));
+    return SiriJettyConfiguration.create(jettyArgs);
+  }
+
   private ERequestType getRequestType(CommandLine cli) {
     if (cli.hasOption(ARG_CHECK_STATUS))
       return ERequestType.CHECK_STATUS;
@@ -337,6 +356,7 @@ public class SiriClientMain {
     options.addOption(ARG_TERMINATE_SUBSCRIPTION, false,
         "terminate the specified subscriptions");
     options.addOption(ARG_CHECK_STATUS, false, "check status");
+    options.addOption(ARG_JETTY, true, "jetty server configuration");
   }
 
   private class ServiceDeliveryHandlerImpl implements
@@ -0,0 +1,408 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.onebusaway.siri.core.exceptions.SiriSerializationException;
+
+/**
+ * Detects inbound SIRI deliveries that are identical to a delivery recently
+ * received from the same source, before they are unmarshalled. Deliveries are
+ * compared by a fingerprint computed in a single pass over the raw XML content:
+ * a 64-bit FNV-1a hash that skips the text content of volatile header elements
+ * (ResponseTimestamp), such that a producer that re-sends the same data with a
+ * fresh timestamp is still recognized.
+ * 
+ * Character content is fingerprinted by its UTF-8 encoding, such that the same
+ * content has the same fingerprint whether it arrives as characters or as raw
+ * bytes.
+ * 
+ * For each source, we remember the fingerprints received within a time window,
+ * up to a maximum number of fingerprints. A fingerprint is not refreshed when a
+ * duplicate is received, such that data that is re-sent for longer than the
+ * window is let through once per window. De-duplication is disabled by default.
+ * 
+ * @author agent
+ */
+class DeliveryDeduplicator {
+
+  private static final String RESPONSE_TIMESTAMP = "ResponseTimestamp";
+
+  private static final String PRODUCER_REF = "ProducerRef";
+
+  private static final String SUBSCRIBER_REF = "SubscriberRef";
+
+  private static final String SUBSCRIPTION_REF = "SubscriptionRef";
+
+  private static final String SERVICE_DELIVERY = "ServiceDelivery";
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private ConcurrentMap<String, SourceWindow> _windowsBySource = new ConcurrentHashMap<String, SourceWindow>();
+
+  /**
+   * Time, in ms. A value of zero, the default, disables de-duplication.
+   */
+  private long _window = 0;
+
+  private int _maxFingerprintsPerSource = 32;
+
+  private AtomicLong _deliveryCount = new AtomicLong();
+
+  private AtomicLong _duplicateCount = new AtomicLong();
+
+  /**
+   * 
+   * @param window time, in seconds, for which a delivery fingerprint is
+   *          remembered for a source, or zero to disable de-duplication
+   */
+  public void setWindow(int window) {
+    _window = window * 1000L;
+  }
+
+  /**
+   * 
+   * @param maxFingerprintsPerSource the maximum number of delivery fingerprints
+   *          remembered for a source
+   */
+  public void setMaxFingerprintsPerSource(int maxFingerprintsPerSource) {
+    _maxFingerprintsPerSource = maxFingerprintsPerSource;
+  }
+
+  public boolean isEnabled() {
+    return _window > 0;
+  }
+
+  /**
+   * 
+   * @param source the source of the delivery, such as the address of the
+   *          subscription channel or the remote url
+   * @param fingerprint the fingerprint of the delivery, as computed by
+   *          {@link #computeFingerprint(CharSequence)}
+   * @return true if an identical delivery was received from the same source
+   *         within the window
+   */
+  public boolean isDuplicate(String source, Fingerprint fingerprint) {
+
+    if (_window <= 0 || source == null || !fingerprint.isServiceDelivery())
+      return false;
+
+    _deliveryCount.incrementAndGet();
+
+    SourceWindow window = _windowsBySource.get(source);
+    if (window == null) {
+      SourceWindow newWindow = new SourceWindow();
+      window = _windowsBySource.putIfAbsent(source, newWindow);
+      if (window == null)
+        window = newWindow;
+    }
+
+    long now = System.currentTimeMillis();
+    Long hash = fingerprint.getHash();
+
+    synchronized (window) {
+
+      for (Iterator<Long> it = window.receivedTimes.values().iterator(); it.hasNext();) {
+        if (now - it.next() < _window)
+          break;
+        it.remove();
+      }
+
+      if (window.receivedTimes.containsKey(hash)) {
+        _duplicateCount.incrementAndGet();
+        return true;
+      }
+
+      window.receivedTimes.put(hash, now);
+      if (window.receivedTimes.size() > _maxFingerprintsPerSource) {
+        Iterator<Long> it = window.receivedTimes.keySet().iterator();
+        it.next();
+        it.remove();
+      }
+    }
+
+    return false;
+  }
+
+  public void getStatus(Map<String, String> status) {
+    status.put("siri.common.deduplicatedSources",
+        Integer.toString(_windowsBySource.size()));
+    status.put("siri.common.deduplicatedDeliveryCounter",
+        Long.toString(_deliveryCount.get()));
+    status.put("siri.common.duplicateDeliveryCounter",
+        Long.toString(_duplicateCount.get()));
+  }
+
+  /**
+   * Compute the fingerprint of raw XML content in a single pass.
+   * 
+   * @param content raw XML content, either characters or a view of raw bytes
+   *          from {@link #asCharSequence(byte[])}
+   * @return the fingerprint
+   */
+  public static Fingerprint computeFingerprint(CharSequence content) {
+
+    if (!(content instanceof ByteCharSequence))
+      content = asCharSequence(getUtf8Bytes(content));
+
+    long hash = FNV_OFFSET_BASIS;
+    String producerRef = null;
+    String subscriberRef = null;
+    String subscriptionRef = null;
+    boolean serviceDelivery = false;
+
+    int n = content.length();
+    int i = 0;
+
+    while (i < n) {
+
+      if (content.charAt(i) == '<') {
+
+        int tagEnd = getEndOfOpeningTag(content, i, RESPONSE_TIMESTAMP);
+        if (tagEnd != -1) {
+          for (; i < tagEnd; ++i)
+            hash = (hash ^ content.charAt(i)) * FNV_PRIME;
+          while (i < n && content.charAt(i) != '<')
+            ++i;
+          continue;
+        }
+
+        if (!serviceDelivery
+            && getEndOfOpeningTag(content, i, SERVICE_DELIVERY) != -1)
+          serviceDelivery = true;
+
+        if (producerRef == null)
+          producerRef = getElementText(content, i, PRODUCER_REF);
+        if (subscriberRef == null)
+          subscriberRef = getElementText(content, i, SUBSCRIBER_REF);
+        if (subscriptionRef == null)
+          subscriptionRef = getElementText(content, i, SUBSCRIPTION_REF);
+      }
+
+      hash = (hash ^ content.charAt(i)) * FNV_PRIME;
+      ++i;
+    }
+
+    return new Fingerprint(hash, producerRef, subscriberRef, subscriptionRef,
+        serviceDelivery);
+  }
+
+  /**
+   * 
+   * @param content raw content bytes
+   * @return a view of the bytes as a sequence of chars, one char per byte,
+   *         suitable for computing a fingerprint without decoding the content
+   */
+  public static CharSequence asCharSequence(byte[] content) {
+    return new ByteCharSequence(content, 0, content.length);
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static byte[] getUtf8Bytes(CharSequence content) {
+    try {
+      return content.toString().getBytes("UTF-8");
+    } catch (UnsupportedEncodingException ex) {
+      throw new SiriSerializationException(ex);
+    }
+  }
+
+  /**
+   * 
+   * @param content raw XML content
+   * @param index the index of a '<' character
+   * @param localName the element name to match
+   * @return the trimmed text content of the element if the tag at the
+   *         specified index is an opening tag for the specified element, or
+   *         null otherwise
+   */
+  private static String getElementText(CharSequence content, int index,
+      String localName) {
+    int tagEnd = getEndOfOpeningTag(content, index, localName);
+    if (tagEnd == -1)
+      return null;
+    int n = content.length();
+    int textEnd = tagEnd;
+    while (textEnd < n && content.charAt(textEnd) != '<')
+      ++textEnd;
+    return content.subSequence(tagEnd, textEnd).toString().trim();
+  }
+
+  /**
+   * 
+   * @param content raw XML content
+   * @param index the index of a '<' character
+   * @param localName the element name to match
+   * @return the index just past the closing '>' if the tag at the specified
+   *         index is an opening tag for the specified element, with any
+   *         namespace prefix, or -1 otherwise
+   */
+  private static int getEndOfOpeningTag(CharSequence content, int index,
+      String localName) {
+
+    int n = content.length();
+    int nameStart = index + 1;
+    int nameEnd = nameStart;
+
+    while (nameEnd < n) {
+      char c = content.charAt(nameEnd);
+      if (c == '>' || c == '/' || c == ' ' || c == '\t' || c == '\r'
+          || c == '\n')
+        break;
+      if (c == ':')
+        nameStart = nameEnd + 1;
+      ++nameEnd;
+    }
+
+    if (nameEnd - nameStart != localName.length())
+      return -1;
+
+    for (int i = 0; i < localName.length(); ++i) {
+      if (content.charAt(nameStart + i) != localName.charAt(i))
+        return -1;
+    }
+
+    for (int i = nameEnd; i < n; ++i) {
+      if (content.charAt(i) == '>')
+        return i + 1;
+    }
+
+    return -1;
+  }
+
+  /****
+   * Internal Classes
+   ****/
+
+  public static class Fingerprint {
+
+    private final long hash;
+
+    private final String producerRef;
+
+    private final String subscriberRef;
+
+    private final String subscriptionRef;
+
+    private final boolean serviceDelivery;
+
+    public Fingerprint(long hash, String producerRef, String subscriberRef,
+        String subscriptionRef, boolean serviceDelivery) {
+      this.hash = hash;
+      this.producerRef = producerRef;
+      this.subscriberRef = subscriberRef;
+      this.subscriptionRef = subscriptionRef;
+      this.serviceDelivery = serviceDelivery;
+    }
+
+    public long getHash() {
+      return hash;
+    }
+
+    /**
+     * 
+     * @return the first ProducerRef value in the content, or null if none
+     */
+    public String getProducerRef() {
+      return producerRef;
+    }
+
+    /**
+     * 
+     * @return the first SubscriberRef value in the content, or null if none
+     */
+    public String getSubscriberRef() {
+      return subscriberRef;
+    }
+
+    /**
+     * 
+     * @return the first SubscriptionRef value in the content, or null if none
+     */
+    public String getSubscriptionRef() {
+      return subscriptionRef;
+    }
+
+    /**
+     * 
+     * @return true if the content includes a ServiceDelivery element
+     */
+    public boolean isServiceDelivery() {
+      return serviceDelivery;
+    }
+  }
+
+  private static class SourceWindow {
+
+    /**
+     * Fingerprint hash => time received, in insertion order
+     */
+    private final LinkedHashMap<Long, Long> receivedTimes = new LinkedHashMap<Long, Long>();
+  }
+
+  private static class ByteCharSequence implements CharSequence {
+
+    private final byte[] bytes;
+
+    private final int offset;
+
+    private final int length;
+
+    public ByteCharSequence(byte[] bytes, int offset, int length) {
+      this.bytes = bytes;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      return (char) (bytes[offset + index] & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return new ByteCharSequence(bytes, offset + start, end - start);
+    }
+
+    /**
+     * Decodes the bytes as UTF-8
+     */
+    @Override
+    public String toString() {
+      try {
+        return new String(bytes, offset, length, "UTF-8");
+      } catch (UnsupportedEncodingException ex) {
+        throw new SiriSerializationException(ex);
+      }
+    }
+  }
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.onebusaway.siri.core.exceptions.SiriException;
+
+/**
+ * Support methods for compressing and decompressing HTTP request and response
+ * bodies with the "gzip" and "deflate" content encodings. SIRI XML is highly
+ * repetitive and typically compresses by an order of magnitude or more.
+ * 
+ * @author agent
+ */
+public class HttpCompressionSupport {
+
+  public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+
+  public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+  public static final String ENCODING_GZIP = "gzip";
+
+  public static final String ENCODING_DEFLATE = "deflate";
+
+  /**
+   * The value we send in the "Accept-Encoding" header of outgoing requests
+   */
+  public static final String ACCEPT_ENCODING = ENCODING_GZIP + ", "
+      + ENCODING_DEFLATE;
+
+  private HttpCompressionSupport() {
+
+  }
+
+  /**
+   * 
+   * @param content the content to compress
+   * @return the content, compressed with gzip
+   */
+  public static byte[] compress(byte[] content) {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(
+          Math.max(content.length / 8, 64));
+      GZIPOutputStream gzip = new GZIPOutputStream(out);
+      gzip.write(content);
+      gzip.close();
+      return out.toByteArray();
+    } catch (IOException ex) {
+      throw new SiriException("error compressing content", ex);
+    }
+  }
+
+  /**
+   * 
+   * @param content the entity content
+   * @param contentType the content type of the entity
+   * @param compress if true, the content will be gzip compressed and the
+   *          entity content encoding set accordingly
+   * @return an entity for the specified content
+   */
+  public static HttpEntity createEntity(byte[] content, String contentType,
+      boolean compress) {
+    ByteArrayEntity entity = new ByteArrayEntity(compress ? compress(content)
+        : content);
+    entity.setContentType(contentType);
+    if (compress)
+      entity.setContentEncoding(ENCODING_GZIP);
+    return entity;
+  }
+
+  /**
+   * 
+   * @param contentEncoding the value of a "Content-Encoding" header, or null
+   * @return true if the content encoding is one we know how to decode, and
+   *         isn't the identity encoding
+   */
+  public static boolean isDecodable(String contentEncoding) {
+    if (contentEncoding == null)
+      return false;
+    contentEncoding = contentEncoding.trim().toLowerCase();
+    return contentEncoding.equals(ENCODING_GZIP)
+        || contentEncoding.equals("x-gzip")
+        || contentEncoding.equals(ENCODING_DEFLATE);
+  }
+
+  /**
+   * 
+   * @param in the raw content stream
+   * @param contentEncoding the value of a "Content-Encoding" header, or null
+   * @return a stream of the decoded content
+   * @throws IOException
+   */
+  public static InputStream getDecodedInputStream(InputStream in,
+      String contentEncoding) throws IOException {
+    if (!isDecodable(contentEncoding))
+      return in;
+    contentEncoding = contentEncoding.trim().toLowerCase();
+    if (contentEncoding.equals(ENCODING_DEFLATE))
+      return new InflaterInputStream(in);
+    return new GZIPInputStream(in);
+  }
+
+  /**
+   * 
+   * @param entity an HTTP entity
+   * @return an entity whose content is decoded according to the content
+   *         encoding of the specified entity, or the entity itself if it isn't
+   *         encoded
+   */
+  public static HttpEntity getDecodedEntity(HttpEntity entity) {
+    Header header = entity.getContentEncoding();
+    if (header == null || !isDecodable(header.getValue()))
+      return entity;
+    return new DecodedEntity(entity, header.getValue());
+  }
+
+  /**
+   * 
+   * @param acceptEncoding the value of an "Accept-Encoding" header, or null
+   * @return true if gzip is an acceptable encoding
+   */
+  public static boolean isGzipAccepted(String acceptEncoding) {
+
+    if (acceptEncoding == null)
+      return false;
+
+    for (String token : acceptEncoding.split(",")) {
+
+      String[] parts = token.split(";");
+      String coding = parts[0].trim().toLowerCase();
+
+      if (!(coding.equals(ENCODING_GZIP) || coding.equals("x-gzip")
+          || coding.equals("*")))
+        continue;
+
+      boolean accepted = true;
+      for (int i = 1; i < parts.length; ++i) {
+        String param = parts[i].trim();
+        if (param.startsWith("q=")) {
+          try {
+            accepted = Double.parseDouble(param.substring(2)) > 0;
+          } catch (NumberFormatException ex) {
+            accepted = false;
+          }
+        }
+      }
+
+      if (accepted)
+        return true;
+    }
+
+    return false;
+  }
+
+  /****
+   * Internal Classes
+   ****/
+
+  private static class DecodedEntity extends HttpEntityWrapper {
+
+    private final String _contentEncoding;
+
+    public DecodedEntity(HttpEntity entity, String contentEncoding) {
+      super(entity);
+      _contentEncoding = contentEncoding;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+      return getDecodedInputStream(wrappedEntity.getContent(),
+          _contentEncoding);
+    }
+
+    @Override
+    public long getContentLength() {
+      return -1;
+    }
+
+    @Override
+    public Header getContentEncoding() {
+      return null;
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+      InputStream in = getContent();
+      try {
+        byte[] buffer = new byte[4096];
+        int n = 0;
+        while ((n = in.read(buffer)) != -1)
+          out.write(buffer, 0, n);
+      } finally {
+        in.close();
+      }
+    }
+  }
+}
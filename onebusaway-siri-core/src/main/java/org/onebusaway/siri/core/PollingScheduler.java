@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of polling {@link SiriClientRequest} requests, those with a
+ * {@link SiriClientRequest#getPollInterval()} greater than zero, such that:
+ * 
+ * <ul>
+ * <li>A poll is skipped if the previous poll for the same request is still in
+ * flight.</li>
+ * <li>Unchanged responses are detected from a fingerprint of the raw response
+ * content, as computed by {@link DeliveryDeduplicator}, before the response is
+ * unmarshalled.</li>
+ * <li>The interval between polls backs off while responses are unchanged, up to
+ * a maximum multiple of the request poll interval, and drops back to the
+ * request poll interval as soon as the response changes. The interval is never
+ * shorter than the observed response latency of the endpoint.</li>
+ * </ul>
+ * 
+ * Note that the next poll is scheduled when the current poll starts, such that
+ * the interval adapts to the outcome of the previous poll.
+ * 
+ * @author agent
+ */
+class PollingScheduler {
+
+  private ConcurrentMap<SiriClientRequest, PollState> _states = new ConcurrentHashMap<SiriClientRequest, PollState>();
+
+  /**
+   * The interval between polls of an unchanged response is capped at this
+   * multiple of the request poll interval
+   */
+  private int _maxPollIntervalFactor = 4;
+
+  private AtomicLong _pollCount = new AtomicLong();
+
+  private AtomicLong _skippedPollCount = new AtomicLong();
+
+  private AtomicLong _unchangedPollCount = new AtomicLong();
+
+  /**
+   * 
+   * @param maxPollIntervalFactor the maximum interval between polls of an
+   *          unchanged response, as a multiple of the request poll interval
+   */
+  public void setMaxPollIntervalFactor(int maxPollIntervalFactor) {
+    _maxPollIntervalFactor = maxPollIntervalFactor;
+  }
+
+  /**
+   * Note the start of a poll for the specified request.
+   * 
+   * @param request the polling request
+   * @return false if the previous poll for the request is still in flight, in
+   *         which case this poll should be skipped
+   */
+  public boolean startPoll(SiriClientRequest request) {
+    PollState state = getStateForRequest(request);
+    synchronized (state) {
+      if (state.inFlight) {
+        _skippedPollCount.incrementAndGet();
+        return false;
+      }
+      state.inFlight = true;
+      state.contentChecked = false;
+      state.changed = true;
+      state.startTime = System.currentTimeMillis();
+    }
+    _pollCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * 
+   * @param request the polling request
+   * @return the current time, in seconds, until the next poll of the request
+   */
+  public int getPollInterval(SiriClientRequest request) {
+    PollState state = getStateForRequest(request);
+    synchronized (state) {
+      return state.interval;
+    }
+  }
+
+  /**
+   * Compare the raw response content of a poll to the content of the previous
+   * poll for the same request.
+   * 
+   * @param request the polling request
+   * @param hash the fingerprint hash of the raw response content
+   * @return true if the content is unchanged since the previous poll
+   */
+  public boolean isContentUnchanged(SiriClientRequest request, long hash) {
+    PollState state = getStateForRequest(request);
+    boolean unchanged = false;
+    synchronized (state) {
+      unchanged = state.hasContentHash && state.contentHash == hash;
+      state.hasContentHash = true;
+      state.contentHash = hash;
+      state.contentChecked = true;
+      state.changed = !unchanged;
+    }
+    if (unchanged)
+      _unchangedPollCount.incrementAndGet();
+    return unchanged;
+  }
+
+  /**
+   * Note the completion, successful or not, of a poll for the specified
+   * request, adapting the interval until the next poll as appropriate.
+   * 
+   * @param request the polling request
+   */
+  public void completePoll(SiriClientRequest request) {
+    PollState state = getStateForRequest(request);
+    synchronized (state) {
+
+      state.inFlight = false;
+
+      /**
+       * If the poll failed, or had no content, we have nothing to go on
+       */
+      if (!state.contentChecked)
+        return;
+
+      long latency = System.currentTimeMillis() - state.startTime;
+      if (state.latency < 0)
+        state.latency = latency;
+      else
+        state.latency = (state.latency * 3 + latency) / 4;
+
+      int pollInterval = request.getPollInterval();
+      int interval = pollInterval;
+      if (!state.changed) {
+        interval = Math.min(pollInterval * _maxPollIntervalFactor,
+            (state.interval * 3 + 1) / 2);
+        interval = Math.max(interval, pollInterval);
+      }
+      int latencyInterval = (int) ((state.latency + 999) / 1000);
+      state.interval = Math.max(interval, latencyInterval);
+    }
+  }
+
+  public void getStatus(Map<String, String> status) {
+    status.put("siri.common.pollingRequests", Integer.toString(_states.size()));
+    status.put("siri.common.pollCounter", Long.toString(_pollCount.get()));
+    status.put("siri.common.skippedPollCounter",
+        Long.toString(_skippedPollCount.get()));
+    status.put("siri.common.unchangedPollCounter",
+        Long.toString(_unchangedPollCount.get()));
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private PollState getStateForRequest(SiriClientRequest request) {
+    PollState state = _states.get(request);
+    if (state == null) {
+      PollState newState = new PollState(request.getPollInterval());
+      state = _states.putIfAbsent(request, newState);
+      if (state == null)
+        state = newState;
+    }
+    return state;
+  }
+
+  private static class PollState {
+
+    private boolean inFlight = false;
+
+    private boolean contentChecked = false;
+
+    private boolean changed = true;
+
+    private boolean hasContentHash = false;
+
+    private long contentHash;
+
+    private long startTime;
+
+    /**
+     * Smoothed response latency, in ms, or -1 if not yet observed
+     */
+    private long latency = -1;
+
+    /**
+     * Time, in seconds
+     */
+    private int interval;
+
+    public PollState(int interval) {
+      this.interval = interval;
+    }
+  }
+}
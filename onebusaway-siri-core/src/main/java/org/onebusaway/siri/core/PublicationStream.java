@@ -0,0 +1,357 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * A publication stream to a single consumer address, sent as the chunked body
+ * of a long-lived HTTP POST. See {@link PublicationStreamSupport} for the
+ * framing. Publications are queued and written by the thread sending the
+ * request, with a bounded queue providing flow control: if the consumer can't
+ * keep up, the queue fills and further publications are dropped until it
+ * drains. When the stream is idle, keep-alive frames are written so the
+ * connection isn't closed as idle.
+ * 
+ * The entity is not repeatable: its content is the live stream of frames, which
+ * can be consumed exactly once, either with {@link #writeTo(OutputStream)} or
+ * by reading from {@link #getContent()}.
+ * 
+ * @author agent
+ */
+class PublicationStream extends AbstractHttpEntity {
+
+  /**
+   * Marker indicating that the stream should be ended
+   */
+  private static final byte[] END_OF_STREAM = new byte[0];
+
+  private static final byte[] KEEP_ALIVE = new byte[0];
+
+  private final String _address;
+
+  private final BlockingQueue<byte[]> _frames;
+
+  /**
+   * Time, in ms
+   */
+  private final long _keepAliveInterval;
+
+  private volatile boolean _closed = false;
+
+  private volatile boolean _failed = false;
+
+  private volatile long _closeTime = 0;
+
+  private final AtomicLong _sentFrames = new AtomicLong();
+
+  private final AtomicLong _sentBytes = new AtomicLong();
+
+  private final AtomicLong _droppedFrames = new AtomicLong();
+
+  /**
+   * 
+   * @param address the consumer address
+   * @param queueSize the maximum number of frames queued for the stream
+   * @param keepAliveInterval time, in ms, after which a keep-alive frame is
+   *          written to an idle stream
+   */
+  public PublicationStream(String address, int queueSize,
+      long keepAliveInterval) {
+    _address = address;
+    _frames = new ArrayBlockingQueue<byte[]>(queueSize);
+    _keepAliveInterval = keepAliveInterval;
+    setContentType(PublicationStreamSupport.CONTENT_TYPE);
+    setChunked(true);
+  }
+
+  public String getAddress() {
+    return _address;
+  }
+
+  public boolean isClosed() {
+    return _closed;
+  }
+
+  /**
+   * 
+   * @return true if the stream was closed due to an error
+   */
+  public boolean isFailed() {
+    return _failed;
+  }
+
+  /**
+   * 
+   * @return the time the stream was closed, in ms since the epoch
+   */
+  public long getCloseTime() {
+    return _closeTime;
+  }
+
+  /**
+   * Queue a frame for publication.
+   * 
+   * @param frame the frame payload
+   * @return true if the frame was queued, or false if the stream is closed or
+   *         the queue is full
+   */
+  public boolean offer(byte[] frame) {
+    /**
+     * Checking and enqueuing under the same lock as markClosed() ensures that no
+     * frame is queued behind the end-of-stream marker
+     */
+    synchronized (this) {
+      if (_closed)
+        return false;
+      if (_frames.offer(frame))
+        return true;
+    }
+    _droppedFrames.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * End the stream once any queued frames have been written. If the queue is
+   * full, waits up to the keep-alive interval for the writer to make room for
+   * the end-of-stream marker. If the writer is stalled, the stream is failed
+   * instead.
+   */
+  public void close() {
+    if (!markClosed())
+      return;
+    try {
+      if (_frames.offer(END_OF_STREAM, _keepAliveInterval,
+          TimeUnit.MILLISECONDS))
+        return;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    fail();
+  }
+
+  /**
+   * Mark the stream as closed due to an error. Any queued frames are dropped
+   * and the stream is ended, such that a writer blocked in
+   * {@link #writeTo(OutputStream)} returns promptly.
+   */
+  public void fail() {
+    _failed = true;
+    markClosed();
+    /**
+     * No frames can be queued once the stream is closed, so after draining
+     * there is always room for the end-of-stream marker
+     */
+    byte[] frame = null;
+    while ((frame = _frames.poll()) != null) {
+      if (frame != END_OF_STREAM)
+        _droppedFrames.incrementAndGet();
+    }
+    _frames.offer(END_OF_STREAM);
+  }
+
+  public void getStatus(String prefix, Map<String, String> status) {
+    status.put(prefix + ".open", Boolean.toString(!_closed));
+    int queuedFrames = _frames.size();
+    if (_closed && _frames.contains(END_OF_STREAM))
+      queuedFrames--;
+    status.put(prefix + ".queuedFrames", Integer.toString(queuedFrames));
+    status.put(prefix + ".sentFrames", Long.toString(_sentFrames.get()));
+    status.put(prefix + ".sentBytes", Long.toString(_sentBytes.get()));
+    status.put(prefix + ".droppedFrames", Long.toString(_droppedFrames.get()));
+  }
+
+  /****
+   * {@link AbstractHttpEntity} Interface
+   ****/
+
+  @Override
+  public boolean isRepeatable() {
+    return false;
+  }
+
+  @Override
+  public long getContentLength() {
+    return -1;
+  }
+
+  /**
+   * The stream content as it would be written by
+   * {@link #writeTo(OutputStream)}. Reads block until the next frame is queued,
+   * and the stream ends when the publication stream is closed. Since the
+   * entity is not repeatable, the content can only be consumed once.
+   */
+  @Override
+  public InputStream getContent() throws IOException {
+    return new FrameInputStream();
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+
+  /**
+   * Blocks, writing frames as they are queued, until the stream is closed.
+   */
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+
+    try {
+      while (true) {
+
+        byte[] frame = nextFrame();
+
+        if (frame == null)
+          break;
+
+        PublicationStreamSupport.writeFrame(out, frame);
+        out.flush();
+
+        frameSent(frame);
+      }
+    } catch (IOException ex) {
+      fail();
+      throw ex;
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  /**
+   * Blocks until the next frame is queued, returning a keep-alive frame if none
+   * is queued within the keep-alive interval.
+   * 
+   * @return the next frame, or null once the stream has ended
+   */
+  private byte[] nextFrame() throws IOException {
+    try {
+      byte[] frame = _frames.poll(_keepAliveInterval, TimeUnit.MILLISECONDS);
+      if (frame == END_OF_STREAM)
+        return null;
+      if (frame == null) {
+        /**
+         * The end-of-stream marker should always be queued on close, but don't
+         * keep a closed stream alive if it was somehow lost
+         */
+        if (_closed && _frames.isEmpty())
+          return null;
+        return KEEP_ALIVE;
+      }
+      return frame;
+    } catch (InterruptedException ex) {
+      fail();
+      Thread.currentThread().interrupt();
+      throw new IOException("publication stream interrupted");
+    }
+  }
+
+  private void frameSent(byte[] frame) {
+    if (frame != KEEP_ALIVE) {
+      _sentFrames.incrementAndGet();
+      _sentBytes.addAndGet(frame.length);
+    }
+  }
+
+  /**
+   * 
+   * @return true if the stream was open
+   */
+  private synchronized boolean markClosed() {
+    if (_closed)
+      return false;
+    _closed = true;
+    _closeTime = System.currentTimeMillis();
+    return true;
+  }
+
+  /**
+   * Presents the framed stream as an {@link InputStream}, encoding each frame
+   * as it is dequeued
+   */
+  private class FrameInputStream extends InputStream {
+
+    private byte[] _buffer = new byte[0];
+
+    private int _position = 0;
+
+    private boolean _ended = false;
+
+    @Override
+    public int read() throws IOException {
+      if (!fill())
+        return -1;
+      return _buffer[_position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0)
+        return 0;
+      if (!fill())
+        return -1;
+      int n = Math.min(len, _buffer.length - _position);
+      System.arraycopy(_buffer, _position, b, off, n);
+      _position += n;
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return _buffer.length - _position;
+    }
+
+    @Override
+    public void close() {
+      PublicationStream.this.close();
+    }
+
+    /**
+     * 
+     * @return true if there are bytes available, or false if the stream has
+     *         ended
+     */
+    private boolean fill() throws IOException {
+      while (_position == _buffer.length) {
+        if (_ended)
+          return false;
+        byte[] frame = nextFrame();
+        if (frame == null) {
+          _ended = true;
+          return false;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PublicationStreamSupport.writeFrame(out, frame);
+        _buffer = out.toByteArray();
+        _position = 0;
+        frameSent(frame);
+      }
+      return true;
+    }
+  }
+}
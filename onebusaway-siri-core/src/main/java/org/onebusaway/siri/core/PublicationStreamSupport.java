@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.onebusaway.siri.core.exceptions.SiriSerializationException;
+
+/**
+ * Support methods for publication streams. Instead of sending each
+ * publication to a consumer as a separate HTTP POST, a consumer address with
+ * the "stream+" prefix (ex. "stream+http://host:port/path") indicates that
+ * publications should be sent over a single long-lived HTTP POST to the
+ * underlying url, with a chunked request body of length-prefixed frames.
+ * 
+ * Each frame is a four byte big-endian length, followed by that many bytes of
+ * UTF-8 encoded SIRI XML. An empty frame is a keep-alive and should be ignored.
+ * The stream is terminated by the end of the request body.
+ * 
+ * @author agent
+ */
+public class PublicationStreamSupport {
+
+  public static final String STREAM_ADDRESS_PREFIX = "stream+";
+
+  public static final String CONTENT_TYPE = "application/x-siri-stream";
+
+  public static final String CHARSET = "UTF-8";
+
+  private PublicationStreamSupport() {
+
+  }
+
+  /**
+   * 
+   * @param address a consumer address
+   * @return true if the address indicates a publication stream
+   */
+  public static boolean isStreamAddress(String address) {
+    return address != null && address.startsWith(STREAM_ADDRESS_PREFIX);
+  }
+
+  /**
+   * 
+   * @param url a consumer url
+   * @return the consumer address indicating that publications to the url
+   *         should use a publication stream
+   */
+  public static String getStreamAddress(String url) {
+    if (isStreamAddress(url))
+      return url;
+    return STREAM_ADDRESS_PREFIX + url;
+  }
+
+  /**
+   * 
+   * @param address a publication stream consumer address
+   * @return the underlying url of the consumer
+   */
+  public static String getUrlForStreamAddress(String address) {
+    if (!isStreamAddress(address))
+      return address;
+    return address.substring(STREAM_ADDRESS_PREFIX.length());
+  }
+
+  /**
+   * 
+   * @param content SIRI XML content
+   * @return the content encoded as the payload of a frame
+   */
+  public static byte[] getContentAsFrame(String content) {
+    try {
+      return content.getBytes(CHARSET);
+    } catch (UnsupportedEncodingException ex) {
+      throw new SiriSerializationException(ex);
+    }
+  }
+
+  /**
+   * Write a single frame to the stream.
+   * 
+   * @param out the output stream
+   * @param frame the frame payload, with an empty payload indicating a
+   *          keep-alive
+   * @throws IOException
+   */
+  public static void writeFrame(OutputStream out, byte[] frame)
+      throws IOException {
+    int length = frame.length;
+    out.write((length >>> 24) & 0xFF);
+    out.write((length >>> 16) & 0xFF);
+    out.write((length >>> 8) & 0xFF);
+    out.write(length & 0xFF);
+    out.write(frame);
+  }
+
+  /**
+   * Read a single frame from the stream.
+   * 
+   * @param in the input stream
+   * @param maxFrameSize the maximum size, in bytes, of a frame, or zero for no
+   *          limit
+   * @return the frame payload, an empty payload for a keep-alive, or null if
+   *         the end of the stream has been reached
+   * @throws IOException if the stream ends in the middle of a frame or the
+   *           frame is too large
+   */
+  public static byte[] readFrame(InputStream in, long maxFrameSize)
+      throws IOException {
+
+    int b = in.read();
+    if (b == -1)
+      return null;
+
+    int length = b;
+    for (int i = 0; i < 3; ++i)
+      length = (length << 8) | readByte(in);
+
+    if (length < 0 || (maxFrameSize > 0 && length > maxFrameSize))
+      throw new IOException("invalid frame size " + length);
+
+    byte[] frame = new byte[length];
+    int offset = 0;
+    while (offset < length) {
+      int n = in.read(frame, offset, length - offset);
+      if (n == -1)
+        throw new EOFException("unexpected end of stream in frame");
+      offset += n;
+    }
+    return frame;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static int readByte(InputStream in) throws IOException {
+    int b = in.read();
+    if (b == -1)
+      throw new EOFException("unexpected end of stream in frame header");
+    return b;
+  }
+}
@@ -0,0 +1,326 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.onebusaway.siri.core.services.SchedulingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules reconnection attempts for failed {@link SiriClientRequest}
+ * requests. Rather than having each failed request retry on its own at a fixed
+ * interval, failed requests are grouped by endpoint url:
+ * 
+ * <ul>
+ * <li>A single failed request acts as the probe for the endpoint, retried with
+ * exponential backoff and full jitter, starting from its
+ * {@link SiriClientRequest#getReconnectionInterval()} and capped at the
+ * maximum reconnection interval.</li>
+ * <li>Other requests that fail while the endpoint is being probed wait for the
+ * probe, without retrying on their own.</li>
+ * <li>Once the probe, or any other request to the endpoint, succeeds, the
+ * waiting requests are released, with at most a fixed number of them in flight
+ * for the endpoint at a time.</li>
+ * </ul>
+ * 
+ * @author agent
+ */
+class ReconnectionScheduler {
+
+  private static Logger _log = LoggerFactory.getLogger(ReconnectionScheduler.class);
+
+  /**
+   * Modified only while holding the lock on "this", but safe to read at any
+   * time, such that the common case of a request to an endpoint with no
+   * reconnection state stays lock-free
+   */
+  private ConcurrentMap<String, EndpointState> _endpoints = new ConcurrentHashMap<String, EndpointState>();
+
+  private final Random _random = new Random();
+
+  private SchedulingService _schedulingService;
+
+  private RequestHandler _requestHandler;
+
+  /**
+   * Time, in seconds
+   */
+  private int _maxReconnectionInterval = 10 * 60;
+
+  private int _maxConcurrentReconnections = 4;
+
+  public void setSchedulingService(SchedulingService schedulingService) {
+    _schedulingService = schedulingService;
+  }
+
+  public void setRequestHandler(RequestHandler requestHandler) {
+    _requestHandler = requestHandler;
+  }
+
+  /**
+   * 
+   * @param maxReconnectionInterval the maximum time, in seconds, between
+   *          reconnection attempts to an endpoint
+   */
+  public void setMaxReconnectionInterval(int maxReconnectionInterval) {
+    _maxReconnectionInterval = maxReconnectionInterval;
+  }
+
+  /**
+   * 
+   * @param maxConcurrentReconnections the maximum number of waiting requests
+   *          released to an endpoint at the same time once it becomes
+   *          reachable again
+   */
+  public void setMaxConcurrentReconnections(int maxConcurrentReconnections) {
+    _maxConcurrentReconnections = maxConcurrentReconnections;
+  }
+
+  /**
+   * Schedule a reconnection attempt for a request that failed to connect. The
+   * caller is responsible for checking that the request has reconnection
+   * attempts remaining.
+   * 
+   * @param url the endpoint url of the request
+   * @param request the failed request
+   */
+  public synchronized void reattemptRequest(String url,
+      SiriClientRequest request) {
+
+    request.decrementRemainingReconnctionAttempts();
+
+    EndpointState state = _endpoints.get(url);
+    if (state == null) {
+      state = new EndpointState(url);
+      _endpoints.put(url, state);
+    }
+
+    if (state.probe == null || state.probe == request) {
+      state.failureCount++;
+      state.probe = request;
+      scheduleProbe(state);
+    } else {
+      _log.debug("waiting on reconnection probe: url={} waiting={}", url,
+          state.waiting.size() + 1);
+      state.waiting.add(request);
+    }
+  }
+
+  /**
+   * Note that a request successfully connected to its endpoint, in which case
+   * any requests waiting on the endpoint are released.
+   * 
+   * @param url the endpoint url of the request
+   * @param request the request
+   */
+  public void handleRequestSuccess(String url, SiriClientRequest request) {
+
+    if (!_endpoints.containsKey(url))
+      return;
+
+    synchronized (this) {
+
+      EndpointState state = _endpoints.get(url);
+      if (state == null)
+        return;
+
+      if (state.failureCount > 0)
+        _log.info("endpoint reachable again: url={} waiting={}", url,
+            state.waiting.size());
+      state.failureCount = 0;
+
+      if (state.probe == request) {
+        state.probe = null;
+      } else if (state.probe != null && state.probeTask != null) {
+        /**
+         * Another request got through before the probe was sent, so the probe
+         * joins the rest of the waiting requests
+         */
+        state.probeTask.cancel(false);
+        state.probeTask = null;
+        state.waiting.addFirst(state.probe);
+        state.probe = null;
+      }
+
+      update(state);
+    }
+  }
+
+  public synchronized void getStatus(Map<String, String> status) {
+    int waiting = 0;
+    for (EndpointState state : _endpoints.values()) {
+      waiting += state.waiting.size();
+      if (state.probe != null)
+        waiting++;
+    }
+    status.put("siri.common.reconnectingEndpoints",
+        Integer.toString(_endpoints.size()));
+    status.put("siri.common.reconnectingRequests", Integer.toString(waiting));
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void scheduleProbe(EndpointState state) {
+
+    SiriClientRequest probe = state.probe;
+
+    /**
+     * Full jitter: a uniformly random delay up to the exponentially growing
+     * ceiling
+     */
+    long ceiling = Math.max(probe.getReconnectionInterval(), 1) * 1000L;
+    ceiling <<= Math.min(state.failureCount - 1, 20);
+    ceiling = Math.min(ceiling, _maxReconnectionInterval * 1000L);
+    long delay = (long) (_random.nextDouble() * ceiling);
+
+    _log.debug("scheduling reconnection probe: url={} failures={} delay={}ms",
+        new Object[] {state.url, state.failureCount, delay});
+
+    state.probeTask = _schedulingService.schedule(new ProbeTask(state, probe),
+        delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Release waiting requests, or pick a new probe if the endpoint is still
+   * failing, and drop the endpoint once there is nothing left to track
+   */
+  private void update(EndpointState state) {
+
+    if (state.probe == null && !state.waiting.isEmpty()) {
+      if (state.failureCount > 0) {
+        state.probe = state.waiting.poll();
+        scheduleProbe(state);
+      } else {
+        while (!state.waiting.isEmpty()
+            && state.released.size() < _maxConcurrentReconnections) {
+          SiriClientRequest request = state.waiting.poll();
+          state.released.add(request);
+          _schedulingService.submit(new ReleaseTask(state, request));
+        }
+      }
+    }
+
+    if (state.probe == null && state.waiting.isEmpty()
+        && state.released.isEmpty())
+      _endpoints.remove(state.url);
+  }
+
+  private synchronized void handleProbeStarted(EndpointState state) {
+    state.probeTask = null;
+  }
+
+  private synchronized void handleRequestComplete(EndpointState state,
+      SiriClientRequest request) {
+
+    state.released.remove(request);
+
+    /**
+     * If the probe was neither successful nor rescheduled, it's out of
+     * reconnection attempts
+     */
+    if (state.probe == request && state.probeTask == null)
+      state.probe = null;
+
+    if (_endpoints.get(state.url) == state)
+      update(state);
+  }
+
+  /****
+   * Internal Classes
+   ****/
+
+  /**
+   * Sends a request on behalf of the reconnection scheduler. The request is
+   * expected to be processed synchronously.
+   */
+  interface RequestHandler {
+    public void handleRequest(SiriClientRequest request);
+  }
+
+  private static class EndpointState {
+
+    private final String url;
+
+    private int failureCount = 0;
+
+    private SiriClientRequest probe;
+
+    private ScheduledFuture<?> probeTask;
+
+    private final LinkedList<SiriClientRequest> waiting = new LinkedList<SiriClientRequest>();
+
+    private final Set<SiriClientRequest> released = new HashSet<SiriClientRequest>();
+
+    public EndpointState(String url) {
+      this.url = url;
+    }
+  }
+
+  private class ProbeTask implements Runnable {
+
+    private final EndpointState _state;
+
+    private final SiriClientRequest _request;
+
+    public ProbeTask(EndpointState state, SiriClientRequest request) {
+      _state = state;
+      _request = request;
+    }
+
+    @Override
+    public void run() {
+      handleProbeStarted(_state);
+      try {
+        _requestHandler.handleRequest(_request);
+      } finally {
+        handleRequestComplete(_state, _request);
+      }
+    }
+  }
+
+  private class ReleaseTask implements Runnable {
+
+    private final EndpointState _state;
+
+    private final SiriClientRequest _request;
+
+    public ReleaseTask(EndpointState state, SiriClientRequest request) {
+      _state = state;
+      _request = request;
+    }
+
+    @Override
+    public void run() {
+      try {
+        _requestHandler.handleRequest(_request);
+      } finally {
+        handleRequestComplete(_state, _request);
+      }
+    }
+  }
+}
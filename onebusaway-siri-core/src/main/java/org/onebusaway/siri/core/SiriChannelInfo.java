@@ -39,6 +39,10 @@ public class SiriChannelInfo {
    * associated with multiple client requests, as the SIRI endpoint may group
    * responses to multiple requests into a single delivery.
    * 
+   * Each delivery gets its own channel info, so a service delivery handler is
+   * free to hold on to it. The list itself may not be modifiable, so make a
+   * copy before changing it.
+   * 
    * @return the set of client requests associated with deliveries on this
    *         channel
    */
@@ -16,12 +16,20 @@
  */
 package org.onebusaway.siri.core;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.io.UnsupportedEncodingException;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -30,9 +38,11 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 
 import org.onebusaway.guice.jsr250.LifecycleService;
+import org.onebusaway.siri.core.DeliveryDeduplicator.Fingerprint;
 import org.onebusaway.siri.core.exceptions.SiriException;
 import org.onebusaway.siri.core.handlers.SiriClientHandler;
 import org.onebusaway.siri.core.handlers.SiriRawHandler;
+import org.onebusaway.siri.core.handlers.SiriRawStreamHandler;
 import org.onebusaway.siri.core.handlers.SiriServiceDeliveryHandler;
 import org.onebusaway.siri.core.services.ExponentialWeightedAverageForTimeWindow;
 import org.onebusaway.siri.core.subscriptions.client.SiriClientSubscriptionManager;
@@ -42,6 +52,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import uk.org.siri.siri.AbstractServiceDeliveryStructure;
+import uk.org.siri.siri.AbstractSubscriptionStructure;
 import uk.org.siri.siri.ServiceDelivery;
 import uk.org.siri.siri.Siri;
 import uk.org.siri.siri.SubscriptionRequest;
@@ -197,6 +208,43 @@ public class SiriClient extends SiriCommon implements SiriClientHandler,
     reattemptRequestIfApplicable(request);
   }
 
+  /**
+   * Send a number of requests asynchronously, as with
+   * {@link #handleRequest(SiriClientRequest)}. Subscription requests that
+   * agree on every transport and channel setting (urls, SIRI version,
+   * intervals, compression, publication streaming, initial termination
+   * duration and channel context) are merged into a single
+   * {@link SubscriptionRequest}, saving a round trip per subscription.
+   * The response status for each module subscription is still matched back to
+   * the client request that initiated it, and a client request whose batch
+   * fails to connect will be reattempted individually. All other requests are
+   * sent individually.
+   * 
+   * @param requests the client requests
+   */
+  public void handleRequests(Collection<SiriClientRequest> requests) {
+    for (SiriClientRequest request : batchRequests(requests))
+      processRequestWithAsynchronousResponse(request);
+  }
+
+  /**
+   * Send a number of requests synchronously, batching subscription requests as
+   * with {@link #handleRequests(Collection)}.
+   * 
+   * @param requests the client requests
+   * @return the responses, one for each request actually sent, in order, with
+   *         null entries for requests where no response was received
+   */
+  public List<Siri> handleRequestsWithResponse(
+      Collection<SiriClientRequest> requests) {
+    List<Siri> responses = new ArrayList<Siri>();
+    for (SiriClientRequest request : batchRequests(requests)) {
+      Siri response = processRequestWithResponse(request, false);
+      responses.add(response);
+    }
+    return responses;
+  }
+
   /*****
    * {@link SiriRawHandler} Interface
    ****/
@@ -209,7 +257,8 @@ public class SiriClient extends SiriCommon implements SiriClientHandler,
 
     String responseContent = null;
 
-    if (_logRawXmlType != ELogRawXmlType.NONE) {
+    if (_logRawXmlType != ELogRawXmlType.NONE
+        || isDeliveryDeduplicationEnabled()) {
       try {
         StringBuilder b = new StringBuilder();
         reader = copyReaderToStringBuilder(reader, b);
@@ -219,24 +268,70 @@ public class SiriClient extends SiriCommon implements SiriClientHandler,
       }
     }
 
-    Object data = unmarshall(reader);
-
     /**
-     * We potentially need to translate the Siri payload from an older version
-     * of the specification. We always operate on objects from the newest
-     * version of the spec
+     * Producers will sometimes re-send the same delivery, with only a new
+     * ResponseTimestamp. We acknowledge such duplicates, but skip them before
+     * they are unmarshalled and dispatched.
      */
-    SiriVersioning instance = SiriVersioning.getInstance();
-    data = instance.getPayloadAsVersion(data, instance.getDefaultVersion());
+    if (responseContent != null && isDuplicatePublishedDelivery(responseContent)) {
+      _log.debug("skipping duplicate delivery");
+      return;
+    }
 
-    if (data instanceof Siri) {
-      Siri siri = (Siri) data;
-      if (isRawDataLogged(siri)) {
-        _log.info("logging raw xml response:\n=== PUBLISHED BEGIN ===\n"
-            + responseContent + "\n=== PUBLISHED END ===");
+    Object data = unmarshall(reader);
+    handleRawData(data, responseContent);
+  }
+
+  /****
+   * {@link SiriRawStreamHandler} Interface
+   ****/
+
+  /**
+   * See {@link SiriRawStreamHandler#handleRawRequest(InputStream, OutputStream)}
+   * . The raw bytes are passed straight through to the unmarshaller, only
+   * being buffered if we need to check for duplicates or log the raw content.
+   */
+  @Override
+  public void handleRawRequest(InputStream input, OutputStream output) {
+
+    String responseContent = null;
+
+    if (_logRawXmlType != ELogRawXmlType.NONE
+        || isDeliveryDeduplicationEnabled()) {
+
+      byte[] content = null;
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (true) {
+          int rc = input.read(buffer);
+          if (rc == -1)
+            break;
+          out.write(buffer, 0, rc);
+        }
+        content = out.toByteArray();
+      } catch (IOException ex) {
+        throw new SiriException("error reading incoming request", ex);
       }
-      handleSiriResponse(siri, true, null);
+
+      if (isDuplicatePublishedDelivery(DeliveryDeduplicator.asCharSequence(content))) {
+        _log.debug("skipping duplicate delivery");
+        return;
+      }
+
+      if (_logRawXmlType != ELogRawXmlType.NONE) {
+        try {
+          responseContent = new String(content, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+          throw new SiriException(ex);
+        }
+      }
+
+      input = new ByteArrayInputStream(content);
     }
+
+    Object data = unmarshall(input);
+    handleRawData(data, responseContent);
   }
 
   /****
@@ -268,6 +363,13 @@ public class SiriClient extends SiriCommon implements SiriClientHandler,
 
     super.fillSubscriptionRequestStructure(request, subscriptionRequest);
 
+    /**
+     * The pending subscriptions of a batch are registered when the batch is
+     * created, on behalf of the individual client requests
+     */
+    if (request instanceof BatchClientRequest)
+      return;
+
     _subscriptionManager.registerPendingSubscription(request,
         subscriptionRequest);
   }
@@ -290,6 +392,23 @@ public class SiriClient extends SiriCommon implements SiriClientHandler,
           failedPayload.getSubscriptionRequest());
   }
 
+  /**
+   * A failed batch of subscription requests is reattempted as individual
+   * requests, according to the reconnection behavior of each
+   */
+  @Override
+  protected void reattemptRequestIfApplicable(SiriClientRequest request) {
+    if (request instanceof BatchClientRequest) {
+      BatchClientRequest batch = (BatchClientRequest) request;
+      for (SiriClientRequest member : batch.getRequests()) {
+        member.incrementConnectionErrorCount();
+        super.reattemptRequestIfApplicable(member);
+      }
+      return;
+    }
+    super.reattemptRequestIfApplicable(request);
+  }
+
   /**
    * Handle an incoming response from a SIRI endpoint. Checks if any
    * subscription-related responses are contained in the response and, if so,
@@ -301,6 +420,13 @@ public class SiriClient extends SiriCommon implements SiriClientHandler,
 
     super.handleSiriResponse(siri, asynchronousResponse, siriClientRequest);
 
+    /**
+     * A batch request is an implementation detail, not something our service
+     * delivery handlers know about
+     */
+    if (siriClientRequest instanceof BatchClientRequest)
+      siriClientRequest = null;
+
     if (siri.getSubscriptionResponse() != null)
       _subscriptionManager.handleSubscriptionResponse(siri.getSubscriptionResponse());
 
@@ -341,6 +467,62 @@ public class SiriClient extends SiriCommon implements SiriClientHandler,
    * Private Methods
    ****/
 
+  /**
+   * Published deliveries are de-duplicated per subscription channel, as
+   * identified by the subscription referenced by the content, falling back to
+   * the ProducerRef of the content. Content we can't attribute to a source is
+   * never skipped. A skipped delivery is still counted in the delivery
+   * statistics of its subscription.
+   * 
+   * @param content the raw XML content
+   * @return true if the content duplicates a recently published delivery
+   */
+  private boolean isDuplicatePublishedDelivery(CharSequence content) {
+
+    if (!isDeliveryDeduplicationEnabled())
+      return false;
+
+    Fingerprint fingerprint = DeliveryDeduplicator.computeFingerprint(content);
+    if (!fingerprint.isServiceDelivery())
+      return false;
+
+    String subscriberRef = fingerprint.getSubscriberRef();
+    String subscriptionRef = fingerprint.getSubscriptionRef();
+
+    String source = _subscriptionManager.getChannelAddressForSubscription(
+        subscriberRef, subscriptionRef);
+    if (source == null)
+      source = fingerprint.getProducerRef();
+
+    if (!isDuplicateDelivery(source, fingerprint))
+      return false;
+
+    _serviceDeliveryCounter.incrementAndGet();
+    _subscriptionManager.recordDuplicateServiceDelivery(subscriberRef,
+        subscriptionRef);
+    return true;
+  }
+
+  private void handleRawData(Object data, String responseContent) {
+
+    /**
+     * We potentially need to translate the Siri payload from an older version
+     * of the specification. We always operate on objects from the newest
+     * version of the spec
+     */
+    SiriVersioning instance = SiriVersioning.getInstance();
+    data = instance.getPayloadAsVersion(data, instance.getDefaultVersion());
+
+    if (data instanceof Siri) {
+      Siri siri = (Siri) data;
+      if (isRawDataLogged(siri)) {
+        _log.info("logging raw xml response:\n=== PUBLISHED BEGIN ===\n"
+            + responseContent + "\n=== PUBLISHED END ===");
+      }
+      handleSiriResponse(siri, true, null);
+    }
+  }
+
   private void handleServiceDelivery(ServiceDelivery serviceDelivery,
       SiriClientRequest siriClientRequest) {
 
@@ -353,12 +535,21 @@ public class SiriClient extends SiriCommon implements SiriClientHandler,
 
     checkServiceDeliveryForUnknownSubscriptions(serviceDelivery);
     
-    _subscriptionManager.recordServiceDeliveryStatistics(serviceDelivery);
-    SiriChannelInfo channelInfo = _subscriptionManager.getChannelInfoForServiceDelivery(serviceDelivery);
+    SiriChannelInfo channelInfo = _subscriptionManager.resolveServiceDelivery(serviceDelivery);
 
     if (siriClientRequest != null
         && !channelInfo.getSiriClientRequests().contains(siriClientRequest)) {
-      channelInfo.getSiriClientRequests().add(siriClientRequest);
+      /**
+       * The resolved list of client requests may not be modifiable, so we copy
+       * it rather than adding the request in place
+       */
+      SiriChannelInfo copy = new SiriChannelInfo();
+      List<SiriClientRequest> requests = new ArrayList<SiriClientRequest>(
+          channelInfo.getSiriClientRequests());
+      requests.add(siriClientRequest);
+      copy.setSiriClientRequests(requests);
+      copy.setContext(channelInfo.getContext());
+      channelInfo = copy;
     }
 
     for (SiriServiceDeliveryHandler handler : _serviceDeliveryHandlers)
@@ -388,4 +579,144 @@ public class SiriClient extends SiriCommon implements SiriClientHandler,
       }
     }
   }
+
+  /**
+   * 
+   * @param requests
+   * @return the requests to actually send, with subscription requests merged
+   *         where possible
+   */
+  private List<SiriClientRequest> batchRequests(
+      Collection<SiriClientRequest> requests) {
+
+    List<SiriClientRequest> results = new ArrayList<SiriClientRequest>();
+    Map<List<Object>, List<SiriClientRequest>> requestsByKey = new LinkedHashMap<List<Object>, List<SiriClientRequest>>();
+
+    for (SiriClientRequest request : requests) {
+
+      checkRequest(request);
+      request.resetConnectionStatistics();
+
+      if (!isBatchable(request)) {
+        results.add(request);
+        continue;
+      }
+
+      List<Object> key = getBatchKey(request);
+      List<SiriClientRequest> requestsForKey = requestsByKey.get(key);
+      if (requestsForKey == null) {
+        requestsForKey = new ArrayList<SiriClientRequest>();
+        requestsByKey.put(key, requestsForKey);
+      }
+      requestsForKey.add(request);
+    }
+
+    for (List<SiriClientRequest> requestsForKey : requestsByKey.values()) {
+      if (requestsForKey.size() == 1)
+        results.add(requestsForKey.get(0));
+      else
+        results.add(createBatchRequest(requestsForKey));
+    }
+
+    return results;
+  }
+
+  /**
+   * We only merge requests that consist of nothing but a subscription request
+   */
+  private boolean isBatchable(SiriClientRequest request) {
+    if (!request.isSubscribe())
+      return false;
+    Siri payload = request.getPayload();
+    return payload.getSubscriptionRequest() != null
+        && payload.getServiceRequest() == null
+        && payload.getCheckStatusRequest() == null
+        && payload.getTerminateSubscriptionRequest() == null;
+  }
+
+  /**
+   * A batch is sent with the settings of its first request (see
+   * {@link BatchClientRequest}), so requests can only be batched if every
+   * setting that affects how the request is sent or how the resulting
+   * subscription channel behaves is the same. Reconnection attempts are the
+   * exception, as they are reconciled in
+   * {@link #createBatchRequest(List)}.
+   */
+  private static List<Object> getBatchKey(SiriClientRequest request) {
+    return Arrays.<Object> asList(request.getTargetUrl(),
+        request.getManageSubscriptionUrl(), request.getCheckStatusUrl(),
+        request.getTargetVersion(), request.getPollInterval(),
+        request.getReconnectionInterval(), request.isCompressContent(),
+        request.isStreamPublications(), request.getCheckStatusInterval(),
+        request.getHeartbeatInterval(),
+        request.getInitialTerminationDuration(), request.getChannelContext());
+  }
+
+  private BatchClientRequest createBatchRequest(List<SiriClientRequest> requests) {
+
+    SubscriptionRequest batchSubscriptionRequest = new SubscriptionRequest();
+    List<SubscriptionRequest> subscriptionRequests = new ArrayList<SubscriptionRequest>();
+    int reconnectionAttempts = 0;
+
+    for (SiriClientRequest request : requests) {
+
+      /**
+       * We fill in subscription ids and termination times for each request
+       * individually, since those depend on the client request
+       */
+      Siri payload = SiriLibrary.copy(request.getPayload());
+      SubscriptionRequest subscriptionRequest = payload.getSubscriptionRequest();
+      super.fillSubscriptionRequestStructure(request, subscriptionRequest);
+      subscriptionRequests.add(subscriptionRequest);
+
+      for (ESiriModuleType moduleType : SiriLibrary.getRequestModuleTypes()) {
+        List<AbstractSubscriptionStructure> subs = SiriLibrary.getSubscriptionRequestsForModule(
+            subscriptionRequest, moduleType);
+        List<AbstractSubscriptionStructure> batchSubs = SiriLibrary.getSubscriptionRequestsForModule(
+            batchSubscriptionRequest, moduleType);
+        batchSubs.addAll(subs);
+      }
+
+      if (request.getReconnectionAttempts() != 0)
+        reconnectionAttempts = request.getReconnectionAttempts();
+    }
+
+    _subscriptionManager.registerPendingSubscriptions(requests,
+        subscriptionRequests);
+
+    Siri payload = new Siri();
+    payload.setSubscriptionRequest(batchSubscriptionRequest);
+
+    BatchClientRequest batch = new BatchClientRequest(requests);
+    batch.setPayload(payload);
+    /**
+     * If any request wants reconnection semantics, a connection error for the
+     * batch is handled by reattempting each request individually
+     */
+    batch.setReconnectionAttempts(reconnectionAttempts);
+    batch.resetConnectionStatistics();
+
+    _log.debug("batched subscription requests: url={} count={}",
+        batch.getTargetUrl(), requests.size());
+
+    return batch;
+  }
+
+  /**
+   * A single client request standing in for a batch of subscription requests
+   * to the same endpoint
+   */
+  private static class BatchClientRequest extends SiriClientRequest {
+
+    private final List<SiriClientRequest> _requests;
+
+    public BatchClientRequest(List<SiriClientRequest> requests) {
+      super(requests.get(0));
+      _requests = new ArrayList<SiriClientRequest>(requests);
+    }
+
+    public List<SiriClientRequest> getRequests() {
+      return _requests;
+    }
+  }
 }
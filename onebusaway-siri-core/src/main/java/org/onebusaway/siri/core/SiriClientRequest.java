@@ -56,6 +56,19 @@ public class SiriClientRequest {
    */
   private int reconnectionInterval = 60;
 
+  /**
+   * If true, request content sent to the SIRI endpoint is gzip compressed. Only
+   * enable this if the endpoint is known to accept compressed requests.
+   */
+  private boolean compressContent = false;
+
+  /**
+   * If true, a subscription request asks that publications be sent over a
+   * single long-lived publication stream, instead of one HTTP request per
+   * publication.
+   */
+  private boolean streamPublications = false;
+
   /**
    * The number of remaining reconnection attempts, used to incrementally track
    * how many reconnection attempts have already been made.
@@ -93,6 +106,8 @@ public class SiriClientRequest {
     this.pollInterval = request.pollInterval;
     this.reconnectionAttempts = request.reconnectionAttempts;
     this.reconnectionInterval = request.reconnectionInterval;
+    this.compressContent = request.compressContent;
+    this.streamPublications = request.streamPublications;
     this.checkStatusInterval = request.checkStatusInterval;
     this.heartbeatInterval = request.heartbeatInterval;
     this.initialTerminationDuration = request.initialTerminationDuration;
@@ -220,6 +235,45 @@ public class SiriClientRequest {
     this.reconnectionInterval = reconnectionInterval;
   }
 
+  /**
+   * 
+   * @return true if request content sent to the SIRI endpoint is gzip
+   *         compressed
+   */
+  public boolean isCompressContent() {
+    return compressContent;
+  }
+
+  /**
+   * 
+   * @param compressContent if true, request content sent to the SIRI endpoint
+   *          is gzip compressed. Only enable this if the endpoint is known to
+   *          accept compressed requests.
+   */
+  public void setCompressContent(boolean compressContent) {
+    this.compressContent = compressContent;
+  }
+
+  /**
+   * 
+   * @return true if a subscription request asks that publications be sent
+   *         over a publication stream
+   */
+  public boolean isStreamPublications() {
+    return streamPublications;
+  }
+
+  /**
+   * 
+   * @param streamPublications if true, a subscription request asks that
+   *          publications be sent over a single long-lived publication stream,
+   *          instead of one HTTP request per publication. See
+   *          {@link PublicationStreamSupport}.
+   */
+  public void setStreamPublications(boolean streamPublications) {
+    this.streamPublications = streamPublications;
+  }
+
   public int getRemainingReconnectionAttempts() {
     return remainingReconnectionAttempts;
   }
@@ -42,6 +42,10 @@ import uk.org.siri.siri.CheckStatusRequestStructure;
 import uk.org.siri.siri.DirectionRefStructure;
 import uk.org.siri.siri.EstimatedTimetableRequestStructure;
 import uk.org.siri.siri.EstimatedTimetableSubscriptionStructure;
+import uk.org.siri.siri.FacilityMonitoringRequestStructure;
+import uk.org.siri.siri.FacilityMonitoringSubscriptionStructure;
+import uk.org.siri.siri.GeneralMessageRequestStructure;
+import uk.org.siri.siri.GeneralMessageSubscriptionStructure;
 import uk.org.siri.siri.LineRefStructure;
 import uk.org.siri.siri.MessageQualifierStructure;
 import uk.org.siri.siri.MonitoringRefStructure;
@@ -79,6 +83,9 @@ public class SiriClientRequestFactory {
   public static final String ARG_RECONNECTION_ATTEMPTS = "ReconnectionAttempts";
   public static final String ARG_RECONNECTION_INTERVAL = "ReconnectionInterval";
 
+  public static final String ARG_COMPRESS = "Compress";
+  public static final String ARG_STREAM_PUBLICATIONS = "StreamPublications";
+
   public static final String ARG_HEARTBEAT_INTERVAL = "HeartbeatInterval";
   public static final String ARG_CHECK_STATUS_INTERVAL = "CheckStatusInterval";
   public static final String ARG_INITIAL_TERMINATION_TIME = "InitialTerminationTime";
@@ -247,6 +254,18 @@ public class SiriClientRequestFactory {
       request.setReconnectionInterval(interval);
     }
 
+    String compressValue = args.get(ARG_COMPRESS);
+    if (compressValue != null) {
+      boolean compress = Boolean.parseBoolean(compressValue);
+      request.setCompressContent(compress);
+    }
+
+    String streamPublicationsValue = args.get(ARG_STREAM_PUBLICATIONS);
+    if (streamPublicationsValue != null) {
+      boolean streamPublications = Boolean.parseBoolean(streamPublicationsValue);
+      request.setStreamPublications(streamPublications);
+    }
+
     String checkStatusIntervalValue = args.get(ARG_CHECK_STATUS_INTERVAL);
     if (checkStatusIntervalValue != null) {
       int checkStatusInterval = Integer.parseInt(checkStatusIntervalValue);
@@ -304,6 +323,10 @@ public class SiriClientRequestFactory {
         return new StopMonitoringRequestStructure();
       case VEHICLE_MONITORING:
         return new VehicleMonitoringRequestStructure();
+      case GENERAL_MESSAGE:
+        return new GeneralMessageRequestStructure();
+      case FACILITY_MONITORING:
+        return new FacilityMonitoringRequestStructure();
       case SITUATION_EXCHANGE:
         return new SituationExchangeRequestStructure();
       default:
@@ -362,6 +385,10 @@ public class SiriClientRequestFactory {
         return new StopMonitoringSubscriptionStructure();
       case VEHICLE_MONITORING:
         return new VehicleMonitoringSubscriptionStructure();
+      case GENERAL_MESSAGE:
+        return new GeneralMessageSubscriptionStructure();
+      case FACILITY_MONITORING:
+        return new FacilityMonitoringSubscriptionStructure();
       case SITUATION_EXCHANGE:
         return new SituationExchangeSubscriptionStructure();
       default:
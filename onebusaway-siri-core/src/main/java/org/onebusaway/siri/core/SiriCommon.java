@@ -17,9 +17,12 @@
 package org.onebusaway.siri.core;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
@@ -34,10 +37,14 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -61,16 +68,19 @@ import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
-import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.util.EntityUtils;
+import org.onebusaway.siri.core.DeliveryDeduplicator.Fingerprint;
 import org.onebusaway.siri.core.exceptions.SiriConnectionException;
 import org.onebusaway.siri.core.exceptions.SiriException;
 import org.onebusaway.siri.core.exceptions.SiriSerializationException;
 import org.onebusaway.siri.core.handlers.SiriRawHandler;
+import org.onebusaway.siri.core.handlers.SiriRawStreamHandler;
 import org.onebusaway.siri.core.services.HttpClientService;
 import org.onebusaway.siri.core.services.SchedulingService;
 import org.onebusaway.siri.core.versioning.SiriVersioning;
@@ -101,7 +111,8 @@ import uk.org.siri.siri.VehicleMonitoringSubscriptionStructure;
  * @author bdferris
  * 
  */
-public class SiriCommon implements SiriRawHandler, StatusProviderService {
+public class SiriCommon implements SiriRawHandler, SiriRawStreamHandler,
+    StatusProviderService {
 
   public enum ELogRawXmlType {
     NONE, CONTROL, DATA, ALL
@@ -111,8 +122,31 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
 
   private static DatatypeFactory _dataTypeFactory = SiriTypeFactory.createDataTypeFactory();
 
+  /**
+   * The charset and content type used for outgoing request content
+   */
+  private static final String CONTENT_CHARSET = HTTP.DEFAULT_CONTENT_CHARSET;
+
+  private static final String CONTENT_TYPE = HTTP.PLAIN_TEXT_TYPE
+      + HTTP.CHARSET_PARAM + CONTENT_CHARSET;
+
+  /**
+   * The maximum number of idle unmarshallers kept in the pool. Unmarshallers
+   * returned to a full pool are discarded, such that a burst of concurrent
+   * requests doesn't leave behind a permanently large pool.
+   */
+  private static final int MAX_IDLE_UNMARSHALLERS = 32;
+
   private JAXBContext _jaxbContext;
 
+  /**
+   * {@link Unmarshaller} instances are relatively expensive to create and are
+   * not thread-safe, but can be reused, so we keep a bounded pool of idle
+   * instances
+   */
+  private BlockingQueue<Unmarshaller> _unmarshallers = new ArrayBlockingQueue<Unmarshaller>(
+      MAX_IDLE_UNMARSHALLERS);
+
   protected SchedulingService _schedulingService;
 
   /**
@@ -145,13 +179,46 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
 
   private int _connectionTimeout = 0;
 
+  private ReconnectionScheduler _reconnectionScheduler = new ReconnectionScheduler();
+
+  private PollingScheduler _pollingScheduler = new PollingScheduler();
+
+  private DeliveryDeduplicator _deliveryDeduplicator = new DeliveryDeduplicator();
+
+  /**
+   * If true, we advertise that we accept compressed responses to outgoing
+   * requests
+   */
+  private boolean _acceptCompressedResponses = true;
+
+  private AtomicLong _compressedRequestCount = new AtomicLong();
+
+  private AtomicLong _uncompressedRequestBytes = new AtomicLong();
+
+  private AtomicLong _compressedRequestBytes = new AtomicLong();
+
+  private AtomicLong _compressedResponseCount = new AtomicLong();
+
+  /**
+   * Additional status providers, such as the servlet exporting this endpoint,
+   * whose status is included in our own
+   */
+  private List<StatusProviderService> _statusProviders = new CopyOnWriteArrayList<StatusProviderService>();
+
   public SiriCommon() {
     _identity = UUID.randomUUID().toString();
+    _reconnectionScheduler.setRequestHandler(new ReconnectionScheduler.RequestHandler() {
+      @Override
+      public void handleRequest(SiriClientRequest request) {
+        new AsynchronousClientRequest(request).run();
+      }
+    });
   }
 
   @Inject
   public void setSchedulingService(SchedulingService schedulingService) {
     _schedulingService = schedulingService;
+    _reconnectionScheduler.setSchedulingService(schedulingService);
   }
 
   @Inject
@@ -162,6 +229,17 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
   @Inject
   public void setJAXBContext(JAXBContext jaxbContext) {
     _jaxbContext = jaxbContext;
+    _unmarshallers.clear();
+  }
+
+  /**
+   * Include the status of another component, such as the servlet exporting
+   * this endpoint, in {@link #getStatus(Map)}.
+   * 
+   * @param provider the status provider
+   */
+  public void addStatusProvider(StatusProviderService provider) {
+    _statusProviders.add(provider);
   }
 
   /**
@@ -326,6 +404,57 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
     _connectionTimeout = connectionTimeout;
   }
 
+  /**
+   * 
+   * @param maxReconnectionInterval the maximum time, in seconds, between
+   *          reconnection attempts to an endpoint, as the time between attempts
+   *          backs off exponentially
+   */
+  public void setMaxReconnectionInterval(int maxReconnectionInterval) {
+    _reconnectionScheduler.setMaxReconnectionInterval(maxReconnectionInterval);
+  }
+
+  /**
+   * 
+   * @param maxConcurrentReconnections the maximum number of requests
+   *          reattempted at the same time against an endpoint that has become
+   *          reachable again
+   */
+  public void setMaxConcurrentReconnections(int maxConcurrentReconnections) {
+    _reconnectionScheduler.setMaxConcurrentReconnections(maxConcurrentReconnections);
+  }
+
+  /**
+   * 
+   * @param maxPollIntervalFactor the maximum interval between polls of an
+   *          unchanged response, as a multiple of the poll interval of the
+   *          request
+   */
+  public void setMaxPollIntervalFactor(int maxPollIntervalFactor) {
+    _pollingScheduler.setMaxPollIntervalFactor(maxPollIntervalFactor);
+  }
+
+  /**
+   * 
+   * @param duplicateDeliveryWindow time, in seconds, for which an inbound
+   *          delivery is remembered, such that an identical delivery from the
+   *          same source within the window is skipped. A value of zero, the
+   *          default, disables de-duplication. Note that when enabled, inbound
+   *          deliveries are buffered in full before they are unmarshalled.
+   */
+  public void setDuplicateDeliveryWindow(int duplicateDeliveryWindow) {
+    _deliveryDeduplicator.setWindow(duplicateDeliveryWindow);
+  }
+
+  /**
+   * 
+   * @param acceptCompressedResponses if true (the default), outgoing requests
+   *          indicate that we accept gzip or deflate compressed responses
+   */
+  public void setAcceptCompressedResponses(boolean acceptCompressedResponses) {
+    _acceptCompressedResponses = acceptCompressedResponses;
+  }
+
   /****
    * Setup Methods
    ****/
@@ -386,6 +515,19 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
   public void getStatus(Map<String, String> status) {
     status.put("siri.common.requestCounter",
         Integer.toString(_requestCount.get()));
+    _reconnectionScheduler.getStatus(status);
+    _pollingScheduler.getStatus(status);
+    _deliveryDeduplicator.getStatus(status);
+    status.put("siri.common.compressedRequestCounter",
+        Long.toString(_compressedRequestCount.get()));
+    status.put("siri.common.uncompressedRequestBytes",
+        Long.toString(_uncompressedRequestBytes.get()));
+    status.put("siri.common.compressedRequestBytes",
+        Long.toString(_compressedRequestBytes.get()));
+    status.put("siri.common.compressedResponseCounter",
+        Long.toString(_compressedResponseCount.get()));
+    for (StatusProviderService provider : _statusProviders)
+      provider.getStatus(status);
   }
 
   /***
@@ -402,6 +544,23 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
 
   }
 
+  /**
+   * By default, we decode the input as UTF-8 and pass it along to
+   * {@link #handleRawRequest(Reader, Writer)}. Sub-classes can override this
+   * method to parse the raw bytes directly.
+   */
+  @Override
+  public void handleRawRequest(InputStream input, OutputStream output) {
+    try {
+      Reader reader = new InputStreamReader(input, "UTF-8");
+      Writer writer = new OutputStreamWriter(output, "UTF-8");
+      handleRawRequest(reader, writer);
+      writer.flush();
+    } catch (IOException ex) {
+      throw new SiriException("error handling raw request", ex);
+    }
+  }
+
   /****
    * Protected Methods
    ****/
@@ -412,21 +571,53 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
    * appropriate for the endpoint, and submitting the request over HTTP. Any
    * response is parsed, convered back to the latest SIRI version, and returned.
    * 
+   * For polling requests, the next poll is scheduled, a poll is skipped if the
+   * previous poll is still in flight, and a response that is unchanged since
+   * the previous poll is dropped before it is unmarshalled. See
+   * {@link PollingScheduler}.
+   * 
    * @param <T>
    * @param request the SIRI client request
    * @param asynchronous true if this is an asynchronous request
-   * @return any response from the endpoint, or null if none received
+   * @return any response from the endpoint, or null if none received, the poll
+   *         was skipped, or the polled response was unchanged
    */
-  @SuppressWarnings("unchecked")
   protected <T> T processRequestWithResponse(SiriClientRequest request,
       boolean asynchronous) {
 
-    if (!request.isSubscribe() && request.getPollInterval() > 0) {
-      AsynchronousClientRequest asyncAttempt = new AsynchronousClientRequest(
-          request);
-      _schedulingService.schedule(asyncAttempt, request.getPollInterval(),
-          TimeUnit.SECONDS);
+    if (request.isSubscribe() || request.getPollInterval() <= 0)
+      return processRequestWithResponse(request, asynchronous, false);
+
+    boolean startedPoll = _pollingScheduler.startPoll(request);
+
+    AsynchronousClientRequest asyncAttempt = new AsynchronousClientRequest(
+        request);
+    _schedulingService.schedule(asyncAttempt,
+        _pollingScheduler.getPollInterval(request), TimeUnit.SECONDS);
+
+    if (!startedPoll) {
+      _log.debug("skipping poll while previous poll is in flight: {}", request);
+      return null;
+    }
+
+    try {
+      return processRequestWithResponse(request, asynchronous, true);
+    } finally {
+      _pollingScheduler.completePoll(request);
     }
+  }
+
+  /**
+   * 
+   * @param <T>
+   * @param request the SIRI client request
+   * @param asynchronous true if this is an asynchronous request
+   * @param polling true if this is a poll of a polling request
+   * @return any response from the endpoint, or null if none received
+   */
+  @SuppressWarnings("unchecked")
+  private <T> T processRequestWithResponse(SiriClientRequest request,
+      boolean asynchronous, boolean polling) {
 
     _requestCount.incrementAndGet();
 
@@ -472,9 +663,37 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
 
     try {
 
-      Reader responseReader = new InputStreamReader(entity.getContent());
+      InputStream responseStream = null;
+      long contentLength = entity.getContentLength();
+
+      /**
+       * For polling requests, we buffer the response so that we can check if
+       * it has changed since the previous poll without unmarshalling it
+       */
+      if (polling) {
+        byte[] responseBytes = EntityUtils.toByteArray(entity);
+        CharSequence responseChars = DeliveryDeduplicator.asCharSequence(responseBytes);
+        Fingerprint fingerprint = DeliveryDeduplicator.computeFingerprint(responseChars);
+        if (_pollingScheduler.isContentUnchanged(request,
+            fingerprint.getHash())) {
+          _log.debug("polled response unchanged: {}", request);
+          return null;
+        }
+        if (_deliveryDeduplicator.isDuplicate(request.getTargetUrl(),
+            fingerprint)) {
+          _log.debug("polled response duplicates a recent delivery: {}",
+              request);
+          return null;
+        }
+        responseStream = new ByteArrayInputStream(responseBytes);
+        contentLength = responseBytes.length;
+      } else {
+        responseStream = entity.getContent();
+      }
+
+      Reader responseReader = new InputStreamReader(responseStream);
 
-      _log.debug("response content length: {}", entity.getContentLength());
+      _log.debug("response content length: {}", contentLength);
 
       /**
        * Opportunistically skip capturing the response in an intermediate string
@@ -487,7 +706,7 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
 
       }
 
-      if (entity.getContentLength() != 0) {
+      if (contentLength != 0) {
         responseData = unmarshall(responseReader);
         responseData = versioning.getPayloadAsVersion(responseData,
             versioning.getDefaultVersion());
@@ -530,6 +749,26 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
     _schedulingService.submit(attempt);
   }
 
+  protected boolean isDeliveryDeduplicationEnabled() {
+    return _deliveryDeduplicator.isEnabled();
+  }
+
+  /**
+   * Check if raw inbound content duplicates a delivery recently received from
+   * the same source, in which case it can be skipped without being
+   * unmarshalled. Content without a ServiceDelivery, or without a source, is
+   * never considered a duplicate.
+   * 
+   * @param source the source of the content, such as the address of the
+   *          subscription channel
+   * @param fingerprint the fingerprint of the raw XML content, as computed by
+   *          {@link DeliveryDeduplicator#computeFingerprint(CharSequence)}
+   * @return true if the content is a duplicate
+   */
+  protected boolean isDuplicateDelivery(String source, Fingerprint fingerprint) {
+    return _deliveryDeduplicator.isDuplicate(source, fingerprint);
+  }
+
   /**
    * Override this method to provide custom behavior for processing a response
    * from a SIRI endoint.
@@ -600,10 +839,21 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
       subscriptionRequest.setSubscriptionContext(context);
     }
 
+    /**
+     * We ask for a publication stream with the consumer address scheme
+     */
+    if (request.isStreamPublications()) {
+      String consumerAddress = subscriptionRequest.getConsumerAddress();
+      if (consumerAddress == null)
+        consumerAddress = subscriptionRequest.getAddress();
+      if (consumerAddress != null)
+        subscriptionRequest.setConsumerAddress(PublicationStreamSupport.getStreamAddress(consumerAddress));
+    }
+
     /**
      * Fill in subscription ids
      */
-    for (ESiriModuleType moduleType : ESiriModuleType.values()) {
+    for (ESiriModuleType moduleType : SiriLibrary.getRequestModuleTypes()) {
 
       List<AbstractSubscriptionStructure> subs = SiriLibrary.getSubscriptionRequestsForModule(
           subscriptionRequest, moduleType);
@@ -826,8 +1076,10 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
   @SuppressWarnings("unchecked")
   public <T> T unmarshall(InputStream in) {
     try {
-      Unmarshaller unmarshaller = _jaxbContext.createUnmarshaller();
-      return (T) unmarshaller.unmarshal(in);
+      Unmarshaller unmarshaller = getUnmarshaller();
+      T result = (T) unmarshaller.unmarshal(in);
+      _unmarshallers.offer(unmarshaller);
+      return result;
     } catch (Exception ex) {
       throw new SiriSerializationException(ex);
     }
@@ -844,8 +1096,10 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
   @SuppressWarnings("unchecked")
   public <T> T unmarshall(Reader reader) {
     try {
-      Unmarshaller unmarshaller = _jaxbContext.createUnmarshaller();
-      return (T) unmarshaller.unmarshal(reader);
+      Unmarshaller unmarshaller = getUnmarshaller();
+      T result = (T) unmarshaller.unmarshal(reader);
+      _unmarshallers.offer(unmarshaller);
+      return result;
     } catch (Exception ex) {
       throw new SiriSerializationException(ex);
     }
@@ -880,6 +1134,25 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
     }
   }
 
+  /**
+   * Marshall the specified object to the target {@link OutputStream} using
+   * JAXB, encoded as UTF-8.
+   * 
+   * @param object
+   * @param out
+   */
+  public void marshall(Object object, OutputStream out) {
+    try {
+      Marshaller m = _jaxbContext.createMarshaller();
+      if (_formatOutputXmlByDefault) {
+        m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+      }
+      m.marshal(object, out);
+    } catch (JAXBException ex) {
+      throw new SiriSerializationException(ex);
+    }
+  }
+
   /**
    * Marshall the specified object as a String using JAXB.
    * 
@@ -907,6 +1180,21 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
    * Protected Methods
    ****/
 
+  /**
+   * An unmarshaller is only returned to the pool once it has been used
+   * successfully, such that an unmarshaller left in a bad state by a failed
+   * parse is discarded. It is also discarded if the pool is already full.
+   * 
+   * @return an idle unmarshaller from the pool, or a new one if none are idle
+   * @throws JAXBException
+   */
+  protected Unmarshaller getUnmarshaller() throws JAXBException {
+    Unmarshaller unmarshaller = _unmarshallers.poll();
+    if (unmarshaller == null)
+      unmarshaller = _jaxbContext.createUnmarshaller();
+    return unmarshaller;
+  }
+
   protected ScheduledExecutorService createExecutor() {
     return Executors.newSingleThreadScheduledExecutor();
   }
@@ -924,12 +1212,15 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
       SiriClientRequest request, Siri payload, String content) {
 
     String url = getUrlForRequest(request);
+    HttpEntity entity = createHttpEntity(getContentAsBytes(content),
+        request.isCompressContent());
 
     if (request.getReconnectionAttempts() != 0) {
 
       try {
 
-        HttpResponse response = sendHttpRequestWithResponse(url, content);
+        HttpResponse response = sendHttpRequestWithResponse(url, content,
+            entity);
 
         /**
          * Reset our connection error count and note that we've successfully
@@ -938,6 +1229,7 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
         if (request.getConnectionErrorCount() > 0)
           _log.info("successfully reconnected to " + url);
         request.resetConnectionErrorCount();
+        _reconnectionScheduler.handleRequestSuccess(url, request);
 
         return response;
 
@@ -975,7 +1267,9 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
 
     } else {
 
-      return sendHttpRequestWithResponse(url, content);
+      HttpResponse response = sendHttpRequestWithResponse(url, content, entity);
+      _reconnectionScheduler.handleRequestSuccess(url, request);
+      return response;
     }
   }
 
@@ -1006,15 +1300,29 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
    * @param content the content of the POST request
    */
   protected void sendHttpRequest(String url, String content) {
-    HttpResponse response = sendHttpRequestWithResponse(url, content);
+    sendHttpRequest(url, content,
+        createHttpEntity(getContentAsBytes(content), false));
+  }
+
+  /**
+   * Construct an HTTP POST request with the specified entity, send it, and
+   * ignore any content in the response.
+   * 
+   * @param url the target url where we will POST
+   * @param content the content of the POST request, used for logging
+   * @param entity the entity of the POST request, as created by
+   *          {@link #createHttpEntity(byte[], boolean)}
+   */
+  protected void sendHttpRequest(String url, String content, HttpEntity entity) {
+    HttpResponse response = sendHttpRequestWithResponse(url, content, entity);
     /**
      * Make sure we consume the response content so that the connection might be
      * reused.
      */
-    HttpEntity entity = response.getEntity();
-    if (entity != null) {
+    HttpEntity responseEntity = response.getEntity();
+    if (responseEntity != null) {
       try {
-        entity.consumeContent();
+        responseEntity.consumeContent();
       } catch (IOException e) {
 
       }
@@ -1033,24 +1341,47 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
    * @return the response
    */
   protected HttpResponse sendHttpRequestWithResponse(String url, String content) {
+    return sendHttpRequestWithResponse(url, content,
+        createHttpEntity(getContentAsBytes(content), false));
+  }
 
-    HttpPost post = new HttpPost(url);
+  /**
+   * Construct an HTTP POST request with the specified entity, send it, and
+   * decode the response. A compressed response is transparently decompressed.
+   * 
+   * @param url the target url where we will POST
+   * @param content the content of the POST request, used for logging
+   * @param entity the entity of the POST request, as created by
+   *          {@link #createHttpEntity(byte[], boolean)}
+   * @return the response
+   */
+  protected HttpResponse sendHttpRequestWithResponse(String url,
+      String content, HttpEntity entity) {
 
-    try {
-      post.setEntity(new StringEntity(content));
-    } catch (UnsupportedEncodingException ex) {
-      throw new SiriSerializationException(ex);
-    }
+    HttpPost post = new HttpPost(url);
+    post.setEntity(entity);
+    if (_acceptCompressedResponses)
+      post.setHeader(HttpCompressionSupport.HEADER_ACCEPT_ENCODING,
+          HttpCompressionSupport.ACCEPT_ENCODING);
 
     HttpResponse response = _httpClientService.executeHttpMethod(_client, post);
     StatusLine statusLine = response.getStatusLine();
 
+    HttpEntity responseEntity = response.getEntity();
+    if (responseEntity != null) {
+      HttpEntity decodedEntity = HttpCompressionSupport.getDecodedEntity(responseEntity);
+      if (decodedEntity != responseEntity) {
+        _compressedResponseCount.incrementAndGet();
+        response.setEntity(decodedEntity);
+      }
+    }
+
     if (statusLine.getStatusCode() != HttpStatus.SC_OK) {
-      HttpEntity entity = response.getEntity();
-      if (entity != null) {
+      responseEntity = response.getEntity();
+      if (responseEntity != null) {
         try {
           BufferedReader reader = new BufferedReader(new InputStreamReader(
-              entity.getContent()));
+              responseEntity.getContent()));
           StringBuilder b = new StringBuilder();
           String line = null;
 
@@ -1059,7 +1390,7 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
           _log.warn("error connecting to url " + post.getURI() + " statusCode="
               + statusLine.getStatusCode() + "\nrequestBody=" + content
               + "\nresponseBody=" + b.toString());
-          entity.consumeContent();
+          responseEntity.consumeContent();
         } catch (IOException ex) {
           _log.warn("error reading http response", ex);
         }
@@ -1079,6 +1410,39 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
     return response;
   }
 
+  /**
+   * Create the entity for an HTTP POST request.
+   * 
+   * @param content the raw content, as returned by
+   *          {@link #getContentAsBytes(String)}
+   * @param compress if true, the content is gzip compressed, which should only
+   *          be done when the receiving endpoint is known to accept it
+   * @return the entity
+   */
+  protected HttpEntity createHttpEntity(byte[] content, boolean compress) {
+    HttpEntity entity = HttpCompressionSupport.createEntity(content,
+        CONTENT_TYPE, compress);
+    if (compress) {
+      _compressedRequestCount.incrementAndGet();
+      _uncompressedRequestBytes.addAndGet(content.length);
+      _compressedRequestBytes.addAndGet(entity.getContentLength());
+    }
+    return entity;
+  }
+
+  /**
+   * 
+   * @param content the content of an HTTP request
+   * @return the content encoded with the charset used for outgoing requests
+   */
+  protected byte[] getContentAsBytes(String content) {
+    try {
+      return content.getBytes(CONTENT_CHARSET);
+    } catch (UnsupportedEncodingException ex) {
+      throw new SiriSerializationException(ex);
+    }
+  }
+
   /**
    * Method provides opportunity to clean up a failed client request.
    * 
@@ -1095,8 +1459,12 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
    * method will attempt to resend the request based on the
    * {@link SiriClientRequest#getRemainingReconnectionAttempts()} behavior.
    * 
-   * The reconnect will be attempted asynchronously after the
-   * {@link SiriClientRequest#getReconnectionInterval()} has passed.
+   * The reconnect will be attempted asynchronously, with exponential backoff
+   * and jitter starting from the
+   * {@link SiriClientRequest#getReconnectionInterval()}. Reconnects to the same
+   * endpoint are consolidated, such that only a single request probes a failed
+   * endpoint, with the rest waiting until it succeeds. See
+   * {@link ReconnectionScheduler}.
    * 
    * @param request the client request to potentially reconnect
    */
@@ -1109,12 +1477,7 @@ public class SiriCommon implements SiriRawHandler, StatusProviderService {
      * We have some reconnection attempts remaining, so we schedule another
      * connection attempt
      */
-    request.decrementRemainingReconnctionAttempts();
-
-    AsynchronousClientRequest asyncAttempt = new AsynchronousClientRequest(
-        request);
-    _schedulingService.schedule(asyncAttempt,
-        request.getReconnectionInterval(), TimeUnit.SECONDS);
+    _reconnectionScheduler.reattemptRequest(getUrlForRequest(request), request);
   }
 
   protected Reader copyReaderToStringBuilder(Reader responseReader,
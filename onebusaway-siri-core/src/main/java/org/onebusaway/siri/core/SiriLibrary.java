@@ -16,7 +16,10 @@
 package org.onebusaway.siri.core;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -53,58 +56,100 @@ public class SiriLibrary {
    */
   private static VersionConverter _copier;
 
+  /**
+   * Per-module accessors for the module-specific request, subscription, and
+   * delivery lists, such that we can look up the live list for any module
+   * without a switch or allocating a throwaway list. The connection monitoring
+   * feeder and distributor modules share the same request and subscription
+   * lists, as they do in the SIRI schema.
+   */
+  private static final Map<ESiriModuleType, ModuleAccessor> _accessors = createAccessors();
+
+  /**
+   * Shared, since {@link ESiriModuleType#values()} returns a new array on each
+   * call. See {@link #getModuleTypes()}.
+   */
+  private static final List<ESiriModuleType> _moduleTypes = Collections.unmodifiableList(Arrays.asList(ESiriModuleType.values()));
+
+  /**
+   * The module types with their own request and subscription lists. See
+   * {@link #getRequestModuleTypes()}.
+   */
+  private static final List<ESiriModuleType> _requestModuleTypes = createRequestModuleTypes();
+
   static {
     TypeMappingStrategy selfMapping = new PackageBasedTypeMappingStrategy(
         SiriVersioning.SIRI_1_3_PACKAGE, SiriVersioning.SIRI_1_3_PACKAGE);
     _copier = new IntrospectionVersionConverter(selfMapping);
   }
 
+  /**
+   * 
+   * @return every module type, as an unmodifiable list that is safe to iterate
+   *         on hot paths without allocating a new array per call
+   */
+  public static List<ESiriModuleType> getModuleTypes() {
+    return _moduleTypes;
+  }
+
+  /**
+   * The module types to iterate over when visiting every module request or
+   * subscription in a {@link ServiceRequest} or {@link SubscriptionRequest}.
+   * Since the connection monitoring feeder and distributor modules share a
+   * single request and subscription list, only the feeder module type is
+   * included, such that each connection monitoring request is visited once.
+   * Use {@link #getModuleTypes()} when iterating over module deliveries.
+   * 
+   * @return the module types with their own request and subscription lists
+   */
+  public static List<ESiriModuleType> getRequestModuleTypes() {
+    return _requestModuleTypes;
+  }
+
+  /**
+   * 
+   * @param moduleType
+   * @return the module type under which requests and subscriptions for the
+   *         specified module type are tracked, as returned by
+   *         {@link #getRequestModuleTypes()}
+   */
+  public static ESiriModuleType getRequestModuleType(ESiriModuleType moduleType) {
+    if (moduleType == ESiriModuleType.CONNECTION_MONITORING_DISTRIBUTOR)
+      return ESiriModuleType.CONNECTION_MONITORING_FEEDER;
+    return moduleType;
+  }
+
   @SuppressWarnings("unchecked")
   public static <T extends AbstractServiceRequestStructure> List<T> getServiceRequestsForModule(
       ServiceRequest serviceRequest, ESiriModuleType moduleType) {
-
-    switch (moduleType) {
-      case VEHICLE_MONITORING:
-        return (List<T>) serviceRequest.getVehicleMonitoringRequest();
-      case SITUATION_EXCHANGE:
-        return (List<T>) serviceRequest.getSituationExchangeRequest();
-      case STOP_MONITORING:
-        return (List<T>) serviceRequest.getStopMonitoringRequest();
-      default:
-        return new ArrayList<T>();
-    }
+    return (List<T>) _accessors.get(moduleType).getServiceRequests(
+        serviceRequest);
   }
 
   @SuppressWarnings("unchecked")
   public static <T extends AbstractSubscriptionStructure> List<T> getSubscriptionRequestsForModule(
       SubscriptionRequest subscriptionRequest, ESiriModuleType moduleType) {
-
-    switch (moduleType) {
-      case VEHICLE_MONITORING:
-        return (List<T>) subscriptionRequest.getVehicleMonitoringSubscriptionRequest();
-      case SITUATION_EXCHANGE:
-        return (List<T>) subscriptionRequest.getSituationExchangeSubscriptionRequest();
-      case STOP_MONITORING:
-        return (List<T>) subscriptionRequest.getStopMonitoringSubscriptionRequest();
-      default:
-        return new ArrayList<T>();
-    }
+    return (List<T>) _accessors.get(moduleType).getSubscriptionRequests(
+        subscriptionRequest);
   }
 
   @SuppressWarnings("unchecked")
   public static <T extends AbstractServiceDeliveryStructure> List<T> getServiceDeliveriesForModule(
       ServiceDelivery serviceDelivery, ESiriModuleType moduleType) {
+    return (List<T>) _accessors.get(moduleType).getServiceDeliveries(
+        serviceDelivery);
+  }
 
-    switch (moduleType) {
-      case VEHICLE_MONITORING:
-        return (List<T>) serviceDelivery.getVehicleMonitoringDelivery();
-      case SITUATION_EXCHANGE:
-        return (List<T>) serviceDelivery.getSituationExchangeDelivery();
-      case STOP_MONITORING:
-        return (List<T>) serviceDelivery.getStopMonitoringDelivery();
-      default:
-        return new ArrayList<T>();
-    }
+  /**
+   * 
+   * @param serviceDelivery
+   * @param moduleType
+   * @return true if the service delivery has at least one module delivery of
+   *         the specified type
+   */
+  public static boolean hasServiceDeliveriesForModule(
+      ServiceDelivery serviceDelivery, ESiriModuleType moduleType) {
+    return !_accessors.get(moduleType).getServiceDeliveries(serviceDelivery).isEmpty();
   }
 
   /****
@@ -319,4 +364,217 @@ public class SiriLibrary {
     }
     return false;
   }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static Map<ESiriModuleType, ModuleAccessor> createAccessors() {
+
+    Map<ESiriModuleType, ModuleAccessor> accessors = new EnumMap<ESiriModuleType, ModuleAccessor>(
+        ESiriModuleType.class);
+
+    accessors.put(ESiriModuleType.PRODUCTION_TIMETABLE, new ModuleAccessor() {
+      @Override
+      public List<?> getServiceRequests(ServiceRequest request) {
+        return request.getProductionTimetableRequest();
+      }
+
+      @Override
+      public List<?> getSubscriptionRequests(SubscriptionRequest request) {
+        return request.getProductionTimetableSubscriptionRequest();
+      }
+
+      @Override
+      public List<?> getServiceDeliveries(ServiceDelivery delivery) {
+        return delivery.getProductionTimetableDelivery();
+      }
+    });
+    accessors.put(ESiriModuleType.ESTIMATED_TIMETABLE, new ModuleAccessor() {
+      @Override
+      public List<?> getServiceRequests(ServiceRequest request) {
+        return request.getEstimatedTimetableRequest();
+      }
+
+      @Override
+      public List<?> getSubscriptionRequests(SubscriptionRequest request) {
+        return request.getEstimatedTimetableSubscriptionRequest();
+      }
+
+      @Override
+      public List<?> getServiceDeliveries(ServiceDelivery delivery) {
+        return delivery.getEstimatedTimetableDelivery();
+      }
+    });
+    accessors.put(ESiriModuleType.STOP_TIMETABLE, new ModuleAccessor() {
+      @Override
+      public List<?> getServiceRequests(ServiceRequest request) {
+        return request.getStopTimetableRequest();
+      }
+
+      @Override
+      public List<?> getSubscriptionRequests(SubscriptionRequest request) {
+        return request.getStopTimetableSubscriptionRequest();
+      }
+
+      @Override
+      public List<?> getServiceDeliveries(ServiceDelivery delivery) {
+        return delivery.getStopTimetableDelivery();
+      }
+    });
+    accessors.put(ESiriModuleType.STOP_MONITORING, new ModuleAccessor() {
+      @Override
+      public List<?> getServiceRequests(ServiceRequest request) {
+        return request.getStopMonitoringRequest();
+      }
+
+      @Override
+      public List<?> getSubscriptionRequests(SubscriptionRequest request) {
+        return request.getStopMonitoringSubscriptionRequest();
+      }
+
+      @Override
+      public List<?> getServiceDeliveries(ServiceDelivery delivery) {
+        return delivery.getStopMonitoringDelivery();
+      }
+    });
+    accessors.put(ESiriModuleType.VEHICLE_MONITORING, new ModuleAccessor() {
+      @Override
+      public List<?> getServiceRequests(ServiceRequest request) {
+        return request.getVehicleMonitoringRequest();
+      }
+
+      @Override
+      public List<?> getSubscriptionRequests(SubscriptionRequest request) {
+        return request.getVehicleMonitoringSubscriptionRequest();
+      }
+
+      @Override
+      public List<?> getServiceDeliveries(ServiceDelivery delivery) {
+        return delivery.getVehicleMonitoringDelivery();
+      }
+    });
+    accessors.put(ESiriModuleType.CONNECTION_TIMETABLE, new ModuleAccessor() {
+      @Override
+      public List<?> getServiceRequests(ServiceRequest request) {
+        return request.getConnectionTimetableRequest();
+      }
+
+      @Override
+      public List<?> getSubscriptionRequests(SubscriptionRequest request) {
+        return request.getConnectionTimetableSubscriptionRequest();
+      }
+
+      @Override
+      public List<?> getServiceDeliveries(ServiceDelivery delivery) {
+        return delivery.getConnectionTimetableDelivery();
+      }
+    });
+    accessors.put(ESiriModuleType.CONNECTION_MONITORING_FEEDER, new ModuleAccessor() {
+      @Override
+      public List<?> getServiceRequests(ServiceRequest request) {
+        return request.getConnectionMonitoringRequest();
+      }
+
+      @Override
+      public List<?> getSubscriptionRequests(SubscriptionRequest request) {
+        return request.getConnectionMonitoringSubscriptionRequest();
+      }
+
+      @Override
+      public List<?> getServiceDeliveries(ServiceDelivery delivery) {
+        return delivery.getConnectionMonitoringFeederDelivery();
+      }
+    });
+    accessors.put(ESiriModuleType.CONNECTION_MONITORING_DISTRIBUTOR, new ModuleAccessor() {
+      @Override
+      public List<?> getServiceRequests(ServiceRequest request) {
+        return request.getConnectionMonitoringRequest();
+      }
+
+      @Override
+      public List<?> getSubscriptionRequests(SubscriptionRequest request) {
+        return request.getConnectionMonitoringSubscriptionRequest();
+      }
+
+      @Override
+      public List<?> getServiceDeliveries(ServiceDelivery delivery) {
+        return delivery.getConnectionMonitoringDistributorDelivery();
+      }
+    });
+    accessors.put(ESiriModuleType.GENERAL_MESSAGE, new ModuleAccessor() {
+      @Override
+      public List<?> getServiceRequests(ServiceRequest request) {
+        return request.getGeneralMessageRequest();
+      }
+
+      @Override
+      public List<?> getSubscriptionRequests(SubscriptionRequest request) {
+        return request.getGeneralMessageSubscriptionRequest();
+      }
+
+      @Override
+      public List<?> getServiceDeliveries(ServiceDelivery delivery) {
+        return delivery.getGeneralMessageDelivery();
+      }
+    });
+    accessors.put(ESiriModuleType.FACILITY_MONITORING, new ModuleAccessor() {
+      @Override
+      public List<?> getServiceRequests(ServiceRequest request) {
+        return request.getFacilityMonitoringRequest();
+      }
+
+      @Override
+      public List<?> getSubscriptionRequests(SubscriptionRequest request) {
+        return request.getFacilityMonitoringSubscriptionRequest();
+      }
+
+      @Override
+      public List<?> getServiceDeliveries(ServiceDelivery delivery) {
+        return delivery.getFacilityMonitoringDelivery();
+      }
+    });
+    accessors.put(ESiriModuleType.SITUATION_EXCHANGE, new ModuleAccessor() {
+      @Override
+      public List<?> getServiceRequests(ServiceRequest request) {
+        return request.getSituationExchangeRequest();
+      }
+
+      @Override
+      public List<?> getSubscriptionRequests(SubscriptionRequest request) {
+        return request.getSituationExchangeSubscriptionRequest();
+      }
+
+      @Override
+      public List<?> getServiceDeliveries(ServiceDelivery delivery) {
+        return delivery.getSituationExchangeDelivery();
+      }
+    });
+
+    for (ESiriModuleType moduleType : ESiriModuleType.values()) {
+      if (!accessors.containsKey(moduleType))
+        throw new IllegalStateException("no accessor for module type "
+            + moduleType);
+    }
+
+    return accessors;
+  }
+
+  private static List<ESiriModuleType> createRequestModuleTypes() {
+    List<ESiriModuleType> moduleTypes = new ArrayList<ESiriModuleType>();
+    for (ESiriModuleType moduleType : ESiriModuleType.values()) {
+      if (getRequestModuleType(moduleType) == moduleType)
+        moduleTypes.add(moduleType);
+    }
+    return Collections.unmodifiableList(moduleTypes);
+  }
+
+  private interface ModuleAccessor {
+
+    public List<?> getServiceRequests(ServiceRequest request);
+
+    public List<?> getSubscriptionRequests(SubscriptionRequest request);
+
+    public List<?> getServiceDeliveries(ServiceDelivery delivery);
+  }
 }
@@ -16,23 +16,37 @@
  */
 package org.onebusaway.siri.core;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import org.apache.http.HttpEntity;
 import org.onebusaway.guice.jsr250.LifecycleService;
 import org.onebusaway.siri.core.exceptions.SiriConnectionException;
 import org.onebusaway.siri.core.exceptions.SiriException;
+import org.onebusaway.siri.core.filters.SiriServiceDeliveryEnricher;
 import org.onebusaway.siri.core.handlers.SiriRawHandler;
+import org.onebusaway.siri.core.handlers.SiriRawStreamHandler;
 import org.onebusaway.siri.core.handlers.SiriRequestResponseHandler;
+import org.onebusaway.siri.core.handlers.SiriSubscriptionManagerListener;
 import org.onebusaway.siri.core.handlers.SiriSubscriptionRequestHandler;
 import org.onebusaway.siri.core.subscriptions.server.SiriServerSubscriptionEvent;
 import org.onebusaway.siri.core.subscriptions.server.SiriServerSubscriptionManager;
@@ -100,12 +114,53 @@ public class SiriServer extends SiriCommon implements SiriRawHandler {
 
   private List<SiriSubscriptionRequestHandler> _subscriptionRequestHandlers = new ArrayList<SiriSubscriptionRequestHandler>();
 
+  private List<SiriServiceDeliveryEnricher> _enrichers = new CopyOnWriteArrayList<SiriServiceDeliveryEnricher>();
+
+  /**
+   * The explicitly added enrichers combined with those in the subscription
+   * manager's filter table, recomputed only when either changes
+   */
+  private volatile CombinedEnrichers _combinedEnrichers = null;
+
   private long _serviceStartedTimestamp;
 
   private AtomicInteger _publishIncomingCount = new AtomicInteger();
 
   private AtomicInteger _publishOutgoingCount = new AtomicInteger();
 
+  /**
+   * Per consumer address overrides of {@link #_compressPublicationsByDefault}
+   */
+  private ConcurrentMap<String, Boolean> _compressPublicationsByConsumerAddress = new ConcurrentHashMap<String, Boolean>();
+
+  /**
+   * By default, we don't compress publications, since we don't know if the
+   * consumer will accept compressed content
+   */
+  private boolean _compressPublicationsByDefault = false;
+
+  /**
+   * Publication streams, keyed by consumer address. See
+   * {@link PublicationStreamSupport}.
+   */
+  private ConcurrentMap<String, PublicationStream> _publicationStreams = new ConcurrentHashMap<String, PublicationStream>();
+
+  /**
+   * The maximum number of publications queued for a publication stream
+   */
+  private int _publicationStreamQueueSize = 100;
+
+  /**
+   * Time, in seconds, after which a keep-alive is written to an idle
+   * publication stream
+   */
+  private int _publicationStreamKeepAliveInterval = 30;
+
+  /**
+   * Time, in seconds, to wait before reopening a publication stream that failed
+   */
+  private int _publicationStreamReconnectionInterval = 10;
+
   public SiriServer() {
     setUrl("http://*:8080/server.xml");
   }
@@ -124,6 +179,72 @@ public class SiriServer extends SiriCommon implements SiriRawHandler {
     return _serviceStartedTimestamp;
   }
 
+  /**
+   * Publications to the specified consumer address will be gzip compressed (or
+   * not), overriding the default. Only enable compression for consumers known
+   * to accept it.
+   * 
+   * @param consumerAddress the consumer address
+   * @param compress true if publications should be compressed
+   */
+  public void setCompressPublicationsForConsumerAddress(
+      String consumerAddress, boolean compress) {
+    _compressPublicationsByConsumerAddress.put(consumerAddress, compress);
+  }
+
+  /**
+   * 
+   * @param compressPublicationsByDefault if true, publications will be gzip
+   *          compressed for all consumers that don't have a specific setting
+   */
+  public void setCompressPublicationsByDefault(
+      boolean compressPublicationsByDefault) {
+    _compressPublicationsByDefault = compressPublicationsByDefault;
+  }
+
+  /**
+   * 
+   * @param consumerAddress the consumer address
+   * @return true if publications to the specified consumer address will be
+   *         gzip compressed
+   */
+  public boolean isCompressPublicationsForConsumerAddress(
+      String consumerAddress) {
+    Boolean compress = _compressPublicationsByConsumerAddress.get(consumerAddress);
+    if (compress == null)
+      return _compressPublicationsByDefault;
+    return compress;
+  }
+
+  /**
+   * 
+   * @param publicationStreamQueueSize the maximum number of publications queued
+   *          for a publication stream, beyond which publications are dropped
+   */
+  public void setPublicationStreamQueueSize(int publicationStreamQueueSize) {
+    _publicationStreamQueueSize = publicationStreamQueueSize;
+  }
+
+  /**
+   * 
+   * @param publicationStreamKeepAliveInterval time, in seconds, after which a
+   *          keep-alive is written to an idle publication stream
+   */
+  public void setPublicationStreamKeepAliveInterval(
+      int publicationStreamKeepAliveInterval) {
+    _publicationStreamKeepAliveInterval = publicationStreamKeepAliveInterval;
+  }
+
+  /**
+   * 
+   * @param publicationStreamReconnectionInterval time, in seconds, to wait
+   *          before reopening a publication stream that failed
+   */
+  public void setPublicationStreamReconnectionInterval(
+      int publicationStreamReconnectionInterval) {
+    _publicationStreamReconnectionInterval = publicationStreamReconnectionInterval;
+  }
+
   /**
    * Add a request-response handler if you want to respond directly to a
    * {@link ServiceRequest} from a client.
@@ -164,6 +285,31 @@ public class SiriServer extends SiriCommon implements SiriRawHandler {
     _subscriptionRequestHandlers.remove(handler);
   }
 
+  /**
+   * Add an enricher to be run once for each published {@link ServiceDelivery},
+   * before it is sent to individual subscribers. Note that module delivery
+   * filters that implement {@link SiriServiceDeliveryEnricher} are run
+   * automatically and don't need to be added here.
+   * 
+   * @param enricher the enricher
+   */
+  public synchronized void addServiceDeliveryEnricher(
+      SiriServiceDeliveryEnricher enricher) {
+    _enrichers.add(enricher);
+    _combinedEnrichers = null;
+  }
+
+  /**
+   * Remove an existing enricher
+   * 
+   * @param enricher the enricher to remove
+   */
+  public synchronized void removeServiceDeliveryEnricher(
+      SiriServiceDeliveryEnricher enricher) {
+    _enrichers.remove(enricher);
+    _combinedEnrichers = null;
+  }
+
   /****
    * 
    ****/
@@ -176,6 +322,15 @@ public class SiriServer extends SiriCommon implements SiriRawHandler {
   public void start() {
     super.start();
     _serviceStartedTimestamp = System.currentTimeMillis();
+    _subscriptionManager.addListener(new SubscriptionManagerListenerImpl());
+  }
+
+  @PreDestroy
+  public void stop() {
+    for (PublicationStream stream : _publicationStreams.values())
+      stream.close();
+    _publicationStreams.clear();
+    super.stop();
   }
 
   /****
@@ -190,12 +345,46 @@ public class SiriServer extends SiriCommon implements SiriRawHandler {
    * @return the number of clients the delivery is published to
    */
   public int publish(ServiceDelivery serviceDelivery) {
+    List<SiriServerSubscriptionEvent> events = getPublicationEvents(serviceDelivery);
+    return publishEvents(events);
+  }
 
-    _publishIncomingCount.incrementAndGet();
+  /**
+   * Determine the per-subscription publication events for a
+   * {@link ServiceDelivery}, without actually publishing them. This is the
+   * first half of {@link #publish(ServiceDelivery)}, split out such that the
+   * fragments of a single delivery can be matched against subscriptions in
+   * parallel and then published together with
+   * {@link #publishEvents(List)}.
+   * 
+   * @param serviceDelivery the delivery (or delivery fragment) to publish
+   * @return the publication events for the delivery
+   */
+  public List<SiriServerSubscriptionEvent> getPublicationEvents(
+      ServiceDelivery serviceDelivery) {
 
     fillServiceDelivery(serviceDelivery);
 
-    List<SiriServerSubscriptionEvent> events = _subscriptionManager.publish(serviceDelivery);
+    enrichServiceDelivery(serviceDelivery);
+
+    return _subscriptionManager.publish(serviceDelivery);
+  }
+
+  /**
+   * Publish the events for a single incoming delivery, as returned by one or
+   * more calls to {@link #getPublicationEvents(ServiceDelivery)}. Events for
+   * the same subscription are combined, such that each subscriber gets one
+   * publication per incoming delivery and per-subscription limits, like
+   * MaximumVehicles, apply to the delivery as a whole.
+   * 
+   * @param events the publication events
+   * @return the number of clients the delivery is published to
+   */
+  public int publishEvents(List<SiriServerSubscriptionEvent> events) {
+
+    _publishIncomingCount.incrementAndGet();
+
+    events = _subscriptionManager.combineEvents(events);
 
     _log.debug("server subscription events: {}", events.size());
 
@@ -210,6 +399,28 @@ public class SiriServer extends SiriCommon implements SiriRawHandler {
     return events.size();
   }
 
+  /**
+   * Publish a SIRI message, such as a heartbeat notification, to the
+   * publication stream of a consumer. See {@link PublicationStreamSupport}.
+   * 
+   * @param address the consumer address
+   * @param targetVersion the SIRI version of the consumer
+   * @param siri the message to publish
+   * @return true if the message was queued for publication
+   */
+  public boolean publishToStream(String address, ESiriVersion targetVersion,
+      Siri siri) {
+
+    fillAllSiriStructures(siri);
+
+    SiriVersioning versioning = SiriVersioning.getInstance();
+    Object data = versioning.getPayloadAsVersion(siri, targetVersion);
+    String content = marshallToString(data);
+
+    return publishToStream(address,
+        PublicationStreamSupport.getContentAsFrame(content));
+  }
+
   /****
    * {@link SiriRawHandler} Interface
    ****/
@@ -223,6 +434,55 @@ public class SiriServer extends SiriCommon implements SiriRawHandler {
     _log.debug("handling request");
 
     Object data = unmarshall(reader);
+    Object responseData = handleRawData(data);
+    marshall(responseData, writer);
+  }
+
+  /****
+   * {@link SiriRawStreamHandler} Interface
+   ****/
+
+  /**
+   * See {@link SiriRawStreamHandler#handleRawRequest(InputStream, OutputStream)}
+   * . The raw bytes are passed straight through to the unmarshaller, and the
+   * response is marshalled straight to the output stream.
+   */
+  @Override
+  public void handleRawRequest(InputStream input, OutputStream output) {
+
+    _log.debug("handling request");
+
+    Object data = unmarshall(input);
+    Object responseData = handleRawData(data);
+    marshall(responseData, output);
+  }
+
+  /****
+   * {@link StatusProviderService} Interface
+   ****/
+
+  @Override
+  public void getStatus(Map<String, String> status) {
+    super.getStatus(status);
+    status.put("siri.server.publishIncomingCounter",
+        Integer.toString(_publishIncomingCount.get()));
+    status.put("siri.server.publishOutgoingCounter",
+        Integer.toString(_publishOutgoingCount.get()));
+    for (PublicationStream stream : _publicationStreams.values())
+      stream.getStatus("siri.server.publicationStream[" + stream.getAddress()
+          + "]", status);
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  /**
+   * 
+   * @param data the unmarshalled request
+   * @return the (properly versioned) response
+   */
+  private Object handleRawData(Object data) {
 
     /**
      * Make sure the incoming SIRI data is updated to the latest version
@@ -284,25 +544,40 @@ public class SiriServer extends SiriCommon implements SiriRawHandler {
           + responseContent + "\n=== RESPONSE END ===");
     }
 
-    marshall(responseData, writer);
+    return responseData;
   }
 
-  /****
-   * {@link StatusProviderService} Interface
-   ****/
-
-  @Override
-  public void getStatus(Map<String, String> status) {
-    super.getStatus(status);
-    status.put("siri.server.publishIncomingCounter",
-        Integer.toString(_publishIncomingCount.get()));
-    status.put("siri.server.publishOutgoingCounter",
-        Integer.toString(_publishOutgoingCount.get()));
+  /**
+   * Run each enricher exactly once against the delivery, before fan-out. That
+   * includes any enrichers in the subscription manager's filter table, which
+   * may be shared by many subscriptions.
+   * 
+   * @param serviceDelivery
+   */
+  private void enrichServiceDelivery(ServiceDelivery serviceDelivery) {
+    for (SiriServiceDeliveryEnricher enricher : getCombinedEnrichers())
+      enricher.enrich(serviceDelivery);
   }
 
-  /****
-   * Private Methods
-   ****/
+  /**
+   * The filter table enrichers are computed once by the subscription manager
+   * whenever its table is set, so we only need to recombine them with our own
+   * enrichers when that list instance changes.
+   */
+  private List<SiriServiceDeliveryEnricher> getCombinedEnrichers() {
+    List<SiriServiceDeliveryEnricher> filterEnrichers = _subscriptionManager.getServiceDeliveryEnrichers();
+    CombinedEnrichers combined = _combinedEnrichers;
+    if (combined != null && combined.filterEnrichers == filterEnrichers)
+      return combined.enrichers;
+    synchronized (this) {
+      combined = _combinedEnrichers;
+      if (combined == null || combined.filterEnrichers != filterEnrichers) {
+        combined = new CombinedEnrichers(_enrichers, filterEnrichers);
+        _combinedEnrichers = combined;
+      }
+      return combined.enrichers;
+    }
+  }
 
   private SubscriptionResponseStructure handleSubscriptionRequest(
       SubscriptionRequest subscriptionRequest, ESiriVersion originalVersion) {
@@ -386,10 +661,19 @@ public class SiriServer extends SiriCommon implements SiriRawHandler {
     Object data = versioning.getPayloadAsVersion(siri, targetVersion);
     String content = marshallToString(data);
 
+    if (PublicationStreamSupport.isStreamAddress(address)) {
+      publishResponseToStream(event, content);
+      return;
+    }
+
+    byte[] bytes = getContentAsBytes(content);
+    HttpEntity entity = createHttpEntity(bytes,
+        isCompressPublicationsForConsumerAddress(address));
+
     long tStart = System.currentTimeMillis();
     boolean connectionError = false;
     try {
-      sendHttpRequest(address, content);
+      sendHttpRequest(address, content, entity);
     } catch (SiriConnectionException ex) {
       _log.warn("error connecting to client at " + address, ex);
       connectionError = true;
@@ -400,7 +684,67 @@ public class SiriServer extends SiriCommon implements SiriRawHandler {
 
     long tStop = System.currentTimeMillis();
     _subscriptionManager.recordPublicationStatistics(event, tStop - tStart,
-        connectionError);
+        connectionError, bytes.length, entity.getContentLength());
+  }
+
+  /**
+   * Publications to a stream are queued and written by the stream's own
+   * thread, so there is no per-publication connection overhead. A publication
+   * that can't be queued, because the stream failed or the consumer isn't
+   * keeping up, is recorded as a connection error.
+   */
+  private void publishResponseToStream(SiriServerSubscriptionEvent event,
+      String content) {
+
+    byte[] frame = PublicationStreamSupport.getContentAsFrame(content);
+
+    long tStart = System.currentTimeMillis();
+    boolean connectionError = !publishToStream(event.getAddress(), frame);
+    if (connectionError)
+      _log.warn("unable to queue publication to stream at "
+          + event.getAddress());
+    long tStop = System.currentTimeMillis();
+
+    _subscriptionManager.recordPublicationStatistics(event, tStop - tStart,
+        connectionError, frame.length, frame.length);
+  }
+
+  private boolean publishToStream(String address, byte[] frame) {
+    PublicationStream stream = getPublicationStream(address);
+    return stream.offer(frame);
+  }
+
+  /**
+   * Get the open publication stream for the specified address, opening a new
+   * stream if needed. A stream that failed is only reopened once the
+   * reconnection interval has passed, such that we don't hammer a consumer
+   * that is down.
+   */
+  private PublicationStream getPublicationStream(String address) {
+
+    PublicationStream stream = _publicationStreams.get(address);
+    if (stream != null && !stream.isClosed())
+      return stream;
+
+    synchronized (_publicationStreams) {
+
+      stream = _publicationStreams.get(address);
+
+      if (stream != null) {
+        if (!stream.isClosed())
+          return stream;
+        long reopenTime = stream.getCloseTime()
+            + _publicationStreamReconnectionInterval * 1000L;
+        if (stream.isFailed() && System.currentTimeMillis() < reopenTime)
+          return stream;
+      }
+
+      stream = new PublicationStream(address, _publicationStreamQueueSize,
+          _publicationStreamKeepAliveInterval * 1000L);
+      _publicationStreams.put(address, stream);
+      _schedulingService.submit(new PublicationStreamTask(stream));
+      return stream;
+    }
   }
 
   /****
@@ -428,4 +772,82 @@ public class SiriServer extends SiriCommon implements SiriRawHandler {
       }
     }
   }
+
+  private class PublicationStreamTask implements Runnable {
+
+    private final PublicationStream _stream;
+
+    public PublicationStreamTask(PublicationStream stream) {
+      _stream = stream;
+    }
+
+    @Override
+    public void run() {
+      String url = PublicationStreamSupport.getUrlForStreamAddress(_stream.getAddress());
+      try {
+        _log.info("opening publication stream to " + url);
+        sendHttpRequest(url, "(publication stream)", _stream);
+        _log.info("publication stream to " + url + " closed");
+      } catch (Throwable ex) {
+        _log.warn("error with publication stream to " + url, ex);
+        _stream.fail();
+      } finally {
+        _stream.close();
+      }
+    }
+  }
+
+  /**
+   * Publication streams are closed once there are no longer any subscriptions
+   * for their consumer address
+   */
+  private class SubscriptionManagerListenerImpl implements
+      SiriSubscriptionManagerListener {
+
+    @Override
+    public void subscriptionAdded(SiriServerSubscriptionManager manager) {
+
+    }
+
+    @Override
+    public void subscriptionRemoved(SiriServerSubscriptionManager manager) {
+
+      if (_publicationStreams.isEmpty())
+        return;
+
+      Set<String> activeAddresses = new HashSet<String>(
+          manager.getActiveSubscriptionChannels());
+
+      synchronized (_publicationStreams) {
+        for (PublicationStream stream : _publicationStreams.values()) {
+          if (!activeAddresses.contains(stream.getAddress())) {
+            _log.info("closing publication stream to " + stream.getAddress());
+            stream.close();
+            _publicationStreams.remove(stream.getAddress());
+          }
+        }
+      }
+    }
+  }
+
+  private static class CombinedEnrichers {
+
+    private final List<SiriServiceDeliveryEnricher> filterEnrichers;
+
+    private final List<SiriServiceDeliveryEnricher> enrichers;
+
+    public CombinedEnrichers(List<SiriServiceDeliveryEnricher> explicitEnrichers,
+        List<SiriServiceDeliveryEnricher> filterEnrichers) {
+      this.filterEnrichers = filterEnrichers;
+      List<SiriServiceDeliveryEnricher> enrichers = new ArrayList<SiriServiceDeliveryEnricher>(
+          explicitEnrichers);
+      Set<SiriServiceDeliveryEnricher> explicit = Collections.newSetFromMap(new IdentityHashMap<SiriServiceDeliveryEnricher, Boolean>());
+      explicit.addAll(explicitEnrichers);
+      for (SiriServiceDeliveryEnricher enricher : filterEnrichers) {
+        if (!explicit.contains(enricher))
+          enrichers.add(enricher);
+      }
+      this.enrichers = enrichers;
+    }
+  }
 }
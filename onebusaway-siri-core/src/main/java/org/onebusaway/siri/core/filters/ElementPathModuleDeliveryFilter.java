@@ -21,6 +21,8 @@ import java.beans.PropertyDescriptor;
 import java.lang.reflect.Method;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.beanutils.ConvertUtils;
 import org.onebusaway.siri.core.exceptions.SiriException;
@@ -35,10 +37,11 @@ public class ElementPathModuleDeliveryFilter implements
   private final String[] _propertyNames;
 
   /**
-   * See notes on lazy introspection below for details on why this is volatile
-   * (also see "Effective Java" for details of thread-safe lazy initialization.
+   * For each level of the property path, we cache a compiled accessor for each
+   * concrete class we encounter at that level. See notes on lazy introspection
+   * below for details on why this is done at runtime.
    */
-  private volatile PropertyDescriptor[] _properties = null;
+  private final ConcurrentMap<Class<?>, PropertyAccessor>[] _accessorsByDepth;
 
   private final Object _value;
 
@@ -49,7 +52,7 @@ public class ElementPathModuleDeliveryFilter implements
       _propertyNames[i] = name.substring(0, 1).toLowerCase()
           + name.substring(1);
     }
-    _properties = new PropertyDescriptor[_propertyNames.length];
+    _accessorsByDepth = createAccessorMaps(_propertyNames.length);
     _value = value;
   }
 
@@ -64,13 +67,12 @@ public class ElementPathModuleDeliveryFilter implements
 
   private void traversePropertyPath(Object value, int depth) {
 
-    PropertyDescriptor property = getPropertyDescriptorForDepth(value, depth);
+    PropertyAccessor accessor = getAccessorForDepth(value, depth);
 
     if (depth < _propertyNames.length - 1) {
 
-      Method readMethod = property.getReadMethod();
       Object subValue = PropertyConverterSupport.getSourcePropertyValue(value,
-          readMethod);
+          accessor.readMethod);
 
       /**
        * If the value is null, we exit the recursive loop, because we don't have
@@ -81,20 +83,22 @@ public class ElementPathModuleDeliveryFilter implements
 
       if (subValue instanceof Collection<?>) {
         Collection<?> collection = (Collection<?>) subValue;
-        for (Object element : collection)
-          traversePropertyPath(element, depth + 1);
+        for (Object element : collection) {
+          if (element != null)
+            traversePropertyPath(element, depth + 1);
+        }
       } else {
         traversePropertyPath(subValue, depth + 1);
       }
 
     } else {
-      applyFilter(value, property);
+      accessor.apply(value);
     }
   }
 
   /**
-   * We support lazy initialization of the {@link PropertyDescriptor}
-   * descriptors necessary to read the and write to our object tree. Why?
+   * We support lazy initialization of the accessors necessary to read the and
+   * write to our object tree. Why?
    * 
    * We can't do introspection ahead of time because we support iteration over
    * Collection types. Specifically, if a path expression navigates over a
@@ -104,78 +108,89 @@ public class ElementPathModuleDeliveryFilter implements
    * Collection from the parent class, we have to wait to do introspection at
    * runtime on the values of the Collection itself.
    * 
+   * Since the values at any given level might be of different concrete types
+   * (subclasses of a common element type, for example), accessors are keyed by
+   * the runtime class of the value at each level.
+   * 
    * @param value
    * @param depth
    * @return
    */
-  private PropertyDescriptor getPropertyDescriptorForDepth(Object value,
-      int depth) {
-
-    PropertyDescriptor property = _properties[depth];
-
-    if (property == null) {
+  private PropertyAccessor getAccessorForDepth(Object value, int depth) {
 
-      synchronized (this) {
+    Class<?> type = value.getClass();
+    ConcurrentMap<Class<?>, PropertyAccessor> accessors = _accessorsByDepth[depth];
+    PropertyAccessor accessor = accessors.get(type);
 
-        if (property == null) {
-
-          String propertyName = _propertyNames[depth];
+    if (accessor == null) {
+      PropertyAccessor newAccessor = createAccessor(type, depth);
+      accessor = accessors.putIfAbsent(type, newAccessor);
+      if (accessor == null)
+        accessor = newAccessor;
+    }
 
-          try {
+    return accessor;
+  }
 
-            BeanInfo beanInfo = Introspector.getBeanInfo(value.getClass());
+  private PropertyAccessor createAccessor(Class<?> type, int depth) {
 
-            for (PropertyDescriptor propertyDesc : beanInfo.getPropertyDescriptors()) {
-              if (propertyDesc.getName().equals(propertyName)) {
-                property = propertyDesc;
-                break;
-              }
-            }
+    String propertyName = _propertyNames[depth];
+    PropertyDescriptor property = null;
 
-          } catch (Throwable ex) {
-            throw new SiriException("error in introspection of class "
-                + value.getClass() + " and property \"" + propertyName + "\"");
-          }
+    try {
 
-          if (property == null) {
-            throw new SiriException("class " + value.getClass()
-                + " does not have property \"" + propertyName + "\"");
-          }
+      BeanInfo beanInfo = Introspector.getBeanInfo(type);
 
-          PropertyDescriptor[] properties = new PropertyDescriptor[_properties.length];
-          System.arraycopy(_properties, 0, properties, 0, properties.length);
-          properties[depth] = property;
-          _properties = properties;
+      for (PropertyDescriptor propertyDesc : beanInfo.getPropertyDescriptors()) {
+        if (propertyDesc.getName().equals(propertyName)) {
+          property = propertyDesc;
+          break;
         }
       }
+
+    } catch (Throwable ex) {
+      throw new SiriException("error in introspection of class " + type
+          + " and property \"" + propertyName + "\"");
     }
 
-    return property;
-  }
+    if (property == null) {
+      throw new SiriException("class " + type
+          + " does not have property \"" + propertyName + "\"");
+    }
 
-  private void applyFilter(Object parent, PropertyDescriptor propertyDescriptor) {
+    Method readMethod = makeAccessible(property.getReadMethod());
 
-    Method readMethod = propertyDescriptor.getReadMethod();
-    Method writeMethod = propertyDescriptor.getWriteMethod();
+    if (depth < _propertyNames.length - 1) {
+      if (readMethod == null)
+        throw new SiriException("no read method for property \""
+            + propertyName + "\" on " + type);
+      return new PropertyAccessor(propertyName, readMethod, null, null);
+    }
 
-    if (writeMethod != null) {
+    /**
+     * For the last level of the path, we determine how the value will be
+     * applied and convert the value to the target type once, up front.
+     */
+    Method writeMethod = makeAccessible(property.getWriteMethod());
 
+    if (writeMethod != null) {
       Class<?>[] parameterTypes = writeMethod.getParameterTypes();
       Class<?> parameterType = parameterTypes[0];
       Object value = convertValue(_value, parameterType);
-      PropertyConverterSupport.setTargetPropertyValue(parent, writeMethod,
-          value);
-    } else if (Collection.class.isAssignableFrom(propertyDescriptor.getPropertyType())
+      return new PropertyAccessor(propertyName, readMethod, writeMethod, value);
+    } else if (Collection.class.isAssignableFrom(property.getPropertyType())
         && (_value == null || _value instanceof Collection)) {
       Collection<?> values = (Collection<?>) _value;
       if (values == null)
         values = Collections.emptyList();
-      PropertyConverterSupport.setTargetPropertyValues(parent, readMethod,
-          values);
-    } else {
-      throw new SiriException("no write method for property \""
-          + propertyDescriptor.getName() + " on " + parent);
+      return new PropertyAccessor(propertyName, readMethod, null, values);
     }
+
+    /**
+     * We defer the error until the filter is actually applied to a value of
+     * this type, consistent with path elements that are never reached
+     */
+    return new PropertyAccessor(propertyName, readMethod, null, null);
   }
 
   private Object convertValue(Object value, Class<?> targetType) {
@@ -186,4 +201,64 @@ public class ElementPathModuleDeliveryFilter implements
       return value;
     return ConvertUtils.convert(value, targetType);
   }
+
+  private static Method makeAccessible(Method method) {
+    if (method != null) {
+      try {
+        method.setAccessible(true);
+      } catch (SecurityException ex) {
+        // We can still invoke the method, just with access checks
+      }
+    }
+    return method;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ConcurrentMap<Class<?>, PropertyAccessor>[] createAccessorMaps(
+      int size) {
+    ConcurrentMap<Class<?>, PropertyAccessor>[] maps = new ConcurrentMap[size];
+    for (int i = 0; i < size; ++i)
+      maps[i] = new ConcurrentHashMap<Class<?>, PropertyAccessor>();
+    return maps;
+  }
+
+  /**
+   * A compiled accessor for a single level of the property path, specific to a
+   * particular concrete class.
+   */
+  private static class PropertyAccessor {
+
+    private final String propertyName;
+
+    private final Method readMethod;
+
+    private final Method writeMethod;
+
+    /**
+     * The value to apply, already converted to the type expected by the write
+     * method, or the collection of values to apply to a collection property
+     */
+    private final Object value;
+
+    public PropertyAccessor(String propertyName, Method readMethod,
+        Method writeMethod, Object value) {
+      this.propertyName = propertyName;
+      this.readMethod = readMethod;
+      this.writeMethod = writeMethod;
+      this.value = value;
+    }
+
+    public void apply(Object parent) {
+      if (writeMethod != null) {
+        PropertyConverterSupport.setTargetPropertyValue(parent, writeMethod,
+            value);
+      } else if (value instanceof Collection<?> && readMethod != null) {
+        PropertyConverterSupport.setTargetPropertyValues(parent, readMethod,
+            (Collection<?>) value);
+      } else {
+        throw new SiriException("no write method for property \""
+            + propertyName + " on " + parent);
+      }
+    }
+  }
 }
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+/**
+ * A compiled test against a single element of a module delivery (a
+ * VehicleActivity, a MonitoredStopVisit, etc). Predicates are meant to be
+ * built once, when a subscription is created, and then evaluated directly
+ * against each element as deliveries are published. See
+ * {@link ElementPredicates} for combining predicates and applying them to
+ * element lists.
+ * 
+ * @author agent
+ * @param <T> the element type
+ */
+public interface ElementPredicate<T> {
+
+  public boolean isMatch(T element);
+}
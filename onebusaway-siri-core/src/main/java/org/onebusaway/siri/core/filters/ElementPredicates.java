@@ -0,0 +1,108 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+import java.util.List;
+
+/**
+ * Support methods for building and applying {@link ElementPredicate}
+ * instances.
+ * 
+ * @author agent
+ */
+public class ElementPredicates {
+
+  /**
+   * Combine a set of predicates into a single predicate that matches only when
+   * all of the predicates match. The predicates are evaluated in order, so put
+   * the most selective ones first.
+   * 
+   * @param predicates
+   * @return the combined predicate, or null if the list of predicates was
+   *         empty, indicating that every element matches
+   */
+  public static <T> ElementPredicate<T> and(List<ElementPredicate<T>> predicates) {
+    switch (predicates.size()) {
+      case 0:
+        return null;
+      case 1:
+        return predicates.get(0);
+      default:
+        return new AndPredicate<T>(predicates);
+    }
+  }
+
+  /**
+   * Filter a list of elements in place, in a single pass. Matching elements
+   * keep their relative order. Once maxElements matches have been found, the
+   * remaining elements are dropped without being tested.
+   * 
+   * @param elements the elements to filter, modified in place
+   * @param predicate the predicate to apply, or null if all elements match
+   * @param maxElements the maximum number of elements to keep, or zero if
+   *          there is no limit
+   * @return the number of elements remaining in the list
+   */
+  public static <T> int filterInPlace(List<T> elements,
+      ElementPredicate<? super T> predicate, int maxElements) {
+
+    int size = elements.size();
+    int limit = maxElements > 0 ? maxElements : Integer.MAX_VALUE;
+
+    if (predicate == null) {
+      if (size > limit) {
+        elements.subList(limit, size).clear();
+        return limit;
+      }
+      return size;
+    }
+
+    int kept = 0;
+
+    for (int i = 0; i < size && kept < limit; ++i) {
+      T element = elements.get(i);
+      if (predicate.isMatch(element)) {
+        if (kept != i)
+          elements.set(kept, element);
+        kept++;
+      }
+    }
+
+    if (kept < size)
+      elements.subList(kept, size).clear();
+
+    return kept;
+  }
+
+  private static class AndPredicate<T> implements ElementPredicate<T> {
+
+    private final ElementPredicate<T>[] _predicates;
+
+    @SuppressWarnings("unchecked")
+    public AndPredicate(List<ElementPredicate<T>> predicates) {
+      _predicates = predicates.toArray(new ElementPredicate[predicates.size()]);
+    }
+
+    @Override
+    public boolean isMatch(T element) {
+      for (ElementPredicate<T> predicate : _predicates) {
+        if (!predicate.isMatch(element))
+          return false;
+      }
+      return true;
+    }
+  }
+}
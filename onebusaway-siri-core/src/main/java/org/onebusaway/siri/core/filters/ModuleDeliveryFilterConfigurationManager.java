@@ -0,0 +1,317 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import org.onebusaway.collections.tuple.T2;
+import org.onebusaway.collections.tuple.Tuples;
+import org.onebusaway.siri.core.SiriLibrary;
+import org.onebusaway.siri.core.exceptions.SiriException;
+import org.onebusaway.siri.core.services.SchedulingService;
+import org.onebusaway.siri.core.subscriptions.server.SiriServerSubscriptionManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Manages a reloadable set of module delivery filters for the
+ * {@link SiriServerSubscriptionManager}. Filters are specified in the same
+ * format as the "-filter" command line option, one filter per line, with blank
+ * lines and lines starting with '#' ignored. When a configuration file is set,
+ * it is watched for changes and reloaded automatically.
+ *
+ * A new configuration is applied all-or-nothing: if any filter specification
+ * fails to parse, the existing configuration is left in place. On success, the
+ * matcher / filter table of the subscription manager is swapped and the filter
+ * sets of existing subscriptions are recomputed, without blocking publication
+ * or dropping subscriptions.
+ *
+ * @author agent
+ */
+@Singleton
+public class ModuleDeliveryFilterConfigurationManager {
+
+  private static Logger _log = LoggerFactory.getLogger(ModuleDeliveryFilterConfigurationManager.class);
+
+  private SiriServerSubscriptionManager _subscriptionManager;
+
+  private SchedulingService _schedulingService;
+
+  /**
+   * Filter specifications that are always applied, ahead of any specifications
+   * from the configuration file
+   */
+  private List<String> _staticFilterSpecs = new ArrayList<String>();
+
+  private List<String> _filterSpecs = Collections.emptyList();
+
+  private File _path;
+
+  /**
+   * How often, in seconds, to check the configuration file for changes
+   */
+  private int _checkInterval = 10;
+
+  private long _lastModified = -1;
+
+  private long _lastLength = -1;
+
+  private ScheduledFuture<?> _checkTask;
+
+  private final SiriModuleDeliveryFilterFactoryImpl _filterFactory = new SiriModuleDeliveryFilterFactoryImpl();
+
+  /**
+   * The filters we created for the active configuration. They aren't managed
+   * by the injector, so we stop them ourselves when they are replaced and on
+   * shutdown.
+   */
+  private List<SiriModuleDeliveryFilter> _activeFilters = Collections.emptyList();
+
+  @Inject
+  public void setSubscriptionManager(
+      SiriServerSubscriptionManager subscriptionManager) {
+    _subscriptionManager = subscriptionManager;
+  }
+
+  @Inject
+  public void setSchedulingService(SchedulingService schedulingService) {
+    _schedulingService = schedulingService;
+  }
+
+  /**
+   *
+   * @param path a filter configuration file to load and watch for changes
+   */
+  public void setPath(File path) {
+    _path = path;
+  }
+
+  /**
+   *
+   * @param checkInterval how often, in seconds, to check the configuration file
+   *          for changes
+   */
+  public void setCheckInterval(int checkInterval) {
+    _checkInterval = checkInterval;
+  }
+
+  /**
+   * Add a filter specification that is always applied, regardless of the
+   * contents of the configuration file.
+   *
+   * @param filterSpec a filter specification
+   */
+  public synchronized void addStaticFilterSpec(String filterSpec) {
+    _staticFilterSpecs.add(filterSpec);
+  }
+
+  @PostConstruct
+  public void start() {
+    /**
+     * Apply any static filters right away, such that they are in place even if
+     * the configuration file fails to load
+     */
+    if (!_staticFilterSpecs.isEmpty())
+      setFilterSpecs(_filterSpecs);
+    if (_path == null)
+      return;
+    checkForChanges();
+    if (_checkInterval > 0) {
+      _checkTask = _schedulingService.scheduleAtFixedRate(
+          new CheckForChangesTask(), _checkInterval, _checkInterval,
+          TimeUnit.SECONDS);
+    }
+  }
+
+  @PreDestroy
+  public synchronized void stop() {
+    if (_checkTask != null) {
+      _checkTask.cancel(true);
+      _checkTask = null;
+    }
+    stopFilters(_activeFilters);
+    _activeFilters = Collections.emptyList();
+  }
+
+  /**
+   *
+   * @return the currently active filter specifications, not including static
+   *         filter specifications
+   */
+  public synchronized List<String> getFilterSpecs() {
+    return _filterSpecs;
+  }
+
+  /**
+   * Reload the configuration file, if one has been set.
+   *
+   * @throws IOException
+   */
+  public synchronized void reload() throws IOException {
+    if (_path == null)
+      throw new SiriException("no filter configuration path specified");
+    _lastModified = _path.lastModified();
+    _lastLength = _path.length();
+    setFilterSpecs(readFilterSpecs(new InputStreamReader(new FileInputStream(
+        _path), "UTF-8")));
+  }
+
+  /**
+   * Apply a new filter configuration, as the raw contents of a configuration
+   * file.
+   *
+   * @param content the configuration
+   * @throws IOException
+   */
+  public void setFilterConfiguration(String content) throws IOException {
+    setFilterSpecs(readFilterSpecs(new StringReader(content)));
+  }
+
+  /**
+   * Apply a new set of filter specifications, replacing the existing ones.
+   *
+   * @param filterSpecs the filter specifications
+   * @throws SiriException if any of the filter specifications are invalid, in
+   *           which case the existing configuration is left in place
+   */
+  public synchronized void setFilterSpecs(List<String> filterSpecs) {
+
+    List<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>> filters = new ArrayList<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>>();
+    List<SiriModuleDeliveryFilter> created = new ArrayList<SiriModuleDeliveryFilter>();
+
+    try {
+      for (String filterSpec : _staticFilterSpecs)
+        filters.add(createFilterForSpec(filterSpec, created));
+      for (String filterSpec : filterSpecs)
+        filters.add(createFilterForSpec(filterSpec, created));
+      _subscriptionManager.setModuleDeliveryFilters(filters);
+    } catch (RuntimeException ex) {
+      stopFilters(created);
+      throw ex;
+    }
+
+    /**
+     * The old filters are no longer in the table, though a publication already
+     * in progress may still finish with them
+     */
+    stopFilters(_activeFilters);
+    _activeFilters = created;
+    _filterSpecs = Collections.unmodifiableList(new ArrayList<String>(
+        filterSpecs));
+
+    _log.info("applied filter configuration: static filters="
+        + _staticFilterSpecs.size() + " filters=" + filterSpecs.size());
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private synchronized void checkForChanges() {
+    long lastModified = _path.lastModified();
+    long length = _path.length();
+    if (lastModified == _lastModified && length == _lastLength)
+      return;
+    try {
+      reload();
+    } catch (Throwable ex) {
+      _log.error("error loading filter configuration from " + _path
+          + ", existing configuration left in place", ex);
+    }
+  }
+
+  private void stopFilters(List<SiriModuleDeliveryFilter> filters) {
+    for (SiriModuleDeliveryFilter filter : filters) {
+      try {
+        _filterFactory.stop(filter);
+      } catch (Throwable ex) {
+        _log.warn("error stopping filter " + filter, ex);
+      }
+    }
+  }
+
+  /**
+   * 
+   * @param filterSpec
+   * @param created the created filter is added to this list, even if the
+   *          specification turns out to be invalid, such that it can be stopped
+   */
+  private T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter> createFilterForSpec(
+      String filterSpec, List<SiriModuleDeliveryFilter> created) {
+
+    Map<String, String> filterArgs = SiriLibrary.getLineAsMap(filterSpec);
+
+    SiriModuleDeliveryFilterMatcherFactoryImpl matcherFactory = new SiriModuleDeliveryFilterMatcherFactoryImpl();
+    SiriModuleDeliveryFilterMatcher matcher = matcherFactory.create(filterArgs);
+
+    SiriModuleDeliveryFilter filter = _filterFactory.create(filterArgs);
+    created.add(filter);
+
+    if (!filterArgs.isEmpty()) {
+      List<String> keys = new ArrayList<String>(filterArgs.keySet());
+      Collections.sort(keys);
+      throw new SiriException("the following filter parameters were unknown: "
+          + keys);
+    }
+
+    return Tuples.tuple(matcher, filter);
+  }
+
+  private static List<String> readFilterSpecs(Reader source)
+      throws IOException {
+
+    List<String> filterSpecs = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(source);
+
+    try {
+      String line = null;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+        if (line.length() == 0 || line.startsWith("#"))
+          continue;
+        filterSpecs.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+
+    return filterSpecs;
+  }
+
+  private class CheckForChangesTask implements Runnable {
+    @Override
+    public void run() {
+      checkForChanges();
+    }
+  }
+}
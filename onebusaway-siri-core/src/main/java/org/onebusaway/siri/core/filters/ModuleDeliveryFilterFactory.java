@@ -16,14 +16,26 @@
 package org.onebusaway.siri.core.filters;
 
 import java.math.BigInteger;
+import java.util.Date;
+
+import javax.xml.datatype.Duration;
 
 import org.onebusaway.siri.core.ESiriModuleType;
+import org.onebusaway.siri.core.filters.regions.RegionModuleDeliveryFilter;
+import org.onebusaway.siri.core.filters.regions.SubscriptionRegion;
+import org.onebusaway.siri.core.filters.regions.SubscriptionRegionLibrary;
 
 import uk.org.siri.siri.AbstractServiceDeliveryStructure;
 import uk.org.siri.siri.AbstractSubscriptionStructure;
 import uk.org.siri.siri.DirectionRefStructure;
+import uk.org.siri.siri.ExtensionsStructure;
 import uk.org.siri.siri.LineRefStructure;
+import uk.org.siri.siri.MonitoringRefStructure;
 import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.SituationExchangeRequestStructure;
+import uk.org.siri.siri.SituationExchangeSubscriptionStructure;
+import uk.org.siri.siri.StopMonitoringRequestStructure;
+import uk.org.siri.siri.StopMonitoringSubscriptionStructure;
 import uk.org.siri.siri.VehicleMonitoringRefStructure;
 import uk.org.siri.siri.VehicleMonitoringRequestStructure;
 import uk.org.siri.siri.VehicleMonitoringSubscriptionStructure;
@@ -38,11 +50,44 @@ public class ModuleDeliveryFilterFactory {
     switch (moduleType) {
       case VEHICLE_MONITORING:
         return createVehicleMonitoringFilter((VehicleMonitoringSubscriptionStructure) request);
+      case STOP_MONITORING:
+        return createStopMonitoringFilter((StopMonitoringSubscriptionStructure) request);
+      case SITUATION_EXCHANGE:
+        return createSituationExchangeFilter((SituationExchangeSubscriptionStructure) request);
       default:
         return _emptyFilter;
     }
   }
 
+  /**
+   * Look for a geographic region in the extensions of a vehicle monitoring
+   * subscription request (see {@link SubscriptionRegionLibrary}).
+   * 
+   * @param moduleType
+   * @param request
+   * @return a region filter, or null if the subscription did not specify a
+   *         region
+   */
+  public RegionModuleDeliveryFilter createRegionFilter(
+      ESiriModuleType moduleType, AbstractSubscriptionStructure request) {
+
+    if (moduleType != ESiriModuleType.VEHICLE_MONITORING)
+      return null;
+
+    VehicleMonitoringSubscriptionStructure subscription = (VehicleMonitoringSubscriptionStructure) request;
+    SubscriptionRegion region = null;
+
+    VehicleMonitoringRequestStructure vmRequest = subscription.getVehicleMonitoringRequest();
+    if (vmRequest != null)
+      region = getRegionFromExtensions(vmRequest.getExtensions(), region);
+    region = getRegionFromExtensions(subscription.getExtensions(), region);
+
+    if (region == null)
+      return null;
+
+    return new RegionModuleDeliveryFilter(region);
+  }
+
   /****
    * 
    ****/
@@ -81,6 +126,63 @@ public class ModuleDeliveryFilterFactory {
     return filter;
   }
 
+  private SiriModuleDeliveryFilter createStopMonitoringFilter(
+      StopMonitoringSubscriptionStructure subscription) {
+
+    StopMonitoringRequestStructure smRequest = subscription.getStopMonitoringRequest();
+
+    if (smRequest == null)
+      return _emptyFilter;
+
+    StopMonitoringDeliveryFilter filter = new StopMonitoringDeliveryFilter();
+
+    MonitoringRefStructure monitoringRef = smRequest.getMonitoringRef();
+    if (monitoringRef != null && monitoringRef.getValue() != null)
+      filter.setMonitoringRef(monitoringRef.getValue());
+
+    LineRefStructure lineRef = smRequest.getLineRef();
+    if (lineRef != null && lineRef.getValue() != null)
+      filter.setLineRef(lineRef.getValue());
+
+    DirectionRefStructure directionRef = smRequest.getDirectionRef();
+    if (directionRef != null && directionRef.getValue() != null)
+      filter.setDirectionRef(directionRef.getValue());
+
+    Duration previewInterval = smRequest.getPreviewInterval();
+    if (previewInterval != null)
+      filter.setPreviewInterval(previewInterval.getTimeInMillis(new Date()));
+
+    BigInteger maxStopVisits = smRequest.getMaximumStopVisits();
+    if (maxStopVisits != null && maxStopVisits.intValue() > 0)
+      filter.setMaximumStopVisits(maxStopVisits.intValue());
+
+    return filter;
+  }
+
+  private SiriModuleDeliveryFilter createSituationExchangeFilter(
+      SituationExchangeSubscriptionStructure subscription) {
+
+    SituationExchangeRequestStructure sxRequest = subscription.getSituationExchangeRequest();
+
+    if (sxRequest == null)
+      return _emptyFilter;
+
+    LineRefStructure lineRef = sxRequest.getLineRef();
+    if (lineRef == null || lineRef.getValue() == null)
+      return _emptyFilter;
+
+    SituationExchangeDeliveryFilter filter = new SituationExchangeDeliveryFilter();
+    filter.addLineRef(lineRef.getValue());
+    return filter;
+  }
+
+  private static SubscriptionRegion getRegionFromExtensions(
+      ExtensionsStructure extensions, SubscriptionRegion existing) {
+    if (existing != null || extensions == null)
+      return existing;
+    return SubscriptionRegionLibrary.getRegionFromExtension(extensions.getAny());
+  }
+
   private static class EmptyFilter implements SiriModuleDeliveryFilter {
 
     @Override
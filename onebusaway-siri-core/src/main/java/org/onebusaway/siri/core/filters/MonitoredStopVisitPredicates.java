@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+import java.util.Date;
+
+import uk.org.siri.siri.DirectionRefStructure;
+import uk.org.siri.siri.LineRefStructure;
+import uk.org.siri.siri.MonitoredCallStructure;
+import uk.org.siri.siri.MonitoredStopVisitStructure;
+import uk.org.siri.siri.MonitoredVehicleJourneyStructure;
+import uk.org.siri.siri.MonitoringRefStructure;
+
+/**
+ * {@link ElementPredicate} factory methods for
+ * {@link MonitoredStopVisitStructure} elements. Each predicate reads its value
+ * with direct getters, and an element with a missing value never matches.
+ * 
+ * @author agent
+ */
+public class MonitoredStopVisitPredicates {
+
+  public static ElementPredicate<MonitoredStopVisitStructure> monitoringRef(
+      final String monitoringRef) {
+    return new ElementPredicate<MonitoredStopVisitStructure>() {
+      @Override
+      public boolean isMatch(MonitoredStopVisitStructure visit) {
+        MonitoringRefStructure ref = visit.getMonitoringRef();
+        return ref != null && monitoringRef.equals(ref.getValue());
+      }
+    };
+  }
+
+  public static ElementPredicate<MonitoredStopVisitStructure> lineRef(
+      final String lineRef) {
+    return new ElementPredicate<MonitoredStopVisitStructure>() {
+      @Override
+      public boolean isMatch(MonitoredStopVisitStructure visit) {
+        MonitoredVehicleJourneyStructure mvj = visit.getMonitoredVehicleJourney();
+        if (mvj == null)
+          return false;
+        LineRefStructure ref = mvj.getLineRef();
+        return ref != null && lineRef.equals(ref.getValue());
+      }
+    };
+  }
+
+  public static ElementPredicate<MonitoredStopVisitStructure> directionRef(
+      final String directionRef) {
+    return new ElementPredicate<MonitoredStopVisitStructure>() {
+      @Override
+      public boolean isMatch(MonitoredStopVisitStructure visit) {
+        MonitoredVehicleJourneyStructure mvj = visit.getMonitoredVehicleJourney();
+        if (mvj == null)
+          return false;
+        DirectionRefStructure ref = mvj.getDirectionRef();
+        return ref != null && directionRef.equals(ref.getValue());
+      }
+    };
+  }
+
+  /**
+   * Matches visits whose arrival (or departure, if no arrival time is
+   * specified) at the monitored call is no more than previewInterval ms after
+   * the current time. Visits without any call times always match, since we
+   * can't say that they are outside the preview window.
+   * 
+   * @param previewInterval the preview interval, in ms
+   * @return the predicate
+   */
+  public static ElementPredicate<MonitoredStopVisitStructure> previewInterval(
+      final long previewInterval) {
+    return new ElementPredicate<MonitoredStopVisitStructure>() {
+      @Override
+      public boolean isMatch(MonitoredStopVisitStructure visit) {
+        Date time = getCallTime(visit);
+        if (time == null)
+          return true;
+        return time.getTime() <= System.currentTimeMillis() + previewInterval;
+      }
+    };
+  }
+
+  private static Date getCallTime(MonitoredStopVisitStructure visit) {
+    MonitoredVehicleJourneyStructure mvj = visit.getMonitoredVehicleJourney();
+    if (mvj == null)
+      return null;
+    MonitoredCallStructure call = mvj.getMonitoredCall();
+    if (call == null)
+      return null;
+    if (call.getExpectedArrivalTime() != null)
+      return call.getExpectedArrivalTime();
+    if (call.getAimedArrivalTime() != null)
+      return call.getAimedArrivalTime();
+    if (call.getExpectedDepartureTime() != null)
+      return call.getExpectedDepartureTime();
+    return call.getAimedDepartureTime();
+  }
+}
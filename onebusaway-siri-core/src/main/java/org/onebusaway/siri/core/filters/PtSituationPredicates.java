@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+import java.util.Set;
+
+import uk.org.siri.siri.AffectedLineStructure;
+import uk.org.siri.siri.AffectedVehicleJourneyStructure;
+import uk.org.siri.siri.AffectsScopeStructure;
+import uk.org.siri.siri.AffectsScopeStructure.Networks;
+import uk.org.siri.siri.AffectsScopeStructure.Networks.AffectedNetwork;
+import uk.org.siri.siri.AffectsScopeStructure.VehicleJourneys;
+import uk.org.siri.siri.LineRefStructure;
+import uk.org.siri.siri.PtSituationElementStructure;
+
+/**
+ * {@link ElementPredicate} factory methods for
+ * {@link PtSituationElementStructure} elements.
+ * 
+ * @author agent
+ */
+public class PtSituationPredicates {
+
+  /**
+   * Matches situations whose affected networks or affected vehicle journeys
+   * reference at least one of the specified lines. Situations without an
+   * affects scope never match.
+   * 
+   * @param lineRefs the set of line ids to match against
+   * @return the predicate
+   */
+  public static ElementPredicate<PtSituationElementStructure> affectsLineRef(
+      final Set<String> lineRefs) {
+    return new ElementPredicate<PtSituationElementStructure>() {
+      @Override
+      public boolean isMatch(PtSituationElementStructure situation) {
+        return affectsLineRef(situation, lineRefs);
+      }
+    };
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static boolean affectsLineRef(PtSituationElementStructure situation,
+      Set<String> lineRefs) {
+
+    AffectsScopeStructure affects = situation.getAffects();
+    if (affects == null)
+      return false;
+
+    Networks networks = affects.getNetworks();
+    if (networks != null) {
+      for (AffectedNetwork network : networks.getAffectedNetwork()) {
+        for (AffectedLineStructure line : network.getAffectedLine()) {
+          if (isLineRefInSet(line.getLineRef(), lineRefs))
+            return true;
+        }
+      }
+    }
+
+    VehicleJourneys journeys = affects.getVehicleJourneys();
+    if (journeys != null) {
+      for (AffectedVehicleJourneyStructure journey : journeys.getAffectedVehicleJourney()) {
+        if (isLineRefInSet(journey.getLineRef(), lineRefs))
+          return true;
+      }
+    }
+
+    return false;
+  }
+
+  private static boolean isLineRefInSet(LineRefStructure lineRef,
+      Set<String> lineRefs) {
+    return lineRef != null && lineRef.getValue() != null
+        && lineRefs.contains(lineRef.getValue());
+  }
+}
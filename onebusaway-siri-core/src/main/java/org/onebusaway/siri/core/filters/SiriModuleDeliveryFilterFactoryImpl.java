@@ -24,7 +24,12 @@ import java.lang.reflect.Method;
 import java.util.Iterator;
 import java.util.Map;
 
+import javax.annotation.PreDestroy;
+
 import org.onebusaway.siri.core.exceptions.SiriException;
+import org.onebusaway.siri.core.filters.regions.RegionModuleDeliveryFilter;
+import org.onebusaway.siri.core.filters.regions.SubscriptionRegion;
+import org.onebusaway.siri.core.filters.regions.SubscriptionRegionLibrary;
 
 public class SiriModuleDeliveryFilterFactoryImpl {
 
@@ -36,6 +41,11 @@ public class SiriModuleDeliveryFilterFactoryImpl {
 
   private static final String ARG_FILTER_TYPE_ELEMENTS = "Elements";
 
+  private static final String ARG_FILTER_TYPE_REGION = "Region";
+
+  private static final String ARG_FILTER_REGION_PREFIX = ARG_FILTER_PREFIX
+      + "Region.";
+
   private static final String ARG_FILTER_ELEMENT_PREFIX = ARG_FILTER_PREFIX
       + "Element.";
 
@@ -47,6 +57,11 @@ public class SiriModuleDeliveryFilterFactoryImpl {
       if (filterType.equals(ARG_FILTER_TYPE_ELEMENTS)) {
         return createPropertyFilter(filterArgs);
       }
+      if (filterType.equals(ARG_FILTER_TYPE_REGION)) {
+        SubscriptionRegion region = SubscriptionRegionLibrary.getRegionFromArgs(
+            filterArgs, ARG_FILTER_REGION_PREFIX);
+        return new RegionModuleDeliveryFilter(region);
+      }
       throw new SiriException("uknown filter type: " + filterType);
     }
 
@@ -63,6 +78,28 @@ public class SiriModuleDeliveryFilterFactoryImpl {
         + "\" or \"" + ARG_FILTER_CLASS + "\"");
   }
 
+  /**
+   * Release any resources held by a filter created by
+   * {@link #create(Map)}. Filters created from a class are not managed by the
+   * injector, so we run their {@link PreDestroy} methods ourselves.
+   * 
+   * @param filter the filter to stop
+   * @throws SiriException if a {@link PreDestroy} method fails
+   */
+  public void stop(SiriModuleDeliveryFilter filter) {
+    for (Method method : filter.getClass().getMethods()) {
+      if (!method.isAnnotationPresent(PreDestroy.class)
+          || method.getParameterTypes().length != 0)
+        continue;
+      try {
+        method.invoke(filter);
+      } catch (Exception ex) {
+        throw new SiriException("error stopping filter "
+            + filter.getClass().getName(), ex);
+      }
+    }
+  }
+
   private SiriModuleDeliveryFilter createPropertyFilter(
       Map<String, String> filterArgs) {
 
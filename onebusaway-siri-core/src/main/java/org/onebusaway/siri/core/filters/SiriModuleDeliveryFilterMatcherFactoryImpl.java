@@ -22,6 +22,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.onebusaway.collections.tuple.T2;
 import org.onebusaway.collections.tuple.Tuples;
@@ -112,8 +113,14 @@ public class SiriModuleDeliveryFilterMatcherFactoryImpl {
       return new EndsWithMatcher(m2.group(1));
 
     Matcher m3 = _regexPattern.matcher(value);
-    if (m3.matches())
-      return new RegexMatcher(m3.group(1));
+    if (m3.matches()) {
+      try {
+        return new RegexMatcher(m3.group(1));
+      } catch (PatternSyntaxException ex) {
+        throw new SiriException("invalid regex in matcher value \"" + value
+            + "\"", ex);
+      }
+    }
 
     if (value.equals(EMPTY_VALUE_MATCHER))
       return new EmptyMatcher();
@@ -122,10 +129,11 @@ public class SiriModuleDeliveryFilterMatcherFactoryImpl {
   }
 
   /****
-   * 
+   * The matcher implementation and its parts are package-private, such that
+   * {@link SiriModuleDeliveryFilterMatcherIndex} can index them
    ****/
 
-  private static class SiriModuleDeliveryFilterMatcherImpl implements
+  static class SiriModuleDeliveryFilterMatcherImpl implements
       SiriModuleDeliveryFilterMatcher {
 
     private final ESiriModuleType _moduleType;
@@ -138,6 +146,14 @@ public class SiriModuleDeliveryFilterMatcherFactoryImpl {
       _matchers = matchers;
     }
 
+    public ESiriModuleType getModuleType() {
+      return _moduleType;
+    }
+
+    public List<T2<ValueExtractor, ValueMatcher>> getMatchers() {
+      return _matchers;
+    }
+
     @Override
     public boolean isMatch(SubscriptionRequest subscriptionRequest,
         ESiriModuleType moduleType,
@@ -163,7 +179,7 @@ public class SiriModuleDeliveryFilterMatcherFactoryImpl {
    * 
    ****/
 
-  private static interface ValueExtractor {
+  static interface ValueExtractor {
     public String extractValue(SubscriptionRequest subscriptionRequest,
         ESiriModuleType moduleType,
         AbstractSubscriptionStructure moduleTypeSubscriptionRequest);
@@ -230,11 +246,11 @@ public class SiriModuleDeliveryFilterMatcherFactoryImpl {
    * 
    ****/
 
-  private static interface ValueMatcher {
+  static interface ValueMatcher {
     public boolean isMatch(String argument);
   }
 
-  private static class DirectMatcher implements ValueMatcher {
+  static class DirectMatcher implements ValueMatcher {
 
     private final String _value;
 
@@ -242,13 +258,17 @@ public class SiriModuleDeliveryFilterMatcherFactoryImpl {
       _value = value;
     }
 
+    public String getValue() {
+      return _value;
+    }
+
     @Override
     public boolean isMatch(String argument) {
       return _value.equals(argument);
     }
   }
 
-  private static class StartsWithMatcher implements ValueMatcher {
+  static class StartsWithMatcher implements ValueMatcher {
 
     private final String _prefix;
 
@@ -256,13 +276,17 @@ public class SiriModuleDeliveryFilterMatcherFactoryImpl {
       _prefix = prefix;
     }
 
+    public String getPrefix() {
+      return _prefix;
+    }
+
     @Override
     public boolean isMatch(String argument) {
-      return argument.startsWith(_prefix);
+      return argument != null && argument.startsWith(_prefix);
     }
   }
 
-  private static class EndsWithMatcher implements ValueMatcher {
+  static class EndsWithMatcher implements ValueMatcher {
 
     private final String _suffix;
 
@@ -270,27 +294,35 @@ public class SiriModuleDeliveryFilterMatcherFactoryImpl {
       _suffix = suffix;
     }
 
+    public String getSuffix() {
+      return _suffix;
+    }
+
     @Override
     public boolean isMatch(String argument) {
-      return argument.endsWith(_suffix);
+      return argument != null && argument.endsWith(_suffix);
     }
   }
 
-  private static class RegexMatcher implements ValueMatcher {
+  static class RegexMatcher implements ValueMatcher {
 
-    private final String _regex;
+    private final Pattern _pattern;
 
     public RegexMatcher(String regex) {
-      _regex = regex;
+      _pattern = Pattern.compile(regex);
+    }
+
+    public Pattern getPattern() {
+      return _pattern;
     }
 
     @Override
     public boolean isMatch(String argument) {
-      return argument.matches(_regex);
+      return argument != null && _pattern.matcher(argument).matches();
     }
   }
 
-  private static class EmptyMatcher implements ValueMatcher {
+  static class EmptyMatcher implements ValueMatcher {
 
     @Override
     public boolean isMatch(String argument) {
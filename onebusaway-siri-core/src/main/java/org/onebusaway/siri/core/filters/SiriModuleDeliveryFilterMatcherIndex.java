@@ -0,0 +1,514 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.onebusaway.collections.tuple.T2;
+import org.onebusaway.siri.core.ESiriModuleType;
+import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilterMatcherFactoryImpl.DirectMatcher;
+import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilterMatcherFactoryImpl.EmptyMatcher;
+import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilterMatcherFactoryImpl.EndsWithMatcher;
+import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilterMatcherFactoryImpl.RegexMatcher;
+import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilterMatcherFactoryImpl.SiriModuleDeliveryFilterMatcherImpl;
+import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilterMatcherFactoryImpl.StartsWithMatcher;
+import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilterMatcherFactoryImpl.ValueExtractor;
+import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilterMatcherFactoryImpl.ValueMatcher;
+
+import uk.org.siri.siri.AbstractSubscriptionStructure;
+import uk.org.siri.siri.SubscriptionRequest;
+
+/**
+ * An immutable index over a matcher / filter table, used to find the filters
+ * that apply to a subscription request without evaluating every matcher in the
+ * table.
+ * 
+ * Matchers created by {@link SiriModuleDeliveryFilterMatcherFactoryImpl} are
+ * first grouped by their module type, such that a subscription only considers
+ * matchers for its own module type (plus those for any module type). Within a
+ * group, each matcher is indexed by one of its conditions: exact values go in a hash table,
+ * StartsWith(...) and EndsWith(...) values go in prefix and suffix tries, and
+ * Regex(...) values are combined into a single alternation that rejects
+ * non-matching values in one pass. For a given subscription request, each
+ * property is extracted once and looked up in the index to produce a set of
+ * candidate matchers, which are then evaluated in full. Matchers that can't be
+ * indexed (ex. custom {@link SiriModuleDeliveryFilterMatcher} implementations
+ * or matchers with no conditions) are always evaluated.
+ * 
+ * Matching filters are returned in table order, just as with a linear scan of
+ * the table.
+ * 
+ * @author agent
+ */
+public class SiriModuleDeliveryFilterMatcherIndex {
+
+  private static final int[] _emptyValues = new int[0];
+
+  /**
+   * Regexes that can't safely be wrapped in a group and combined with others:
+   * back references (group numbers shift), named groups (names may be reused
+   * across rules), \Q quotes and comments mode (either of which can swallow
+   * the closing paren)
+   */
+  private static final Pattern _uncombinablePattern = Pattern.compile("\\\\(\\d|k<|Q)|\\(\\?<[a-zA-Z]|\\(\\?[idmsuxU-]*x");
+
+  private final List<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>> _filters;
+
+  /**
+   * The distinct filters in the table that are also enrichers, in table order
+   */
+  private final List<SiriServiceDeliveryEnricher> _enrichers;
+
+  /**
+   * Matchers that apply to any module type
+   */
+  private final MatcherGroup _anyModuleType = new MatcherGroup();
+
+  private final Map<ESiriModuleType, MatcherGroup> _groupsByModuleType = new EnumMap<ESiriModuleType, MatcherGroup>(
+      ESiriModuleType.class);
+
+  /**
+   * 
+   * @param filters the matcher / filter table, which is copied
+   */
+  public SiriModuleDeliveryFilterMatcherIndex(
+      List<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>> filters) {
+
+    _filters = Collections.unmodifiableList(new ArrayList<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>>(
+        filters));
+
+    for (int i = 0; i < _filters.size(); ++i) {
+
+      SiriModuleDeliveryFilterMatcher matcher = _filters.get(i).getFirst();
+
+      MatcherGroup group = _anyModuleType;
+      ESiriModuleType moduleType = getModuleType(matcher);
+      if (moduleType != null) {
+        group = _groupsByModuleType.get(moduleType);
+        if (group == null) {
+          group = new MatcherGroup();
+          _groupsByModuleType.put(moduleType, group);
+        }
+      }
+
+      group.add(getIndexedCondition(matcher), i);
+    }
+
+    _anyModuleType.compile();
+    for (MatcherGroup group : _groupsByModuleType.values())
+      group.compile();
+
+    _enrichers = Collections.unmodifiableList(getEnrichers(_filters));
+  }
+
+  /**
+   * 
+   * @return the matcher / filter table this index was built from
+   */
+  public List<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>> getFilters() {
+    return _filters;
+  }
+
+  /**
+   * 
+   * @return the distinct filters in the table that also implement
+   *         {@link SiriServiceDeliveryEnricher}, in table order
+   */
+  public List<SiriServiceDeliveryEnricher> getServiceDeliveryEnrichers() {
+    return _enrichers;
+  }
+
+  /**
+   * 
+   * @param subscriptionRequest
+   * @param moduleType
+   * @param moduleTypeSubscriptionRequest
+   * @return the filters whose matchers match the subscription request, in
+   *         table order
+   */
+  public List<SiriModuleDeliveryFilter> getMatchingFilters(
+      SubscriptionRequest subscriptionRequest, ESiriModuleType moduleType,
+      AbstractSubscriptionStructure moduleTypeSubscriptionRequest) {
+
+    BitSet candidates = new BitSet(_filters.size());
+
+    _anyModuleType.getCandidates(subscriptionRequest, moduleType,
+        moduleTypeSubscriptionRequest, candidates);
+
+    MatcherGroup group = _groupsByModuleType.get(moduleType);
+    if (group != null)
+      group.getCandidates(subscriptionRequest, moduleType,
+          moduleTypeSubscriptionRequest, candidates);
+
+    List<SiriModuleDeliveryFilter> matches = new ArrayList<SiriModuleDeliveryFilter>();
+
+    for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+      T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter> tuple = _filters.get(i);
+      if (tuple.getFirst().isMatch(subscriptionRequest, moduleType,
+          moduleTypeSubscriptionRequest))
+        matches.add(tuple.getSecond());
+    }
+
+    return matches;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static ESiriModuleType getModuleType(
+      SiriModuleDeliveryFilterMatcher matcher) {
+    if (!(matcher instanceof SiriModuleDeliveryFilterMatcherImpl))
+      return null;
+    return ((SiriModuleDeliveryFilterMatcherImpl) matcher).getModuleType();
+  }
+
+  /**
+   * Pick the most selective condition of the matcher to index it by, or null
+   * if the matcher can't be indexed
+   */
+  private static T2<ValueExtractor, ValueMatcher> getIndexedCondition(
+      SiriModuleDeliveryFilterMatcher matcher) {
+
+    if (!(matcher instanceof SiriModuleDeliveryFilterMatcherImpl))
+      return null;
+
+    SiriModuleDeliveryFilterMatcherImpl impl = (SiriModuleDeliveryFilterMatcherImpl) matcher;
+
+    T2<ValueExtractor, ValueMatcher> best = null;
+    int bestRank = Integer.MAX_VALUE;
+
+    for (T2<ValueExtractor, ValueMatcher> condition : impl.getMatchers()) {
+      int rank = getRank(condition.getSecond());
+      if (rank < bestRank) {
+        best = condition;
+        bestRank = rank;
+      }
+    }
+
+    return best;
+  }
+
+  private static int getRank(ValueMatcher matcher) {
+    if (matcher instanceof DirectMatcher)
+      return 0;
+    if (matcher instanceof StartsWithMatcher
+        || matcher instanceof EndsWithMatcher)
+      return 1;
+    if (matcher instanceof EmptyMatcher)
+      return 2;
+    if (matcher instanceof RegexMatcher)
+      return 3;
+    return Integer.MAX_VALUE;
+  }
+
+  /**
+   * 
+   * @param filters the filters in the index
+   * @return the distinct filters that are also service delivery enrichers, in
+   *         index order
+   */
+  private static List<SiriServiceDeliveryEnricher> getEnrichers(
+      List<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>> filters) {
+    Map<SiriModuleDeliveryFilter, Boolean> seen = new IdentityHashMap<SiriModuleDeliveryFilter, Boolean>();
+    List<SiriServiceDeliveryEnricher> enrichers = new ArrayList<SiriServiceDeliveryEnricher>();
+    for (T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter> tuple : filters) {
+      SiriModuleDeliveryFilter filter = tuple.getSecond();
+      if (filter instanceof SiriServiceDeliveryEnricher
+          && seen.put(filter, Boolean.TRUE) == null)
+        enrichers.add((SiriServiceDeliveryEnricher) filter);
+    }
+    return enrichers;
+  }
+
+  /****
+   * Support Classes
+   ****/
+
+  /**
+   * The matchers for a single module type
+   */
+  private static class MatcherGroup {
+
+    /**
+     * Entries that are always evaluated
+     */
+    private final IntList _unindexed = new IntList();
+
+    private final Map<ValueExtractor, PropertyIndex> _indicesByExtractor = new LinkedHashMap<ValueExtractor, PropertyIndex>();
+
+    private PropertyIndex[] _propertyIndices;
+
+    public void add(T2<ValueExtractor, ValueMatcher> condition, int index) {
+
+      if (condition == null) {
+        _unindexed.add(index);
+        return;
+      }
+
+      PropertyIndex propertyIndex = _indicesByExtractor.get(condition.getFirst());
+      if (propertyIndex == null) {
+        propertyIndex = new PropertyIndex(condition.getFirst());
+        _indicesByExtractor.put(condition.getFirst(), propertyIndex);
+      }
+      propertyIndex.add(condition.getSecond(), index);
+    }
+
+    public void compile() {
+      _propertyIndices = _indicesByExtractor.values().toArray(
+          new PropertyIndex[_indicesByExtractor.size()]);
+      for (PropertyIndex propertyIndex : _propertyIndices)
+        propertyIndex.compile();
+    }
+
+    public void getCandidates(SubscriptionRequest subscriptionRequest,
+        ESiriModuleType moduleType,
+        AbstractSubscriptionStructure moduleTypeSubscriptionRequest,
+        BitSet candidates) {
+
+      _unindexed.setAll(candidates);
+
+      for (PropertyIndex propertyIndex : _propertyIndices) {
+        String value = propertyIndex.getExtractor().extractValue(
+            subscriptionRequest, moduleType, moduleTypeSubscriptionRequest);
+        propertyIndex.getCandidates(value, candidates);
+      }
+    }
+  }
+
+  /**
+   * The index for a single extracted property of the subscription request
+   */
+  private static class PropertyIndex {
+
+    private final ValueExtractor _extractor;
+
+    private final Map<String, IntList> _direct = new HashMap<String, IntList>();
+
+    private final Trie _prefixes = new Trie(false);
+
+    private final Trie _suffixes = new Trie(true);
+
+    private final IntList _empty = new IntList();
+
+    private final List<Pattern> _regexes = new ArrayList<Pattern>();
+
+    private IntList _regexEntries = new IntList();
+
+    /**
+     * Entries with regexes that can't be combined, which are always evaluated
+     */
+    private final IntList _uncombinedRegexEntries = new IntList();
+
+    private Pattern _combinedRegex = null;
+
+    public PropertyIndex(ValueExtractor extractor) {
+      _extractor = extractor;
+    }
+
+    public ValueExtractor getExtractor() {
+      return _extractor;
+    }
+
+    public void add(ValueMatcher matcher, int index) {
+      if (matcher instanceof DirectMatcher) {
+        String value = ((DirectMatcher) matcher).getValue();
+        IntList entries = _direct.get(value);
+        if (entries == null) {
+          entries = new IntList();
+          _direct.put(value, entries);
+        }
+        entries.add(index);
+      } else if (matcher instanceof StartsWithMatcher) {
+        _prefixes.add(((StartsWithMatcher) matcher).getPrefix(), index);
+      } else if (matcher instanceof EndsWithMatcher) {
+        _suffixes.add(((EndsWithMatcher) matcher).getSuffix(), index);
+      } else if (matcher instanceof EmptyMatcher) {
+        _empty.add(index);
+      } else if (matcher instanceof RegexMatcher) {
+        Pattern pattern = ((RegexMatcher) matcher).getPattern();
+        if (_uncombinablePattern.matcher(pattern.pattern()).find()) {
+          _uncombinedRegexEntries.add(index);
+        } else {
+          _regexes.add(pattern);
+          _regexEntries.add(index);
+        }
+      } else {
+        throw new IllegalStateException("unknown value matcher " + matcher);
+      }
+    }
+
+    /**
+     * Combine the regex entries into a single alternation. Each regex is
+     * checked on its own first, and any that don't survive being wrapped in a
+     * group are left uncombined. Should the combined pattern still fail to
+     * compile, every regex entry is left uncombined, which is slower but never
+     * wrong.
+     */
+    public void compile() {
+
+      StringBuilder b = new StringBuilder();
+      IntList combinedEntries = new IntList();
+
+      for (int i = 0; i < _regexes.size(); ++i) {
+        String group = "(?:" + _regexes.get(i).pattern() + ")";
+        try {
+          Pattern.compile(group);
+        } catch (PatternSyntaxException ex) {
+          _uncombinedRegexEntries.add(_regexEntries.get(i));
+          continue;
+        }
+        if (b.length() > 0)
+          b.append('|');
+        b.append(group);
+        combinedEntries.add(_regexEntries.get(i));
+      }
+
+      _regexes.clear();
+      _regexEntries = combinedEntries;
+
+      if (combinedEntries.size() == 0)
+        return;
+
+      try {
+        _combinedRegex = Pattern.compile(b.toString());
+      } catch (PatternSyntaxException ex) {
+        combinedEntries.addAllTo(_uncombinedRegexEntries);
+        _regexEntries = new IntList();
+      }
+    }
+
+    public void getCandidates(String value, BitSet candidates) {
+
+      _uncombinedRegexEntries.setAll(candidates);
+
+      if (value == null || value.length() == 0)
+        _empty.setAll(candidates);
+
+      if (value == null)
+        return;
+
+      IntList direct = _direct.get(value);
+      if (direct != null)
+        direct.setAll(candidates);
+
+      _prefixes.getCandidates(value, candidates);
+      _suffixes.getCandidates(value, candidates);
+
+      /**
+       * A single pass of the combined regex rules out all of the regex entries
+       * at once in the common case that none of them match
+       */
+      if (_combinedRegex != null && _combinedRegex.matcher(value).matches())
+        _regexEntries.setAll(candidates);
+    }
+  }
+
+  /**
+   * A character trie of prefixes, or of suffixes if reversed
+   */
+  private static class Trie {
+
+    private final boolean _reverse;
+
+    private final TrieNode _root = new TrieNode();
+
+    public Trie(boolean reverse) {
+      _reverse = reverse;
+    }
+
+    public void add(String key, int index) {
+      TrieNode node = _root;
+      int n = key.length();
+      for (int i = 0; i < n; ++i) {
+        char c = key.charAt(_reverse ? n - 1 - i : i);
+        TrieNode child = node.children.get(c);
+        if (child == null) {
+          child = new TrieNode();
+          node.children.put(c, child);
+        }
+        node = child;
+      }
+      node.entries.add(index);
+    }
+
+    /**
+     * Mark every entry whose key is a prefix (or suffix) of the value
+     */
+    public void getCandidates(String value, BitSet candidates) {
+      TrieNode node = _root;
+      int n = value.length();
+      for (int i = 0; node != null; ++i) {
+        node.entries.setAll(candidates);
+        if (i == n || node.children.isEmpty())
+          break;
+        char c = value.charAt(_reverse ? n - 1 - i : i);
+        node = node.children.get(c);
+      }
+    }
+  }
+
+  private static class TrieNode {
+
+    private final Map<Character, TrieNode> children = new HashMap<Character, TrieNode>();
+
+    private final IntList entries = new IntList();
+  }
+
+  private static class IntList {
+
+    private int[] _values = _emptyValues;
+
+    private int _size = 0;
+
+    public void add(int value) {
+      if (_size == _values.length) {
+        int[] values = new int[Math.max(4, _size * 2)];
+        System.arraycopy(_values, 0, values, 0, _size);
+        _values = values;
+      }
+      _values[_size++] = value;
+    }
+
+    public int get(int index) {
+      return _values[index];
+    }
+
+    public int size() {
+      return _size;
+    }
+
+    public void addAllTo(IntList other) {
+      for (int i = 0; i < _size; ++i)
+        other.add(_values[i]);
+    }
+
+    public void setAll(BitSet bits) {
+      for (int i = 0; i < _size; ++i)
+        bits.set(_values[i]);
+    }
+  }
+}
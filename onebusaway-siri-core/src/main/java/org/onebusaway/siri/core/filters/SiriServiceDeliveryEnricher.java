@@ -0,0 +1,44 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+import org.onebusaway.siri.core.SiriServer;
+
+import uk.org.siri.siri.ServiceDelivery;
+
+/**
+ * An enrichment stage that runs exactly once per {@link ServiceDelivery}
+ * published by the {@link SiriServer}, before the delivery is fanned out to
+ * individual subscriptions and their {@link SiriModuleDeliveryFilter} chains.
+ * This is the place for stateful processing (ex. layover detection) that must
+ * see each update once, no matter how many subscriptions it will be sent to.
+ * 
+ * A {@link SiriModuleDeliveryFilter} in the server's filter table that also
+ * implements this interface is automatically run as an enricher.
+ * 
+ * @author agent
+ */
+public interface SiriServiceDeliveryEnricher {
+
+  /**
+   * Called from {@link SiriServer#publish(ServiceDelivery)} before the delivery
+   * is published to subscribers. Note that deliveries may be published from
+   * multiple threads at once.
+   * 
+   * @param delivery the delivery about to be published
+   */
+  public void enrich(ServiceDelivery delivery);
+}
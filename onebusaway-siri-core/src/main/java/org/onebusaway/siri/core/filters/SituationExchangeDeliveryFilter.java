@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import uk.org.siri.siri.AbstractServiceDeliveryStructure;
+import uk.org.siri.siri.PtSituationElementStructure;
+import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.SituationExchangeDeliveryStructure;
+import uk.org.siri.siri.SituationExchangeDeliveryStructure.Situations;
+
+/**
+ * Filters the {@link PtSituationElementStructure} elements of a situation
+ * exchange delivery by the lines they affect, as referenced by affected
+ * networks and affected vehicle journeys. Road situations are passed through
+ * unfiltered.
+ * 
+ * Only the LineRef criterion of a situation exchange request is supported. The
+ * stop point, operator and preview interval criteria are not applied, so a
+ * subscription using them receives every situation for its lines (or every
+ * situation, if no line is specified). Matching filters are also not indexed by
+ * affected line: each situation exchange subscription's filter is applied to
+ * every delivery.
+ * 
+ * @author agent
+ */
+class SituationExchangeDeliveryFilter implements SiriModuleDeliveryFilter {
+
+  private Set<String> _lineRefs = Collections.emptySet();
+
+  /**
+   * Null if every situation matches.
+   */
+  private volatile ElementPredicate<PtSituationElementStructure> _predicate = null;
+
+  public void addLineRef(String lineRef) {
+    Set<String> lineRefs = new HashSet<String>(_lineRefs);
+    lineRefs.add(lineRef);
+    _lineRefs = lineRefs;
+    _predicate = PtSituationPredicates.affectsLineRef(lineRefs);
+  }
+
+  /****
+   * {@link SiriModuleDeliveryFilter} Interface
+   ****/
+
+  @Override
+  public AbstractServiceDeliveryStructure filter(ServiceDelivery delivery,
+      AbstractServiceDeliveryStructure moduleDelivery) {
+
+    SituationExchangeDeliveryStructure sx = (SituationExchangeDeliveryStructure) moduleDelivery;
+
+    ElementPredicate<PtSituationElementStructure> predicate = _predicate;
+    if (predicate == null)
+      return sx;
+
+    Situations situations = sx.getSituations();
+    if (situations == null)
+      return null;
+
+    /**
+     * Road situations don't reference transit lines, so we leave them as is
+     */
+    List<PtSituationElementStructure> elements = situations.getPtSituationElement();
+    int remaining = ElementPredicates.filterInPlace(elements, predicate, 0);
+
+    if (remaining == 0 && situations.getRoadSituationElement().isEmpty())
+      return null;
+
+    return sx;
+  }
+}
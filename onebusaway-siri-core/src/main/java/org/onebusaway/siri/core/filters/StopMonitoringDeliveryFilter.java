@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.org.siri.siri.AbstractServiceDeliveryStructure;
+import uk.org.siri.siri.MonitoredStopVisitStructure;
+import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.StopMonitoringDeliveryStructure;
+
+class StopMonitoringDeliveryFilter implements SiriModuleDeliveryFilter {
+
+  private String _monitoringRef;
+
+  private String _lineRef;
+
+  private String _directionRef;
+
+  private long _previewInterval = 0;
+
+  private int _maximumStopVisits = 0;
+
+  /**
+   * The combined predicate for all our criteria, rebuilt whenever one of the
+   * criteria changes. Null if every visit matches.
+   */
+  private volatile ElementPredicate<MonitoredStopVisitStructure> _predicate = null;
+
+  public void setMonitoringRef(String monitoringRef) {
+    _monitoringRef = monitoringRef;
+    compilePredicate();
+  }
+
+  public void setLineRef(String lineRef) {
+    _lineRef = lineRef;
+    compilePredicate();
+  }
+
+  public void setDirectionRef(String directionRef) {
+    _directionRef = directionRef;
+    compilePredicate();
+  }
+
+  /**
+   * 
+   * @param previewInterval only visits arriving within this many ms of the
+   *          current time are included
+   */
+  public void setPreviewInterval(long previewInterval) {
+    _previewInterval = previewInterval;
+    compilePredicate();
+  }
+
+  public void setMaximumStopVisits(int maximumStopVisits) {
+    _maximumStopVisits = maximumStopVisits;
+  }
+
+  /****
+   * {@link SiriModuleDeliveryFilter} Interface
+   ****/
+
+  @Override
+  public AbstractServiceDeliveryStructure filter(ServiceDelivery delivery,
+      AbstractServiceDeliveryStructure moduleDelivery) {
+
+    StopMonitoringDeliveryStructure sm = (StopMonitoringDeliveryStructure) moduleDelivery;
+
+    int remaining = ElementPredicates.filterInPlace(sm.getMonitoredStopVisit(),
+        _predicate, _maximumStopVisits);
+
+    if (remaining == 0 && sm.getMonitoredStopVisitCancellation().isEmpty())
+      return null;
+
+    return sm;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void compilePredicate() {
+
+    List<ElementPredicate<MonitoredStopVisitStructure>> predicates = new ArrayList<ElementPredicate<MonitoredStopVisitStructure>>();
+
+    /**
+     * We test the most selective criteria first
+     */
+    if (_monitoringRef != null)
+      predicates.add(MonitoredStopVisitPredicates.monitoringRef(_monitoringRef));
+    if (_lineRef != null)
+      predicates.add(MonitoredStopVisitPredicates.lineRef(_lineRef));
+    if (_directionRef != null)
+      predicates.add(MonitoredStopVisitPredicates.directionRef(_directionRef));
+    if (_previewInterval > 0)
+      predicates.add(MonitoredStopVisitPredicates.previewInterval(_previewInterval));
+
+    _predicate = ElementPredicates.and(predicates);
+  }
+}
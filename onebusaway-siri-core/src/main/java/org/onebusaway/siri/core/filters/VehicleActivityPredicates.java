@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+import uk.org.siri.siri.DirectionRefStructure;
+import uk.org.siri.siri.LineRefStructure;
+import uk.org.siri.siri.VehicleActivityStructure;
+import uk.org.siri.siri.VehicleActivityStructure.MonitoredVehicleJourney;
+import uk.org.siri.siri.VehicleMonitoringRefStructure;
+import uk.org.siri.siri.VehicleRefStructure;
+
+/**
+ * {@link ElementPredicate} factory methods for {@link VehicleActivityStructure}
+ * elements. Each predicate reads its value with direct getters, and an element
+ * with a missing value never matches.
+ * 
+ * @author agent
+ */
+public class VehicleActivityPredicates {
+
+  public static ElementPredicate<VehicleActivityStructure> vehicleMonitoringRef(
+      final String vehicleMonitoringRef) {
+    return new ElementPredicate<VehicleActivityStructure>() {
+      @Override
+      public boolean isMatch(VehicleActivityStructure activity) {
+        VehicleMonitoringRefStructure ref = activity.getVehicleMonitoringRef();
+        return ref != null && vehicleMonitoringRef.equals(ref.getValue());
+      }
+    };
+  }
+
+  public static ElementPredicate<VehicleActivityStructure> directionRef(
+      final String directionRef) {
+    return new ElementPredicate<VehicleActivityStructure>() {
+      @Override
+      public boolean isMatch(VehicleActivityStructure activity) {
+        MonitoredVehicleJourney mvj = activity.getMonitoredVehicleJourney();
+        if (mvj == null)
+          return false;
+        DirectionRefStructure ref = mvj.getDirectionRef();
+        return ref != null && directionRef.equals(ref.getValue());
+      }
+    };
+  }
+
+  public static ElementPredicate<VehicleActivityStructure> lineRef(
+      final String lineRef) {
+    return new ElementPredicate<VehicleActivityStructure>() {
+      @Override
+      public boolean isMatch(VehicleActivityStructure activity) {
+        MonitoredVehicleJourney mvj = activity.getMonitoredVehicleJourney();
+        if (mvj == null)
+          return false;
+        LineRefStructure ref = mvj.getLineRef();
+        return ref != null && lineRef.equals(ref.getValue());
+      }
+    };
+  }
+
+  public static ElementPredicate<VehicleActivityStructure> vehicleRef(
+      final String vehicleRef) {
+    return new ElementPredicate<VehicleActivityStructure>() {
+      @Override
+      public boolean isMatch(VehicleActivityStructure activity) {
+        MonitoredVehicleJourney mvj = activity.getMonitoredVehicleJourney();
+        if (mvj == null)
+          return false;
+        VehicleRefStructure ref = mvj.getVehicleRef();
+        return ref != null && vehicleRef.equals(ref.getValue());
+      }
+    };
+  }
+}
@@ -15,10 +15,9 @@
  */
 package org.onebusaway.siri.core.filters;
 
+import java.util.ArrayList;
 import java.util.List;
 
-import org.onebusaway.siri.core.SiriLibrary;
-
 import uk.org.siri.siri.AbstractServiceDeliveryStructure;
 import uk.org.siri.siri.ServiceDelivery;
 import uk.org.siri.siri.VehicleActivityStructure;
@@ -37,16 +36,25 @@ class VehicleMonitoringDeliveryFilter implements
 
   private int _maximumVehicles = 0;
 
+  /**
+   * The combined predicate for all our criteria, rebuilt whenever one of the
+   * criteria changes. Null if every vehicle matches.
+   */
+  private volatile ElementPredicate<VehicleActivityStructure> _predicate = null;
+
   public void setDirectionRef(String directionRef) {
     _directionRef = directionRef;
+    compilePredicate();
   }
 
   public void setLineRef(String lineRef) {
     _lineRef = lineRef;
+    compilePredicate();
   }
 
   public void setVehicleRef(String vehicleRef) {
     _vehicleRef = vehicleRef;
+    compilePredicate();
   }
 
   /**
@@ -58,6 +66,7 @@ class VehicleMonitoringDeliveryFilter implements
    */
   public void setVehicleMonitoringRef(String vehicleMonitoringRef) {
     _vehicleMonitoringRef = vehicleMonitoringRef;
+    compilePredicate();
   }
 
   public void setMaximumVehicles(int maximumVehicles) {
@@ -74,41 +83,35 @@ class VehicleMonitoringDeliveryFilter implements
 
     VehicleMonitoringDeliveryStructure vm = (VehicleMonitoringDeliveryStructure) moduleDelivery;
 
-    List<VehicleActivityStructure> vasFiltered = vm.getVehicleActivity();
+    int remaining = ElementPredicates.filterInPlace(vm.getVehicleActivity(),
+        _predicate, _maximumVehicles);
 
-    if (_vehicleMonitoringRef != null) {
-      vasFiltered = SiriLibrary.grep(vasFiltered, "vehicleMonitoringRef.value",
-          _vehicleMonitoringRef);
-    }
-
-    if (_directionRef != null) {
-      vasFiltered = SiriLibrary.grep(vasFiltered,
-          "monitoredVehicleJourney.directionRef.value", _directionRef);
-    }
-
-    if (_lineRef != null) {
-      vasFiltered = SiriLibrary.grep(vasFiltered,
-          "monitoredVehicleJourney.lineRef.value", _lineRef);
-    }
+    if (remaining == 0)
+      return null;
 
-    if (_vehicleRef != null) {
-      vasFiltered = SiriLibrary.grep(vasFiltered,
-          "monitoredVehicleJourney.vehicleRef.value", _vehicleRef);
-    }
+    return vm;
+  }
 
-    if (_maximumVehicles > 0 && vasFiltered.size() > _maximumVehicles) {
-      while (vasFiltered.size() > _maximumVehicles)
-        vasFiltered.remove(vasFiltered.size() - 1);
-    }
+  /****
+   * Private Methods
+   ****/
 
-    if (vasFiltered.isEmpty())
-      return null;
+  private void compilePredicate() {
 
-    List<VehicleActivityStructure> vasOriginal = vm.getVehicleActivity();
+    List<ElementPredicate<VehicleActivityStructure>> predicates = new ArrayList<ElementPredicate<VehicleActivityStructure>>();
 
-    if (vasFiltered.size() < vasOriginal.size())
-      SiriLibrary.copyList(vasFiltered, vasOriginal);
+    /**
+     * We test the most selective criteria first
+     */
+    if (_vehicleRef != null)
+      predicates.add(VehicleActivityPredicates.vehicleRef(_vehicleRef));
+    if (_lineRef != null)
+      predicates.add(VehicleActivityPredicates.lineRef(_lineRef));
+    if (_directionRef != null)
+      predicates.add(VehicleActivityPredicates.directionRef(_directionRef));
+    if (_vehicleMonitoringRef != null)
+      predicates.add(VehicleActivityPredicates.vehicleMonitoringRef(_vehicleMonitoringRef));
 
-    return vm;
+    _predicate = ElementPredicates.and(predicates);
   }
 }
@@ -19,8 +19,11 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
+import javax.annotation.PreDestroy;
+
 import org.onebusaway.siri.OneBusAwayVehicleActivity;
 import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilter;
+import org.onebusaway.siri.core.filters.SiriServiceDeliveryEnricher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,12 +34,44 @@ import uk.org.siri.siri.VehicleActivityStructure;
 import uk.org.siri.siri.VehicleActivityStructure.MonitoredVehicleJourney;
 import uk.org.siri.siri.VehicleMonitoringDeliveryStructure;
 
-public class LayoverFilter implements SiriModuleDeliveryFilter {
+/**
+ * Marks vehicles that are paused at a layover location with the
+ * {@link OneBusAwayVehicleActivity#isLayover()} extension.
+ * 
+ * When installed in the server filter table, the filter is also run as a
+ * {@link SiriServiceDeliveryEnricher}, such that the layover service is updated
+ * exactly once per published delivery. The per-subscription
+ * {@link #filter(ServiceDelivery, AbstractServiceDeliveryStructure)} calls then
+ * only read the resulting layover state. When used on its own as a plain
+ * module delivery filter, the filter updates the layover service itself.
+ * 
+ * @author bdferris
+ */
+public class LayoverFilter implements SiriModuleDeliveryFilter,
+    SiriServiceDeliveryEnricher {
 
   private static final Logger _log = LoggerFactory.getLogger(LayoverServiceImpl.class);
 
+  private static final int VEHICLE_LOCK_STRIPES = 64;
+
   private LayoverService _layoverService = new LayoverServiceImpl();
 
+  /**
+   * True while we're using the layover service we created ourselves, in which
+   * case we're responsible for stopping it
+   */
+  private boolean _ownsLayoverService = true;
+
+  private final StripedLocks _vehicleLocks = new StripedLocks(
+      VEHICLE_LOCK_STRIPES);
+
+  /**
+   * Set once we've been run as an enricher, at which point the layover service
+   * is updated in {@link #enrich(ServiceDelivery)} and not in
+   * {@link #filter(ServiceDelivery, AbstractServiceDeliveryStructure)}
+   */
+  private volatile boolean _enriched = false;
+
   public void setDataPath(String path) {
     try {
       _layoverService.loadLayoverLocations(new File(path));
@@ -47,8 +82,44 @@ public class LayoverFilter implements SiriModuleDeliveryFilter {
   
   public void setLayoverService(LayoverService layoverService) {
     _layoverService = layoverService;
+    _ownsLayoverService = false;
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (_ownsLayoverService)
+      _layoverService.stop();
   }
   
+  /****
+   * {@link SiriServiceDeliveryEnricher} Interface
+   ****/
+
+  @Override
+  public void enrich(ServiceDelivery delivery) {
+    _enriched = true;
+    for (VehicleMonitoringDeliveryStructure vm : delivery.getVehicleMonitoringDelivery()) {
+      for (VehicleActivityStructure activity : vm.getVehicleActivity()) {
+        MonitoredVehicleJourney mvj = activity.getMonitoredVehicleJourney();
+        if (mvj == null || hasMonitoringError(mvj)) {
+          continue;
+        }
+        String vehicleRef = getVehicleRef(mvj);
+        if (vehicleRef == null) {
+          _layoverService.updateVehicle(activity);
+        } else {
+          synchronized (_vehicleLocks.getLock(vehicleRef)) {
+            _layoverService.updateVehicle(activity);
+          }
+        }
+      }
+    }
+  }
+
+  /****
+   * {@link SiriModuleDeliveryFilter} Interface
+   ****/
+
   @Override
   public AbstractServiceDeliveryStructure filter(ServiceDelivery delivery,
       AbstractServiceDeliveryStructure moduleDelivery) {
@@ -56,26 +127,51 @@ public class LayoverFilter implements SiriModuleDeliveryFilter {
       return moduleDelivery;
     }
     VehicleMonitoringDeliveryStructure vm = (VehicleMonitoringDeliveryStructure) moduleDelivery;
+    boolean update = !_enriched;
     for (VehicleActivityStructure activity : vm.getVehicleActivity()) {
       MonitoredVehicleJourney mvj = activity.getMonitoredVehicleJourney();
-      if (!hasMonitoringError(mvj)) {
-        _layoverService.updateVehicle(activity);
-      }
-      
-      if (mvj.getVehicleRef() != null) {
-        String vehicleRef = mvj.getVehicleRef().getValue();
-        if (_layoverService.isVehiclePausedAtLayoverLocation(vehicleRef)) {
-          OneBusAwayVehicleActivity vaExtension = new OneBusAwayVehicleActivity();
-          vaExtension.setLayover(true);
-          ExtensionsStructure extensions = new ExtensionsStructure();
-          extensions.setAny(vaExtension);
-          activity.setExtensions(extensions);
+
+      /**
+       * Deliveries may be published from multiple threads (see
+       * PartitionedExecutor). The layover service is itself thread-safe, but
+       * the update and the paused check for a vehicle must happen together, so
+       * we hold a lock striped by VehicleRef such that different vehicles don't
+       * contend.
+       */
+      boolean paused = false;
+      String vehicleRef = getVehicleRef(mvj);
+      if (vehicleRef == null) {
+        if (update && !hasMonitoringError(mvj)) {
+          _layoverService.updateVehicle(activity);
         }
+      } else {
+        synchronized (_vehicleLocks.getLock(vehicleRef)) {
+          if (update && !hasMonitoringError(mvj)) {
+            _layoverService.updateVehicle(activity);
+          }
+          paused = _layoverService.isVehiclePausedAtLayoverLocation(vehicleRef);
+        }
+      }
+
+      if (paused) {
+        OneBusAwayVehicleActivity vaExtension = new OneBusAwayVehicleActivity();
+        vaExtension.setLayover(true);
+        ExtensionsStructure extensions = new ExtensionsStructure();
+        extensions.setAny(vaExtension);
+        activity.setExtensions(extensions);
       }
     }
     return moduleDelivery;
   }
 
+  /****
+   * Private Methods
+   ****/
+
+  private static String getVehicleRef(MonitoredVehicleJourney mvj) {
+    return mvj.getVehicleRef() != null ? mvj.getVehicleRef().getValue() : null;
+  }
+
   private boolean hasMonitoringError(MonitoredVehicleJourney mvj) {
     if (mvj.isMonitored() != null && mvj.isMonitored()) {
       return false;
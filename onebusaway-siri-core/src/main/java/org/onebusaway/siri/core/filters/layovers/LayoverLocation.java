@@ -28,7 +28,7 @@ class LayoverLocation implements Serializable {
    * Paused locations within the specified distance will be considered included
    * in this layover location.
    */
-  private static final double MAX_LAYOVER_CLUSTER_DISTANCE_M = 150;
+  static final double MAX_LAYOVER_CLUSTER_DISTANCE_M = 150;
 
   /**
    * We only get rid of a layover location if we haven't received an update in a
@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters.layovers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A uniform lat-lon grid index over {@link LayoverLocation} centroids. Since a
+ * layover location only includes points within
+ * {@link LayoverLocation#MAX_LAYOVER_CLUSTER_DISTANCE_M} of its centroid, a
+ * lookup only has to examine the handful of grid cells within that distance of
+ * the query point, regardless of how many layover locations there are.
+ * 
+ * Layover location centroids drift as new samples are added, so callers must
+ * call {@link #handleLocationMoved(LayoverLocation, CoordinatePoint)} after
+ * updating a location.
+ * 
+ * This class is not thread-safe.
+ * 
+ * @author agent
+ */
+class LayoverLocationIndex {
+
+  /**
+   * Roughly 220 meters of latitude, such that a lookup typically touches no
+   * more than a 3x3 block of cells
+   */
+  private static final double CELL_SIZE_DEGREES = 0.002;
+
+  private static final double METERS_PER_DEGREE = CoordinatePoint.RADIUS_OF_EARTH_IN_KM
+      * 1000 * Math.PI / 180;
+
+  private final Map<Long, List<LayoverLocation>> _locationsByCell = new HashMap<Long, List<LayoverLocation>>();
+
+  /**
+   * All locations, in insertion order
+   */
+  private final Set<LayoverLocation> _locations = new LinkedHashSet<LayoverLocation>();
+
+  public int size() {
+    return _locations.size();
+  }
+
+  public boolean isEmpty() {
+    return _locations.isEmpty();
+  }
+
+  public List<LayoverLocation> getLayoverLocations() {
+    return new ArrayList<LayoverLocation>(_locations);
+  }
+
+  public void add(LayoverLocation location) {
+    if (!_locations.add(location))
+      return;
+    addToCell(getCellKey(location.getCentroid()), location);
+  }
+
+  public void remove(LayoverLocation location) {
+    if (!_locations.remove(location))
+      return;
+    removeFromCell(getCellKey(location.getCentroid()), location);
+  }
+
+  /**
+   * Move a layover location to the grid cell of its current centroid.
+   * 
+   * @param location
+   * @param previousCentroid the centroid of the location when it was last
+   *          indexed
+   */
+  public void handleLocationMoved(LayoverLocation location,
+      CoordinatePoint previousCentroid) {
+    if (!_locations.contains(location))
+      return;
+    long from = getCellKey(previousCentroid);
+    long to = getCellKey(location.getCentroid());
+    if (from == to)
+      return;
+    removeFromCell(from, location);
+    addToCell(to, location);
+  }
+
+  /**
+   * Find the layover location with the closest centroid that includes the
+   * specified point.
+   * 
+   * @param point
+   * @param significantOnly if true, only consider significant layover
+   *          locations (see {@link LayoverLocation#isSignificant()})
+   * @return the closest layover location including the point, or null if none
+   */
+  public LayoverLocation getLayoverLocationIncludingPoint(
+      CoordinatePoint point, boolean significantOnly) {
+
+    if (_locations.isEmpty())
+      return null;
+
+    double radius = LayoverLocation.MAX_LAYOVER_CLUSTER_DISTANCE_M;
+    double latOffset = radius / METERS_PER_DEGREE;
+    double cos = Math.max(Math.cos(Math.toRadians(point.getLat())), 0.01);
+    double lonOffset = latOffset / cos;
+
+    int minLatIndex = getIndex(point.getLat() - latOffset);
+    int maxLatIndex = getIndex(point.getLat() + latOffset);
+    int minLonIndex = getIndex(point.getLng() - lonOffset);
+    int maxLonIndex = getIndex(point.getLng() + lonOffset);
+
+    LayoverLocation best = null;
+    double bestDistance = Double.POSITIVE_INFINITY;
+
+    for (int latIndex = minLatIndex; latIndex <= maxLatIndex; ++latIndex) {
+      for (int lonIndex = minLonIndex; lonIndex <= maxLonIndex; ++lonIndex) {
+        List<LayoverLocation> locations = _locationsByCell.get(getCellKey(
+            latIndex, lonIndex));
+        if (locations == null)
+          continue;
+        for (LayoverLocation location : locations) {
+          if (significantOnly && !location.isSignificant())
+            continue;
+          double distance = location.getCentroid().getDistance(point);
+          if (distance <= radius && distance < bestDistance) {
+            best = location;
+            bestDistance = distance;
+          }
+        }
+      }
+    }
+
+    return best;
+  }
+
+  /**
+   * Remove stale layover locations from the index.
+   * 
+   * @param t the current time
+   * @return the locations that were removed
+   */
+  public List<LayoverLocation> removeStaleLocations(long t) {
+    List<LayoverLocation> removed = new ArrayList<LayoverLocation>();
+    for (Iterator<LayoverLocation> it = _locations.iterator(); it.hasNext();) {
+      LayoverLocation location = it.next();
+      if (location.isStale(t)) {
+        it.remove();
+        removeFromCell(getCellKey(location.getCentroid()), location);
+        removed.add(location);
+      }
+    }
+    return removed;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void addToCell(long key, LayoverLocation location) {
+    List<LayoverLocation> locations = _locationsByCell.get(key);
+    if (locations == null) {
+      locations = new ArrayList<LayoverLocation>(2);
+      _locationsByCell.put(key, locations);
+    }
+    locations.add(location);
+  }
+
+  private void removeFromCell(long key, LayoverLocation location) {
+    List<LayoverLocation> locations = _locationsByCell.get(key);
+    if (locations == null)
+      return;
+    locations.remove(location);
+    if (locations.isEmpty())
+      _locationsByCell.remove(key);
+  }
+
+  private static int getIndex(double value) {
+    return (int) Math.floor(value / CELL_SIZE_DEGREES);
+  }
+
+  private static long getCellKey(CoordinatePoint p) {
+    return getCellKey(getIndex(p.getLat()), getIndex(p.getLng()));
+  }
+
+  private static long getCellKey(int latIndex, int lonIndex) {
+    return ((long) latIndex << 32) | (lonIndex & 0xffffffffL);
+  }
+}
@@ -0,0 +1,494 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters.layovers;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists layover locations to disk as a compact binary snapshot, plus a small
+ * append-only journal of the layover samples recorded since the last snapshot.
+ * 
+ * A snapshot is written to a temporary file and then renamed into place, such
+ * that a crash mid-write never leaves a truncated data file behind. Each
+ * snapshot carries a generation number, which is also written to the header of
+ * the journal that follows it. On load, the journal is only replayed if its
+ * generation matches the snapshot, such that a crash between writing a snapshot
+ * and resetting the journal doesn't count the same samples twice. A partially
+ * written journal record at the end of the file is discarded.
+ * 
+ * Snapshots are memory-mapped on load. Data files in the older
+ * "lineRef,lat,lng,samples" text format are still read, and are replaced by the
+ * binary format on the next snapshot.
+ * 
+ * Samples are queued with {@link #addSample(String, CoordinatePoint, long)} and
+ * only written by {@link #flushJournal()}, such that callers can keep disk I/O
+ * off the update path. Each sample is assigned a sequence number, which allows
+ * {@link #writeSnapshot(Snapshot)} to drop queued samples that the snapshot
+ * already includes.
+ * 
+ * All operations that touch the files synchronize on the store. A caller that
+ * captures a snapshot and then writes it must hold the store lock across both
+ * steps. Otherwise a journal flush in between could write samples newer than
+ * the snapshot to the journal, which the snapshot would then reset.
+ * 
+ * @author agent
+ */
+class LayoverLocationStore {
+
+  private static Logger _log = LoggerFactory.getLogger(LayoverLocationStore.class);
+
+  private static final int SNAPSHOT_MAGIC = 0x4C594F53;
+
+  private static final int JOURNAL_MAGIC = 0x4C594F4A;
+
+  private static final int FORMAT_VERSION = 1;
+
+  private static final int HEADER_SIZE = 16;
+
+  private static final Charset _utf8 = Charset.forName("UTF-8");
+
+  private final File _path;
+
+  private final File _journalPath;
+
+  private final File _tmpPath;
+
+  private final Queue<Sample> _pendingSamples = new ConcurrentLinkedQueue<Sample>();
+
+  private final AtomicLong _sequence = new AtomicLong();
+
+  /**
+   * The sequence number of the last sample included in the most recent
+   * snapshot
+   */
+  private long _snapshotSequence = 0;
+
+  private long _generation = 0;
+
+  /**
+   * True if the journal on disk exists and belongs to the current generation
+   */
+  private boolean _journalValid = false;
+
+  private int _journalSampleCount = 0;
+
+  public LayoverLocationStore(File path) {
+    _path = path;
+    _journalPath = new File(path.getPath() + ".journal");
+    _tmpPath = new File(path.getPath() + ".tmp");
+  }
+
+  public File getPath() {
+    return _path;
+  }
+
+  /**
+   * 
+   * @return the number of samples in the journal on disk
+   */
+  public synchronized int getJournalSampleCount() {
+    return _journalSampleCount;
+  }
+
+  /**
+   * 
+   * @return the sequence number of the most recently added sample. If read
+   *         while holding the same lock that guards calls to
+   *         {@link #addSample(String, CoordinatePoint, long)}, every sample up
+   *         to and including this sequence number is reflected in the guarded
+   *         state.
+   */
+  public long getSequence() {
+    return _sequence.get();
+  }
+
+  /**
+   * Load the snapshot and replay the journal, if present, passing the results
+   * to the specified handler.
+   */
+  public synchronized void load(Handler handler) throws IOException {
+
+    _generation = 0;
+
+    if (_path.exists()) {
+      if (isSnapshot(_path)) {
+        _generation = readSnapshot(handler);
+      } else {
+        readLegacy(handler);
+      }
+    }
+
+    _journalValid = false;
+    _journalSampleCount = 0;
+    if (_journalPath.exists()) {
+      replayJournal(handler);
+    }
+  }
+
+  /**
+   * Queue a layover sample to be written to the journal on the next call to
+   * {@link #flushJournal()}.
+   */
+  public void addSample(String lineRef, CoordinatePoint location, long time) {
+    _pendingSamples.add(new Sample(_sequence.incrementAndGet(), lineRef,
+        location.getLat(), location.getLng(), time));
+  }
+
+  public boolean hasPendingSamples() {
+    return !_pendingSamples.isEmpty();
+  }
+
+  /**
+   * Append any queued samples not already included in a snapshot to the
+   * journal.
+   */
+  public synchronized void flushJournal() throws IOException {
+
+    if (_pendingSamples.isEmpty())
+      return;
+
+    if (!_journalValid)
+      resetJournal();
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(_journalPath, true)));
+    try {
+      Sample sample = null;
+      while ((sample = _pendingSamples.poll()) != null) {
+        if (sample.sequence <= _snapshotSequence)
+          continue;
+        writeString(out, sample.lineRef);
+        out.writeDouble(sample.lat);
+        out.writeDouble(sample.lng);
+        out.writeLong(sample.time);
+        _journalSampleCount++;
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Atomically replace the data file with the specified snapshot and start a
+   * new, empty journal.
+   */
+  public synchronized void writeSnapshot(Snapshot snapshot) throws IOException {
+
+    long generation = _generation + 1;
+
+    FileOutputStream fileOut = new FileOutputStream(_tmpPath);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        fileOut));
+    try {
+      out.writeInt(SNAPSHOT_MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(generation);
+      out.writeInt(snapshot._lineRefs.size());
+      for (int i = 0; i < snapshot._lineRefs.size(); ++i) {
+        double[] coordinates = snapshot._coordinates.get(i);
+        int[] samples = snapshot._samples.get(i);
+        writeString(out, snapshot._lineRefs.get(i));
+        out.writeInt(samples.length);
+        for (int j = 0; j < samples.length; ++j) {
+          out.writeDouble(coordinates[j * 2]);
+          out.writeDouble(coordinates[j * 2 + 1]);
+          out.writeInt(samples[j]);
+        }
+      }
+      out.flush();
+      fileOut.getFD().sync();
+    } finally {
+      out.close();
+    }
+
+    if (!_tmpPath.renameTo(_path)) {
+      /**
+       * Some platforms won't rename over an existing file
+       */
+      _path.delete();
+      if (!_tmpPath.renameTo(_path))
+        throw new IOException("error renaming " + _tmpPath + " to " + _path);
+    }
+
+    _generation = generation;
+    _snapshotSequence = Math.max(_snapshotSequence, snapshot._sequence);
+    resetJournal();
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void resetJournal() throws IOException {
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(
+        _journalPath));
+    try {
+      out.writeInt(JOURNAL_MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(_generation);
+    } finally {
+      out.close();
+    }
+    _journalValid = true;
+    _journalSampleCount = 0;
+  }
+
+  private static boolean isSnapshot(File path) throws IOException {
+    if (path.length() < HEADER_SIZE)
+      return false;
+    FileInputStream in = new FileInputStream(path);
+    try {
+      byte[] header = new byte[4];
+      return in.read(header) == header.length
+          && ByteBuffer.wrap(header).getInt() == SNAPSHOT_MAGIC;
+    } finally {
+      in.close();
+    }
+  }
+
+  private long readSnapshot(Handler handler) throws IOException {
+
+    ByteBuffer buffer = map(_path);
+
+    buffer.getInt();
+    int version = buffer.getInt();
+    if (version != FORMAT_VERSION)
+      throw new IOException("unknown layover snapshot version " + version
+          + " in " + _path);
+    long generation = buffer.getLong();
+
+    try {
+      int lineCount = buffer.getInt();
+      for (int i = 0; i < lineCount; ++i) {
+        String lineRef = readString(buffer);
+        int count = buffer.getInt();
+        for (int j = 0; j < count; ++j) {
+          double lat = buffer.getDouble();
+          double lng = buffer.getDouble();
+          int samples = buffer.getInt();
+          handler.handleLayoverLocation(lineRef, lat, lng, samples);
+        }
+      }
+    } catch (BufferUnderflowException ex) {
+      throw new IOException("truncated layover snapshot " + _path);
+    }
+
+    return generation;
+  }
+
+  private void readLegacy(Handler handler) throws IOException {
+    BufferedReader reader = new BufferedReader(new FileReader(_path));
+    try {
+      String line = null;
+      while ((line = reader.readLine()) != null) {
+        String[] tokens = line.split(",");
+        if (tokens.length < 4) {
+          throw new IllegalStateException(
+              "Invalid serialized layover location=" + line);
+        }
+        handler.handleLayoverLocation(tokens[0],
+            Double.parseDouble(tokens[1]), Double.parseDouble(tokens[2]),
+            Integer.parseInt(tokens[3]));
+      }
+    } finally {
+      try {
+        reader.close();
+      } catch (IOException ex) {
+        _log.error("error closing file", ex);
+      }
+    }
+  }
+
+  private void replayJournal(Handler handler) throws IOException {
+
+    if (_journalPath.length() < HEADER_SIZE) {
+      _log.warn("ignoring incomplete layover journal " + _journalPath);
+      return;
+    }
+
+    ByteBuffer buffer = map(_journalPath);
+
+    if (buffer.getInt() != JOURNAL_MAGIC || buffer.getInt() != FORMAT_VERSION) {
+      _log.warn("ignoring unknown layover journal " + _journalPath);
+      return;
+    }
+
+    long generation = buffer.getLong();
+    if (generation != _generation) {
+      _log.info("ignoring layover journal from generation " + generation
+          + ", expected " + _generation);
+      return;
+    }
+
+    int position = buffer.position();
+    int count = 0;
+    try {
+      while (buffer.hasRemaining()) {
+        String lineRef = readString(buffer);
+        double lat = buffer.getDouble();
+        double lng = buffer.getDouble();
+        long time = buffer.getLong();
+        handler.handleJournalSample(lineRef, lat, lng, time);
+        position = buffer.position();
+        count++;
+      }
+    } catch (BufferUnderflowException ex) {
+      /**
+       * The last record was only partially written. Trim it, such that new
+       * records are appended after the last complete one.
+       */
+      _log.warn("discarding partial record at end of layover journal "
+          + _journalPath);
+      RandomAccessFile file = new RandomAccessFile(_journalPath, "rw");
+      try {
+        file.setLength(position);
+      } finally {
+        file.close();
+      }
+    }
+
+    _journalValid = true;
+    _journalSampleCount = count;
+  }
+
+  private static ByteBuffer map(File path) throws IOException {
+    FileInputStream in = new FileInputStream(path);
+    try {
+      FileChannel channel = in.getChannel();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          channel.size());
+      buffer.load();
+      return buffer;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value)
+      throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(_utf8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0)
+      return null;
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, _utf8);
+  }
+
+  /****
+   * Support Classes
+   ****/
+
+  interface Handler {
+
+    public void handleLayoverLocation(String lineRef, double lat, double lng,
+        int samples);
+
+    public void handleJournalSample(String lineRef, double lat, double lng,
+        long time);
+  }
+
+  /**
+   * A point-in-time copy of all layover locations, to be written without
+   * holding any locks.
+   */
+  static class Snapshot {
+
+    private final long _sequence;
+
+    private final List<String> _lineRefs = new ArrayList<String>();
+
+    private final List<double[]> _coordinates = new ArrayList<double[]>();
+
+    private final List<int[]> _samples = new ArrayList<int[]>();
+
+    /**
+     * 
+     * @param sequence the sequence number of the last sample reflected in the
+     *          snapshot, as returned by {@link LayoverLocationStore#getSequence()}
+     */
+    public Snapshot(long sequence) {
+      _sequence = sequence;
+    }
+
+    public void addLine(String lineRef, List<LayoverLocation> locations) {
+      double[] coordinates = new double[locations.size() * 2];
+      int[] samples = new int[locations.size()];
+      for (int i = 0; i < samples.length; ++i) {
+        LayoverLocation location = locations.get(i);
+        CoordinatePoint p = location.getCentroid();
+        coordinates[i * 2] = p.getLat();
+        coordinates[i * 2 + 1] = p.getLng();
+        samples[i] = location.getSamples();
+      }
+      _lineRefs.add(lineRef);
+      _coordinates.add(coordinates);
+      _samples.add(samples);
+    }
+  }
+
+  private static class Sample {
+
+    private final long sequence;
+
+    private final String lineRef;
+
+    private final double lat;
+
+    private final double lng;
+
+    private final long time;
+
+    public Sample(long sequence, String lineRef, double lat, double lng,
+        long time) {
+      this.sequence = sequence;
+      this.lineRef = lineRef;
+      this.lat = lat;
+      this.lng = lng;
+      this.time = time;
+    }
+  }
+}
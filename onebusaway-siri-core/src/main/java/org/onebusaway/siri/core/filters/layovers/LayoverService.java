@@ -27,4 +27,9 @@ public interface LayoverService {
   void updateVehicle(VehicleActivityStructure activity);
 
   boolean isVehiclePausedAtLayoverLocation(String vehicleRef);
+
+  /**
+   * Stop any background housekeeping started by the service
+   */
+  void stop();
 }
@@ -15,19 +15,26 @@
  */
 package org.onebusaway.siri.core.filters.layovers;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +49,17 @@ import uk.org.siri.siri.VehicleActivityStructure.MonitoredVehicleJourney;
  * equipment still running. It is useful to be able to detect these situations
  * such that we might take action.
  * 
+ * This class is thread-safe. Per-vehicle state is guarded by a striped set of
+ * locks keyed by VehicleRef, such that updates for different vehicles proceed
+ * in parallel. The layover location indices are guarded by a read-write lock,
+ * since they are read for every update but only modified when a vehicle
+ * finishes a pause. Housekeeping (pruning stale records and saving layover
+ * locations) runs in the background, off the update path.
+ * 
+ * Layover locations are persisted with a {@link LayoverLocationStore}: each
+ * new layover sample is appended to a journal in the background, and a full
+ * snapshot is written during housekeeping or once the journal grows large.
+ * 
  * @author bdferris
  */
 class LayoverServiceImpl implements LayoverService {
@@ -52,22 +70,60 @@ class LayoverServiceImpl implements LayoverService {
 
   private static final long MAX_UPDATES_SINCE_TRIP_CHANGE_FOR_LAYOVER_LOCATION = 2;
 
-  private Map<String, VehicleLocation> _vehiclesById = new HashMap<String, VehicleLocation>();
+  private static final int VEHICLE_LOCK_STRIPES = 64;
+
+  /**
+   * Once the journal holds this many samples, we write a new snapshot rather
+   * than wait for the next housekeeping pass
+   */
+  private static final int MAX_JOURNAL_SAMPLES = 10000;
+
+  private ConcurrentMap<String, VehicleLocation> _vehiclesById = new ConcurrentHashMap<String, VehicleLocation>();
+
+  private final StripedLocks _vehicleLocks = new StripedLocks(
+      VEHICLE_LOCK_STRIPES);
+
+  /**
+   * Guards {@link #_layoverLocationsByLineRef} and
+   * {@link #_allLayoverLocations}, along with the state of the layover
+   * locations themselves.
+   */
+  private final ReadWriteLock _layoverLock = new ReentrantReadWriteLock();
 
   /**
    * We group layover locations by LineRef since vehicles belonging to the same
-   * line tend to have specific layover locations. More importantly, since most
-   * lines have just one or two layover locations, it reduces the number of
-   * locations we have to check when determining if a particular paused vehicle
-   * is a layover location without having to resort to fancier techniques (eg.
-   * geo-spatial index).
+   * line tend to have specific layover locations. Each group is spatially
+   * indexed, since heavily interlined lines (or vehicles with no LineRef at
+   * all, which share a single group) can accumulate many layover locations.
+   */
+  private Map<String, LayoverLocationIndex> _layoverLocationsByLineRef = new HashMap<String, LayoverLocationIndex>();
+
+  /**
+   * All layover locations, regardless of line, used for vehicles that don't
+   * specify a LineRef.
    */
-  private Map<String, List<LayoverLocation>> _layoverLocationsByLineRef = new HashMap<String, List<LayoverLocation>>();
+  private LayoverLocationIndex _allLayoverLocations = new LayoverLocationIndex();
 
   /**
    * Time at which we last performed house-keeping operations.
    */
-  private long _lastHousekeepingTime = -1;
+  private AtomicLong _lastHousekeepingTime = new AtomicLong(-1);
+
+  private AtomicBoolean _housekeepingInProgress = new AtomicBoolean();
+
+  private AtomicBoolean _journalFlushScheduled = new AtomicBoolean();
+
+  /**
+   * Runs housekeeping operations. If not specified, a daemon thread is created
+   * on first use.
+   */
+  private Executor _housekeepingExecutor;
+
+  /**
+   * The housekeeping executor we created ourselves, if any, which we shut down
+   * in {@link #stop()}
+   */
+  private ExecutorService _ownedHousekeepingExecutor;
 
   private PausedLocationListener _pausedLocationListener = new PausedLocationListenerImpl();
 
@@ -78,13 +134,37 @@ class LayoverServiceImpl implements LayoverService {
    * file allows the service to initialize with a known set of layover locations
    * on startup.
    */
-  private File _dataPath;
+  private volatile LayoverLocationStore _store;
 
   /**
    * @param path the file where layover locations will be read and written
    */
-  public void setDataPath(File path) {
-    _dataPath = path;
+  public synchronized void setDataPath(File path) {
+    if (path == null) {
+      _store = null;
+    } else if (_store == null || !_store.getPath().equals(path)) {
+      _store = new LayoverLocationStore(path);
+    }
+  }
+
+  /**
+   * @param executor the executor used to run background housekeeping
+   */
+  public synchronized void setHousekeepingExecutor(Executor executor) {
+    _housekeepingExecutor = executor;
+  }
+
+  /**
+   * Stops the housekeeping executor, if we created it. Housekeeping tasks
+   * already queued are allowed to finish, while later housekeeping requests are
+   * rejected and logged.
+   */
+  @PreDestroy
+  @Override
+  public synchronized void stop() {
+    if (_ownedHousekeepingExecutor != null) {
+      _ownedHousekeepingExecutor.shutdown();
+    }
   }
 
   /**
@@ -103,89 +183,150 @@ class LayoverServiceImpl implements LayoverService {
       return;
     }
     String vehicleRef = mvj.getVehicleRef().getValue();
-    VehicleLocation vehicle = _vehiclesById.get(vehicleRef);
-    if (vehicle == null) {
-      vehicle = new VehicleLocation(vehicleRef);
-      _vehiclesById.put(vehicleRef, vehicle);
+    synchronized (_vehicleLocks.getLock(vehicleRef)) {
+      VehicleLocation vehicle = _vehiclesById.get(vehicleRef);
+      if (vehicle == null) {
+        vehicle = new VehicleLocation(vehicleRef);
+        _vehiclesById.put(vehicleRef, vehicle);
+      }
+      vehicle.update(recordedAt, mvj, _pausedLocationListener);
     }
-    vehicle.update(recordedAt, mvj, _pausedLocationListener);
     performHousekeepingIfNeeded(recordedAt);
   }
 
   public boolean isVehiclePaused(String vehicleRef) {
-    VehicleLocation vehicle = _vehiclesById.get(vehicleRef);
-    if (vehicle == null) {
-      return false;
+    synchronized (_vehicleLocks.getLock(vehicleRef)) {
+      VehicleLocation vehicle = _vehiclesById.get(vehicleRef);
+      if (vehicle == null) {
+        return false;
+      }
+      return vehicle.isPaused();
     }
-    return vehicle.isPaused();
   }
 
   @Override
   public boolean isVehiclePausedAtLayoverLocation(String vehicleRef) {
-    VehicleLocation vehicle = _vehiclesById.get(vehicleRef);
-    if (vehicle == null) {
-      return false;
+    String lineRef = null;
+    CoordinatePoint point = null;
+    synchronized (_vehicleLocks.getLock(vehicleRef)) {
+      VehicleLocation vehicle = _vehiclesById.get(vehicleRef);
+      if (vehicle == null) {
+        return false;
+      }
+      if (!vehicle.isPaused()) {
+        return false;
+      }
+      lineRef = vehicle.getLineRef();
+      point = vehicle.getLocation();
     }
-    if (!vehicle.isPaused()) {
-      return false;
+    LayoverLocation location = null;
+    _layoverLock.readLock().lock();
+    try {
+      LayoverLocationIndex locations = lineRef == null ? _allLayoverLocations
+          : _layoverLocationsByLineRef.get(lineRef);
+      if (locations != null) {
+        location = locations.getLayoverLocationIncludingPoint(point, true);
+      }
+    } finally {
+      _layoverLock.readLock().unlock();
     }
-    String lineRef = vehicle.getLineRef();
-    List<LayoverLocation> locations = _layoverLocationsByLineRef.get(lineRef);
-    if (locations == null) {
+    if (location == null) {
       return false;
     }
-    for (LayoverLocation location : locations) {
-      if (location.isSignificant()
-          && location.includesLocation(vehicle.getLocation())) {
-        _log.debug("vehicle_paused_in_layover={}", vehicleRef);
-        return true;
-      }
-    }
-    return false;
+    _log.debug("vehicle_paused_in_layover={}", vehicleRef);
+    return true;
   }
 
   private void processPotentialLayoverLocation(PausedLocation pausedLocation) {
     if (pausedLocation.getUpdatesSinceTripChange() > MAX_UPDATES_SINCE_TRIP_CHANGE_FOR_LAYOVER_LOCATION) {
       return;
     }
-    String lineRef = pausedLocation.getLineRef();
-    List<LayoverLocation> locations = getOrCreateLayoverLocationsForLineRef(lineRef);
-    boolean updatedExistingCluster = false;
-    for (LayoverLocation layoverLocation : locations) {
-      if (layoverLocation.includesLocation(pausedLocation.getLocation())) {
-        boolean wasSignificant = layoverLocation.isSignificant();
-        layoverLocation.update(pausedLocation.getLocation(),
-            pausedLocation.getEndTime());
-        if (!wasSignificant && layoverLocation.isSignificant()) {
-          _log.debug("significant_layover_location="
-              + layoverLocation.getCentroid() + " " + lineRef);
-        }
-        updatedExistingCluster = true;
-        break;
+    LayoverLocationStore store = _store;
+    _layoverLock.writeLock().lock();
+    try {
+      addLayoverSample(pausedLocation.getLineRef(),
+          pausedLocation.getLocation(), pausedLocation.getEndTime());
+      /**
+       * Samples are queued under the write lock, such that their sequence
+       * numbers are consistent with the state captured by a snapshot
+       */
+      if (store != null) {
+        store.addSample(pausedLocation.getLineRef(),
+            pausedLocation.getLocation(),
+            pausedLocation.getEndTime().getTime());
       }
+    } finally {
+      _layoverLock.writeLock().unlock();
     }
-    if (!updatedExistingCluster) {
-      _log.debug("new_layover_location=" + pausedLocation + " " + lineRef);
-      locations.add(new LayoverLocation(pausedLocation));
+    if (store != null) {
+      scheduleJournalFlush();
     }
   }
 
-  private List<LayoverLocation> getOrCreateLayoverLocationsForLineRef(
+  private void addLayoverSample(String lineRef, CoordinatePoint point,
+      Date time) {
+    LayoverLocationIndex locations = getOrCreateLayoverLocationsForLineRef(lineRef);
+    LayoverLocation layoverLocation = locations.getLayoverLocationIncludingPoint(
+        point, false);
+    if (layoverLocation != null) {
+      boolean wasSignificant = layoverLocation.isSignificant();
+      CoordinatePoint previousCentroid = layoverLocation.getCentroid();
+      layoverLocation.update(point, time);
+      locations.handleLocationMoved(layoverLocation, previousCentroid);
+      _allLayoverLocations.handleLocationMoved(layoverLocation,
+          previousCentroid);
+      if (!wasSignificant && layoverLocation.isSignificant()) {
+        _log.debug("significant_layover_location="
+            + layoverLocation.getCentroid() + " " + lineRef);
+      }
+    } else {
+      _log.debug("new_layover_location=" + point + " " + lineRef);
+      addLayoverLocation(locations, new LayoverLocation(point, time, 1));
+    }
+  }
+
+  private LayoverLocationIndex getOrCreateLayoverLocationsForLineRef(
       String lineRef) {
-    List<LayoverLocation> locations = _layoverLocationsByLineRef.get(lineRef);
+    LayoverLocationIndex locations = _layoverLocationsByLineRef.get(lineRef);
     if (locations == null) {
-      locations = new ArrayList<LayoverLocation>();
+      locations = new LayoverLocationIndex();
       _layoverLocationsByLineRef.put(lineRef, locations);
     }
     return locations;
   }
 
+  private void addLayoverLocation(LayoverLocationIndex locations,
+      LayoverLocation location) {
+    locations.add(location);
+    _allLayoverLocations.add(location);
+  }
+
+  /**
+   * Housekeeping is driven by the data timestamps rather than the wall clock,
+   * but the actual work is handed off to the housekeeping executor such that
+   * the updating thread never blocks on it.
+   */
   private void performHousekeepingIfNeeded(Date currentTime) {
-    long t = currentTime.getTime();
-    if (t - _lastHousekeepingTime < MAX_TIME_BETWEEN_HOUSEKEEPING_MS) {
+    final long t = currentTime.getTime();
+    long lastHousekeepingTime = _lastHousekeepingTime.get();
+    if (t - lastHousekeepingTime < MAX_TIME_BETWEEN_HOUSEKEEPING_MS) {
       return;
     }
-    _lastHousekeepingTime = t;
+    if (!_lastHousekeepingTime.compareAndSet(lastHousekeepingTime, t)) {
+      return;
+    }
+    if (!_housekeepingInProgress.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      getHousekeepingExecutor().execute(new HousekeepingTask(t));
+    } catch (RuntimeException ex) {
+      _housekeepingInProgress.set(false);
+      _log.error("error scheduling layover housekeeping", ex);
+    }
+  }
+
+  private void performHousekeeping(long t) {
     pruneStaleRecords(t);
     try {
       saveLayoverLocations();
@@ -195,81 +336,131 @@ class LayoverServiceImpl implements LayoverService {
   }
 
   private void pruneStaleRecords(long t) {
-    for (Iterator<VehicleLocation> it = _vehiclesById.values().iterator(); it.hasNext();) {
-      VehicleLocation vehicle = it.next();
-      if (vehicle.isStale(t)) {
-        it.remove();
+    for (Iterator<Map.Entry<String, VehicleLocation>> it = _vehiclesById.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<String, VehicleLocation> entry = it.next();
+      synchronized (_vehicleLocks.getLock(entry.getKey())) {
+        if (entry.getValue().isStale(t)) {
+          _vehiclesById.remove(entry.getKey(), entry.getValue());
+        }
       }
     }
-    for (List<LayoverLocation> locations : _layoverLocationsByLineRef.values()) {
-      for (Iterator<LayoverLocation> it = locations.iterator(); it.hasNext();) {
-        LayoverLocation location = it.next();
-        if (location.isStale(t)) {
+    _layoverLock.writeLock().lock();
+    try {
+      for (Iterator<LayoverLocationIndex> it = _layoverLocationsByLineRef.values().iterator(); it.hasNext();) {
+        LayoverLocationIndex locations = it.next();
+        for (LayoverLocation location : locations.removeStaleLocations(t)) {
+          _allLayoverLocations.remove(location);
+        }
+        if (locations.isEmpty()) {
           it.remove();
         }
       }
+    } finally {
+      _layoverLock.writeLock().unlock();
     }
   }
 
-  @Override
-  public void loadLayoverLocations(File dataPath) throws IOException {
-    _dataPath = dataPath;
-    if (!_dataPath.exists()) {
+  private void scheduleJournalFlush() {
+    if (!_journalFlushScheduled.compareAndSet(false, true)) {
       return;
     }
-    BufferedReader reader = new BufferedReader(new FileReader(_dataPath));
-    String line = null;
-    Date now = new Date();
     try {
-      while ((line = reader.readLine()) != null) {
-        String[] tokens = line.split(",");
-        if (tokens.length < 4) {
-          throw new IllegalStateException(
-              "Invalid serialized layover location=" + line);
-        }
-        String lineRef = tokens[0];
-        double lat = Double.parseDouble(tokens[1]);
-        double lng = Double.parseDouble(tokens[2]);
-        CoordinatePoint location = new CoordinatePoint(lat, lng);
-        int samples = Integer.parseInt(tokens[3]);
-        LayoverLocation layoverLocation = new LayoverLocation(location, now,
-            samples);
-        List<LayoverLocation> locations = getOrCreateLayoverLocationsForLineRef(lineRef);
-        locations.add(layoverLocation);
-      }
-    } finally {
-      try {
-        reader.close();
-      } catch (IOException ex) {
-        _log.error("error closing file", ex);
-      }
+      getHousekeepingExecutor().execute(new JournalFlushTask());
+    } catch (RuntimeException ex) {
+      _journalFlushScheduled.set(false);
+      _log.error("error scheduling layover journal flush", ex);
+    }
+  }
+
+  private void flushJournal() throws IOException {
+    LayoverLocationStore store = _store;
+    if (store == null) {
+      return;
+    }
+    store.flushJournal();
+    if (store.getJournalSampleCount() >= MAX_JOURNAL_SAMPLES) {
+      saveLayoverLocations();
+    }
+  }
+
+  private synchronized Executor getHousekeepingExecutor() {
+    if (_housekeepingExecutor == null) {
+      _ownedHousekeepingExecutor = Executors.newSingleThreadExecutor(new HousekeepingThreadFactory());
+      _housekeepingExecutor = _ownedHousekeepingExecutor;
+    }
+    return _housekeepingExecutor;
+  }
+
+  @Override
+  public void loadLayoverLocations(File dataPath) throws IOException {
+    setDataPath(dataPath);
+    final Date now = new Date();
+    LayoverLocationStore store = _store;
+    /**
+     * The store lock is always taken before the layover lock (see
+     * saveLayoverLocations())
+     */
+    synchronized (store) {
+      loadLayoverLocationsFromStore(store, now);
     }
   }
 
+  /**
+   * Write a snapshot of all layover locations to the data path, if one has
+   * been set. The snapshot is captured under the read lock, which is released
+   * for the actual I/O. The store lock is held across the capture, the write
+   * and the journal reset, such that a journal flush can't write samples newer
+   * than the snapshot to a journal that is about to be discarded.
+   */
   public void saveLayoverLocations() throws IOException {
-    if (_dataPath == null) {
+    LayoverLocationStore store = _store;
+    if (store == null) {
       return;
     }
-    BufferedWriter writer = new BufferedWriter(new FileWriter(_dataPath));
-    try {
-      for (Map.Entry<String, List<LayoverLocation>> entry : _layoverLocationsByLineRef.entrySet()) {
-        String lineRef = entry.getKey();
-        for (LayoverLocation location : entry.getValue()) {
-          CoordinatePoint p = location.getCentroid();
-          StringBuilder b = new StringBuilder();
-          b.append(lineRef).append(",");
-          b.append(p.getLat()).append(",");
-          b.append(p.getLng()).append(",");
-          b.append(location.getSamples()).append("\n");
-          writer.write(b.toString());;
+    synchronized (store) {
+      LayoverLocationStore.Snapshot snapshot = null;
+      _layoverLock.readLock().lock();
+      try {
+        snapshot = new LayoverLocationStore.Snapshot(store.getSequence());
+        for (Map.Entry<String, LayoverLocationIndex> entry : _layoverLocationsByLineRef.entrySet()) {
+          snapshot.addLine(entry.getKey(),
+              entry.getValue().getLayoverLocations());
         }
+      } finally {
+        _layoverLock.readLock().unlock();
       }
+      store.writeSnapshot(snapshot);
+    }
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void loadLayoverLocationsFromStore(LayoverLocationStore store,
+      final Date now)
+      throws IOException {
+    _layoverLock.writeLock().lock();
+    try {
+      store.load(new LayoverLocationStore.Handler() {
+        @Override
+        public void handleLayoverLocation(String lineRef, double lat,
+            double lng, int samples) {
+          LayoverLocation layoverLocation = new LayoverLocation(
+              new CoordinatePoint(lat, lng), now, samples);
+          LayoverLocationIndex locations = getOrCreateLayoverLocationsForLineRef(lineRef);
+          addLayoverLocation(locations, layoverLocation);
+        }
+
+        @Override
+        public void handleJournalSample(String lineRef, double lat,
+            double lng, long time) {
+          addLayoverSample(lineRef, new CoordinatePoint(lat, lng), new Date(
+              time));
+        }
+      });
     } finally {
-      try {
-        writer.close();
-      } catch (IOException ex) {
-        _log.error("error closing file", ex);
-      }
+      _layoverLock.writeLock().unlock();
     }
   }
 
@@ -280,12 +471,58 @@ class LayoverServiceImpl implements LayoverService {
     }
   }
 
+  private class HousekeepingTask implements Runnable {
+
+    private final long _time;
+
+    public HousekeepingTask(long time) {
+      _time = time;
+    }
+
+    @Override
+    public void run() {
+      try {
+        performHousekeeping(_time);
+      } catch (Throwable ex) {
+        _log.error("error performing layover housekeeping", ex);
+      } finally {
+        _housekeepingInProgress.set(false);
+      }
+    }
+  }
+
+  private class JournalFlushTask implements Runnable {
+    @Override
+    public void run() {
+      _journalFlushScheduled.set(false);
+      try {
+        flushJournal();
+      } catch (Throwable ex) {
+        _log.error("error flushing layover journal", ex);
+      }
+    }
+  }
+
+  private static class HousekeepingThreadFactory implements ThreadFactory {
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "LayoverServiceImpl-housekeeping");
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
   // Visible for testing
   List<LayoverLocation> getLayoverLocationsForLineRef(String lineRef) {
-    List<LayoverLocation> locations = _layoverLocationsByLineRef.get(lineRef);
-    if (locations == null) {
-      return Collections.emptyList();
+    _layoverLock.readLock().lock();
+    try {
+      LayoverLocationIndex locations = _layoverLocationsByLineRef.get(lineRef);
+      if (locations == null) {
+        return Collections.emptyList();
+      }
+      return locations.getLayoverLocations();
+    } finally {
+      _layoverLock.readLock().unlock();
     }
-    return locations;
   }
 }
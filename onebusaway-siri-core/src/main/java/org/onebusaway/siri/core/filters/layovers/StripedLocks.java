@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters.layovers;
+
+/**
+ * A fixed set of lock objects, striped by VehicleRef, such that operations on
+ * different vehicles rarely contend while operations on the same vehicle are
+ * serialized.
+ * 
+ * @author agent
+ */
+class StripedLocks {
+
+  private final Object[] _locks;
+
+  /**
+   * 
+   * @param count the number of stripes, rounded up to a power of two
+   */
+  public StripedLocks(int count) {
+    int size = 1;
+    while (size < count)
+      size <<= 1;
+    _locks = new Object[size];
+    for (int i = 0; i < size; ++i)
+      _locks[i] = new Object();
+  }
+
+  public Object getLock(String key) {
+    int h = key.hashCode();
+    h ^= (h >>> 16);
+    return _locks[h & (_locks.length - 1)];
+  }
+}
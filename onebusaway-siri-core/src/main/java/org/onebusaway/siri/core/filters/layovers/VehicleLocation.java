@@ -28,6 +28,13 @@ import uk.org.siri.siri.VehicleActivityStructure.MonitoredVehicleJourney;
 
 /**
  * Instance of a single transit vehicle.
+ * 
+ * Since a vehicle is updated every few seconds for as long as it is in
+ * service, state is kept in primitive fields such that a typical update
+ * doesn't allocate anything. Times are stored as ms since the epoch, with
+ * {@link #NO_TIME} standing in for "not set". Rather than keep every merged
+ * location, we keep their running sums, which is all we need to compute the
+ * centroid.
  */
 class VehicleLocation {
 
@@ -53,12 +60,16 @@ class VehicleLocation {
    */
   private static final long MIN_PAUSED_LOCATION_TIME_MS = 5 * 60 * 1000;
 
+  private static final long NO_TIME = Long.MIN_VALUE;
+
+  private static final double RADIUS_OF_EARTH_IN_M = CoordinatePoint.RADIUS_OF_EARTH_IN_KM * 1000;
+
   private final String _vehicleRef;
 
   /**
    * The last time we received an update for this vehicle.
    */
-  private Date _lastUpdateTime;
+  private long _lastUpdateTime = NO_TIME;
 
   private long _lastUpdateIndex = 0;
 
@@ -67,24 +78,33 @@ class VehicleLocation {
    * location updates, but if they are within
    * {@link LayoverServiceImpl#MAX_PAUSED_LOCATION_DISTANCE_M} meters of the
    * previous point, then the vehicle is still considered paused and the
-   * location is not updated. These location updates are instead stored in
-   * {@link #_mergedLocations}.
+   * location is not updated. These location updates are instead merged into
+   * {@link #_mergedLatSum} and {@link #_mergedLngSum}.
    */
-  private CoordinatePoint _location;
+  private boolean _hasLocation = false;
+
+  private double _lat;
+
+  private double _lng;
 
   /**
    * Time at which the current vehicle location was first noted.
    */
-  private Date _lastLocationUpdateTime;
+  private long _lastLocationUpdateTime = NO_TIME;
 
   private long _lastLocationUpdateIndex = 0;
 
   /**
-   * All vehicle locations received since {@link #_lastLocationUpdateTime} that
-   * were ignored because they were sufficiently close to the previous location
-   * update.
+   * Running sums over all vehicle locations received since
+   * {@link #_lastLocationUpdateTime}, including the location itself, that were
+   * merged because they were sufficiently close to the previous location
+   * update. Locations are summed in the order they are received.
    */
-  private List<CoordinatePoint> _mergedLocations = new ArrayList<CoordinatePoint>();
+  private double _mergedLatSum = 0;
+
+  private double _mergedLngSum = 0;
+
+  private int _mergedCount = 0;
 
   /**
    * Some unique identifier for the SIRI line / GTFS route that the vehicle is
@@ -110,11 +130,17 @@ class VehicleLocation {
   }
 
   public CoordinatePoint getLocation() {
-    return _location;
+    if (!_hasLocation) {
+      return null;
+    }
+    return new CoordinatePoint(_lat, _lng);
   }
 
   public Date getLastLocationUpdateTime() {
-    return _lastLocationUpdateTime;
+    if (_lastLocationUpdateTime == NO_TIME) {
+      return null;
+    }
+    return new Date(_lastLocationUpdateTime);
   }
 
   public String getLineRef() {
@@ -122,48 +148,51 @@ class VehicleLocation {
   }
 
   public boolean isStale(long currentTime) {
-    return _lastUpdateTime == null
-        || currentTime - _lastUpdateTime.getTime() > MIN_UPDATE_TIME_MS;
+    return _lastUpdateTime == NO_TIME
+        || currentTime - _lastUpdateTime > MIN_UPDATE_TIME_MS;
   }
 
   public boolean isPaused() {
-    if (_lastLocationUpdateTime == null) {
+    if (_lastLocationUpdateTime == NO_TIME) {
       return false;
     }
-    long duration = _lastUpdateTime.getTime()
-        - _lastLocationUpdateTime.getTime();
+    long duration = _lastUpdateTime - _lastLocationUpdateTime;
     return duration > MIN_PAUSED_LOCATION_TIME_MS;
   }
 
   public void update(Date recordedAt, MonitoredVehicleJourney mvj,
       PausedLocationListener listener) {
-    if (_lastUpdateTime != null && _lastUpdateTime.after(recordedAt)) {
-      _log.warn("time out of order: old=" + _lastUpdateTime + " new="
-          + recordedAt);
+    long t = recordedAt.getTime();
+    if (_lastUpdateTime != NO_TIME && _lastUpdateTime > t) {
+      _log.warn("time out of order: old=" + new Date(_lastUpdateTime)
+          + " new=" + recordedAt);
       return;
     }
-    if (isStale(recordedAt.getTime())) {
+    if (isStale(t)) {
       clear(listener);
     }
     long updateIndex = _lastUpdateIndex + 1;
 
-    processTripRefChange(recordedAt, updateIndex, mvj, listener);
+    processTripRefChange(updateIndex, mvj, listener);
 
     LocationStructure location = mvj.getVehicleLocation();
-    CoordinatePoint p = new CoordinatePoint(
-        location.getLatitude().doubleValue(),
-        location.getLongitude().doubleValue());
-    if (!isClustered(p)) {
+    double lat = location.getLatitude().doubleValue();
+    double lng = location.getLongitude().doubleValue();
+    if (!isClustered(lat, lng)) {
       processPausedLocationIfApplicable(listener);
-      _lastLocationUpdateTime = recordedAt;
+      _lastLocationUpdateTime = t;
       _lastLocationUpdateIndex = updateIndex;
-      _location = p;
-      _mergedLocations.clear();
-      _lineRef = mvj.getLineRef().getValue();
+      _hasLocation = true;
+      _lat = lat;
+      _lng = lng;
+      clearMergedLocations();
+      _lineRef = mvj.getLineRef() != null ? mvj.getLineRef().getValue() : null;
     }
-    _mergedLocations.add(p);
+    _mergedLatSum += lat;
+    _mergedLngSum += lng;
+    _mergedCount++;
 
-    _lastUpdateTime = recordedAt;
+    _lastUpdateTime = t;
     _lastUpdateIndex = updateIndex;
 
     if (_lastUpdateIndex < _lastLocationUpdateIndex
@@ -173,34 +202,35 @@ class VehicleLocation {
   }
 
   public CoordinatePoint getLocationCentroid() {
-    double lats = 0;
-    double lngs = 0;
-    for (CoordinatePoint p : _mergedLocations) {
-      lats += p.getLat();
-      lngs += p.getLng();
-    }
-    double lat = lats / _mergedLocations.size();
-    double lng = lngs / _mergedLocations.size();
+    double lat = _mergedLatSum / _mergedCount;
+    double lng = _mergedLngSum / _mergedCount;
     return new CoordinatePoint(lat, lng);
   }
 
-  private boolean isClustered(CoordinatePoint p) {
-    if (_location == null) {
+  private boolean isClustered(double lat, double lng) {
+    if (!_hasLocation) {
       return false;
     }
-    return p.getDistance(_location) <= MAX_PAUSED_LOCATION_DISTANCE_M;
+    return CoordinatePoint.distance(lat, lng, _lat, _lng,
+        RADIUS_OF_EARTH_IN_M) <= MAX_PAUSED_LOCATION_DISTANCE_M;
   }
 
   private void clear(PausedLocationListener listener) {
     processPausedLocationIfApplicable(listener);
-    _lastUpdateTime = null;
-    _lastLocationUpdateTime = null;
-    _location = null;
-    _mergedLocations.clear();
+    _lastUpdateTime = NO_TIME;
+    _lastLocationUpdateTime = NO_TIME;
+    _hasLocation = false;
+    clearMergedLocations();
     _lineRef = null;
   }
 
-  private void processTripRefChange(Date recordedAt, long updateIndex,
+  private void clearMergedLocations() {
+    _mergedLatSum = 0;
+    _mergedLngSum = 0;
+    _mergedCount = 0;
+  }
+
+  private void processTripRefChange(long updateIndex,
       MonitoredVehicleJourney mvj, PausedLocationListener listener) {
     String tripRef = getTripRef(mvj);
     if (_tripRef != null && _tripRef.equals(tripRef)) {
@@ -235,8 +265,8 @@ class VehicleLocation {
     location.setLineRef(_lineRef);
     location.setVehicleRef(_vehicleRef);
     location.setLocation(getLocationCentroid());
-    location.setStartTime(_lastLocationUpdateTime);
-    location.setEndTime(_lastUpdateTime);
+    location.setStartTime(new Date(_lastLocationUpdateTime));
+    location.setEndTime(new Date(_lastUpdateTime));
     location.setEndIndex(_lastUpdateIndex);
     if (_tripRefUpdateIndex != -1) {
       if (_lastLocationUpdateIndex <= _tripRefUpdateIndex
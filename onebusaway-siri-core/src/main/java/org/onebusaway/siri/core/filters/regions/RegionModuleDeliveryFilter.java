@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters.regions;
+
+import java.math.BigDecimal;
+
+import org.onebusaway.siri.core.filters.ElementPredicate;
+import org.onebusaway.siri.core.filters.ElementPredicates;
+import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilter;
+
+import uk.org.siri.siri.AbstractServiceDeliveryStructure;
+import uk.org.siri.siri.LocationStructure;
+import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.VehicleActivityStructure;
+import uk.org.siri.siri.VehicleActivityStructure.MonitoredVehicleJourney;
+import uk.org.siri.siri.VehicleMonitoringDeliveryStructure;
+
+/**
+ * Filters {@link VehicleMonitoringDeliveryStructure} deliveries down to the
+ * vehicles whose VehicleLocation falls within a {@link SubscriptionRegion}.
+ * Vehicles without a location are dropped. Other module deliveries are passed
+ * through untouched.
+ * 
+ * The server subscription manager keeps a {@link SubscriptionRegionIndex} of
+ * all active region filters, such that subscriptions with no vehicles in their
+ * region can be skipped entirely for a particular delivery.
+ * 
+ * @author agent
+ */
+public class RegionModuleDeliveryFilter implements SiriModuleDeliveryFilter {
+
+  private final SubscriptionRegion _region;
+
+  private final ElementPredicate<VehicleActivityStructure> _predicate;
+
+  public RegionModuleDeliveryFilter(SubscriptionRegion region) {
+    _region = region;
+    _predicate = new RegionPredicate(region);
+  }
+
+  public SubscriptionRegion getRegion() {
+    return _region;
+  }
+
+  /****
+   * {@link SiriModuleDeliveryFilter} Interface
+   ****/
+
+  @Override
+  public AbstractServiceDeliveryStructure filter(ServiceDelivery delivery,
+      AbstractServiceDeliveryStructure moduleDelivery) {
+
+    if (!(moduleDelivery instanceof VehicleMonitoringDeliveryStructure))
+      return moduleDelivery;
+
+    VehicleMonitoringDeliveryStructure vm = (VehicleMonitoringDeliveryStructure) moduleDelivery;
+
+    int remaining = ElementPredicates.filterInPlace(vm.getVehicleActivity(),
+        _predicate, 0);
+
+    if (remaining == 0 && vm.getVehicleActivityCancellation().isEmpty())
+      return null;
+
+    return vm;
+  }
+
+  @Override
+  public String toString() {
+    return "RegionModuleDeliveryFilter(" + _region + ")";
+  }
+
+  /**
+   * 
+   * @param activity
+   * @return the VehicleLocation of the activity as a {lat, lon} pair, or null
+   *         if not specified
+   */
+  static double[] getLocation(VehicleActivityStructure activity) {
+    MonitoredVehicleJourney mvj = activity.getMonitoredVehicleJourney();
+    if (mvj == null)
+      return null;
+    LocationStructure location = mvj.getVehicleLocation();
+    if (location == null)
+      return null;
+    BigDecimal lat = location.getLatitude();
+    BigDecimal lon = location.getLongitude();
+    if (lat == null || lon == null)
+      return null;
+    return new double[] {lat.doubleValue(), lon.doubleValue()};
+  }
+
+  private static class RegionPredicate implements
+      ElementPredicate<VehicleActivityStructure> {
+
+    private final SubscriptionRegion _region;
+
+    public RegionPredicate(SubscriptionRegion region) {
+      _region = region;
+    }
+
+    @Override
+    public boolean isMatch(VehicleActivityStructure activity) {
+      double[] location = getLocation(activity);
+      return location != null && _region.contains(location[0], location[1]);
+    }
+  }
+}
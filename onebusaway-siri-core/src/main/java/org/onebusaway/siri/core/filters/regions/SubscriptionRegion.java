@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters.regions;
+
+import org.onebusaway.siri.core.filters.layovers.CoordinatePoint;
+
+/**
+ * A geographic region of interest for a subscription: either a lat-lon
+ * bounding box or a circle with a center point and radius. Every region has a
+ * bounding box, which is used for spatial indexing and as a quick rejection
+ * test before the exact containment test.
+ * 
+ * @author agent
+ */
+public final class SubscriptionRegion {
+
+  /**
+   * Meters per degree of latitude
+   */
+  private static final double METERS_PER_DEGREE = CoordinatePoint.RADIUS_OF_EARTH_IN_KM
+      * 1000 * Math.PI / 180;
+
+  private final double _minLat;
+
+  private final double _minLon;
+
+  private final double _maxLat;
+
+  private final double _maxLon;
+
+  private final double _centerLat;
+
+  private final double _centerLon;
+
+  /**
+   * Radius in meters, or zero if the region is a plain bounding box
+   */
+  private final double _radius;
+
+  private SubscriptionRegion(double minLat, double minLon, double maxLat,
+      double maxLon, double centerLat, double centerLon, double radius) {
+    _minLat = minLat;
+    _minLon = minLon;
+    _maxLat = maxLat;
+    _maxLon = maxLon;
+    _centerLat = centerLat;
+    _centerLon = centerLon;
+    _radius = radius;
+  }
+
+  public static SubscriptionRegion bounds(double minLat, double minLon,
+      double maxLat, double maxLon) {
+    if (minLat > maxLat || minLon > maxLon)
+      throw new IllegalArgumentException("invalid bounds: minLat=" + minLat
+          + " minLon=" + minLon + " maxLat=" + maxLat + " maxLon=" + maxLon);
+    return new SubscriptionRegion(minLat, minLon, maxLat, maxLon,
+        (minLat + maxLat) / 2, (minLon + maxLon) / 2, 0);
+  }
+
+  /**
+   * 
+   * @param lat center latitude
+   * @param lon center longitude
+   * @param radius radius in meters
+   * @return a circular region
+   */
+  public static SubscriptionRegion circle(double lat, double lon, double radius) {
+    if (radius <= 0)
+      throw new IllegalArgumentException("invalid radius: " + radius);
+    double latOffset = radius / METERS_PER_DEGREE;
+    double cos = Math.cos(Math.toRadians(lat));
+    double lonOffset = cos < 1e-6 ? 180 : Math.min(latOffset / cos, 180);
+    return new SubscriptionRegion(lat - latOffset, lon - lonOffset, lat
+        + latOffset, lon + lonOffset, lat, lon, radius);
+  }
+
+  public double getMinLat() {
+    return _minLat;
+  }
+
+  public double getMinLon() {
+    return _minLon;
+  }
+
+  public double getMaxLat() {
+    return _maxLat;
+  }
+
+  public double getMaxLon() {
+    return _maxLon;
+  }
+
+  public boolean isCircle() {
+    return _radius > 0;
+  }
+
+  public boolean contains(double lat, double lon) {
+    if (lat < _minLat || lat > _maxLat || lon < _minLon || lon > _maxLon)
+      return false;
+    if (_radius == 0)
+      return true;
+    return CoordinatePoint.distance(_centerLat, _centerLon, lat, lon,
+        CoordinatePoint.RADIUS_OF_EARTH_IN_KM * 1000) <= _radius;
+  }
+
+  @Override
+  public String toString() {
+    if (_radius > 0)
+      return "circle(" + _centerLat + " " + _centerLon + " " + _radius + ")";
+    return "bounds(" + _minLat + " " + _minLon + " " + _maxLat + " " + _maxLon
+        + ")";
+  }
+}
@@ -0,0 +1,311 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters.regions;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import uk.org.siri.siri.VehicleActivityStructure;
+import uk.org.siri.siri.VehicleMonitoringDeliveryStructure;
+
+/**
+ * A uniform lat-lon grid index of active {@link RegionModuleDeliveryFilter}
+ * instances. Each region is registered in every grid cell its bounding box
+ * overlaps, such that a vehicle location only needs to be tested against the
+ * regions registered in its own cell, rather than against every region.
+ * Regions covering a very large number of cells are kept in a separate list
+ * that is tested for every location.
+ * 
+ * As subscriptions come and go, {@link #addRegionFilter(RegionModuleDeliveryFilter)}
+ * and {@link #removeRegionFilter(RegionModuleDeliveryFilter)} update only the
+ * cells covered by the region, replacing each affected cell with a new array.
+ * {@link #setRegionFilters(Collection)} rebuilds the index wholesale and swaps
+ * it in. Lookups run lock-free in either case. Updates are synchronized with
+ * one another.
+ * 
+ * @author agent
+ */
+public class SubscriptionRegionIndex {
+
+  /**
+   * Regions covering more than this many cells are not put in the grid
+   */
+  private static final int MAX_CELLS_PER_REGION = 4096;
+
+  /**
+   * Grid cell size, in degrees
+   */
+  private final double _cellSize;
+
+  private static final RegionModuleDeliveryFilter[] _emptyFilters = new RegionModuleDeliveryFilter[0];
+
+  private volatile Grid _grid = new Grid();
+
+  public SubscriptionRegionIndex() {
+    this(0.01);
+  }
+
+  /**
+   * 
+   * @param cellSize grid cell size, in degrees
+   */
+  public SubscriptionRegionIndex(double cellSize) {
+    if (cellSize <= 0)
+      throw new IllegalArgumentException("invalid cell size: " + cellSize);
+    _cellSize = cellSize;
+  }
+
+  public boolean isEmpty() {
+    return _grid.size == 0;
+  }
+
+  /**
+   * Replace the contents of the index.
+   * 
+   * @param filters the active region filters
+   */
+  public synchronized void setRegionFilters(
+      Collection<RegionModuleDeliveryFilter> filters) {
+    Grid grid = new Grid();
+    for (RegionModuleDeliveryFilter filter : filters)
+      add(grid, filter);
+    _grid = grid;
+  }
+
+  /**
+   * Add a region filter to the index, updating only the grid cells its region
+   * covers. A filter that is added more than once must be removed as many
+   * times.
+   * 
+   * @param filter the region filter to add
+   */
+  public synchronized void addRegionFilter(RegionModuleDeliveryFilter filter) {
+    add(_grid, filter);
+  }
+
+  /**
+   * Remove a region filter from the index, updating only the grid cells its
+   * region covers.
+   * 
+   * @param filter the region filter to remove
+   */
+  public synchronized void removeRegionFilter(RegionModuleDeliveryFilter filter) {
+
+    Grid grid = _grid;
+
+    Integer count = grid.counts.get(filter);
+    if (count == null)
+      return;
+    if (count > 1) {
+      grid.counts.put(filter, count - 1);
+      return;
+    }
+    grid.counts.remove(filter);
+
+    int[] range = getCellRange(filter.getRegion());
+    if (range == null) {
+      grid.largeFilters = remove(grid.largeFilters, filter);
+    } else {
+      for (int latIndex = range[0]; latIndex <= range[1]; ++latIndex) {
+        for (int lonIndex = range[2]; lonIndex <= range[3]; ++lonIndex) {
+          Long key = getCellKey(latIndex, lonIndex);
+          RegionModuleDeliveryFilter[] forCell = grid.cells.get(key);
+          if (forCell == null)
+            continue;
+          forCell = remove(forCell, filter);
+          if (forCell.length == 0)
+            grid.cells.remove(key);
+          else
+            grid.cells.put(key, forCell);
+        }
+      }
+    }
+
+    grid.size = grid.counts.size();
+  }
+
+  /**
+   * Add any region filters containing the specified location to the result
+   * set.
+   * 
+   * @param lat
+   * @param lon
+   * @param results
+   */
+  public void getRegionFiltersForLocation(double lat, double lon,
+      Set<RegionModuleDeliveryFilter> results) {
+    getRegionFiltersForLocation(_grid, lat, lon, results);
+  }
+
+  /**
+   * Determine the set of region filters that contain at least one of the
+   * vehicles in the specified deliveries. Each vehicle location is only tested
+   * against the regions in its grid cell.
+   * 
+   * @param deliveries
+   * @return the set of region filters with at least one vehicle, or null if
+   *         region filters can't be used to rule out any subscription for these
+   *         deliveries (ex. the deliveries include vehicle activity
+   *         cancellations, which are passed through regardless of location)
+   */
+  public Set<RegionModuleDeliveryFilter> getRegionFiltersForDeliveries(
+      List<VehicleMonitoringDeliveryStructure> deliveries) {
+
+    Grid grid = _grid;
+    int size = grid.size;
+    if (size == 0)
+      return Collections.emptySet();
+
+    Set<RegionModuleDeliveryFilter> results = new HashSet<RegionModuleDeliveryFilter>();
+
+    for (VehicleMonitoringDeliveryStructure vm : deliveries) {
+      if (!vm.getVehicleActivityCancellation().isEmpty())
+        return null;
+      for (VehicleActivityStructure activity : vm.getVehicleActivity()) {
+        double[] location = RegionModuleDeliveryFilter.getLocation(activity);
+        if (location != null)
+          getRegionFiltersForLocation(grid, location[0], location[1], results);
+      }
+      if (results.size() == size)
+        break;
+    }
+
+    return results;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void getRegionFiltersForLocation(Grid grid, double lat, double lon,
+      Set<RegionModuleDeliveryFilter> results) {
+
+    RegionModuleDeliveryFilter[] forCell = grid.cells.get(getCellKey(
+        getIndex(lat), getIndex(lon)));
+    if (forCell != null) {
+      for (RegionModuleDeliveryFilter filter : forCell) {
+        if (filter.getRegion().contains(lat, lon))
+          results.add(filter);
+      }
+    }
+
+    for (RegionModuleDeliveryFilter filter : grid.largeFilters) {
+      if (filter.getRegion().contains(lat, lon))
+        results.add(filter);
+    }
+  }
+
+  /**
+   * Add a filter to the specified grid, with the index lock held
+   */
+  private void add(Grid grid, RegionModuleDeliveryFilter filter) {
+
+    Integer count = grid.counts.get(filter);
+    if (count != null) {
+      grid.counts.put(filter, count + 1);
+      return;
+    }
+    grid.counts.put(filter, 1);
+
+    int[] range = getCellRange(filter.getRegion());
+    if (range == null) {
+      grid.largeFilters = append(grid.largeFilters, filter);
+    } else {
+      for (int latIndex = range[0]; latIndex <= range[1]; ++latIndex) {
+        for (int lonIndex = range[2]; lonIndex <= range[3]; ++lonIndex) {
+          Long key = getCellKey(latIndex, lonIndex);
+          RegionModuleDeliveryFilter[] forCell = grid.cells.get(key);
+          grid.cells.put(key, forCell == null ? new RegionModuleDeliveryFilter[] {filter}
+              : append(forCell, filter));
+        }
+      }
+    }
+
+    grid.size = grid.counts.size();
+  }
+
+  /**
+   * 
+   * @param region
+   * @return the {minLat, maxLat, minLon, maxLon} cell indices covered by the
+   *         region, or null if the region covers too many cells to be put in
+   *         the grid
+   */
+  private int[] getCellRange(SubscriptionRegion region) {
+    int minLatIndex = getIndex(region.getMinLat());
+    int maxLatIndex = getIndex(region.getMaxLat());
+    int minLonIndex = getIndex(region.getMinLon());
+    int maxLonIndex = getIndex(region.getMaxLon());
+    long cells = (long) (maxLatIndex - minLatIndex + 1)
+        * (maxLonIndex - minLonIndex + 1);
+    if (cells > MAX_CELLS_PER_REGION)
+      return null;
+    return new int[] {minLatIndex, maxLatIndex, minLonIndex, maxLonIndex};
+  }
+
+  private int getIndex(double value) {
+    return (int) Math.floor(value / _cellSize);
+  }
+
+  private static long getCellKey(int latIndex, int lonIndex) {
+    return ((long) latIndex << 32) | (lonIndex & 0xffffffffL);
+  }
+
+  private static RegionModuleDeliveryFilter[] append(
+      RegionModuleDeliveryFilter[] filters, RegionModuleDeliveryFilter filter) {
+    RegionModuleDeliveryFilter[] result = new RegionModuleDeliveryFilter[filters.length + 1];
+    System.arraycopy(filters, 0, result, 0, filters.length);
+    result[filters.length] = filter;
+    return result;
+  }
+
+  private static RegionModuleDeliveryFilter[] remove(
+      RegionModuleDeliveryFilter[] filters, RegionModuleDeliveryFilter filter) {
+    List<RegionModuleDeliveryFilter> result = new ArrayList<RegionModuleDeliveryFilter>(
+        filters.length);
+    for (RegionModuleDeliveryFilter existing : filters) {
+      if (existing != filter)
+        result.add(existing);
+    }
+    if (result.isEmpty())
+      return _emptyFilters;
+    return result.toArray(new RegionModuleDeliveryFilter[result.size()]);
+  }
+
+  /**
+   * The cell arrays and large filter array are never modified in place, only
+   * replaced, such that readers always see a consistent array. The filter
+   * counts are only accessed with the index lock held.
+   */
+  private static class Grid {
+
+    private final ConcurrentMap<Long, RegionModuleDeliveryFilter[]> cells = new ConcurrentHashMap<Long, RegionModuleDeliveryFilter[]>();
+
+    private volatile RegionModuleDeliveryFilter[] largeFilters = _emptyFilters;
+
+    private final Map<RegionModuleDeliveryFilter, Integer> counts = new HashMap<RegionModuleDeliveryFilter, Integer>();
+
+    private volatile int size = 0;
+  }
+}
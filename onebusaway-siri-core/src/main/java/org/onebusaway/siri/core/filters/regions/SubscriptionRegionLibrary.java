@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters.regions;
+
+import java.util.Map;
+
+import org.onebusaway.siri.core.exceptions.SiriException;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Support methods for parsing {@link SubscriptionRegion} definitions, either
+ * from filter specification arguments or from a subscription request
+ * extension.
+ * 
+ * A region is specified with either "MinLatitude", "MinLongitude",
+ * "MaxLatitude" and "MaxLongitude" values for a bounding box, or "Latitude",
+ * "Longitude" and "Radius" (in meters) values for a circle. In a subscription
+ * request, the values are the child elements (or attributes) of a "Region"
+ * extension element:
+ * 
+ * <pre>
+ * &lt;Extensions&gt;
+ *   &lt;Region&gt;
+ *     &lt;Latitude&gt;47.61&lt;/Latitude&gt;
+ *     &lt;Longitude&gt;-122.33&lt;/Longitude&gt;
+ *     &lt;Radius&gt;500&lt;/Radius&gt;
+ *   &lt;/Region&gt;
+ * &lt;/Extensions&gt;
+ * </pre>
+ * 
+ * @author agent
+ */
+public class SubscriptionRegionLibrary {
+
+  public static final String REGION_ELEMENT = "Region";
+
+  private static final String MIN_LATITUDE = "MinLatitude";
+
+  private static final String MIN_LONGITUDE = "MinLongitude";
+
+  private static final String MAX_LATITUDE = "MaxLatitude";
+
+  private static final String MAX_LONGITUDE = "MaxLongitude";
+
+  private static final String LATITUDE = "Latitude";
+
+  private static final String LONGITUDE = "Longitude";
+
+  private static final String RADIUS = "Radius";
+
+  /**
+   * Parse a region from filter arguments, removing the consumed arguments.
+   * 
+   * @param args filter arguments
+   * @param prefix the prefix for each region argument (ex. "Filter.Region.")
+   * @return the region
+   * @throws SiriException if the region is incomplete or invalid
+   */
+  public static SubscriptionRegion getRegionFromArgs(Map<String, String> args,
+      String prefix) {
+    return createRegion(args.remove(prefix + MIN_LATITUDE),
+        args.remove(prefix + MIN_LONGITUDE), args.remove(prefix + MAX_LATITUDE),
+        args.remove(prefix + MAX_LONGITUDE), args.remove(prefix + LATITUDE),
+        args.remove(prefix + LONGITUDE), args.remove(prefix + RADIUS));
+  }
+
+  /**
+   * Look for a region definition in the contents of an Extensions element.
+   * 
+   * @param any the content of an Extensions element
+   * @return the region, or null if no region was specified
+   * @throws SiriException if a region was specified but is invalid
+   */
+  public static SubscriptionRegion getRegionFromExtension(Object any) {
+    if (!(any instanceof Element))
+      return null;
+    Element element = findRegionElement((Element) any);
+    if (element == null)
+      return null;
+    return createRegion(getValue(element, MIN_LATITUDE),
+        getValue(element, MIN_LONGITUDE), getValue(element, MAX_LATITUDE),
+        getValue(element, MAX_LONGITUDE), getValue(element, LATITUDE),
+        getValue(element, LONGITUDE), getValue(element, RADIUS));
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static SubscriptionRegion createRegion(String minLat, String minLon,
+      String maxLat, String maxLon, String lat, String lon, String radius) {
+    try {
+      if (minLat != null && minLon != null && maxLat != null && maxLon != null) {
+        return SubscriptionRegion.bounds(Double.parseDouble(minLat),
+            Double.parseDouble(minLon), Double.parseDouble(maxLat),
+            Double.parseDouble(maxLon));
+      }
+      if (lat != null && lon != null && radius != null) {
+        return SubscriptionRegion.circle(Double.parseDouble(lat),
+            Double.parseDouble(lon), Double.parseDouble(radius));
+      }
+    } catch (IllegalArgumentException ex) {
+      throw new SiriException("invalid region: " + ex.getMessage(), ex);
+    }
+    throw new SiriException("a region requires either " + MIN_LATITUDE + ", "
+        + MIN_LONGITUDE + ", " + MAX_LATITUDE + " and " + MAX_LONGITUDE
+        + " values or " + LATITUDE + ", " + LONGITUDE + " and " + RADIUS
+        + " values");
+  }
+
+  private static Element findRegionElement(Element element) {
+    if (REGION_ELEMENT.equals(getName(element)))
+      return element;
+    NodeList children = element.getChildNodes();
+    for (int i = 0; i < children.getLength(); ++i) {
+      Node child = children.item(i);
+      if (child instanceof Element
+          && REGION_ELEMENT.equals(getName((Element) child)))
+        return (Element) child;
+    }
+    return null;
+  }
+
+  private static String getValue(Element element, String name) {
+    if (element.hasAttribute(name))
+      return element.getAttribute(name).trim();
+    NodeList children = element.getChildNodes();
+    for (int i = 0; i < children.getLength(); ++i) {
+      Node child = children.item(i);
+      if (child instanceof Element && name.equals(getName((Element) child)))
+        return child.getTextContent().trim();
+    }
+    return null;
+  }
+
+  private static String getName(Element element) {
+    String name = element.getLocalName();
+    return name != null ? name : element.getTagName();
+  }
+}
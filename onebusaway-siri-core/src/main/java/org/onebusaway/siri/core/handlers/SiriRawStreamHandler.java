@@ -0,0 +1,42 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ * Copyright (C) 2011 Google, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.handlers;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A byte-oriented variant of {@link SiriRawHandler}, allowing a transport
+ * mechanism to pass the raw request bytes straight through to the XML parser,
+ * which then determines the character encoding from the XML declaration, rather
+ * than decoding the request to characters first.
+ * 
+ * @author agent
+ * 
+ */
+public interface SiriRawStreamHandler {
+
+  /**
+   * Handle an incoming raw request, in the form of an {@link InputStream}
+   * typically containing a SIRI message in XML form. Any response will be
+   * written to the outgoing {@link OutputStream}, encoded as UTF-8.
+   * 
+   * @param input the input stream
+   * @param output the output stream
+   */
+  public void handleRawRequest(InputStream input, OutputStream output);
+}
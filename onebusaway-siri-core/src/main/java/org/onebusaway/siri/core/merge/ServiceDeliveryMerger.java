@@ -0,0 +1,338 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.merge;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.onebusaway.siri.core.ESiriModuleType;
+import org.onebusaway.siri.core.SiriLibrary;
+import org.onebusaway.status_exporter.StatusProviderService;
+
+import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.VehicleActivityStructure;
+import uk.org.siri.siri.VehicleActivityStructure.MonitoredVehicleJourney;
+import uk.org.siri.siri.VehicleMonitoringDeliveryStructure;
+import uk.org.siri.siri.VehicleRefStructure;
+
+/**
+ * Merges {@link ServiceDelivery} data arriving from multiple, potentially
+ * overlapping, SIRI data sources. For each vehicle, we keep track of the most
+ * recent RecordedAtTime we have seen and the source that reported it. An
+ * incoming {@link VehicleActivityStructure} is dropped if:
+ *
+ * <ul>
+ * <li>it is older than the latest update we've seen for the vehicle (stale)</li>
+ * <li>it has the same RecordedAtTime as the latest update (duplicate)</li>
+ * <li>a source with a higher priority has reported on the vehicle within the
+ * source priority timeout (lower priority)</li>
+ * </ul>
+ *
+ * Activities without a VehicleRef or RecordedAtTime are always passed through.
+ * By default, all sources have priority 0. See
+ * {@link #setSourcePriority(String, int)}.
+ *
+ * Vehicle records expire once the vehicle has been quiet for a while, based on
+ * the RecordedAtTime (or ValidUntilTime, if later) of its last update, such that
+ * vehicles that leave service don't accumulate forever. Expiration is measured
+ * against the latest RecordedAtTime we've seen from any source, rather than the
+ * local clock. See {@link #setVehicleExpirationTimeout(int)}.
+ *
+ * This class is thread-safe.
+ *
+ * @author agent
+ */
+public class ServiceDeliveryMerger implements StatusProviderService {
+
+  private ConcurrentMap<String, VehicleRecord> _vehiclesById = new ConcurrentHashMap<String, VehicleRecord>();
+
+  private ConcurrentMap<String, Integer> _sourcePriorities = new ConcurrentHashMap<String, Integer>();
+
+  /**
+   * Time, in ms, for which an update from a higher priority source will
+   * suppress updates from a lower priority source.
+   */
+  private long _sourcePriorityTimeout = 2 * 60 * 1000;
+
+  /**
+   * Time, in ms, after the last update for a vehicle (or its ValidUntilTime,
+   * if later) after which we forget about the vehicle.
+   */
+  private long _vehicleExpirationTimeout = 10 * 60 * 1000;
+
+  /**
+   * The latest RecordedAtTime we've seen, which serves as our clock for
+   * expiring vehicle records
+   */
+  private AtomicLong _latestTime = new AtomicLong(Long.MIN_VALUE);
+
+  private AtomicLong _nextPruneTime = new AtomicLong(Long.MIN_VALUE);
+
+  private AtomicLong _expiredCount = new AtomicLong();
+
+  private AtomicLong _acceptedCount = new AtomicLong();
+
+  private AtomicLong _staleCount = new AtomicLong();
+
+  private AtomicLong _duplicateCount = new AtomicLong();
+
+  private AtomicLong _lowerPriorityCount = new AtomicLong();
+
+  /**
+   * Set the priority for the specified source. When two sources report on the
+   * same vehicle, updates from the higher priority source win.
+   *
+   * @param source the source id (typically the source url)
+   * @param priority the source priority, with higher values taking precedence
+   */
+  public void setSourcePriority(String source, int priority) {
+    _sourcePriorities.put(source, priority);
+  }
+
+  /**
+   *
+   * @param sourcePriorityTimeout time, in seconds, after which we'll accept
+   *          updates for a vehicle from a lower priority source if we've not
+   *          heard from a higher priority source
+   */
+  public void setSourcePriorityTimeout(int sourcePriorityTimeout) {
+    _sourcePriorityTimeout = sourcePriorityTimeout * 1000L;
+  }
+
+  /**
+   * 
+   * @param vehicleExpirationTimeout time, in seconds, after the last update for
+   *          a vehicle (or its ValidUntilTime, if later) after which we forget
+   *          about the vehicle
+   */
+  public void setVehicleExpirationTimeout(int vehicleExpirationTimeout) {
+    _vehicleExpirationTimeout = vehicleExpirationTimeout * 1000L;
+  }
+
+  /**
+   * Merge the contents of the specified delivery into our vehicle state,
+   * removing any stale, duplicate, or lower priority vehicle activity from the
+   * delivery as we go. Note that the delivery is modified in place.
+   *
+   * @param source the source id (typically the source url), or null if
+   *          unknown
+   * @param delivery the incoming delivery
+   * @return true if the delivery still has content worth publishing. Vehicle
+   *         monitoring deliveries left empty by the merge are removed, but
+   *         content for other modules is always kept.
+   */
+  public boolean merge(String source, ServiceDelivery delivery) {
+
+    List<VehicleMonitoringDeliveryStructure> vms = delivery.getVehicleMonitoringDelivery();
+    if (vms.isEmpty())
+      return true;
+
+    int priority = getPriorityForSource(source);
+    boolean removed = false;
+
+    for (Iterator<VehicleMonitoringDeliveryStructure> it = vms.iterator(); it.hasNext();) {
+
+      VehicleMonitoringDeliveryStructure vm = it.next();
+      List<VehicleActivityStructure> activities = vm.getVehicleActivity();
+      if (activities.isEmpty())
+        continue;
+
+      List<VehicleActivityStructure> accepted = null;
+
+      for (int i = 0; i < activities.size(); ++i) {
+        VehicleActivityStructure activity = activities.get(i);
+        boolean isAccepted = isVehicleActivityAccepted(source, priority,
+            activity);
+        if (isAccepted && accepted != null) {
+          accepted.add(activity);
+        } else if (!isAccepted && accepted == null) {
+          accepted = new ArrayList<VehicleActivityStructure>(activities.subList(
+              0, i));
+        }
+      }
+
+      if (accepted == null)
+        continue;
+
+      SiriLibrary.copyList(accepted, activities);
+
+      if (activities.isEmpty() && vm.getVehicleActivityCancellation().isEmpty()
+          && vm.getVehicleActivityNote().isEmpty()) {
+        it.remove();
+        removed = true;
+      }
+    }
+
+    pruneExpiredVehicles();
+
+    if (!removed || !vms.isEmpty())
+      return true;
+
+    for (ESiriModuleType moduleType : SiriLibrary.getModuleTypes()) {
+      if (SiriLibrary.hasServiceDeliveriesForModule(delivery, moduleType))
+        return true;
+    }
+
+    return false;
+  }
+
+  /****
+   * {@link StatusProviderService} Interface
+   ****/
+
+  @Override
+  public void getStatus(Map<String, String> status) {
+    status.put("siri.merge.vehicles", Integer.toString(_vehiclesById.size()));
+    status.put("siri.merge.acceptedCounter",
+        Long.toString(_acceptedCount.get()));
+    status.put("siri.merge.staleCounter", Long.toString(_staleCount.get()));
+    status.put("siri.merge.duplicateCounter",
+        Long.toString(_duplicateCount.get()));
+    status.put("siri.merge.lowerPriorityCounter",
+        Long.toString(_lowerPriorityCount.get()));
+    status.put("siri.merge.expiredCounter", Long.toString(_expiredCount.get()));
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private boolean isVehicleActivityAccepted(String source, int priority,
+      VehicleActivityStructure activity) {
+
+    String vehicleId = getVehicleId(activity);
+    Date recordedAtTime = activity.getRecordedAtTime();
+
+    if (vehicleId == null || recordedAtTime == null) {
+      _acceptedCount.incrementAndGet();
+      return true;
+    }
+
+    long time = recordedAtTime.getTime();
+    updateLatestTime(time);
+
+    long expiresAt = time + Math.max(_vehicleExpirationTimeout,
+        _sourcePriorityTimeout);
+    Date validUntilTime = activity.getValidUntilTime();
+    if (validUntilTime != null)
+      expiresAt = Math.max(expiresAt, validUntilTime.getTime());
+
+    VehicleRecord record = _vehiclesById.get(vehicleId);
+    if (record == null) {
+      VehicleRecord newRecord = new VehicleRecord();
+      record = _vehiclesById.putIfAbsent(vehicleId, newRecord);
+      if (record == null)
+        record = newRecord;
+    }
+
+    synchronized (record) {
+
+      if (record.source != null) {
+
+        if (priority < record.priority
+            && time - record.time < _sourcePriorityTimeout) {
+          _lowerPriorityCount.incrementAndGet();
+          return false;
+        }
+
+        if (time < record.time) {
+          _staleCount.incrementAndGet();
+          return false;
+        }
+
+        if (time == record.time) {
+          _duplicateCount.incrementAndGet();
+          return false;
+        }
+      }
+
+      record.source = source == null ? "" : source;
+      record.priority = priority;
+      record.time = time;
+      record.expiresAt = expiresAt;
+    }
+
+    _acceptedCount.incrementAndGet();
+    return true;
+  }
+
+  private void updateLatestTime(long time) {
+    while (true) {
+      long latest = _latestTime.get();
+      if (time <= latest || _latestTime.compareAndSet(latest, time))
+        return;
+    }
+  }
+
+  /**
+   * Drop the records for vehicles we haven't heard from in a while. We check at
+   * most once per expiration timeout, as measured by {@link #_latestTime}, and
+   * only one thread does the check.
+   */
+  private void pruneExpiredVehicles() {
+
+    long now = _latestTime.get();
+    long nextPruneTime = _nextPruneTime.get();
+    if (now < nextPruneTime
+        || !_nextPruneTime.compareAndSet(nextPruneTime, now
+            + _vehicleExpirationTimeout))
+      return;
+
+    for (Map.Entry<String, VehicleRecord> entry : _vehiclesById.entrySet()) {
+      VehicleRecord record = entry.getValue();
+      boolean expired;
+      synchronized (record) {
+        expired = record.expiresAt < now;
+      }
+      if (expired && _vehiclesById.remove(entry.getKey(), record))
+        _expiredCount.incrementAndGet();
+    }
+  }
+
+  private int getPriorityForSource(String source) {
+    if (source == null)
+      return 0;
+    Integer priority = _sourcePriorities.get(source);
+    return priority == null ? 0 : priority;
+  }
+
+  private static String getVehicleId(VehicleActivityStructure activity) {
+    MonitoredVehicleJourney mvj = activity.getMonitoredVehicleJourney();
+    if (mvj == null)
+      return null;
+    VehicleRefStructure vehicleRef = mvj.getVehicleRef();
+    if (vehicleRef == null)
+      return null;
+    return vehicleRef.getValue();
+  }
+
+  private static class VehicleRecord {
+
+    private String source;
+
+    private int priority;
+
+    private long time;
+
+    private long expiresAt;
+  }
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.partitions;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An executor made up of a fixed number of single-threaded lanes. Tasks
+ * submitted to the same partition are executed in submission order, while
+ * tasks submitted to different partitions may execute in parallel. Combined
+ * with {@link ServiceDeliveryPartitioner}, this lets us process updates for
+ * different vehicles concurrently while guaranteeing that the updates for any
+ * one vehicle are never reordered.
+ *
+ * Each lane has a bounded queue. When a lane's queue is full, the submitting
+ * thread blocks until the lane catches up, such that a slow lane pushes back on
+ * the incoming data rather than buffering it without limit.
+ *
+ * @author agent
+ */
+public class PartitionedExecutor {
+
+  public static final int DEFAULT_LANE_CAPACITY = 1000;
+
+  private final ThreadPoolExecutor[] _lanes;
+
+  public PartitionedExecutor(int partitionCount, String name) {
+    this(partitionCount, DEFAULT_LANE_CAPACITY, name);
+  }
+
+  /**
+   * 
+   * @param partitionCount the number of lanes
+   * @param laneCapacity the maximum number of tasks queued on any one lane
+   * @param name the name prefix for the lane threads
+   */
+  public PartitionedExecutor(int partitionCount, int laneCapacity, String name) {
+    if (partitionCount < 1)
+      throw new IllegalArgumentException("partitionCount must be positive: "
+          + partitionCount);
+    if (laneCapacity < 1)
+      throw new IllegalArgumentException("laneCapacity must be positive: "
+          + laneCapacity);
+    _lanes = new ThreadPoolExecutor[partitionCount];
+    for (int i = 0; i < partitionCount; ++i) {
+      _lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<Runnable>(laneCapacity),
+          new LaneThreadFactory(name + "-" + i), new BlockWhenFullPolicy());
+    }
+  }
+
+  public int getPartitionCount() {
+    return _lanes.length;
+  }
+
+  /**
+   * Submit a task for execution on the specified partition lane, blocking
+   * while the lane's queue is full.
+   *
+   * @param partition the partition index, between 0 and
+   *          {@link #getPartitionCount()}
+   * @param task the task to execute
+   * @return a future for the submitted task
+   * @throws RejectedExecutionException if the executor has been shut down
+   */
+  public Future<?> submit(int partition, Runnable task) {
+    return _lanes[partition].submit(task);
+  }
+
+  /**
+   * Submit a task for execution on the partition lane that owns the specified
+   * key.
+   *
+   * @param key the partition key, as passed to
+   *          {@link ServiceDeliveryPartitioner#getPartitionForKey(Object, int)}
+   * @param task the task to execute
+   * @return a future for the submitted task
+   */
+  public Future<?> submitForKey(Object key, Runnable task) {
+    return submit(
+        ServiceDeliveryPartitioner.getPartitionForKey(key, _lanes.length),
+        task);
+  }
+
+  public void shutdown() {
+    for (ThreadPoolExecutor lane : _lanes)
+      lane.shutdownNow();
+  }
+
+  /**
+   * Our lanes are single-threaded, so the caller-runs policy would break the
+   * ordering guarantee. Instead, we block the caller until there is room.
+   */
+  private static class BlockWhenFullPolicy implements RejectedExecutionHandler {
+
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+      if (executor.isShutdown())
+        throw new RejectedExecutionException("partition lane is shut down");
+      try {
+        executor.getQueue().put(r);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new RejectedExecutionException(
+            "interrupted waiting for partition lane", ex);
+      }
+    }
+  }
+
+  private static class LaneThreadFactory implements ThreadFactory {
+
+    private final String _name;
+
+    private final AtomicInteger _index = new AtomicInteger();
+
+    public LaneThreadFactory(String name) {
+      _name = name;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, _name + "-" + _index.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,399 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.partitions;
+
+import java.util.List;
+
+import org.onebusaway.siri.core.ESiriModuleType;
+import org.onebusaway.siri.core.SiriLibrary;
+
+import uk.org.siri.siri.AbstractServiceDeliveryStructure;
+import uk.org.siri.siri.EntryQualifierStructure;
+import uk.org.siri.siri.MonitoredStopVisitStructure;
+import uk.org.siri.siri.MonitoringRefStructure;
+import uk.org.siri.siri.PtSituationElementStructure;
+import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.SituationExchangeDeliveryStructure;
+import uk.org.siri.siri.SituationExchangeDeliveryStructure.Situations;
+import uk.org.siri.siri.StopMonitoringDeliveryStructure;
+import uk.org.siri.siri.VehicleActivityStructure;
+import uk.org.siri.siri.VehicleActivityStructure.MonitoredVehicleJourney;
+import uk.org.siri.siri.VehicleMonitoringDeliveryStructure;
+import uk.org.siri.siri.VehicleRefStructure;
+
+/**
+ * Splits a {@link ServiceDelivery} into per-partition deliveries, such that
+ * all the elements for a particular entity always end up in the same
+ * partition. Entities are identified by:
+ *
+ * <ul>
+ * <li>VehicleRef for {@link VehicleActivityStructure} elements</li>
+ * <li>MonitoringRef for {@link MonitoredStopVisitStructure} elements</li>
+ * <li>SituationNumber for {@link PtSituationElementStructure} elements</li>
+ * </ul>
+ *
+ * Anything we can't assign to an entity (vehicle activity cancellations,
+ * notes, stop visit cancellations, road situations, etc) is assigned to the
+ * default partition, as determined by {@link #getPartitionForKey(Object, int)}
+ * with a null key. Module deliveries for any other module type, such as
+ * estimated timetable or general message deliveries, are never split and are
+ * carried through to the default partition unchanged.
+ *
+ * Partitioned deliveries share their element instances with the source
+ * delivery, so the usual rules about not modifying a delivery that has been
+ * handed to {@link org.onebusaway.siri.core.SiriServer#publish(ServiceDelivery)}
+ * still apply.
+ *
+ * @author agent
+ * @see PartitionedExecutor
+ */
+public class ServiceDeliveryPartitioner {
+
+  /**
+   * Determine the partition for the specified entity key.
+   *
+   * @param key the entity key (typically a String id), or null if the element
+   *          has no entity key
+   * @param partitionCount the total number of partitions
+   * @return a partition index between 0 and partitionCount
+   */
+  public static int getPartitionForKey(Object key, int partitionCount) {
+    if (key == null || partitionCount == 1)
+      return 0;
+    int h = key.hashCode();
+    /**
+     * Spread the high bits of the hash, since a lot of vehicle ids differ only
+     * in their last few characters
+     */
+    h ^= (h >>> 20) ^ (h >>> 12);
+    h ^= (h >>> 7) ^ (h >>> 4);
+    return (h & 0x7fffffff) % partitionCount;
+  }
+
+  /**
+   * Split the specified delivery into per-partition deliveries.
+   *
+   * @param delivery the source delivery
+   * @param partitionCount the total number of partitions
+   * @return an array of length partitionCount, where the entry at index i is
+   *         the delivery for partition i, or null if there was no content for
+   *         that partition
+   */
+  public static ServiceDelivery[] partition(ServiceDelivery delivery,
+      int partitionCount) {
+
+    ServiceDelivery[] partitions = new ServiceDelivery[partitionCount];
+
+    if (partitionCount == 1) {
+      partitions[0] = delivery;
+      return partitions;
+    }
+
+    int defaultPartition = getPartitionForKey(null, partitionCount);
+    boolean split = false;
+
+    for (ESiriModuleType moduleType : ESiriModuleType.values()) {
+
+      List<AbstractServiceDeliveryStructure> moduleDeliveries = SiriLibrary.getServiceDeliveriesForModule(
+          delivery, moduleType);
+
+      for (AbstractServiceDeliveryStructure moduleDelivery : moduleDeliveries) {
+        switch (moduleType) {
+          case VEHICLE_MONITORING:
+            split |= partitionVehicleMonitoringDelivery(delivery,
+                (VehicleMonitoringDeliveryStructure) moduleDelivery,
+                partitions, defaultPartition);
+            break;
+          case STOP_MONITORING:
+            split |= partitionStopMonitoringDelivery(delivery,
+                (StopMonitoringDeliveryStructure) moduleDelivery, partitions,
+                defaultPartition);
+            break;
+          case SITUATION_EXCHANGE:
+            split |= partitionSituationExchangeDelivery(delivery,
+                (SituationExchangeDeliveryStructure) moduleDelivery,
+                partitions, defaultPartition);
+            break;
+          default:
+            addModuleDelivery(delivery, partitions, defaultPartition,
+                moduleType, moduleDelivery);
+            break;
+        }
+      }
+    }
+
+    /**
+     * If everything ended up in a single partition and we never had to split a
+     * module delivery, we can just pass the original delivery along as is.
+     */
+    int usedPartition = -1;
+    for (int i = 0; i < partitionCount; ++i) {
+      if (partitions[i] != null) {
+        if (usedPartition != -1) {
+          usedPartition = -2;
+          break;
+        }
+        usedPartition = i;
+      }
+    }
+
+    if (usedPartition == -1) {
+      partitions[defaultPartition] = delivery;
+    } else if (usedPartition >= 0 && !split) {
+      partitions[usedPartition] = delivery;
+    }
+
+    return partitions;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static boolean partitionVehicleMonitoringDelivery(
+      ServiceDelivery delivery, VehicleMonitoringDeliveryStructure vm,
+      ServiceDelivery[] partitions, int defaultPartition) {
+
+    int partitionCount = partitions.length;
+    List<VehicleActivityStructure> activities = vm.getVehicleActivity();
+
+    /**
+     * Quick check to see if everything is in one partition anyway
+     */
+    int commonPartition = defaultPartition;
+    boolean first = true;
+    boolean mixed = false;
+    for (VehicleActivityStructure activity : activities) {
+      int partition = getPartitionForKey(getVehicleActivityKey(activity),
+          partitionCount);
+      if (first) {
+        commonPartition = partition;
+        first = false;
+      } else if (partition != commonPartition) {
+        mixed = true;
+        break;
+      }
+    }
+
+    boolean hasRemainder = !vm.getVehicleActivityCancellation().isEmpty()
+        || !vm.getVehicleActivityNote().isEmpty();
+
+    if (!mixed && (!hasRemainder || commonPartition == defaultPartition)) {
+      addModuleDelivery(delivery, partitions, commonPartition,
+          ESiriModuleType.VEHICLE_MONITORING, vm);
+      return false;
+    }
+
+    VehicleMonitoringDeliveryStructure[] split = new VehicleMonitoringDeliveryStructure[partitionCount];
+
+    for (VehicleActivityStructure activity : activities) {
+      int partition = getPartitionForKey(getVehicleActivityKey(activity),
+          partitionCount);
+      VehicleMonitoringDeliveryStructure target = split[partition];
+      if (target == null) {
+        target = createVehicleMonitoringDelivery(vm);
+        split[partition] = target;
+        addModuleDelivery(delivery, partitions, partition,
+            ESiriModuleType.VEHICLE_MONITORING, target);
+      }
+      target.getVehicleActivity().add(activity);
+    }
+
+    if (hasRemainder) {
+      VehicleMonitoringDeliveryStructure target = split[defaultPartition];
+      if (target == null) {
+        target = createVehicleMonitoringDelivery(vm);
+        split[defaultPartition] = target;
+        addModuleDelivery(delivery, partitions, defaultPartition,
+            ESiriModuleType.VEHICLE_MONITORING, target);
+      }
+      target.getVehicleActivityCancellation().addAll(
+          vm.getVehicleActivityCancellation());
+      target.getVehicleActivityNote().addAll(vm.getVehicleActivityNote());
+    }
+
+    return true;
+  }
+
+  private static boolean partitionStopMonitoringDelivery(
+      ServiceDelivery delivery, StopMonitoringDeliveryStructure sm,
+      ServiceDelivery[] partitions, int defaultPartition) {
+
+    int partitionCount = partitions.length;
+    List<MonitoredStopVisitStructure> visits = sm.getMonitoredStopVisit();
+
+    int[] visitPartitions = new int[visits.size()];
+    int commonPartition = defaultPartition;
+    boolean mixed = false;
+
+    for (int i = 0; i < visits.size(); ++i) {
+      int partition = getPartitionForKey(getStopVisitKey(visits.get(i)),
+          partitionCount);
+      visitPartitions[i] = partition;
+      if (i == 0)
+        commonPartition = partition;
+      else if (partition != commonPartition)
+        mixed = true;
+    }
+
+    if (!mixed) {
+      addModuleDelivery(delivery, partitions, commonPartition,
+          ESiriModuleType.STOP_MONITORING, sm);
+      return false;
+    }
+
+    /**
+     * The default partition gets a copy of the full delivery, such that
+     * cancellations, notices, notes and extensions are carried through as is,
+     * minus the stop visits that belong to other partitions
+     */
+    StopMonitoringDeliveryStructure[] split = new StopMonitoringDeliveryStructure[partitionCount];
+
+    StopMonitoringDeliveryStructure remainder = (StopMonitoringDeliveryStructure) SiriLibrary.deepCopyModuleDelivery(
+        ESiriModuleType.STOP_MONITORING, sm);
+    remainder.getMonitoredStopVisit().clear();
+    split[defaultPartition] = remainder;
+    addModuleDelivery(delivery, partitions, defaultPartition,
+        ESiriModuleType.STOP_MONITORING, remainder);
+
+    for (int i = 0; i < visits.size(); ++i) {
+      int partition = visitPartitions[i];
+      StopMonitoringDeliveryStructure target = split[partition];
+      if (target == null) {
+        target = new StopMonitoringDeliveryStructure();
+        SiriLibrary.copyServiceDelivery(sm, target);
+        target.setVersion(sm.getVersion());
+        split[partition] = target;
+        addModuleDelivery(delivery, partitions, partition,
+            ESiriModuleType.STOP_MONITORING, target);
+      }
+      target.getMonitoredStopVisit().add(visits.get(i));
+    }
+
+    return true;
+  }
+
+  private static boolean partitionSituationExchangeDelivery(
+      ServiceDelivery delivery, SituationExchangeDeliveryStructure sx,
+      ServiceDelivery[] partitions, int defaultPartition) {
+
+    int partitionCount = partitions.length;
+    Situations situations = sx.getSituations();
+
+    /**
+     * We only split deliveries that consist entirely of public transport
+     * situations. Anything else is kept whole in the default partition.
+     */
+    if (situations == null || !situations.getRoadSituationElement().isEmpty()
+        || situations.getPtSituationElement().size() < 2) {
+      int partition = defaultPartition;
+      if (situations != null
+          && situations.getRoadSituationElement().isEmpty()
+          && situations.getPtSituationElement().size() == 1) {
+        PtSituationElementStructure situation = situations.getPtSituationElement().get(
+            0);
+        partition = getPartitionForKey(getSituationKey(situation),
+            partitionCount);
+      }
+      addModuleDelivery(delivery, partitions, partition,
+          ESiriModuleType.SITUATION_EXCHANGE, sx);
+      return false;
+    }
+
+    SituationExchangeDeliveryStructure[] split = new SituationExchangeDeliveryStructure[partitionCount];
+    int used = 0;
+
+    for (PtSituationElementStructure situation : situations.getPtSituationElement()) {
+      int partition = getPartitionForKey(getSituationKey(situation),
+          partitionCount);
+      SituationExchangeDeliveryStructure target = split[partition];
+      if (target == null) {
+        target = new SituationExchangeDeliveryStructure();
+        SiriLibrary.copyServiceDelivery(sx, target);
+        target.setVersion(sx.getVersion());
+        target.setSituations(new Situations());
+        split[partition] = target;
+        used++;
+        addModuleDelivery(delivery, partitions, partition,
+            ESiriModuleType.SITUATION_EXCHANGE, target);
+      }
+      target.getSituations().getPtSituationElement().add(situation);
+    }
+
+    return used > 1;
+  }
+
+  private static VehicleMonitoringDeliveryStructure createVehicleMonitoringDelivery(
+      VehicleMonitoringDeliveryStructure vm) {
+    VehicleMonitoringDeliveryStructure target = new VehicleMonitoringDeliveryStructure();
+    SiriLibrary.copyServiceDelivery(vm, target);
+    target.setVersion(vm.getVersion());
+    target.setExtensions(vm.getExtensions());
+    return target;
+  }
+
+  private static void addModuleDelivery(ServiceDelivery delivery,
+      ServiceDelivery[] partitions, int partition, ESiriModuleType moduleType,
+      AbstractServiceDeliveryStructure moduleDelivery) {
+    ServiceDelivery target = partitions[partition];
+    if (target == null) {
+      target = copyServiceDeliveryHeader(delivery);
+      partitions[partition] = target;
+    }
+    List<AbstractServiceDeliveryStructure> moduleDeliveries = SiriLibrary.getServiceDeliveriesForModule(
+        target, moduleType);
+    moduleDeliveries.add(moduleDelivery);
+  }
+
+  private static ServiceDelivery copyServiceDeliveryHeader(
+      ServiceDelivery delivery) {
+    ServiceDelivery d = new ServiceDelivery();
+    d.setAddress(delivery.getAddress());
+    d.setErrorCondition(delivery.getErrorCondition());
+    d.setMoreData(delivery.isMoreData());
+    d.setProducerRef(delivery.getProducerRef());
+    d.setRequestMessageRef(delivery.getRequestMessageRef());
+    d.setResponseMessageIdentifier(delivery.getResponseMessageIdentifier());
+    d.setResponseTimestamp(delivery.getResponseTimestamp());
+    d.setSrsName(delivery.getSrsName());
+    d.setStatus(delivery.isStatus());
+    return d;
+  }
+
+  private static String getVehicleActivityKey(VehicleActivityStructure activity) {
+    MonitoredVehicleJourney mvj = activity.getMonitoredVehicleJourney();
+    if (mvj == null)
+      return null;
+    VehicleRefStructure vehicleRef = mvj.getVehicleRef();
+    if (vehicleRef == null)
+      return null;
+    return vehicleRef.getValue();
+  }
+
+  private static String getStopVisitKey(MonitoredStopVisitStructure visit) {
+    MonitoringRefStructure monitoringRef = visit.getMonitoringRef();
+    if (monitoringRef == null)
+      return null;
+    return monitoringRef.getValue();
+  }
+
+  private static String getSituationKey(PtSituationElementStructure situation) {
+    EntryQualifierStructure situationNumber = situation.getSituationNumber();
+    if (situationNumber == null)
+      return null;
+    return situationNumber.getValue();
+  }
+}
@@ -0,0 +1,342 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Singleton;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.util.EntityUtils;
+import org.onebusaway.siri.core.HttpCompressionSupport;
+import org.onebusaway.siri.core.PublicationStreamSupport;
+import org.onebusaway.siri.core.exceptions.SiriConnectionException;
+import org.onebusaway.siri.core.exceptions.SiriSerializationException;
+import org.onebusaway.siri.core.handlers.SiriRawHandler;
+import org.onebusaway.siri.core.handlers.SiriRawStreamHandler;
+import org.onebusaway.status_exporter.StatusProviderService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link HttpClientService} that routes requests for registered local urls
+ * directly to the {@link SiriRawHandler} registered for the url, in the same
+ * thread, without going through the network stack or an HTTP server. Requests
+ * for any other url are passed on to a delegate {@link HttpClientService}.
+ * 
+ * This is intended for deployments where a SIRI client and server run in the
+ * same JVM and for network-free testing and benchmarking of the subscription
+ * machinery. To use it, register the url of each local endpoint along with
+ * its handler (typically the {@link org.onebusaway.siri.core.SiriServer} or
+ * {@link org.onebusaway.siri.core.SiriClient} itself) and pass the service to
+ * {@link org.onebusaway.siri.core.SiriCommon#setHttpClientService(HttpClientService)}
+ * for each client and server that should use it.
+ * 
+ * Urls are matched exactly, so register the url as it will appear in requests
+ * (the target url of client requests and the consumer address of
+ * subscriptions). Publication streams to a local url are supported: each frame
+ * is handed to the handler as it is written, in the publishing thread.
+ * 
+ * @author agent
+ */
+@Singleton
+public class LoopbackHttpClientService implements HttpClientService,
+    StatusProviderService {
+
+  private static Logger _log = LoggerFactory.getLogger(LoopbackHttpClientService.class);
+
+  private static final String RESPONSE_CONTENT_TYPE = "text/xml;charset=UTF-8";
+
+  private static final String RESPONSE_CHARSET = "UTF-8";
+
+  private final ConcurrentMap<String, SiriRawHandler> _handlersByUrl = new ConcurrentHashMap<String, SiriRawHandler>();
+
+  private HttpClientService _delegate = new HttpClientServiceImpl();
+
+  private final AtomicLong _loopbackRequestCount = new AtomicLong();
+
+  private final AtomicLong _loopbackFrameCount = new AtomicLong();
+
+  private final AtomicLong _delegatedRequestCount = new AtomicLong();
+
+  /**
+   * 
+   * @param delegate the service used to execute requests for urls that haven't
+   *          been registered
+   */
+  public void setDelegate(HttpClientService delegate) {
+    _delegate = delegate;
+  }
+
+  /**
+   * Route all subsequent requests for the specified url to the specified
+   * handler. If the handler also implements {@link SiriRawStreamHandler}, the
+   * stream interface is preferred, as with the HTTP servlet.
+   * 
+   * @param url the url, exactly as it will appear in requests
+   * @param handler the handler for the url
+   */
+  public void register(String url, SiriRawHandler handler) {
+    _handlersByUrl.put(url, handler);
+  }
+
+  /**
+   * 
+   * @param url a url previously passed to
+   *          {@link #register(String, SiriRawHandler)}
+   */
+  public void unregister(String url) {
+    _handlersByUrl.remove(url);
+  }
+
+  /**
+   * 
+   * @param url
+   * @return true if requests for the specified url are handled locally
+   */
+  public boolean isRegistered(String url) {
+    return _handlersByUrl.containsKey(url);
+  }
+
+  /****
+   * {@link HttpClientService} Interface
+   ****/
+
+  @Override
+  public HttpResponse executeHttpMethod(HttpClient client,
+      HttpUriRequest request) throws SiriConnectionException {
+
+    SiriRawHandler handler = _handlersByUrl.get(request.getURI().toString());
+
+    if (handler == null) {
+      _delegatedRequestCount.incrementAndGet();
+      return _delegate.executeHttpMethod(client, request);
+    }
+
+    _loopbackRequestCount.incrementAndGet();
+
+    HttpEntity entity = null;
+    if (request instanceof HttpEntityEnclosingRequest)
+      entity = ((HttpEntityEnclosingRequest) request).getEntity();
+
+    try {
+
+      if (entity != null && isPublicationStream(entity)) {
+        entity.writeTo(new FrameDispatchingOutputStream(request, handler));
+        return createResponse(HttpStatus.SC_OK, "OK", new byte[0]);
+      }
+
+      byte[] content = getRequestContent(entity);
+      byte[] responseContent = handleRequest(handler, entity, content);
+      return createResponse(HttpStatus.SC_OK, "OK", responseContent);
+
+    } catch (IOException ex) {
+      throw new SiriConnectionException("error connecting to url "
+          + request.getURI(), ex);
+    } catch (RuntimeException ex) {
+      /**
+       * Mirror what the servlet container would do with an exception thrown
+       * from the handler
+       */
+      _log.warn("error handling loopback request to " + request.getURI(), ex);
+      return createResponse(HttpStatus.SC_INTERNAL_SERVER_ERROR,
+          "Internal Server Error", getBytes(String.valueOf(ex.getMessage())));
+    }
+  }
+
+  /****
+   * {@link StatusProviderService} Interface
+   ****/
+
+  @Override
+  public void getStatus(Map<String, String> status) {
+    status.put("siri.loopback.registeredUrls",
+        Integer.toString(_handlersByUrl.size()));
+    status.put("siri.loopback.loopbackRequestCounter",
+        Long.toString(_loopbackRequestCount.get()));
+    status.put("siri.loopback.loopbackFrameCounter",
+        Long.toString(_loopbackFrameCount.get()));
+    status.put("siri.loopback.delegatedRequestCounter",
+        Long.toString(_delegatedRequestCount.get()));
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private boolean isPublicationStream(HttpEntity entity) {
+    Header contentType = entity.getContentType();
+    return contentType != null
+        && contentType.getValue().startsWith(
+            PublicationStreamSupport.CONTENT_TYPE);
+  }
+
+  private byte[] getRequestContent(HttpEntity entity) throws IOException {
+    if (entity == null)
+      return new byte[0];
+    return EntityUtils.toByteArray(HttpCompressionSupport.getDecodedEntity(entity));
+  }
+
+  private byte[] handleRequest(SiriRawHandler handler, HttpEntity entity,
+      byte[] content) throws IOException {
+
+    if (handler instanceof SiriRawStreamHandler) {
+      ByteArrayOutputStream output = new ByteArrayOutputStream();
+      ((SiriRawStreamHandler) handler).handleRawRequest(
+          new ByteArrayInputStream(content), output);
+      return output.toByteArray();
+    }
+
+    String charset = entity == null ? null
+        : EntityUtils.getContentCharSet(entity);
+    if (charset == null)
+      charset = HTTP.DEFAULT_CONTENT_CHARSET;
+
+    Reader reader = new InputStreamReader(new ByteArrayInputStream(content),
+        charset);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    Writer writer = new OutputStreamWriter(output, RESPONSE_CHARSET);
+    handler.handleRawRequest(reader, writer);
+    writer.close();
+    return output.toByteArray();
+  }
+
+  private void handleFrame(HttpUriRequest request, SiriRawHandler handler,
+      byte[] frame) {
+
+    _loopbackFrameCount.incrementAndGet();
+
+    /**
+     * A bad frame shouldn't bring down the rest of the stream
+     */
+    try {
+      if (handler instanceof SiriRawStreamHandler) {
+        ((SiriRawStreamHandler) handler).handleRawRequest(
+            new ByteArrayInputStream(frame), new ByteArrayOutputStream());
+      } else {
+        String content = new String(frame, PublicationStreamSupport.CHARSET);
+        handler.handleRawRequest(new StringReader(content), new StringWriter());
+      }
+    } catch (IOException ex) {
+      _log.warn("error handling loopback publication stream frame to "
+          + request.getURI(), ex);
+    } catch (RuntimeException ex) {
+      _log.warn("error handling loopback publication stream frame to "
+          + request.getURI(), ex);
+    }
+  }
+
+  private static HttpResponse createResponse(int statusCode,
+      String reasonPhrase, byte[] content) {
+    BasicHttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1,
+        statusCode, reasonPhrase);
+    ByteArrayEntity entity = new ByteArrayEntity(content);
+    entity.setContentType(RESPONSE_CONTENT_TYPE);
+    response.setEntity(entity);
+    return response;
+  }
+
+  private static byte[] getBytes(String value) {
+    try {
+      return value.getBytes(RESPONSE_CHARSET);
+    } catch (UnsupportedEncodingException ex) {
+      throw new SiriSerializationException(ex);
+    }
+  }
+
+  /****
+   * Internal Classes
+   ****/
+
+  /**
+   * Buffers the output of a publication stream entity, handing each complete
+   * frame to the handler on flush. The publication stream flushes after every
+   * frame, so in practice each frame is dispatched as soon as it is written.
+   */
+  private class FrameDispatchingOutputStream extends ByteArrayOutputStream {
+
+    private final HttpUriRequest _request;
+
+    private final SiriRawHandler _handler;
+
+    public FrameDispatchingOutputStream(HttpUriRequest request,
+        SiriRawHandler handler) {
+      _request = request;
+      _handler = handler;
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+
+      int consumed = 0;
+
+      while (count - consumed >= 4) {
+
+        int length = 0;
+        for (int i = 0; i < 4; ++i)
+          length = (length << 8) | buf[consumed + i] & 0xFF;
+        if (length < 0)
+          throw new IOException("invalid frame size " + length);
+        if (count - consumed - 4 < length)
+          break;
+
+        byte[] frame = new byte[length];
+        System.arraycopy(buf, consumed + 4, frame, 0, length);
+        consumed += 4 + length;
+
+        /**
+         * An empty frame is a keep-alive
+         */
+        if (length > 0)
+          handleFrame(_request, _handler, frame);
+      }
+
+      /**
+       * Keep any partial frame around until the rest of it arrives
+       */
+      System.arraycopy(buf, consumed, buf, 0, count - consumed);
+      count -= consumed;
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+}
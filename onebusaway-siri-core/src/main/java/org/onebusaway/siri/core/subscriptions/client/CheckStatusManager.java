@@ -16,7 +16,13 @@
  */
 package org.onebusaway.siri.core.subscriptions.client;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledFuture;
@@ -30,6 +36,7 @@ import org.onebusaway.siri.core.SiriTypeFactory;
 import org.onebusaway.siri.core.exceptions.SiriMissingArgumentException;
 import org.onebusaway.siri.core.handlers.SiriClientHandler;
 import org.onebusaway.siri.core.services.SchedulingService;
+import org.onebusaway.siri.core.versioning.ESiriVersion;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +52,13 @@ import uk.org.siri.siri.CheckStatusResponseBodyStructure.ErrorCondition;
  * endpoints, listening for responses, and taking appropriate reaction to reset
  * a subscription if the proper response is not received.
  * 
+ * CheckStatus requests are sent per endpoint, not per channel. All channels
+ * that share a check status url (and SIRI version) share a single probe task,
+ * run at the shortest check status interval of those channels, and the
+ * response to a probe is applied to each of those channels. The first run of
+ * each probe task is delayed by a random jitter, such that probes to different
+ * endpoints are spread out over time.
+ * 
  * @author bdferris
  * 
  */
@@ -55,6 +69,22 @@ class CheckStatusManager {
 
   private ConcurrentMap<String, PendingCheckStatusRequest> _pendingCheckStatusRequests = new ConcurrentHashMap<String, PendingCheckStatusRequest>();
 
+  /**
+   * Check status endpoints, keyed by check status url and SIRI version. Guarded
+   * by "this", along with {@link #_endpointsByChannel}.
+   */
+  private Map<String, CheckStatusEndpoint> _endpoints = new HashMap<String, CheckStatusEndpoint>();
+
+  private Map<ClientSubscriptionChannel, CheckStatusEndpoint> _endpointsByChannel = new HashMap<ClientSubscriptionChannel, CheckStatusEndpoint>();
+
+  private final Random _random = new Random();
+
+  /**
+   * The maximum random delay, as a fraction of the check status interval, added
+   * to the first check status request for an endpoint
+   */
+  private double _checkStatusJitter = 0.1;
+
   private SiriClientSubscriptionManager _subscriptionManager;
 
   private SiriClientHandler _client;
@@ -78,10 +108,22 @@ class CheckStatusManager {
   }
 
   /**
-   * Reset the CheckStatus task for the specified channel. Any existing check
-   * status task will be canceled and cleared. If the checkStatusInterval is
-   * greater than zero, then a new check status task will be created and
-   * scheduled.
+   * 
+   * @param checkStatusJitter the maximum random delay, as a fraction of the
+   *          check status interval, added to the first check status request for
+   *          an endpoint
+   */
+  public void setCheckStatusJitter(double checkStatusJitter) {
+    _checkStatusJitter = checkStatusJitter;
+  }
+
+  /**
+   * Reset the CheckStatus task for the specified channel. The channel is
+   * removed from its existing check status endpoint, if any, and the endpoint
+   * task is canceled if no other channels refer to it. If the
+   * checkStatusInterval is greater than zero, then the channel is added to the
+   * endpoint for its check status url, creating and scheduling a new task if
+   * needed.
    * 
    * @param channel the CheckStatus task will be reset on this channel
    * @param checkStatusInterval the interval between check status requests, in
@@ -98,26 +140,18 @@ class CheckStatusManager {
       _log.debug("resetting check status task: channel={} interval={}",
           channel.getAddress(), checkStatusInterval);
 
-      ScheduledFuture<?> checkStatusTask = channel.getCheckStatusTask();
-      if (checkStatusTask != null) {
-        checkStatusTask.cancel(true);
-        channel.setCheckStatusTask(null);
-      }
-
-      if (checkStatusInterval > 0) {
-        CheckStatusTask task = new CheckStatusTask(channel);
+      removeChannelFromEndpoint(channel);
 
-        checkStatusTask = _schedulingService.scheduleAtFixedRate(task,
-            checkStatusInterval, checkStatusInterval, TimeUnit.SECONDS);
-        channel.setCheckStatusTask(checkStatusTask);
-      }
+      if (checkStatusInterval > 0)
+        addChannelToEndpoint(channel, checkStatusInterval);
     }
   }
 
   /**
    * Submit a CheckStatusResponse received from a SIRI endpoint. The
-   * subscription will be reset if the CheckStatusResponse has errors or if the
-   * SIRI endpoint has been restarted since the most-recent check.
+   * subscriptions of each channel sharing the endpoint will be reset if the
+   * CheckStatusResponse has errors or if the SIRI endpoint has been restarted
+   * since the most-recent check.
    * 
    * @param response the CheckStatusResponse
    */
@@ -144,60 +178,177 @@ class CheckStatusManager {
     ScheduledFuture<?> task = pending.getTimeoutTask();
     task.cancel(true);
 
-    ClientSubscriptionChannel channel = pending.getChannel();
+    List<ClientSubscriptionChannel> channels = completeCheckStatus(
+        pending.getEndpoint(), messageRef.getValue());
 
-    boolean isNewer = isCheckStatusNewer(channel, response);
     boolean isInError = response.isStatus() == null || !response.isStatus();
 
-    /**
-     * If the channel hasn't been rebooted (aka it's not newer) and the channel
-     * is not in error, we're cool!
-     */
-    if (!(isNewer || isInError))
-      return;
+    for (ClientSubscriptionChannel channel : channels) {
+
+      boolean isNewer = isCheckStatusNewer(channel, response);
+
+      /**
+       * If the channel hasn't been rebooted (aka it's not newer) and the
+       * channel is not in error, we're cool!
+       */
+      if (!(isNewer || isInError))
+        continue;
 
-    logErrorInCheckStatusResponse(channel, response, isNewer, isInError);
+      logErrorInCheckStatusResponse(channel, response, isNewer, isInError);
 
-    _subscriptionManager.handleChannelDisconnectAndReconnect(channel);
+      _subscriptionManager.handleChannelDisconnectAndReconnect(channel);
+    }
   }
 
   /****
    * Private Methods
    ****/
 
-  private void checkStatus(ClientSubscriptionChannel channel) {
+  private synchronized void addChannelToEndpoint(
+      ClientSubscriptionChannel channel, int checkStatusInterval) {
+
+    String url = channel.getCheckStatusUrl();
+    if (url == null)
+      url = channel.getAddress();
+    ESiriVersion targetVersion = channel.getTargetVersion();
+
+    String key = url + " " + targetVersion;
+    CheckStatusEndpoint endpoint = _endpoints.get(key);
+    if (endpoint == null) {
+      endpoint = new CheckStatusEndpoint(url, targetVersion);
+      _endpoints.put(key, endpoint);
+    }
+
+    endpoint.channels.put(channel, checkStatusInterval);
+    _endpointsByChannel.put(channel, endpoint);
+
+    if (endpoint.task == null || checkStatusInterval < endpoint.interval)
+      scheduleEndpoint(endpoint, checkStatusInterval);
+    else
+      channel.setCheckStatusTask(endpoint.task);
+  }
+
+  private synchronized void removeChannelFromEndpoint(
+      ClientSubscriptionChannel channel) {
+
+    channel.setCheckStatusTask(null);
+
+    CheckStatusEndpoint endpoint = _endpointsByChannel.remove(channel);
+    if (endpoint == null)
+      return;
+
+    endpoint.channels.remove(channel);
+
+    if (endpoint.channels.isEmpty()) {
+      _log.debug("no more channels for check status endpoint: {}",
+          endpoint.url);
+      if (endpoint.task != null) {
+        endpoint.task.cancel(true);
+        endpoint.task = null;
+      }
+      _endpoints.remove(endpoint.url + " " + endpoint.targetVersion);
+      return;
+    }
+
+    /**
+     * If the channel had the shortest interval, we can back off
+     */
+    int interval = Integer.MAX_VALUE;
+    for (int channelInterval : endpoint.channels.values())
+      interval = Math.min(interval, channelInterval);
+    if (interval != endpoint.interval)
+      scheduleEndpoint(endpoint, interval);
+  }
+
+  private void scheduleEndpoint(CheckStatusEndpoint endpoint, int interval) {
+
+    if (endpoint.task != null)
+      endpoint.task.cancel(true);
+
+    long period = interval * 1000L;
+    long initialDelay = period
+        + (long) (_random.nextDouble() * _checkStatusJitter * period);
+
+    _log.debug("scheduling check status endpoint: url={} interval={}",
+        endpoint.url, interval);
+
+    endpoint.interval = interval;
+    endpoint.task = _schedulingService.scheduleAtFixedRate(
+        new CheckStatusTask(endpoint), initialDelay, period,
+        TimeUnit.MILLISECONDS);
+
+    for (ClientSubscriptionChannel channel : endpoint.channels.keySet())
+      channel.setCheckStatusTask(endpoint.task);
+  }
+
+  /**
+   * 
+   * @param endpoint
+   * @return a message id for a new check status request to the endpoint, or
+   *         null if the endpoint has no channels or a request is already
+   *         pending
+   */
+  private synchronized String startCheckStatus(CheckStatusEndpoint endpoint) {
+
+    if (endpoint.channels.isEmpty())
+      return null;
+
+    if (endpoint.pendingMessageId != null) {
+      _log.debug("check status request already pending: url={} messageId={}",
+          endpoint.url, endpoint.pendingMessageId);
+      return null;
+    }
 
     MessageQualifierStructure messageId = SiriTypeFactory.randomMessageId();
+    endpoint.pendingMessageId = messageId.getValue();
+    return endpoint.pendingMessageId;
+  }
+
+  /**
+   * 
+   * @param endpoint
+   * @param messageId
+   * @return the channels currently sharing the endpoint, to which the result of
+   *         the check status request applies
+   */
+  private synchronized List<ClientSubscriptionChannel> completeCheckStatus(
+      CheckStatusEndpoint endpoint, String messageId) {
+    if (messageId.equals(endpoint.pendingMessageId))
+      endpoint.pendingMessageId = null;
+    return new ArrayList<ClientSubscriptionChannel>(endpoint.channels.keySet());
+  }
+
+  private void checkStatus(CheckStatusEndpoint endpoint) {
+
+    String messageId = startCheckStatus(endpoint);
+    if (messageId == null)
+      return;
 
     CheckStatusRequestStructure checkStatus = new CheckStatusRequestStructure();
     checkStatus.setRequestTimestamp(new Date());
-    checkStatus.setMessageIdentifier(messageId);
+    checkStatus.setMessageIdentifier(SiriTypeFactory.messageId(messageId));
 
     Siri siri = new Siri();
     siri.setCheckStatusRequest(checkStatus);
 
-    String url = channel.getCheckStatusUrl();
-    if (url == null)
-      url = channel.getAddress();
-
     SiriClientRequest request = new SiriClientRequest();
-    request.setTargetUrl(url);
-    request.setTargetVersion(channel.getTargetVersion());
+    request.setTargetUrl(endpoint.url);
+    request.setTargetVersion(endpoint.targetVersion);
     request.setPayload(siri);
 
     PendingCheckStatusTimeoutTask timeoutTask = new PendingCheckStatusTimeoutTask(
-        channel, messageId.getValue());
+        endpoint, messageId);
     ScheduledFuture<?> future = _schedulingService.scheduleResponseTimeoutTask(timeoutTask);
 
     /**
      * 
      */
-    PendingCheckStatusRequest pending = new PendingCheckStatusRequest(channel,
+    PendingCheckStatusRequest pending = new PendingCheckStatusRequest(endpoint,
         future);
-    _pendingCheckStatusRequests.put(messageId.getValue(), pending);
+    _pendingCheckStatusRequests.put(messageId, pending);
 
-    _log.debug("sending check status request for channel={} messageId={}",
-        channel.getAddress(), messageId.getValue());
+    _log.debug("sending check status request for url={} messageId={}",
+        endpoint.url, messageId);
 
     /**
      * Submit the request
@@ -258,29 +409,53 @@ class CheckStatusManager {
    * Internal Classes
    ****/
 
+  private static class CheckStatusEndpoint {
+
+    private final String url;
+
+    private final ESiriVersion targetVersion;
+
+    /**
+     * The channels sharing this endpoint, along with their check status
+     * intervals
+     */
+    private final Map<ClientSubscriptionChannel, Integer> channels = new LinkedHashMap<ClientSubscriptionChannel, Integer>();
+
+    private int interval;
+
+    private ScheduledFuture<?> task;
+
+    private String pendingMessageId;
+
+    public CheckStatusEndpoint(String url, ESiriVersion targetVersion) {
+      this.url = url;
+      this.targetVersion = targetVersion;
+    }
+  }
+
   private class CheckStatusTask implements Runnable {
 
-    private final ClientSubscriptionChannel _channel;
+    private final CheckStatusEndpoint _endpoint;
 
-    public CheckStatusTask(ClientSubscriptionChannel channel) {
-      _channel = channel;
+    public CheckStatusTask(CheckStatusEndpoint endpoint) {
+      _endpoint = endpoint;
     }
 
     @Override
     public void run() {
-      checkStatus(_channel);
+      checkStatus(_endpoint);
     }
   }
 
   private class PendingCheckStatusTimeoutTask implements Runnable {
 
-    private final ClientSubscriptionChannel _channel;
+    private final CheckStatusEndpoint _endpoint;
 
     private final String _messageId;
 
-    public PendingCheckStatusTimeoutTask(ClientSubscriptionChannel channel,
+    public PendingCheckStatusTimeoutTask(CheckStatusEndpoint endpoint,
         String messageId) {
-      _channel = channel;
+      _endpoint = endpoint;
       _messageId = messageId;
     }
 
@@ -299,30 +474,34 @@ class CheckStatusManager {
         return;
 
       /**
-       * The check status did not succeed, so we attempt to reconnect the
-       * channel
+       * The check status did not succeed, so we attempt to reconnect each
+       * channel sharing the endpoint
        */
-      _log.warn("no check status response received: address="
-          + _channel.getAddress() + " messageId=" + _messageId + " timeout="
+      _log.warn("no check status response received: url=" + _endpoint.url
+          + " messageId=" + _messageId + " timeout="
           + _schedulingService.getResponseTimeout() + "s");
-      _subscriptionManager.handleChannelDisconnectAndReconnect(_channel);
+
+      List<ClientSubscriptionChannel> channels = completeCheckStatus(
+          _endpoint, _messageId);
+      for (ClientSubscriptionChannel channel : channels)
+        _subscriptionManager.handleChannelDisconnectAndReconnect(channel);
     }
   }
 
   private static class PendingCheckStatusRequest {
 
-    private final ClientSubscriptionChannel _channel;
+    private final CheckStatusEndpoint _endpoint;
 
     private ScheduledFuture<?> _timeoutTask;
 
-    public PendingCheckStatusRequest(ClientSubscriptionChannel channel,
+    public PendingCheckStatusRequest(CheckStatusEndpoint endpoint,
         ScheduledFuture<?> timeoutTask) {
-      _channel = channel;
+      _endpoint = endpoint;
       _timeoutTask = timeoutTask;
     }
 
-    public ClientSubscriptionChannel getChannel() {
-      return _channel;
+    public CheckStatusEndpoint getEndpoint() {
+      return _endpoint;
     }
 
     public ScheduledFuture<?> getTimeoutTask() {
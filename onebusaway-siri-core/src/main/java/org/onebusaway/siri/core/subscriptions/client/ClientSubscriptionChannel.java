@@ -16,12 +16,15 @@
  */
 package org.onebusaway.siri.core.subscriptions.client;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 
+import org.onebusaway.siri.core.SiriChannelInfo;
+import org.onebusaway.siri.core.SiriClientRequest;
 import org.onebusaway.siri.core.subscriptions.SubscriptionId;
 import org.onebusaway.siri.core.subscriptions.SubscriptionSupport;
 import org.onebusaway.siri.core.versioning.ESiriVersion;
@@ -153,6 +156,19 @@ class ClientSubscriptionChannel {
     this.context = context;
   }
 
+  /**
+   * 
+   * @return new channel info for a delivery on this channel that doesn't
+   *         reference a specific subscription. The list of client requests is
+   *         empty and not modifiable.
+   */
+  public SiriChannelInfo getChannelInfo() {
+    SiriChannelInfo info = new SiriChannelInfo();
+    info.setSiriClientRequests(Collections.<SiriClientRequest> emptyList());
+    info.setContext(context);
+    return info;
+  }
+
   public synchronized void getStatus(String prefix, Map<String, String> status) {
     status.put(prefix + ".creationTime",
         SubscriptionSupport.getDateAsString(creationTime));
@@ -16,12 +16,15 @@
  */
 package org.onebusaway.siri.core.subscriptions.client;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.onebusaway.siri.core.ESiriModuleType;
+import org.onebusaway.siri.core.SiriChannelInfo;
 import org.onebusaway.siri.core.SiriClientRequest;
 import org.onebusaway.siri.core.subscriptions.SubscriptionId;
 import org.onebusaway.siri.core.subscriptions.SubscriptionSupport;
@@ -50,12 +53,21 @@ class ClientSubscriptionInstance {
   
   private AtomicInteger serviceDeliveryCount = new AtomicInteger();
 
+  private AtomicInteger duplicateServiceDeliveryCount = new AtomicInteger();
+
+  /**
+   * The client request as an immutable list, shared by the channel info of
+   * every delivery on this subscription
+   */
+  private final List<SiriClientRequest> requests;
+
   public ClientSubscriptionInstance(ClientSubscriptionChannel channel,
       SubscriptionId subscriptionId, SiriClientRequest request,
       ESiriModuleType moduleType, ScheduledFuture<?> expirationTask) {
     this.channel = channel;
     this.subscriptionId = subscriptionId;
     this.request = request;
+    this.requests = Collections.singletonList(request);
     this.moduleType = moduleType;
     this.expirationTask = expirationTask;
   }
@@ -84,14 +96,36 @@ class ClientSubscriptionInstance {
     return creationTime;
   }
 
+  /**
+   * 
+   * @return new channel info for a delivery on this subscription alone. The
+   *         list of client requests is not modifiable.
+   */
+  public SiriChannelInfo getChannelInfo() {
+    SiriChannelInfo info = new SiriChannelInfo();
+    info.setSiriClientRequests(requests);
+    info.setContext(channel.getContext());
+    return info;
+  }
+
   public synchronized void getStatus(String prefix, Map<String, String> status) {
     status.put(prefix + ".address", channel.getAddress());
     status.put(prefix + ".moduleType", moduleType.toString());
     status.put(prefix + ".creationTime", SubscriptionSupport.getDateAsString(creationTime));
     status.put(prefix + ".serviceDeliveryCount", Integer.toString(serviceDeliveryCount.get()));
+    status.put(prefix + ".duplicateServiceDeliveryCount", Integer.toString(duplicateServiceDeliveryCount.get()));
   }
 
   public void recordServiceDeliveryStatistics(ServiceDelivery serviceDelivery) {
     serviceDeliveryCount.incrementAndGet();
   }
+
+  /**
+   * Record a delivery that was skipped as a duplicate. It still counts towards
+   * the total delivery count.
+   */
+  public void recordDuplicateServiceDeliveryStatistics() {
+    serviceDeliveryCount.incrementAndGet();
+    duplicateServiceDeliveryCount.incrementAndGet();
+  }
 }
\ No newline at end of file
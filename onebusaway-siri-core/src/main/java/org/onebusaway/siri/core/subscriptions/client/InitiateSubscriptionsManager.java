@@ -19,6 +19,7 @@ package org.onebusaway.siri.core.subscriptions.client;
 import static org.onebusaway.siri.core.subscriptions.client.ClientSupport.appendError;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -109,27 +110,54 @@ class InitiateSubscriptionsManager {
 
     _log.debug("register pending subscription request");
 
+    registerPendingSubscriptions(Collections.singletonList(request),
+        Collections.singletonList(subscriptionRequest));
+  }
+
+  /**
+   * Register a batch of pending subscriptions, as with
+   * {@link #registerPendingSubscription(SiriClientRequest, SubscriptionRequest)}
+   * , where the subscription requests have been combined into a single request
+   * to the SIRI endpoint. None of the pending subscriptions are registered if
+   * any of them conflict, and a single timeout task is registered for the
+   * batch.
+   * 
+   * @param requests the client requests
+   * @param subscriptionRequests the SIRI subscription requests associated with
+   *          each client request
+   */
+  public void registerPendingSubscriptions(List<SiriClientRequest> requests,
+      List<SubscriptionRequest> subscriptionRequests) {
+
+    _log.debug("register pending subscription requests: {}", requests.size());
+
     Map<SubscriptionId, ClientPendingSubscription> pendingSubscriptions = new HashMap<SubscriptionId, ClientPendingSubscription>();
 
-    for (ESiriModuleType moduleType : ESiriModuleType.values()) {
+    for (int i = 0; i < requests.size(); ++i) {
 
-      List<AbstractSubscriptionStructure> requests = SiriLibrary.getSubscriptionRequestsForModule(
-          subscriptionRequest, moduleType);
+      SiriClientRequest request = requests.get(i);
+      SubscriptionRequest subscriptionRequest = subscriptionRequests.get(i);
 
-      for (AbstractSubscriptionStructure subRequest : requests) {
+      for (ESiriModuleType moduleType : SiriLibrary.getRequestModuleTypes()) {
 
-        SubscriptionId subId = getSubscriptionIdForSubscriptionRequest(
-            subscriptionRequest, subRequest);
+        List<AbstractSubscriptionStructure> subRequests = SiriLibrary.getSubscriptionRequestsForModule(
+            subscriptionRequest, moduleType);
 
-        /**
-         * Check to make sure that the new subscription doesn't conflict with an
-         * existing subscription, either active or pending
-         */
-        checkForModuleTypeConflict(subId, moduleType, pendingSubscriptions);
+        for (AbstractSubscriptionStructure subRequest : subRequests) {
 
-        ClientPendingSubscription pending = new ClientPendingSubscription(
-            subId, request, moduleType, subRequest);
-        pendingSubscriptions.put(subId, pending);
+          SubscriptionId subId = getSubscriptionIdForSubscriptionRequest(
+              subscriptionRequest, subRequest);
+
+          /**
+           * Check to make sure that the new subscription doesn't conflict with
+           * an existing subscription, either active or pending
+           */
+          checkForModuleTypeConflict(subId, moduleType, pendingSubscriptions);
+
+          ClientPendingSubscription pending = new ClientPendingSubscription(
+              subId, request, moduleType, subRequest);
+          pendingSubscriptions.put(subId, pending);
+        }
       }
     }
 
@@ -150,7 +178,7 @@ class InitiateSubscriptionsManager {
   public void clearPendingSubscription(SiriClientRequest request,
       SubscriptionRequest subscriptionRequest) {
 
-    for (ESiriModuleType moduleType : ESiriModuleType.values()) {
+    for (ESiriModuleType moduleType : SiriLibrary.getRequestModuleTypes()) {
 
       List<AbstractSubscriptionStructure> requests = SiriLibrary.getSubscriptionRequestsForModule(
           subscriptionRequest, moduleType);
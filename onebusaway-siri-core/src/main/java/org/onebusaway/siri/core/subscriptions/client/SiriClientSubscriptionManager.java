@@ -19,6 +19,7 @@ package org.onebusaway.siri.core.subscriptions.client;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -78,6 +79,14 @@ public class SiriClientSubscriptionManager implements StatusProviderService {
    */
   private ConcurrentMap<SubscriptionId, ClientSubscriptionInstance> _activeSubscriptions = new ConcurrentHashMap<SubscriptionId, ClientSubscriptionInstance>();
 
+  /**
+   * The same active subscriptions, indexed by subscriber id and then
+   * subscription id, such that we can resolve the subscription for an incoming
+   * module delivery without allocating a {@link SubscriptionId}. Modified
+   * along with {@link #_activeSubscriptions}.
+   */
+  private ConcurrentMap<String, ConcurrentMap<String, ClientSubscriptionInstance>> _activeSubscriptionsBySubscriberId = new ConcurrentHashMap<String, ConcurrentMap<String, ClientSubscriptionInstance>>();
+
   private SchedulingService _schedulingService;
 
   private InitiateSubscriptionsManager _initiateSubscriptionsManager;
@@ -137,6 +146,27 @@ public class SiriClientSubscriptionManager implements StatusProviderService {
         subscriptionRequest);
   }
 
+  /**
+   * Register a batch of pending subscriptions, sent to a SIRI endpoint as a
+   * single combined subscription request. Each client request is registered
+   * with its own subscription request structure, such that the response status
+   * for each module subscription is matched back to the client request that
+   * initiated it, but the batch shares a single response timeout.
+   * 
+   * @param requests the SiriClientRequests responsible for the subscription
+   *          requests
+   * @param subscriptionRequests the subscription request structures, one for
+   *          each client request
+   */
+  public void registerPendingSubscriptions(List<SiriClientRequest> requests,
+      List<SubscriptionRequest> subscriptionRequests) {
+
+    _log.info("pending subscriptions: {}", requests);
+
+    _initiateSubscriptionsManager.registerPendingSubscriptions(requests,
+        subscriptionRequests);
+  }
+
   public void clearPendingSubscription(SiriClientRequest request,
       SubscriptionRequest subscriptionRequest) {
 
@@ -175,8 +205,121 @@ public class SiriClientSubscriptionManager implements StatusProviderService {
   public boolean isSubscriptionActiveForModuleDelivery(
       AbstractServiceDeliveryStructure moduleDelivery) {
 
-    SubscriptionId id = ClientSupport.getSubscriptionIdForModuleDelivery(moduleDelivery);
-    return isSubscriptionActive(id);
+    if (!ClientSupport.hasSubscriptionIdForModuleDelivery(moduleDelivery)) {
+      /**
+       * Throws the appropriate SiriMissingArgumentException
+       */
+      ClientSupport.getSubscriptionIdForModuleDelivery(moduleDelivery);
+    }
+    return getSubscriptionInstanceForModuleDelivery(moduleDelivery) != null;
+  }
+
+  /**
+   * 
+   * @param subscriberId the subscriber id of a subscription, or null
+   * @param subscriptionId the subscription id of a subscription, or null
+   * @return the address of the channel of the specified active subscription, or
+   *         null if the subscription is not active
+   */
+  public String getChannelAddressForSubscription(String subscriberId,
+      String subscriptionId) {
+    ClientSubscriptionInstance instance = getSubscriptionInstance(
+        subscriberId, subscriptionId);
+    if (instance == null)
+      return null;
+    return instance.getChannel().getAddress();
+  }
+
+  /**
+   * Record delivery statistics for a delivery that was skipped as a duplicate
+   * before it was unmarshalled.
+   * 
+   * @param subscriberId the subscriber id of a subscription, or null
+   * @param subscriptionId the subscription id of a subscription, or null
+   */
+  public void recordDuplicateServiceDelivery(String subscriberId,
+      String subscriptionId) {
+    ClientSubscriptionInstance instance = getSubscriptionInstance(
+        subscriberId, subscriptionId);
+    if (instance != null)
+      instance.recordDuplicateServiceDeliveryStatistics();
+  }
+
+  /**
+   * Resolve the subscriptions and channel for an incoming service delivery in a
+   * single pass over its module deliveries, recording delivery statistics for
+   * each matching subscription along the way. This is equivalent to calling
+   * {@link #recordServiceDeliveryStatistics(ServiceDelivery)} followed by
+   * {@link #getChannelInfoForServiceDelivery(ServiceDelivery)}, but in the
+   * common case of a delivery for a single subscription, it only allocates the
+   * returned channel info.
+   * 
+   * @param serviceDelivery
+   * @return new channel info for the delivery. Its list of client requests may
+   *         not be modifiable.
+   */
+  public SiriChannelInfo resolveServiceDelivery(ServiceDelivery serviceDelivery) {
+
+    ClientSubscriptionInstance first = null;
+    List<ClientSubscriptionInstance> others = null;
+
+    for (ESiriModuleType moduleType : SiriLibrary.getModuleTypes()) {
+      List<AbstractServiceDeliveryStructure> moduleDeliveries = SiriLibrary.getServiceDeliveriesForModule(
+          serviceDelivery, moduleType);
+      for (int i = 0; i < moduleDeliveries.size(); ++i) {
+        ClientSubscriptionInstance instance = getSubscriptionInstanceForModuleDelivery(moduleDeliveries.get(i));
+        if (instance == null || instance == first)
+          continue;
+        if (first == null) {
+          first = instance;
+        } else {
+          if (others == null)
+            others = new ArrayList<ClientSubscriptionInstance>();
+          if (!others.contains(instance))
+            others.add(instance);
+        }
+      }
+    }
+
+    if (first != null)
+      first.recordServiceDeliveryStatistics(serviceDelivery);
+    if (others != null) {
+      for (ClientSubscriptionInstance instance : others)
+        instance.recordServiceDeliveryStatistics(serviceDelivery);
+    }
+
+    ClientSubscriptionChannel addressChannel = null;
+    String address = serviceDelivery.getAddress();
+    if (address != null)
+      addressChannel = _activeChannels.get(address);
+
+    if (first == null) {
+      if (addressChannel != null)
+        return addressChannel.getChannelInfo();
+      return new SiriChannelInfo();
+    }
+
+    if (others == null
+        && (addressChannel == null || addressChannel == first.getChannel()))
+      return first.getChannelInfo();
+
+    /**
+     * The uncommon case of a delivery spanning multiple subscriptions or
+     * channels
+     */
+    Set<ClientSubscriptionChannel> channels = new HashSet<ClientSubscriptionChannel>();
+    Set<SiriClientRequest> requests = new LinkedHashSet<SiriClientRequest>();
+    if (addressChannel != null)
+      channels.add(addressChannel);
+    channels.add(first.getChannel());
+    requests.add(first.getRequest());
+    if (others != null) {
+      for (ClientSubscriptionInstance instance : others) {
+        channels.add(instance.getChannel());
+        requests.add(instance.getRequest());
+      }
+    }
+    return createChannelInfo(channels, requests);
   }
 
   public void recordServiceDeliveryStatistics(ServiceDelivery serviceDelivery) {
@@ -189,8 +332,6 @@ public class SiriClientSubscriptionManager implements StatusProviderService {
   public SiriChannelInfo getChannelInfoForServiceDelivery(
       ServiceDelivery serviceDelivery) {
 
-    SiriChannelInfo channelInfo = new SiriChannelInfo();
-
     Set<ClientSubscriptionChannel> channels = new HashSet<ClientSubscriptionChannel>();
     Set<SiriClientRequest> requests = new HashSet<SiriClientRequest>();
 
@@ -214,18 +355,7 @@ public class SiriClientSubscriptionManager implements StatusProviderService {
       requests.add(instance.getRequest());
     }
 
-    channelInfo.setSiriClientRequests(new ArrayList<SiriClientRequest>(requests));
-
-    if (!channels.isEmpty()) {
-      if (channels.size() > 1) {
-        _log.warn("multiple channels found for a single service delivery");
-      } else {
-        ClientSubscriptionChannel channel = channels.iterator().next();
-        channelInfo.setContext(channel.getContext());
-      }
-    }
-
-    return channelInfo;
+    return createChannelInfo(channels, requests);
   }
 
   public void handleTerminateSubscriptionResponse(
@@ -336,6 +466,14 @@ public class SiriClientSubscriptionManager implements StatusProviderService {
     ClientSubscriptionInstance existing = _activeSubscriptions.put(
         subscriptionId, instance);
 
+    ConcurrentMap<String, ClientSubscriptionInstance> subscriptionsForSubscriber = _activeSubscriptionsBySubscriberId.get(subscriptionId.getSubscriberId());
+    if (subscriptionsForSubscriber == null) {
+      subscriptionsForSubscriber = new ConcurrentHashMap<String, ClientSubscriptionInstance>();
+      _activeSubscriptionsBySubscriberId.put(subscriptionId.getSubscriberId(),
+          subscriptionsForSubscriber);
+    }
+    subscriptionsForSubscriber.put(subscriptionId.getSubscriptionId(), instance);
+
     if (existing != null) {
       _log.info("overwriting existing subscription: " + subscriptionId);
     }
@@ -403,6 +541,13 @@ public class SiriClientSubscriptionManager implements StatusProviderService {
       return;
     }
 
+    ConcurrentMap<String, ClientSubscriptionInstance> subscriptionsForSubscriber = _activeSubscriptionsBySubscriberId.get(subscriptionId.getSubscriberId());
+    if (subscriptionsForSubscriber != null) {
+      subscriptionsForSubscriber.remove(subscriptionId.getSubscriptionId());
+      if (subscriptionsForSubscriber.isEmpty())
+        _activeSubscriptionsBySubscriberId.remove(subscriptionId.getSubscriberId());
+    }
+
     ScheduledFuture<?> expirationTask = instance.getExpirationTask();
     if (expirationTask != null) {
       expirationTask.cancel(true);
@@ -517,7 +662,8 @@ public class SiriClientSubscriptionManager implements StatusProviderService {
   /**
    * 
    * @param serviceDelivery
-   * @return the set of
+   * @return the set of active subscriptions referenced by the module
+   *         deliveries of the service delivery
    */
   private Set<ClientSubscriptionInstance> getSubscriptionInstancesForServiceDelivery(
       ServiceDelivery serviceDelivery) {
@@ -525,22 +671,61 @@ public class SiriClientSubscriptionManager implements StatusProviderService {
     /**
      * Also try looking up by a specific subscription
      */
-    for (ESiriModuleType moduleType : ESiriModuleType.values()) {
+    for (ESiriModuleType moduleType : SiriLibrary.getModuleTypes()) {
       List<AbstractServiceDeliveryStructure> moduleDeliveries = SiriLibrary.getServiceDeliveriesForModule(
           serviceDelivery, moduleType);
       for (AbstractServiceDeliveryStructure moduleDelivery : moduleDeliveries) {
-        if (ClientSupport.hasSubscriptionIdForModuleDelivery(moduleDelivery)) {
-          SubscriptionId subscriptionId = ClientSupport.getSubscriptionIdForModuleDelivery(moduleDelivery);
-          ClientSubscriptionInstance instance = _activeSubscriptions.get(subscriptionId);
-          if (instance != null) {
-            instances.add(instance);
-          }
+        ClientSubscriptionInstance instance = getSubscriptionInstanceForModuleDelivery(moduleDelivery);
+        if (instance != null) {
+          instances.add(instance);
         }
       }
     }
     return instances;
   }
 
+  /**
+   * 
+   * @param moduleDelivery
+   * @return the active subscription referenced by the module delivery, or null
+   *         if none
+   */
+  private ClientSubscriptionInstance getSubscriptionInstanceForModuleDelivery(
+      AbstractServiceDeliveryStructure moduleDelivery) {
+    if (!ClientSupport.hasSubscriptionIdForModuleDelivery(moduleDelivery))
+      return null;
+    return getSubscriptionInstance(moduleDelivery.getSubscriberRef().getValue(),
+        moduleDelivery.getSubscriptionRef().getValue());
+  }
+
+  private ClientSubscriptionInstance getSubscriptionInstance(
+      String subscriberId, String subscriptionId) {
+    if (subscriberId == null || subscriptionId == null)
+      return null;
+    ConcurrentMap<String, ClientSubscriptionInstance> subscriptionsForSubscriber = _activeSubscriptionsBySubscriberId.get(subscriberId);
+    if (subscriptionsForSubscriber == null)
+      return null;
+    return subscriptionsForSubscriber.get(subscriptionId);
+  }
+
+  private SiriChannelInfo createChannelInfo(
+      Set<ClientSubscriptionChannel> channels, Set<SiriClientRequest> requests) {
+
+    SiriChannelInfo channelInfo = new SiriChannelInfo();
+    channelInfo.setSiriClientRequests(new ArrayList<SiriClientRequest>(requests));
+
+    if (!channels.isEmpty()) {
+      if (channels.size() > 1) {
+        _log.warn("multiple channels found for a single service delivery");
+      } else {
+        ClientSubscriptionChannel channel = channels.iterator().next();
+        channelInfo.setContext(channel.getContext());
+      }
+    }
+
+    return channelInfo;
+  }
+
   /**
    * When a subscription is updated to active, we register an expiration task
    * that will terminate and reestablish a subscription when its expiration time
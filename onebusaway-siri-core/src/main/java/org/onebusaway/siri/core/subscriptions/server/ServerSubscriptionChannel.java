@@ -65,6 +65,17 @@ class ServerSubscriptionChannel {
 
   private int _connectionErrorCount = 0;
 
+  /**
+   * The total size, in bytes, of the content published to the channel
+   */
+  private long _publishedBytes = 0;
+
+  /**
+   * The total size, in bytes, of the content published to the channel as
+   * actually transferred, after any compression
+   */
+  private long _transferredBytes = 0;
+
   public ServerSubscriptionChannel(String address, ESiriVersion targetVersion) {
     this.address = address;
     this.targetVersion = targetVersion;
@@ -100,7 +111,7 @@ class ServerSubscriptionChannel {
 
   public synchronized void updatePublicationStatistics(
       SiriServerSubscriptionEvent event, long timeNeededToPublish,
-      boolean connectionError) {
+      boolean connectionError, long contentLength, long transferLength) {
 
     long now = System.currentTimeMillis();
 
@@ -114,6 +125,9 @@ class ServerSubscriptionChannel {
     if (connectionError) {
       _connectionErrorCount++;
     }
+
+    _publishedBytes += contentLength;
+    _transferredBytes += transferLength;
   }
 
   public synchronized void getStatus(String prefix, Map<String, String> status) {
@@ -123,6 +137,13 @@ class ServerSubscriptionChannel {
         Long.toString((long) _averagePublicationDelay.getAverage()));
     status.put(prefix + ".connectionErrorCount",
         Integer.toString(_connectionErrorCount));
+    status.put(prefix + ".publishedBytes", Long.toString(_publishedBytes));
+    status.put(prefix + ".transferredBytes", Long.toString(_transferredBytes));
+    if (_transferredBytes > 0) {
+      double ratio = (double) _publishedBytes / _transferredBytes;
+      status.put(prefix + ".compressionRatio",
+          Double.toString(Math.round(ratio * 100) / 100.0));
+    }
     status.put(prefix + ".creationTime",
         SubscriptionSupport.getDateAsString(creationTime));
   }
@@ -26,6 +26,7 @@ import org.onebusaway.siri.core.subscriptions.SubscriptionId;
 import org.onebusaway.siri.core.subscriptions.SubscriptionSupport;
 
 import uk.org.siri.siri.AbstractSubscriptionStructure;
+import uk.org.siri.siri.SubscriptionRequest;
 
 class ServerSubscriptionInstance {
   
@@ -37,20 +38,28 @@ class ServerSubscriptionInstance {
 
   private final String messageId;
 
+  private final SubscriptionRequest subscriptionRequest;
+
   private final AbstractSubscriptionStructure moduleSubscription;
 
-  private final List<SiriModuleDeliveryFilter> filters;
+  /**
+   * Swapped out wholesale when the filter configuration changes, so that
+   * publication can read it without locking
+   */
+  private volatile List<SiriModuleDeliveryFilter> filters;
   
   private final Date creationTime = new Date();
 
   public ServerSubscriptionInstance(SubscriptionId id,
       ServerSubscriptionChannel channel, ESiriModuleType moduleType,
-      String messageId, AbstractSubscriptionStructure moduleSubscription,
+      String messageId, SubscriptionRequest subscriptionRequest,
+      AbstractSubscriptionStructure moduleSubscription,
       List<SiriModuleDeliveryFilter> filters) {
     this.id = id;
     this.channel = channel;
     this.moduleType = moduleType;
     this.messageId = messageId;
+    this.subscriptionRequest = subscriptionRequest;
     this.moduleSubscription = moduleSubscription;
     this.filters = filters;
   }
@@ -71,6 +80,10 @@ class ServerSubscriptionInstance {
     return messageId;
   }
 
+  public SubscriptionRequest getSubscriptionRequest() {
+    return subscriptionRequest;
+  }
+
   public AbstractSubscriptionStructure getModuleSubscription() {
     return moduleSubscription;
   }
@@ -78,6 +91,10 @@ class ServerSubscriptionInstance {
   public List<SiriModuleDeliveryFilter> getFilters() {
     return filters;
   }
+
+  public void setFilters(List<SiriModuleDeliveryFilter> filters) {
+    this.filters = filters;
+  }
   
   public synchronized void getStatus(String prefix, Map<String, String> status) {
     status.put(prefix + ".address", channel.getAddress());
@@ -17,9 +17,12 @@
 package org.onebusaway.siri.core.subscriptions.server;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -36,6 +39,7 @@ import javax.xml.datatype.Duration;
 import org.onebusaway.collections.tuple.T2;
 import org.onebusaway.collections.tuple.Tuples;
 import org.onebusaway.siri.core.ESiriModuleType;
+import org.onebusaway.siri.core.PublicationStreamSupport;
 import org.onebusaway.siri.core.SiriClientRequest;
 import org.onebusaway.siri.core.SiriLibrary;
 import org.onebusaway.siri.core.SiriServer;
@@ -45,6 +49,10 @@ import org.onebusaway.siri.core.exceptions.SiriMissingArgumentException;
 import org.onebusaway.siri.core.filters.ModuleDeliveryFilterFactory;
 import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilter;
 import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilterMatcher;
+import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilterMatcherIndex;
+import org.onebusaway.siri.core.filters.SiriServiceDeliveryEnricher;
+import org.onebusaway.siri.core.filters.regions.RegionModuleDeliveryFilter;
+import org.onebusaway.siri.core.filters.regions.SubscriptionRegionIndex;
 import org.onebusaway.siri.core.handlers.SiriClientHandler;
 import org.onebusaway.siri.core.handlers.SiriSubscriptionManagerListener;
 import org.onebusaway.siri.core.services.SchedulingService;
@@ -67,6 +75,10 @@ import uk.org.siri.siri.SubscriptionQualifierStructure;
 import uk.org.siri.siri.SubscriptionRequest;
 import uk.org.siri.siri.TerminateSubscriptionRequestStructure;
 import uk.org.siri.siri.TerminateSubscriptionResponseStructure.TerminationResponseStatus;
+import uk.org.siri.siri.VehicleActivityStructure;
+import uk.org.siri.siri.VehicleMonitoringDeliveryStructure;
+import uk.org.siri.siri.VehicleMonitoringRequestStructure;
+import uk.org.siri.siri.VehicleMonitoringSubscriptionStructure;
 
 @Singleton
 public class SiriServerSubscriptionManager implements StatusProviderService {
@@ -111,7 +123,22 @@ public class SiriServerSubscriptionManager implements StatusProviderService {
 
   private ModuleDeliveryFilterFactory _deliveryFilterFactory = new ModuleDeliveryFilterFactory();
 
-  private List<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>> _filters = new ArrayList<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>>();
+  /**
+   * Index of the region filters of active vehicle monitoring subscriptions,
+   * used to skip subscriptions with no vehicles in their region at publication
+   * time
+   */
+  private SubscriptionRegionIndex _regionIndex = new SubscriptionRegionIndex();
+
+  /**
+   * The matcher / filter table, along with the index used to find the filters
+   * that apply to a subscription without evaluating every matcher. The index is
+   * immutable and holds its own copy of the table, so we swap in a new index
+   * whenever the table changes and the table and index can never be seen out
+   * of sync.
+   */
+  private volatile SiriModuleDeliveryFilterMatcherIndex _filterIndex = new SiriModuleDeliveryFilterMatcherIndex(
+      Collections.<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>> emptyList());
 
   private List<SiriSubscriptionManagerListener> _listeners = new ArrayList<SiriSubscriptionManagerListener>();
 
@@ -120,7 +147,7 @@ public class SiriServerSubscriptionManager implements StatusProviderService {
   private String _consumerAddressDefault = null;
 
   public SiriServerSubscriptionManager() {
-    for (ESiriModuleType moduleType : ESiriModuleType.values()) {
+    for (ESiriModuleType moduleType : SiriLibrary.getModuleTypes()) {
       ConcurrentHashMap<SubscriptionId, ServerSubscriptionInstance> m = new ConcurrentHashMap<SubscriptionId, ServerSubscriptionInstance>();
       _subscriptionsByModuleType.put(moduleType, m);
     }
@@ -169,13 +196,63 @@ public class SiriServerSubscriptionManager implements StatusProviderService {
     _consumerAddressDefault = consumerAddressDefault;
   }
 
-  public void addModuleDeliveryFilter(SiriModuleDeliveryFilterMatcher matcher,
-      SiriModuleDeliveryFilter filter) {
+  public synchronized void addModuleDeliveryFilter(
+      SiriModuleDeliveryFilterMatcher matcher, SiriModuleDeliveryFilter filter) {
 
     T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter> tuple = Tuples.tuple(
         matcher, filter);
 
-    _filters.add(tuple);
+    List<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>> filters = new ArrayList<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>>(
+        _filterIndex.getFilters());
+    filters.add(tuple);
+    setModuleDeliveryFilters(filters);
+  }
+
+  /**
+   * 
+   * @return the current matcher / filter table
+   */
+  public List<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>> getModuleDeliveryFilters() {
+    return _filterIndex.getFilters();
+  }
+
+  /**
+   * The distinct filters in the current table that implement
+   * {@link SiriServiceDeliveryEnricher}, computed once when the table is set.
+   * The returned list is replaced, never modified, when the table changes.
+   * 
+   * @return the enrichers in the current matcher / filter table
+   */
+  public List<SiriServiceDeliveryEnricher> getServiceDeliveryEnrichers() {
+    return _filterIndex.getServiceDeliveryEnrichers();
+  }
+
+  /**
+   * Replace the entire matcher / filter table. The filter sets of all existing
+   * subscriptions are recomputed against the new table. Publications that are
+   * already in progress will complete with the filter set they started with,
+   * while subsequent publications will see the new filter sets. Publication
+   * never blocks on the swap.
+   * 
+   * @param filters the new matcher / filter table
+   */
+  public synchronized void setModuleDeliveryFilters(
+      List<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>> filters) {
+
+    _filterIndex = new SiriModuleDeliveryFilterMatcherIndex(filters);
+
+    for (ServerSubscriptionInstance instance : _activeSubscriptionsById.values()) {
+      List<SiriModuleDeliveryFilter> filterSet = computeFilterSetForSubscriptionRequest(
+          instance.getSubscriptionRequest(), instance.getModuleType(),
+          instance.getModuleSubscription());
+      instance.setFilters(filterSet);
+    }
+
+    updateRegionIndex();
+
+    if (!_activeSubscriptionsById.isEmpty())
+      _log.info("recomputed filter sets for {} active subscriptions",
+          _activeSubscriptionsById.size());
   }
 
   public void setServer(SiriServer server) {
@@ -190,6 +267,7 @@ public class SiriServerSubscriptionManager implements StatusProviderService {
     for (ConcurrentMap<SubscriptionId, ServerSubscriptionInstance> m : _subscriptionsByModuleType.values()) {
       m.clear();
     }
+    updateRegionIndex();
   }
 
   /****
@@ -205,7 +283,7 @@ public class SiriServerSubscriptionManager implements StatusProviderService {
       List<StatusResponseStructure> statuses)
       throws SiriMissingArgumentException {
 
-    for (ESiriModuleType moduleType : ESiriModuleType.values()) {
+    for (ESiriModuleType moduleType : SiriLibrary.getRequestModuleTypes()) {
 
       List<AbstractSubscriptionStructure> subscriptionRequests = SiriLibrary.getSubscriptionRequestsForModule(
           subscriptionRequest, moduleType);
@@ -322,6 +400,8 @@ public class SiriServerSubscriptionManager implements StatusProviderService {
     ConcurrentMap<SubscriptionId, ServerSubscriptionInstance> subscriptionsForModule = _subscriptionsByModuleType.get(instance.getModuleType());
     subscriptionsForModule.remove(id);
 
+    removeFromRegionIndex(instance);
+
     ServerSubscriptionChannel channel = instance.getChannel();
     Set<SubscriptionId> subscriptions = channel.getSubscriptions();
     subscriptions.remove(id);
@@ -342,19 +422,89 @@ public class SiriServerSubscriptionManager implements StatusProviderService {
 
     List<SiriServerSubscriptionEvent> events = new ArrayList<SiriServerSubscriptionEvent>();
 
-    for (ESiriModuleType moduleType : ESiriModuleType.values())
-      handlePublication(moduleType, delivery, events);
+    for (ESiriModuleType moduleType : SiriLibrary.getModuleTypes()) {
+
+      /**
+       * Only bother with modules that have both subscribers and content.
+       * Connection monitoring distributor deliveries go to the connection
+       * monitoring subscriptions, which are tracked under the feeder module.
+       */
+      ConcurrentMap<SubscriptionId, ServerSubscriptionInstance> subscriptionsById = _subscriptionsByModuleType.get(SiriLibrary.getRequestModuleType(moduleType));
+      if (subscriptionsById.isEmpty()
+          || !SiriLibrary.hasServiceDeliveriesForModule(delivery, moduleType))
+        continue;
+
+      handlePublication(moduleType, delivery, subscriptionsById, events);
+    }
 
     return events;
   }
 
+  /**
+   * Combine the publication events for the fragments of a single incoming
+   * delivery, as returned by separate calls to {@link #publish(ServiceDelivery)}
+   * , such that there is at most one event per subscription. The
+   * MaximumVehicles limit of a vehicle monitoring subscription is re-applied to
+   * the combined delivery, since it was applied to each fragment on its own.
+   * 
+   * @param events the publication events for the fragments of one delivery
+   * @return the combined events, in the order the subscriptions were first seen
+   */
+  public List<SiriServerSubscriptionEvent> combineEvents(
+      List<SiriServerSubscriptionEvent> events) {
+
+    if (events.size() < 2)
+      return events;
+
+    Map<SubscriptionId, SiriServerSubscriptionEvent> eventsById = new LinkedHashMap<SubscriptionId, SiriServerSubscriptionEvent>();
+    Set<SubscriptionId> combinedIds = new HashSet<SubscriptionId>();
+
+    for (SiriServerSubscriptionEvent event : events) {
+      SubscriptionId id = event.getSubscriptionId();
+      SiriServerSubscriptionEvent existing = eventsById.get(id);
+      if (existing == null) {
+        eventsById.put(id, event);
+      } else {
+        appendModuleDeliveries(event.getDelivery(), existing.getDelivery());
+        combinedIds.add(id);
+      }
+    }
+
+    if (combinedIds.isEmpty())
+      return events;
+
+    for (SubscriptionId id : combinedIds)
+      applyMaximumVehicles(id, eventsById.get(id).getDelivery());
+
+    return new ArrayList<SiriServerSubscriptionEvent>(eventsById.values());
+  }
+
   public void recordPublicationStatistics(SiriServerSubscriptionEvent event,
       long timeNeededToPublish, boolean connectionError) {
+    recordPublicationStatistics(event, timeNeededToPublish, connectionError, 0,
+        0);
+  }
+
+  /**
+   * 
+   * @param event the published event
+   * @param timeNeededToPublish time, in ms, needed to publish the event
+   * @param connectionError true if there was an error connecting to the
+   *          consumer
+   * @param contentLength the size, in bytes, of the published content
+   * @param transferLength the size, in bytes, of the published content as
+   *          actually sent to the consumer, which will be smaller than the
+   *          content length if the content was compressed
+   */
+  public void recordPublicationStatistics(SiriServerSubscriptionEvent event,
+      long timeNeededToPublish, boolean connectionError, long contentLength,
+      long transferLength) {
     ServerSubscriptionChannel channel = _channelsByAddress.get(event.getAddress());
     if (channel == null) {
       return;
     }
-    channel.updatePublicationStatistics(event, timeNeededToPublish, connectionError);
+    channel.updatePublicationStatistics(event, timeNeededToPublish,
+        connectionError, contentLength, transferLength);
   }
 
   /****
@@ -486,10 +636,14 @@ public class SiriServerSubscriptionManager implements StatusProviderService {
         subscriptionRequest, moduleType, moduleRequest);
 
     ServerSubscriptionInstance instance = new ServerSubscriptionInstance(id,
-        channel, moduleType, messageId, moduleRequest, filters);
+        channel, moduleType, messageId, subscriptionRequest, moduleRequest,
+        filters);
 
     _activeSubscriptionsById.put(id, instance);
 
+    if (existing != null)
+      removeFromRegionIndex(existing);
+
     // TODO : Thread Safety
     Set<SubscriptionId> channelSubscriptions = channel.getSubscriptions();
     channelSubscriptions.add(id);
@@ -510,6 +664,8 @@ public class SiriServerSubscriptionManager implements StatusProviderService {
     ConcurrentMap<SubscriptionId, ServerSubscriptionInstance> subscriptionsForModule = _subscriptionsByModuleType.get(moduleType);
     subscriptionsForModule.put(id, instance);
 
+    addToRegionIndex(instance);
+
     updateChannel(subscriptionRequest, channel);
 
     StatusResponseStructure status = _support.getStatusResponse(
@@ -521,18 +677,19 @@ public class SiriServerSubscriptionManager implements StatusProviderService {
       SubscriptionRequest subscriptionRequest, ESiriModuleType moduleType,
       AbstractSubscriptionStructure moduleSubscriptionRequest) {
 
-    List<SiriModuleDeliveryFilter> filters = new ArrayList<SiriModuleDeliveryFilter>();
-
     /**
      * What filters apply?
      */
-    for (T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter> tuple : _filters) {
-      SiriModuleDeliveryFilterMatcher matcher = tuple.getFirst();
-      if (matcher.isMatch(subscriptionRequest, moduleType,
-          moduleSubscriptionRequest)) {
-        filters.add(tuple.getSecond());
-      }
-    }
+    List<SiriModuleDeliveryFilter> filters = _filterIndex.getMatchingFilters(
+        subscriptionRequest, moduleType, moduleSubscriptionRequest);
+
+    /**
+     * Add any geographic region requested by the subscription itself
+     */
+    RegionModuleDeliveryFilter regionFilter = _deliveryFilterFactory.createRegionFilter(
+        moduleType, moduleSubscriptionRequest);
+    if (regionFilter != null)
+      filters.add(regionFilter);
 
     /**
      * Add the base filter
@@ -578,15 +735,31 @@ public class SiriServerSubscriptionManager implements StatusProviderService {
 
   private <T extends AbstractServiceDeliveryStructure> void handlePublication(
       ESiriModuleType moduleType, ServiceDelivery delivery,
+      ConcurrentMap<SubscriptionId, ServerSubscriptionInstance> subscriptionsById,
       List<SiriServerSubscriptionEvent> events) {
 
     List<T> deliveries = SiriLibrary.getServiceDeliveriesForModule(delivery,
         moduleType);
 
-    ConcurrentMap<SubscriptionId, ServerSubscriptionInstance> subscriptionsById = _subscriptionsByModuleType.get(moduleType);
+    /**
+     * Match each vehicle against only the nearby subscription regions, such
+     * that we can skip subscriptions with nothing in their region without
+     * copying and filtering the delivery for them
+     */
+    Set<RegionModuleDeliveryFilter> regionsWithVehicles = null;
+    if (moduleType == ESiriModuleType.VEHICLE_MONITORING
+        && !_regionIndex.isEmpty()) {
+      @SuppressWarnings("unchecked")
+      List<VehicleMonitoringDeliveryStructure> vms = (List<VehicleMonitoringDeliveryStructure>) deliveries;
+      regionsWithVehicles = _regionIndex.getRegionFiltersForDeliveries(vms);
+    }
 
     for (ServerSubscriptionInstance instance : subscriptionsById.values()) {
 
+      if (regionsWithVehicles != null
+          && !isEveryRegionMatched(instance, regionsWithVehicles))
+        continue;
+
       ServiceDelivery updatedDelivery = copyDeliveryShallow(delivery);
 
       List<T> applicableResponses = getApplicableResponses(updatedDelivery,
@@ -668,6 +841,108 @@ public class SiriServerSubscriptionManager implements StatusProviderService {
     return applicable;
   }
 
+  private boolean isEveryRegionMatched(ServerSubscriptionInstance instance,
+      Set<RegionModuleDeliveryFilter> regionsWithVehicles) {
+    for (SiriModuleDeliveryFilter filter : instance.getFilters()) {
+      if (filter instanceof RegionModuleDeliveryFilter
+          && !regionsWithVehicles.contains(filter))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Rebuild the region index from the filter sets of the active vehicle
+   * monitoring subscriptions. Called with the manager lock held when the filter
+   * sets of every subscription are recomputed.
+   */
+  private void updateRegionIndex() {
+    List<RegionModuleDeliveryFilter> regionFilters = new ArrayList<RegionModuleDeliveryFilter>();
+    for (ServerSubscriptionInstance instance : _subscriptionsByModuleType.get(
+        ESiriModuleType.VEHICLE_MONITORING).values()) {
+      for (SiriModuleDeliveryFilter filter : instance.getFilters()) {
+        if (filter instanceof RegionModuleDeliveryFilter)
+          regionFilters.add((RegionModuleDeliveryFilter) filter);
+      }
+    }
+    _regionIndex.setRegionFilters(regionFilters);
+  }
+
+  /**
+   * Add the region filters of a newly active subscription to the region index,
+   * with the manager lock held.
+   */
+  private void addToRegionIndex(ServerSubscriptionInstance instance) {
+    if (instance.getModuleType() != ESiriModuleType.VEHICLE_MONITORING)
+      return;
+    for (SiriModuleDeliveryFilter filter : instance.getFilters()) {
+      if (filter instanceof RegionModuleDeliveryFilter)
+        _regionIndex.addRegionFilter((RegionModuleDeliveryFilter) filter);
+    }
+  }
+
+  /**
+   * Remove the region filters of a terminated or replaced subscription from the
+   * region index, with the manager lock held.
+   */
+  private void removeFromRegionIndex(ServerSubscriptionInstance instance) {
+    if (instance.getModuleType() != ESiriModuleType.VEHICLE_MONITORING)
+      return;
+    for (SiriModuleDeliveryFilter filter : instance.getFilters()) {
+      if (filter instanceof RegionModuleDeliveryFilter)
+        _regionIndex.removeRegionFilter((RegionModuleDeliveryFilter) filter);
+    }
+  }
+
+  private void appendModuleDeliveries(ServiceDelivery from, ServiceDelivery to) {
+    for (ESiriModuleType moduleType : SiriLibrary.getModuleTypes()) {
+      List<AbstractServiceDeliveryStructure> fromDeliveries = SiriLibrary.getServiceDeliveriesForModule(
+          from, moduleType);
+      if (!fromDeliveries.isEmpty()) {
+        List<AbstractServiceDeliveryStructure> toDeliveries = SiriLibrary.getServiceDeliveriesForModule(
+            to, moduleType);
+        toDeliveries.addAll(fromDeliveries);
+      }
+    }
+  }
+
+  /**
+   * The vehicle monitoring deliveries of a publication event are deep copies
+   * private to the subscription (see
+   * {@link #getApplicableResponses(ServiceDelivery, ESiriModuleType, ServerSubscriptionInstance, List)}
+   * ), so we can trim them in place.
+   */
+  private void applyMaximumVehicles(SubscriptionId id, ServiceDelivery delivery) {
+
+    ServerSubscriptionInstance instance = _subscriptionsByModuleType.get(
+        ESiriModuleType.VEHICLE_MONITORING).get(id);
+    if (instance == null)
+      return;
+
+    VehicleMonitoringSubscriptionStructure subscription = (VehicleMonitoringSubscriptionStructure) instance.getModuleSubscription();
+    VehicleMonitoringRequestStructure request = subscription.getVehicleMonitoringRequest();
+    if (request == null || request.getMaximumVehicles() == null)
+      return;
+
+    int remaining = request.getMaximumVehicles().intValue();
+    if (remaining <= 0)
+      return;
+
+    for (Iterator<VehicleMonitoringDeliveryStructure> it = delivery.getVehicleMonitoringDelivery().iterator(); it.hasNext();) {
+      VehicleMonitoringDeliveryStructure vm = it.next();
+      List<VehicleActivityStructure> activities = vm.getVehicleActivity();
+      if (activities.size() <= remaining) {
+        remaining -= activities.size();
+        continue;
+      }
+      activities.subList(remaining, activities.size()).clear();
+      remaining = 0;
+      if (activities.isEmpty() && vm.getVehicleActivityCancellation().isEmpty()
+          && vm.getVehicleActivityNote().isEmpty())
+        it.remove();
+    }
+  }
+
   private ServiceDelivery copyDeliveryShallow(ServiceDelivery delivery) {
 
     ServiceDelivery d = new ServiceDelivery();
@@ -681,7 +956,7 @@ public class SiriServerSubscriptionManager implements StatusProviderService {
     d.setSrsName(delivery.getSrsName());
     d.setStatus(delivery.isStatus());
 
-    for (ESiriModuleType moduleType : ESiriModuleType.values()) {
+    for (ESiriModuleType moduleType : SiriLibrary.getModuleTypes()) {
       List<AbstractServiceDeliveryStructure> from = SiriLibrary.getServiceDeliveriesForModule(
           delivery, moduleType);
       if (!from.isEmpty()) {
@@ -724,6 +999,17 @@ public class SiriServerSubscriptionManager implements StatusProviderService {
       Siri siri = new Siri();
       siri.setHeartbeatNotification(heartbeat);
 
+      /**
+       * Heartbeats to a publication stream are sent over the stream itself
+       */
+      if (PublicationStreamSupport.isStreamAddress(_channel.getAddress())) {
+        if (!_server.publishToStream(_channel.getAddress(),
+            _channel.getTargetVersion(), siri))
+          _log.warn("unable to queue heartbeat to stream at "
+              + _channel.getAddress());
+        return;
+      }
+
       SiriClientRequest request = new SiriClientRequest();
       request.setTargetUrl(_channel.getAddress());
       request.setTargetVersion(_channel.getTargetVersion());
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.siri.core.DeliveryDeduplicator.Fingerprint;
+
+public class DeliveryDeduplicatorTest {
+
+  private DeliveryDeduplicator _deduplicator;
+
+  @Before
+  public void setup() {
+    _deduplicator = new DeliveryDeduplicator();
+    _deduplicator.setWindow(60);
+  }
+
+  @Test
+  public void testFingerprint() {
+
+    Fingerprint a = DeliveryDeduplicator.computeFingerprint(delivery("A",
+        "2011-01-01T00:00:00", "a"));
+    Fingerprint b = DeliveryDeduplicator.computeFingerprint(delivery("A",
+        "2011-01-01T00:00:30", "a"));
+    Fingerprint c = DeliveryDeduplicator.computeFingerprint(delivery("A",
+        "2011-01-01T00:00:30", "b"));
+    assertEquals(a.getHash(), b.getHash());
+    assertFalse(a.getHash() == c.getHash());
+    assertEquals("A", a.getProducerRef());
+    assertTrue(a.isServiceDelivery());
+
+    Fingerprint d = DeliveryDeduplicator.computeFingerprint("<s:Siri><s:ResponseTimestamp attr=\"x\">2011</s:ResponseTimestamp></s:Siri>");
+    Fingerprint e = DeliveryDeduplicator.computeFingerprint("<s:Siri><s:ResponseTimestamp attr=\"x\">2012</s:ResponseTimestamp></s:Siri>");
+    assertEquals(d.getHash(), e.getHash());
+    assertNull(d.getProducerRef());
+    assertFalse(d.isServiceDelivery());
+
+    Fingerprint f = DeliveryDeduplicator.computeFingerprint("<Siri><RecordedAtTime>2011</RecordedAtTime></Siri>");
+    Fingerprint g = DeliveryDeduplicator.computeFingerprint("<Siri><RecordedAtTime>2012</RecordedAtTime></Siri>");
+    assertFalse(f.getHash() == g.getHash());
+
+    String content = delivery("A", "2011-01-01T00:00:00", "a");
+    Fingerprint h = DeliveryDeduplicator.computeFingerprint(DeliveryDeduplicator.asCharSequence(content.getBytes()));
+    assertEquals(a.getHash(), h.getHash());
+    assertEquals("A", h.getProducerRef());
+    assertEquals("sub", h.getSubscriberRef());
+    assertEquals("id", h.getSubscriptionRef());
+
+    /**
+     * Characters and raw bytes of the same content have the same fingerprint,
+     * even with non-ASCII content
+     */
+    content = delivery("\u00c5rhus", "2011-01-01T00:00:00", "\u00e9");
+    Fingerprint i = DeliveryDeduplicator.computeFingerprint(content);
+    Fingerprint j = DeliveryDeduplicator.computeFingerprint(DeliveryDeduplicator.asCharSequence(getUtf8Bytes(content)));
+    assertEquals(i.getHash(), j.getHash());
+    assertEquals("\u00c5rhus", i.getProducerRef());
+    assertEquals("\u00c5rhus", j.getProducerRef());
+  }
+
+  @Test
+  public void testIsDuplicate() {
+
+    Fingerprint a = DeliveryDeduplicator.computeFingerprint(delivery("A",
+        "2011-01-01T00:00:00", "a"));
+    Fingerprint b = DeliveryDeduplicator.computeFingerprint(delivery("A",
+        "2011-01-01T00:00:00", "b"));
+
+    assertFalse(_deduplicator.isDuplicate("A", a));
+    assertFalse(_deduplicator.isDuplicate("A", b));
+    assertTrue(_deduplicator.isDuplicate("A", a));
+    assertTrue(_deduplicator.isDuplicate("A", b));
+
+    /**
+     * Sources are de-duplicated independently
+     */
+    assertFalse(_deduplicator.isDuplicate("B", a));
+
+    /**
+     * Content without a source is never a duplicate
+     */
+    assertFalse(_deduplicator.isDuplicate(null, a));
+    assertFalse(_deduplicator.isDuplicate(null, a));
+
+    /**
+     * Content without a ServiceDelivery is never a duplicate
+     */
+    Fingerprint heartbeat = DeliveryDeduplicator.computeFingerprint("<Siri><HeartbeatNotification/></Siri>");
+    assertFalse(_deduplicator.isDuplicate("A", heartbeat));
+    assertFalse(_deduplicator.isDuplicate("A", heartbeat));
+
+    Map<String, String> status = new HashMap<String, String>();
+    _deduplicator.getStatus(status);
+    assertEquals("2", status.get("siri.common.deduplicatedSources"));
+    assertEquals("5", status.get("siri.common.deduplicatedDeliveryCounter"));
+    assertEquals("2", status.get("siri.common.duplicateDeliveryCounter"));
+  }
+
+  @Test
+  public void testMaxFingerprintsPerSource() {
+
+    _deduplicator.setMaxFingerprintsPerSource(2);
+
+    Fingerprint a = DeliveryDeduplicator.computeFingerprint(delivery("A",
+        "2011-01-01T00:00:00", "a"));
+    Fingerprint b = DeliveryDeduplicator.computeFingerprint(delivery("A",
+        "2011-01-01T00:00:00", "b"));
+    Fingerprint c = DeliveryDeduplicator.computeFingerprint(delivery("A",
+        "2011-01-01T00:00:00", "c"));
+
+    assertFalse(_deduplicator.isDuplicate("A", a));
+    assertFalse(_deduplicator.isDuplicate("A", b));
+    assertFalse(_deduplicator.isDuplicate("A", c));
+    assertFalse(_deduplicator.isDuplicate("A", a));
+    assertTrue(_deduplicator.isDuplicate("A", c));
+  }
+
+  @Test
+  public void testDisabledByDefault() {
+    DeliveryDeduplicator deduplicator = new DeliveryDeduplicator();
+    assertFalse(deduplicator.isEnabled());
+    Fingerprint a = DeliveryDeduplicator.computeFingerprint(delivery("A",
+        "2011-01-01T00:00:00", "a"));
+    assertFalse(deduplicator.isDuplicate("A", a));
+    assertFalse(deduplicator.isDuplicate("A", a));
+  }
+
+  @Test
+  public void testDisabled() {
+    _deduplicator.setWindow(0);
+    Fingerprint a = DeliveryDeduplicator.computeFingerprint(delivery("A",
+        "2011-01-01T00:00:00", "a"));
+    assertFalse(_deduplicator.isDuplicate("A", a));
+    assertFalse(_deduplicator.isDuplicate("A", a));
+  }
+
+  private byte[] getUtf8Bytes(String content) {
+    try {
+      return content.getBytes("UTF-8");
+    } catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private String delivery(String producerRef, String timestamp, String vehicleId) {
+    StringBuilder b = new StringBuilder();
+    b.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+    b.append("<Siri xmlns=\"http://www.siri.org.uk/siri\" version=\"1.3\">");
+    b.append("<ServiceDelivery>");
+    b.append("<ResponseTimestamp>").append(timestamp).append("</ResponseTimestamp>");
+    b.append("<ProducerRef>").append(producerRef).append("</ProducerRef>");
+    b.append("<VehicleMonitoringDelivery>");
+    b.append("<ResponseTimestamp>").append(timestamp).append("</ResponseTimestamp>");
+    b.append("<SubscriberRef>sub</SubscriberRef>");
+    b.append("<SubscriptionRef>id</SubscriptionRef>");
+    b.append("<VehicleActivity><MonitoredVehicleJourney><VehicleRef>");
+    b.append(vehicleId);
+    b.append("</VehicleRef></MonitoredVehicleJourney></VehicleActivity>");
+    b.append("</VehicleMonitoringDelivery>");
+    b.append("</ServiceDelivery>");
+    b.append("</Siri>");
+    return b.toString();
+  }
+}
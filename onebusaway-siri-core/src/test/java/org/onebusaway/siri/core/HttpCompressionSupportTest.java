@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.Test;
+
+public class HttpCompressionSupportTest {
+
+  @Test
+  public void testCreateEntity() throws IOException {
+
+    byte[] content = getContent();
+
+    HttpEntity entity = HttpCompressionSupport.createEntity(content,
+        "text/xml", false);
+    assertNull(entity.getContentEncoding());
+    assertEquals(content.length, entity.getContentLength());
+
+    entity = HttpCompressionSupport.createEntity(content, "text/xml", true);
+    assertEquals("gzip", entity.getContentEncoding().getValue());
+    assertEquals("text/xml", entity.getContentType().getValue());
+    assertTrue(entity.getContentLength() < content.length / 10);
+
+    HttpEntity decoded = HttpCompressionSupport.getDecodedEntity(entity);
+    assertNull(decoded.getContentEncoding());
+    assertEquals(new String(content, "UTF-8"), EntityUtils.toString(decoded));
+  }
+
+  @Test
+  public void testGetDecodedEntity() throws IOException {
+
+    byte[] content = getContent();
+
+    HttpEntity entity = new ByteArrayEntity(content);
+    assertSame(entity, HttpCompressionSupport.getDecodedEntity(entity));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    DeflaterOutputStream deflater = new DeflaterOutputStream(out);
+    deflater.write(content);
+    deflater.close();
+
+    ByteArrayEntity deflated = new ByteArrayEntity(out.toByteArray());
+    deflated.setContentEncoding("deflate");
+    HttpEntity decoded = HttpCompressionSupport.getDecodedEntity(deflated);
+    assertEquals(new String(content, "UTF-8"), EntityUtils.toString(decoded));
+
+    ByteArrayEntity unknown = new ByteArrayEntity(content);
+    unknown.setContentEncoding("identity");
+    assertSame(unknown, HttpCompressionSupport.getDecodedEntity(unknown));
+  }
+
+  @Test
+  public void testIsGzipAccepted() {
+    assertTrue(HttpCompressionSupport.isGzipAccepted("gzip"));
+    assertTrue(HttpCompressionSupport.isGzipAccepted("deflate, GZIP"));
+    assertTrue(HttpCompressionSupport.isGzipAccepted("gzip;q=0.5"));
+    assertTrue(HttpCompressionSupport.isGzipAccepted("*"));
+    assertFalse(HttpCompressionSupport.isGzipAccepted(null));
+    assertFalse(HttpCompressionSupport.isGzipAccepted("deflate"));
+    assertFalse(HttpCompressionSupport.isGzipAccepted("gzip;q=0"));
+    assertFalse(HttpCompressionSupport.isGzipAccepted("gzip;q=0.0, identity"));
+  }
+
+  private byte[] getContent() throws IOException {
+    StringBuilder b = new StringBuilder();
+    b.append("<Siri xmlns=\"http://www.siri.org.uk/siri\" version=\"1.3\">");
+    for (int i = 0; i < 100; ++i)
+      b.append("<VehicleActivity><VehicleRef>").append(i).append(
+          "</VehicleRef></VehicleActivity>");
+    b.append("</Siri>");
+    return b.toString().getBytes("UTF-8");
+  }
+}
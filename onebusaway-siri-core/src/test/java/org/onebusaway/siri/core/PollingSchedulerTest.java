@@ -0,0 +1,112 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PollingSchedulerTest {
+
+  private PollingScheduler _scheduler;
+
+  @Before
+  public void setup() {
+    _scheduler = new PollingScheduler();
+  }
+
+  @Test
+  public void testSkipOverlappingPoll() {
+
+    SiriClientRequest request = createRequest(30);
+
+    assertTrue(_scheduler.startPoll(request));
+    assertFalse(_scheduler.startPoll(request));
+    _scheduler.completePoll(request);
+    assertTrue(_scheduler.startPoll(request));
+    _scheduler.completePoll(request);
+
+    Map<String, String> status = new HashMap<String, String>();
+    _scheduler.getStatus(status);
+    assertEquals("1", status.get("siri.common.pollingRequests"));
+    assertEquals("2", status.get("siri.common.pollCounter"));
+    assertEquals("1", status.get("siri.common.skippedPollCounter"));
+  }
+
+  @Test
+  public void testAdaptiveInterval() {
+
+    SiriClientRequest request = createRequest(10);
+    assertEquals(10, _scheduler.getPollInterval(request));
+
+    poll(request, "<Siri>a</Siri>", false);
+    assertEquals(10, _scheduler.getPollInterval(request));
+
+    poll(request, "<Siri>a</Siri>", true);
+    assertEquals(15, _scheduler.getPollInterval(request));
+
+    poll(request, "<Siri>a</Siri>", true);
+    assertEquals(23, _scheduler.getPollInterval(request));
+
+    poll(request, "<Siri>a</Siri>", true);
+    assertEquals(35, _scheduler.getPollInterval(request));
+
+    poll(request, "<Siri>a</Siri>", true);
+    assertEquals(40, _scheduler.getPollInterval(request));
+
+    poll(request, "<Siri>b</Siri>", false);
+    assertEquals(10, _scheduler.getPollInterval(request));
+
+    /**
+     * A failed poll leaves the interval as is
+     */
+    poll(request, "<Siri>b</Siri>", true);
+    assertEquals(15, _scheduler.getPollInterval(request));
+    assertTrue(_scheduler.startPoll(request));
+    _scheduler.completePoll(request);
+    assertEquals(15, _scheduler.getPollInterval(request));
+
+    Map<String, String> status = new HashMap<String, String>();
+    _scheduler.getStatus(status);
+    assertEquals("5", status.get("siri.common.unchangedPollCounter"));
+  }
+
+  private void poll(SiriClientRequest request, String content,
+      boolean expectUnchanged) {
+    assertTrue(_scheduler.startPoll(request));
+    assertEquals(expectUnchanged,
+        _scheduler.isContentUnchanged(request, hash(content)));
+    _scheduler.completePoll(request);
+  }
+
+  private long hash(String content) {
+    return DeliveryDeduplicator.computeFingerprint(content).getHash();
+  }
+
+  private SiriClientRequest createRequest(int pollInterval) {
+    SiriClientRequest request = new SiriClientRequest();
+    request.setTargetUrl("http://localhost/");
+    request.setSubscribe(false);
+    request.setPollInterval(pollInterval);
+    return request;
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class PublicationStreamSupportTest {
+
+  @Test
+  public void testStreamAddress() {
+    assertFalse(PublicationStreamSupport.isStreamAddress(null));
+    assertFalse(PublicationStreamSupport.isStreamAddress("http://localhost/"));
+    assertTrue(PublicationStreamSupport.isStreamAddress("stream+http://localhost/"));
+    assertEquals("stream+http://localhost/",
+        PublicationStreamSupport.getStreamAddress("http://localhost/"));
+    assertEquals("stream+http://localhost/",
+        PublicationStreamSupport.getStreamAddress("stream+http://localhost/"));
+    assertEquals("http://localhost/",
+        PublicationStreamSupport.getUrlForStreamAddress("stream+http://localhost/"));
+    assertEquals("http://localhost/",
+        PublicationStreamSupport.getUrlForStreamAddress("http://localhost/"));
+  }
+
+  @Test
+  public void testFrames() throws IOException {
+
+    byte[] big = new byte[70000];
+    for (int i = 0; i < big.length; ++i)
+      big[i] = (byte) i;
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PublicationStreamSupport.writeFrame(out,
+        PublicationStreamSupport.getContentAsFrame("<Siri/>"));
+    PublicationStreamSupport.writeFrame(out, new byte[0]);
+    PublicationStreamSupport.writeFrame(out, big);
+
+    InputStream in = new ByteArrayInputStream(out.toByteArray());
+    assertEquals("<Siri/>",
+        new String(PublicationStreamSupport.readFrame(in, 0), "UTF-8"));
+    assertEquals(0, PublicationStreamSupport.readFrame(in, 0).length);
+    byte[] frame = PublicationStreamSupport.readFrame(in, 0);
+    assertEquals(big.length, frame.length);
+    assertEquals(big[big.length - 1], frame[frame.length - 1]);
+    assertNull(PublicationStreamSupport.readFrame(in, 0));
+  }
+
+  @Test(expected = IOException.class)
+  public void testFrameTooLarge() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PublicationStreamSupport.writeFrame(out, new byte[100]);
+    PublicationStreamSupport.readFrame(
+        new ByteArrayInputStream(out.toByteArray()), 99);
+  }
+
+  @Test(expected = EOFException.class)
+  public void testTruncatedFrame() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    PublicationStreamSupport.writeFrame(out, new byte[100]);
+    PublicationStreamSupport.readFrame(
+        new ByteArrayInputStream(out.toByteArray(), 0, 50), 0);
+  }
+}
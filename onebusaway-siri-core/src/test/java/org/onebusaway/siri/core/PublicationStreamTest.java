@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class PublicationStreamTest {
+
+  @Test
+  public void testWriteTo() throws IOException {
+
+    PublicationStream stream = new PublicationStream("stream+http://localhost/",
+        10, 60 * 1000);
+    assertTrue(stream.isChunked());
+    assertEquals(PublicationStreamSupport.CONTENT_TYPE,
+        stream.getContentType().getValue());
+
+    assertTrue(stream.offer(PublicationStreamSupport.getContentAsFrame("a")));
+    assertTrue(stream.offer(PublicationStreamSupport.getContentAsFrame("bc")));
+    stream.close();
+    assertTrue(stream.isClosed());
+    assertFalse(stream.isFailed());
+    assertFalse(stream.offer(PublicationStreamSupport.getContentAsFrame("d")));
+
+    /**
+     * Queued frames are still written once the stream is closed
+     */
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    stream.writeTo(out);
+
+    InputStream in = new ByteArrayInputStream(out.toByteArray());
+    assertEquals("a", new String(PublicationStreamSupport.readFrame(in, 0)));
+    assertEquals("bc", new String(PublicationStreamSupport.readFrame(in, 0)));
+    assertNull(PublicationStreamSupport.readFrame(in, 0));
+
+    Map<String, String> status = new HashMap<String, String>();
+    stream.getStatus("s", status);
+    assertEquals("2", status.get("s.sentFrames"));
+    assertEquals("3", status.get("s.sentBytes"));
+    assertEquals("0", status.get("s.droppedFrames"));
+  }
+
+  @Test
+  public void testFlowControl() {
+
+    PublicationStream stream = new PublicationStream("stream+http://localhost/",
+        2, 60 * 1000);
+
+    assertTrue(stream.offer(new byte[1]));
+    assertTrue(stream.offer(new byte[1]));
+    assertFalse(stream.offer(new byte[1]));
+
+    stream.fail();
+    assertTrue(stream.isClosed());
+    assertTrue(stream.isFailed());
+    assertFalse(stream.offer(new byte[1]));
+
+    Map<String, String> status = new HashMap<String, String>();
+    stream.getStatus("s", status);
+    assertEquals("3", status.get("s.droppedFrames"));
+    assertEquals("0", status.get("s.queuedFrames"));
+  }
+
+  @Test
+  public void testCloseWithFullQueue() throws Exception {
+
+    final PublicationStream stream = new PublicationStream(
+        "stream+http://localhost/", 2, 60 * 1000);
+
+    assertTrue(stream.offer(PublicationStreamSupport.getContentAsFrame("a")));
+    assertTrue(stream.offer(PublicationStreamSupport.getContentAsFrame("b")));
+
+    Thread closer = new Thread() {
+      @Override
+      public void run() {
+        stream.close();
+      }
+    };
+    closer.start();
+
+    /**
+     * The close waits for the writer to make room for the end-of-stream marker,
+     * rather than dropping the queued frames
+     */
+    InputStream in = stream.getContent();
+    assertEquals("a", new String(PublicationStreamSupport.readFrame(in, 0)));
+    assertEquals("b", new String(PublicationStreamSupport.readFrame(in, 0)));
+    assertNull(PublicationStreamSupport.readFrame(in, 0));
+    closer.join();
+
+    assertFalse(stream.isFailed());
+    Map<String, String> status = new HashMap<String, String>();
+    stream.getStatus("s", status);
+    assertEquals("2", status.get("s.sentFrames"));
+    assertEquals("0", status.get("s.droppedFrames"));
+  }
+
+  @Test
+  public void testFailEndsWriter() throws Exception {
+
+    final PublicationStream stream = new PublicationStream(
+        "stream+http://localhost/", 10, 60 * 1000);
+
+    Thread failer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException ex) {
+          return;
+        }
+        stream.fail();
+      }
+    };
+    failer.start();
+
+    /**
+     * With a one minute keep-alive interval, the writer only returns promptly
+     * if the failure ends the stream
+     */
+    long t = System.currentTimeMillis();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    stream.writeTo(out);
+    failer.join();
+
+    assertTrue(System.currentTimeMillis() - t < 30 * 1000);
+    assertEquals(0, out.size());
+    assertTrue(stream.isFailed());
+  }
+
+  @Test
+  public void testGetContent() throws IOException {
+
+    PublicationStream stream = new PublicationStream("stream+http://localhost/",
+        10, 60 * 1000);
+    assertFalse(stream.isRepeatable());
+
+    assertTrue(stream.offer(PublicationStreamSupport.getContentAsFrame("a")));
+    assertTrue(stream.offer(PublicationStreamSupport.getContentAsFrame("bc")));
+    stream.close();
+
+    InputStream in = stream.getContent();
+    assertEquals("a", new String(PublicationStreamSupport.readFrame(in, 0)));
+    assertEquals("bc", new String(PublicationStreamSupport.readFrame(in, 0)));
+    assertNull(PublicationStreamSupport.readFrame(in, 0));
+    assertEquals(-1, in.read());
+
+    Map<String, String> status = new HashMap<String, String>();
+    stream.getStatus("s", status);
+    assertEquals("2", status.get("s.sentFrames"));
+    assertEquals("0", status.get("s.queuedFrames"));
+  }
+
+  @Test
+  public void testKeepAlive() throws Exception {
+
+    final PublicationStream stream = new PublicationStream(
+        "stream+http://localhost/", 10, 10);
+
+    Thread closer = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException ex) {
+          return;
+        }
+        stream.close();
+      }
+    };
+    closer.start();
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    stream.writeTo(out);
+    closer.join();
+
+    InputStream in = new ByteArrayInputStream(out.toByteArray());
+    int keepAlives = 0;
+    byte[] frame = null;
+    while ((frame = PublicationStreamSupport.readFrame(in, 0)) != null) {
+      assertEquals(0, frame.length);
+      keepAlives++;
+    }
+    assertTrue(keepAlives > 0);
+  }
+}
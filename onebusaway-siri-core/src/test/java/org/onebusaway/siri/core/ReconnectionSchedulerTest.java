@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.onebusaway.siri.core.ReconnectionScheduler.RequestHandler;
+import org.onebusaway.siri.core.services.SchedulingService;
+
+public class ReconnectionSchedulerTest {
+
+  private static final String URL = "http://localhost/";
+
+  private ReconnectionScheduler _scheduler;
+
+  private SchedulingService _schedulingService;
+
+  private RequestHandler _requestHandler;
+
+  @Before
+  public void setup() {
+    _scheduler = new ReconnectionScheduler();
+
+    _schedulingService = Mockito.mock(SchedulingService.class);
+    _scheduler.setSchedulingService(_schedulingService);
+
+    _requestHandler = Mockito.mock(RequestHandler.class);
+    _scheduler.setRequestHandler(_requestHandler);
+
+    @SuppressWarnings("unchecked")
+    ScheduledFuture<Object> probeTask = Mockito.mock(ScheduledFuture.class);
+    Mockito.when(
+        _schedulingService.schedule(Mockito.any(Runnable.class),
+            Mockito.anyLong(), Mockito.any(TimeUnit.class))).thenReturn(
+        probeTask);
+  }
+
+  @Test
+  public void testProbeAndRelease() {
+
+    _scheduler.setMaxReconnectionInterval(60);
+    _scheduler.setMaxConcurrentReconnections(1);
+
+    SiriClientRequest requestA = createRequest();
+    SiriClientRequest requestB = createRequest();
+    SiriClientRequest requestC = createRequest();
+
+    _scheduler.reattemptRequest(URL, requestA);
+    _scheduler.reattemptRequest(URL, requestB);
+    _scheduler.reattemptRequest(URL, requestC);
+
+    /**
+     * Only the first request probes the endpoint, with a jittered delay no
+     * greater than its reconnection interval
+     */
+    ArgumentCaptor<Runnable> probeCaptor = ArgumentCaptor.forClass(Runnable.class);
+    Mockito.verify(_schedulingService).schedule(probeCaptor.capture(),
+        Mockito.longThat(atMost(10 * 1000)), Mockito.eq(TimeUnit.MILLISECONDS));
+
+    Map<String, String> status = new HashMap<String, String>();
+    _scheduler.getStatus(status);
+    assertEquals("1", status.get("siri.common.reconnectingEndpoints"));
+    assertEquals("3", status.get("siri.common.reconnectingRequests"));
+
+    /**
+     * The probe fails again, so it's rescheduled with a longer backoff
+     */
+    Mockito.doAnswer(new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        SiriClientRequest request = (SiriClientRequest) invocation.getArguments()[0];
+        _scheduler.reattemptRequest(URL, request);
+        return null;
+      }
+    }).when(_requestHandler).handleRequest(requestA);
+
+    probeCaptor.getValue().run();
+
+    Mockito.verify(_schedulingService, Mockito.times(2)).schedule(
+        probeCaptor.capture(), Mockito.longThat(atMost(20 * 1000)),
+        Mockito.eq(TimeUnit.MILLISECONDS));
+    Mockito.verify(_schedulingService, Mockito.never()).submit(
+        Mockito.any(Runnable.class));
+
+    /**
+     * This time, the probe succeeds, which releases the waiting requests one at
+     * a time
+     */
+    Answer<Object> success = new Answer<Object>() {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        SiriClientRequest request = (SiriClientRequest) invocation.getArguments()[0];
+        _scheduler.handleRequestSuccess(URL, request);
+        return null;
+      }
+    };
+    Mockito.doAnswer(success).when(_requestHandler).handleRequest(requestA);
+    Mockito.doAnswer(success).when(_requestHandler).handleRequest(requestB);
+    Mockito.doAnswer(success).when(_requestHandler).handleRequest(requestC);
+
+    probeCaptor.getValue().run();
+
+    ArgumentCaptor<Runnable> releaseCaptor = ArgumentCaptor.forClass(Runnable.class);
+    Mockito.verify(_schedulingService).submit(releaseCaptor.capture());
+    releaseCaptor.getValue().run();
+    Mockito.verify(_requestHandler).handleRequest(requestB);
+
+    Mockito.verify(_schedulingService, Mockito.times(2)).submit(
+        releaseCaptor.capture());
+    releaseCaptor.getValue().run();
+    Mockito.verify(_requestHandler).handleRequest(requestC);
+
+    status.clear();
+    _scheduler.getStatus(status);
+    assertEquals("0", status.get("siri.common.reconnectingEndpoints"));
+    assertEquals("0", status.get("siri.common.reconnectingRequests"));
+  }
+
+  @Test
+  public void testProbeOutOfAttempts() {
+
+    SiriClientRequest requestA = createRequest();
+    requestA.setReconnectionAttempts(1);
+    requestA.resetConnectionStatistics();
+    SiriClientRequest requestB = createRequest();
+
+    _scheduler.reattemptRequest(URL, requestA);
+    _scheduler.reattemptRequest(URL, requestB);
+
+    ArgumentCaptor<Runnable> probeCaptor = ArgumentCaptor.forClass(Runnable.class);
+    Mockito.verify(_schedulingService).schedule(probeCaptor.capture(),
+        Mockito.anyLong(), Mockito.eq(TimeUnit.MILLISECONDS));
+
+    /**
+     * The probe fails without being reattempted, so the waiting request takes
+     * over as the probe
+     */
+    probeCaptor.getValue().run();
+    Mockito.verify(_requestHandler).handleRequest(requestA);
+
+    Mockito.verify(_schedulingService, Mockito.times(2)).schedule(
+        probeCaptor.capture(), Mockito.anyLong(),
+        Mockito.eq(TimeUnit.MILLISECONDS));
+    probeCaptor.getValue().run();
+    Mockito.verify(_requestHandler).handleRequest(requestB);
+  }
+
+  private static ArgumentMatcher<Long> atMost(final long max) {
+    return new ArgumentMatcher<Long>() {
+      @Override
+      public boolean matches(Object value) {
+        return ((Long) value) <= max;
+      }
+    };
+  }
+
+  private SiriClientRequest createRequest() {
+    SiriClientRequest request = new SiriClientRequest();
+    request.setTargetUrl(URL);
+    request.setReconnectionAttempts(-1);
+    request.setReconnectionInterval(10);
+    request.resetConnectionStatistics();
+    return request;
+  }
+}
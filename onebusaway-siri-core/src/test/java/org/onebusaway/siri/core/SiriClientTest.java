@@ -24,7 +24,9 @@ import static org.junit.Assert.assertSame;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
@@ -61,6 +63,9 @@ import org.xml.sax.SAXException;
 import uk.org.siri.siri.CheckStatusRequestStructure;
 import uk.org.siri.siri.CheckStatusResponseStructure;
 import uk.org.siri.siri.Siri;
+import uk.org.siri.siri.SubscriptionRequest;
+import uk.org.siri.siri.VehicleMonitoringRequestStructure;
+import uk.org.siri.siri.VehicleMonitoringSubscriptionStructure;
 
 public class SiriClientTest {
 
@@ -259,6 +264,95 @@ public class SiriClientTest {
     assertSame(request, task.getRequest());
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testHandleRequestsWithSubscriptionBatching() throws Exception {
+
+    SiriClientRequest requestA = createSubscriptionRequest("http://localhost/");
+    SiriClientRequest requestB = createSubscriptionRequest("http://localhost/");
+    SiriClientRequest requestC = createSubscriptionRequest("http://otherhost/");
+
+    StringBuilder b = new StringBuilder();
+    b.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+    b.append("<Siri xmlns=\"http://www.siri.org.uk/siri\" version=\"1.3\">");
+    b.append("</Siri>");
+
+    Mockito.when(
+        _httpClientService.executeHttpMethod(Mockito.any(HttpClient.class),
+            Mockito.any(HttpUriRequest.class))).thenReturn(
+        createResponse(b.toString()), createResponse(b.toString()));
+
+    List<Siri> responses = _client.handleRequestsWithResponse(Arrays.asList(
+        requestA, requestB, requestC));
+    assertEquals(2, responses.size());
+
+    /**
+     * Verify that the two subscriptions to the same endpoint were merged into
+     * a single http request
+     */
+    ArgumentCaptor<HttpUriRequest> captor = ArgumentCaptor.forClass(HttpUriRequest.class);
+    Mockito.verify(_httpClientService, Mockito.times(2)).executeHttpMethod(
+        Mockito.any(HttpClient.class), captor.capture());
+
+    HttpPost post = (HttpPost) captor.getAllValues().get(0);
+    assertEquals("http://localhost/", post.getURI().toString());
+    Document doc = XMLUnit.buildControlDocument(getHttpEntityAsString(post.getEntity()));
+    assertXpathEvaluatesTo("2",
+        "count(/s:Siri/s:SubscriptionRequest/s:VehicleMonitoringSubscriptionRequest)",
+        doc);
+    assertXpathEvaluatesTo("somebody",
+        "/s:Siri/s:SubscriptionRequest/s:RequestorRef", doc);
+
+    post = (HttpPost) captor.getAllValues().get(1);
+    assertEquals("http://otherhost/", post.getURI().toString());
+
+    /**
+     * Verify that the pending subscriptions of the batch were registered for
+     * the individual client requests
+     */
+    ArgumentCaptor<List> requestsCaptor = ArgumentCaptor.forClass(List.class);
+    Mockito.verify(_subscriptionManager).registerPendingSubscriptions(
+        requestsCaptor.capture(), Mockito.anyList());
+    assertEquals(Arrays.asList(requestA, requestB), requestsCaptor.getValue());
+
+    Mockito.verify(_subscriptionManager).registerPendingSubscription(
+        Mockito.eq(requestC), Mockito.any(SubscriptionRequest.class));
+  }
+
+  @Test
+  public void testHandleRequestsWithSubscriptionBatchingAndDifferentSettings()
+      throws Exception {
+
+    SiriClientRequest requestA = createSubscriptionRequest("http://localhost/");
+    SiriClientRequest requestB = createSubscriptionRequest("http://localhost/");
+    requestB.setCompressContent(true);
+    SiriClientRequest requestC = createSubscriptionRequest("http://localhost/");
+    requestC.setCheckStatusInterval(60);
+
+    StringBuilder b = new StringBuilder();
+    b.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+    b.append("<Siri xmlns=\"http://www.siri.org.uk/siri\" version=\"1.3\">");
+    b.append("</Siri>");
+
+    Mockito.when(
+        _httpClientService.executeHttpMethod(Mockito.any(HttpClient.class),
+            Mockito.any(HttpUriRequest.class))).thenReturn(
+        createResponse(b.toString()), createResponse(b.toString()),
+        createResponse(b.toString()));
+
+    List<Siri> responses = _client.handleRequestsWithResponse(Arrays.asList(
+        requestA, requestB, requestC));
+
+    /**
+     * Requests to the same endpoint with different transport settings are
+     * never merged, since the batch is sent with the settings of its first
+     * request
+     */
+    assertEquals(3, responses.size());
+    Mockito.verify(_httpClientService, Mockito.times(3)).executeHttpMethod(
+        Mockito.any(HttpClient.class), Mockito.any(HttpUriRequest.class));
+  }
+
   /*
    * @Test public void testHandleRawRequest() { fail("Not yet implemented"); }
    * 
@@ -268,6 +362,31 @@ public class SiriClientTest {
    * fail("Not yet implemented"); }
    */
 
+  private SiriClientRequest createSubscriptionRequest(String targetUrl) {
+
+    SiriClientRequest request = new SiriClientRequest();
+    request.setTargetUrl(targetUrl);
+    request.setTargetVersion(ESiriVersion.V1_3);
+
+    SubscriptionRequest subscriptionRequest = new SubscriptionRequest();
+    VehicleMonitoringSubscriptionStructure vmSubscription = new VehicleMonitoringSubscriptionStructure();
+    vmSubscription.setVehicleMonitoringRequest(new VehicleMonitoringRequestStructure());
+    subscriptionRequest.getVehicleMonitoringSubscriptionRequest().add(
+        vmSubscription);
+
+    Siri payload = new Siri();
+    payload.setSubscriptionRequest(subscriptionRequest);
+    request.setPayload(payload);
+
+    return request;
+  }
+
+  private HttpResponse createResponse(String content) throws IOException {
+    HttpResponse response = createResponse();
+    response.setEntity(new StringEntity(content));
+    return response;
+  }
+
   private HttpResponse createResponse() {
     BasicStatusLine line = new BasicStatusLine(HttpVersion.HTTP_1_1,
         HttpStatus.SC_OK, "");
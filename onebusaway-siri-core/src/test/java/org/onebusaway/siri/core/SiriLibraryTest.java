@@ -15,24 +15,86 @@
  */
 package org.onebusaway.siri.core;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 
 import org.junit.Test;
 
+import uk.org.siri.siri.AbstractServiceDeliveryStructure;
+import uk.org.siri.siri.AbstractSubscriptionStructure;
+import uk.org.siri.siri.ConnectionMonitoringSubscriptionRequestStructure;
+import uk.org.siri.siri.EstimatedTimetableDeliveryStructure;
+import uk.org.siri.siri.EstimatedTimetableSubscriptionStructure;
 import uk.org.siri.siri.HalfOpenTimestampRangeStructure;
 import uk.org.siri.siri.PtSituationElementStructure;
 import uk.org.siri.siri.RoadSituationElementStructure.ValidityPeriod;
+import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.SubscriptionRequest;
 
 public class SiriLibraryTest {
 
   private static DateFormat _format = new SimpleDateFormat("HH:mm");
 
+  @Test
+  public void testModuleAccessors() {
+
+    ServiceDelivery delivery = new ServiceDelivery();
+    for (ESiriModuleType moduleType : ESiriModuleType.values())
+      assertFalse(SiriLibrary.hasServiceDeliveriesForModule(delivery,
+          moduleType));
+
+    List<AbstractServiceDeliveryStructure> deliveries = SiriLibrary.getServiceDeliveriesForModule(
+        delivery, ESiriModuleType.ESTIMATED_TIMETABLE);
+    assertSame(delivery.getEstimatedTimetableDelivery(), deliveries);
+
+    deliveries.add(new EstimatedTimetableDeliveryStructure());
+    assertEquals(1, delivery.getEstimatedTimetableDelivery().size());
+    assertTrue(SiriLibrary.hasServiceDeliveriesForModule(delivery,
+        ESiriModuleType.ESTIMATED_TIMETABLE));
+    assertSame(delivery.getGeneralMessageDelivery(),
+        SiriLibrary.getServiceDeliveriesForModule(delivery,
+            ESiriModuleType.GENERAL_MESSAGE));
+
+    SubscriptionRequest request = new SubscriptionRequest();
+    List<AbstractSubscriptionStructure> subscriptions = SiriLibrary.getSubscriptionRequestsForModule(
+        request, ESiriModuleType.ESTIMATED_TIMETABLE);
+    subscriptions.add(new EstimatedTimetableSubscriptionStructure());
+    assertEquals(1, request.getEstimatedTimetableSubscriptionRequest().size());
+  }
+
+  @Test
+  public void testRequestModuleTypes() {
+
+    List<ESiriModuleType> moduleTypes = SiriLibrary.getRequestModuleTypes();
+    assertEquals(ESiriModuleType.values().length - 1, moduleTypes.size());
+    assertTrue(moduleTypes.contains(ESiriModuleType.CONNECTION_MONITORING_FEEDER));
+    assertFalse(moduleTypes.contains(ESiriModuleType.CONNECTION_MONITORING_DISTRIBUTOR));
+
+    assertEquals(ESiriModuleType.CONNECTION_MONITORING_FEEDER,
+        SiriLibrary.getRequestModuleType(ESiriModuleType.CONNECTION_MONITORING_DISTRIBUTOR));
+    assertEquals(ESiriModuleType.VEHICLE_MONITORING,
+        SiriLibrary.getRequestModuleType(ESiriModuleType.VEHICLE_MONITORING));
+
+    /**
+     * A connection monitoring subscription is visited exactly once
+     */
+    SubscriptionRequest request = new SubscriptionRequest();
+    request.getConnectionMonitoringSubscriptionRequest().add(
+        new ConnectionMonitoringSubscriptionRequestStructure());
+    int count = 0;
+    for (ESiriModuleType moduleType : moduleTypes)
+      count += SiriLibrary.getSubscriptionRequestsForModule(request, moduleType).size();
+    assertEquals(1, count);
+  }
+
   @Test
   public void testSituationExpiration() {
 
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.VehicleActivityStructure;
+import uk.org.siri.siri.VehicleActivityStructure.MonitoredVehicleJourney;
+import uk.org.siri.siri.VehicleMonitoringDeliveryStructure;
+
+public class ElementPathModuleDeliveryFilterTest {
+
+  @Test
+  public void testConvertedValue() {
+
+    ElementPathModuleDeliveryFilter filter = new ElementPathModuleDeliveryFilter(
+        "VehicleActivity.MonitoredVehicleJourney.InPanic", "true");
+
+    VehicleMonitoringDeliveryStructure vm = new VehicleMonitoringDeliveryStructure();
+    VehicleActivityStructure a = activity();
+    VehicleActivityStructure b = new VehicleActivityStructure();
+    vm.getVehicleActivity().add(a);
+    vm.getVehicleActivity().add(b);
+
+    assertSame(vm, filter.filter(new ServiceDelivery(), vm));
+    assertEquals(Boolean.TRUE, a.getMonitoredVehicleJourney().isInPanic());
+    assertNull(b.getMonitoredVehicleJourney());
+
+    /**
+     * Apply the filter a second time to exercise the cached accessors
+     */
+    a.getMonitoredVehicleJourney().setInPanic(Boolean.FALSE);
+    filter.filter(new ServiceDelivery(), vm);
+    assertEquals(Boolean.TRUE, a.getMonitoredVehicleJourney().isInPanic());
+  }
+
+  @Test
+  public void testPolymorphicElements() {
+
+    ElementPathModuleDeliveryFilter filter = new ElementPathModuleDeliveryFilter(
+        "VehicleActivity.MonitoredVehicleJourney.InPanic", "true");
+
+    VehicleMonitoringDeliveryStructure vm = new VehicleMonitoringDeliveryStructure();
+    VehicleActivityStructure a = activity();
+    VehicleActivityStructure b = new ExtendedVehicleActivity();
+    b.setMonitoredVehicleJourney(new MonitoredVehicleJourney());
+    vm.getVehicleActivity().add(a);
+    vm.getVehicleActivity().add(b);
+
+    filter.filter(new ServiceDelivery(), vm);
+
+    assertEquals(Boolean.TRUE, a.getMonitoredVehicleJourney().isInPanic());
+    assertEquals(Boolean.TRUE, b.getMonitoredVehicleJourney().isInPanic());
+  }
+
+  private VehicleActivityStructure activity() {
+    VehicleActivityStructure activity = new VehicleActivityStructure();
+    activity.setMonitoredVehicleJourney(new MonitoredVehicleJourney());
+    return activity;
+  }
+
+  public static class ExtendedVehicleActivity extends VehicleActivityStructure {
+
+    private static final long serialVersionUID = 1L;
+  }
+}
@@ -20,6 +20,8 @@ import static org.junit.Assert.*;
 import java.util.HashMap;
 import java.util.Map;
 
+import javax.annotation.PreDestroy;
+
 import org.junit.Test;
 import org.onebusaway.siri.core.exceptions.SiriException;
 
@@ -62,11 +64,23 @@ public class SiriModuleDeliveryFilterFactoryImplTest {
     DummyFilter filter = (DummyFilter) _factory.create(filterArgs);
     assertEquals("tacos", filter.getValue());    
   }
+
+  @Test
+  public void testStop() {
+    Map<String, String> filterArgs = new HashMap<String, String>();
+    filterArgs.put("Filter.Class", DummyFilter.class.getName());
+    DummyFilter filter = (DummyFilter) _factory.create(filterArgs);
+    assertFalse(filter.isStopped());
+    _factory.stop(filter);
+    assertTrue(filter.isStopped());
+  }
   
   public static class DummyFilter implements SiriModuleDeliveryFilter {
     
     private String value;
 
+    private boolean stopped = false;
+
     public void setValue(String value) {
       this.value = value;
     }
@@ -75,6 +89,15 @@ public class SiriModuleDeliveryFilterFactoryImplTest {
       return value;
     }
 
+    @PreDestroy
+    public void stop() {
+      stopped = true;
+    }
+
+    public boolean isStopped() {
+      return stopped;
+    }
+
     @Override
     public AbstractServiceDeliveryStructure filter(ServiceDelivery delivery,
         AbstractServiceDeliveryStructure moduleDelivery) {
@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.onebusaway.collections.tuple.T2;
+import org.onebusaway.collections.tuple.Tuples;
+import org.onebusaway.siri.core.ESiriModuleType;
+import org.onebusaway.siri.core.SiriLibrary;
+
+import uk.org.siri.siri.AbstractServiceDeliveryStructure;
+import uk.org.siri.siri.AbstractSubscriptionStructure;
+import uk.org.siri.siri.ParticipantRefStructure;
+import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.SubscriptionRequest;
+
+public class SiriModuleDeliveryFilterMatcherIndexTest {
+
+  private List<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>> _filters = new ArrayList<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>>();
+
+  private List<SiriModuleDeliveryFilter> _filterInstances = new ArrayList<SiriModuleDeliveryFilter>();
+
+  @Test
+  public void testMatchingFilters() {
+
+    add("Match.RequestorRef=a");
+    add("Match.RequestorRef=StartsWith(ab)");
+    add("Match.RequestorRef=EndsWith(bc)");
+    add("Match.RequestorRef=Regex(a.c)");
+    add("Match.RequestorRef=Regex((x)\\1)");
+    add("Match.RequestorRef=Empty()");
+    add("Match.RequestorRef=abc,ModuleType=VEHICLE_MONITORING");
+    add("Match.RequestorRef=abc,Match.Address=StartsWith(http://a)");
+    add("Match.Address=EndsWith(/b)");
+    add("");
+
+    SiriModuleDeliveryFilterMatcher custom = new SiriModuleDeliveryFilterMatcher() {
+      @Override
+      public boolean isMatch(SubscriptionRequest subscriptionRequest,
+          ESiriModuleType moduleType,
+          AbstractSubscriptionStructure moduleTypeSubscriptionRequest) {
+        return moduleType == ESiriModuleType.STOP_MONITORING;
+      }
+    };
+    add(custom);
+
+    SiriModuleDeliveryFilterMatcherIndex index = new SiriModuleDeliveryFilterMatcherIndex(
+        _filters);
+
+    assertMatches(index, request("a", null), ESiriModuleType.VEHICLE_MONITORING, 0, 9);
+    assertMatches(index, request("abc", null),
+        ESiriModuleType.VEHICLE_MONITORING, 1, 2, 3, 6, 9);
+    assertMatches(index, request("abc", "http://a/b"),
+        ESiriModuleType.STOP_MONITORING, 1, 2, 3, 7, 8, 9, 10);
+    assertMatches(index, request("xx", null), ESiriModuleType.VEHICLE_MONITORING,
+        4, 9);
+    assertMatches(index, request(null, null), ESiriModuleType.VEHICLE_MONITORING,
+        5, 9);
+    assertMatches(index, request("", "/b"), ESiriModuleType.VEHICLE_MONITORING,
+        5, 8, 9);
+  }
+
+  @Test
+  public void testSameAsLinearScan() {
+
+    String[] values = {"a", "ab", "abc", "b", "bc", "ba", "", "Abc"};
+
+    for (String value : values) {
+      add("Match.RequestorRef=" + value);
+      add("Match.RequestorRef=StartsWith(" + value + ")");
+      add("Match.RequestorRef=EndsWith(" + value + ")");
+      add("Match.RequestorRef=Regex(" + value + ".*)");
+      add("Match.RequestorRef=Regex((?i)" + value + ")");
+      add("Match.Address=StartsWith(" + value
+          + "),Match.RequestorRef=EndsWith(" + value + ")");
+    }
+
+    SiriModuleDeliveryFilterMatcherIndex index = new SiriModuleDeliveryFilterMatcherIndex(
+        _filters);
+
+    for (String requestorRef : values) {
+      for (String address : values) {
+        SubscriptionRequest request = request(requestorRef, address);
+        assertEquals(
+            linearScan(request, ESiriModuleType.VEHICLE_MONITORING),
+            index.getMatchingFilters(request,
+                ESiriModuleType.VEHICLE_MONITORING, null));
+      }
+    }
+  }
+
+  @Test
+  public void testReusedGroupNames() {
+
+    add("Match.RequestorRef=Regex((?<id>a)b)");
+    add("Match.RequestorRef=Regex((?<id>b)c)");
+    add("Match.RequestorRef=Regex(c.)");
+
+    SiriModuleDeliveryFilterMatcherIndex index = new SiriModuleDeliveryFilterMatcherIndex(
+        _filters);
+
+    assertMatches(index, request("ab", null),
+        ESiriModuleType.VEHICLE_MONITORING, 0);
+    assertMatches(index, request("bc", null),
+        ESiriModuleType.VEHICLE_MONITORING, 1);
+    assertMatches(index, request("cd", null),
+        ESiriModuleType.VEHICLE_MONITORING, 2);
+    assertMatches(index, request("x", null), ESiriModuleType.VEHICLE_MONITORING);
+  }
+
+  @Test
+  public void testModuleType() {
+
+    add("ModuleType=VEHICLE_MONITORING");
+    add("ModuleType=STOP_MONITORING,Match.RequestorRef=a");
+    add("ModuleType=VEHICLE_MONITORING,Match.RequestorRef=StartsWith(a)");
+    add("Match.RequestorRef=a");
+
+    SiriModuleDeliveryFilterMatcherIndex index = new SiriModuleDeliveryFilterMatcherIndex(
+        _filters);
+
+    assertMatches(index, request("a", null),
+        ESiriModuleType.VEHICLE_MONITORING, 0, 2, 3);
+    assertMatches(index, request("a", null), ESiriModuleType.STOP_MONITORING,
+        1, 3);
+    assertMatches(index, request("a", null),
+        ESiriModuleType.SITUATION_EXCHANGE, 3);
+  }
+
+  @Test
+  public void testServiceDeliveryEnrichers() {
+
+    SiriModuleDeliveryFilterMatcherFactoryImpl factory = new SiriModuleDeliveryFilterMatcherFactoryImpl();
+    EnrichingFilter a = new EnrichingFilter();
+    EnrichingFilter b = new EnrichingFilter();
+
+    _filters.add(Tuples.<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter> tuple(
+        factory.create(SiriLibrary.getLineAsMap("Match.RequestorRef=a")), b));
+    add("Match.RequestorRef=b");
+    _filters.add(Tuples.<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter> tuple(
+        factory.create(SiriLibrary.getLineAsMap("Match.RequestorRef=c")), a));
+    _filters.add(Tuples.<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter> tuple(
+        factory.create(SiriLibrary.getLineAsMap("Match.RequestorRef=d")), b));
+
+    SiriModuleDeliveryFilterMatcherIndex index = new SiriModuleDeliveryFilterMatcherIndex(
+        _filters);
+
+    assertEquals(Arrays.<SiriServiceDeliveryEnricher> asList(b, a),
+        index.getServiceDeliveryEnrichers());
+  }
+
+  private void add(String filterSpec) {
+    Map<String, String> filterArgs = filterSpec.length() == 0
+        ? new HashMap<String, String>() : SiriLibrary.getLineAsMap(filterSpec);
+    SiriModuleDeliveryFilterMatcherFactoryImpl factory = new SiriModuleDeliveryFilterMatcherFactoryImpl();
+    add(factory.create(filterArgs));
+  }
+
+  private void add(SiriModuleDeliveryFilterMatcher matcher) {
+    SiriModuleDeliveryFilter filter = new ModuleDeliveryFilterCollection();
+    _filters.add(Tuples.tuple(matcher, filter));
+    _filterInstances.add(filter);
+  }
+
+  private List<SiriModuleDeliveryFilter> linearScan(
+      SubscriptionRequest request, ESiriModuleType moduleType) {
+    List<SiriModuleDeliveryFilter> filters = new ArrayList<SiriModuleDeliveryFilter>();
+    for (T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter> tuple : _filters) {
+      if (tuple.getFirst().isMatch(request, moduleType, null))
+        filters.add(tuple.getSecond());
+    }
+    return filters;
+  }
+
+  private void assertMatches(SiriModuleDeliveryFilterMatcherIndex index,
+      SubscriptionRequest request, ESiriModuleType moduleType,
+      Integer... expectedIndices) {
+    List<SiriModuleDeliveryFilter> expected = new ArrayList<SiriModuleDeliveryFilter>();
+    for (int i : expectedIndices)
+      expected.add(_filterInstances.get(i));
+    assertEquals(expected, index.getMatchingFilters(request, moduleType, null));
+    assertEquals(Arrays.asList(expectedIndices),
+        getIndices(linearScan(request, moduleType)));
+  }
+
+  private List<Integer> getIndices(List<SiriModuleDeliveryFilter> filters) {
+    if (filters.isEmpty())
+      return Collections.emptyList();
+    List<Integer> indices = new ArrayList<Integer>();
+    for (SiriModuleDeliveryFilter filter : filters)
+      indices.add(_filterInstances.indexOf(filter));
+    return indices;
+  }
+
+  private SubscriptionRequest request(String requestorRef, String address) {
+    SubscriptionRequest request = new SubscriptionRequest();
+    if (requestorRef != null) {
+      ParticipantRefStructure ref = new ParticipantRefStructure();
+      ref.setValue(requestorRef);
+      request.setRequestorRef(ref);
+    }
+    request.setAddress(address);
+    return request;
+  }
+
+  private static class EnrichingFilter implements SiriModuleDeliveryFilter,
+      SiriServiceDeliveryEnricher {
+
+    @Override
+    public AbstractServiceDeliveryStructure filter(ServiceDelivery delivery,
+        AbstractServiceDeliveryStructure moduleDelivery) {
+      return moduleDelivery;
+    }
+
+    @Override
+    public void enrich(ServiceDelivery delivery) {
+
+    }
+  }
+}
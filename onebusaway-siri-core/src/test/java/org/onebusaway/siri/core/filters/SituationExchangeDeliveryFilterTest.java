@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.onebusaway.siri.core.ESiriModuleType;
+import org.onebusaway.siri.core.SiriTypeFactory;
+
+import uk.org.siri.siri.AffectedLineStructure;
+import uk.org.siri.siri.AffectedVehicleJourneyStructure;
+import uk.org.siri.siri.AffectsScopeStructure;
+import uk.org.siri.siri.AffectsScopeStructure.Networks;
+import uk.org.siri.siri.AffectsScopeStructure.Networks.AffectedNetwork;
+import uk.org.siri.siri.AffectsScopeStructure.VehicleJourneys;
+import uk.org.siri.siri.PtSituationElementStructure;
+import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.SituationExchangeDeliveryStructure;
+import uk.org.siri.siri.SituationExchangeDeliveryStructure.Situations;
+import uk.org.siri.siri.SituationExchangeRequestStructure;
+import uk.org.siri.siri.SituationExchangeSubscriptionStructure;
+
+public class SituationExchangeDeliveryFilterTest {
+
+  private ModuleDeliveryFilterFactory _factory = new ModuleDeliveryFilterFactory();
+
+  @Test
+  public void testLineRef() {
+
+    SiriModuleDeliveryFilter filter = createFilter("10");
+    assertTrue(filter instanceof SituationExchangeDeliveryFilter);
+
+    SituationExchangeDeliveryStructure sx = delivery(
+        networkSituation("a", "10"), networkSituation("b", "11"),
+        journeySituation("c", "10"), new PtSituationElementStructure());
+
+    assertSame(sx, filter.filter(new ServiceDelivery(), sx));
+
+    List<PtSituationElementStructure> situations = sx.getSituations().getPtSituationElement();
+    assertEquals(2, situations.size());
+    assertEquals("a", situations.get(0).getSituationNumber().getValue());
+    assertEquals("c", situations.get(1).getSituationNumber().getValue());
+  }
+
+  @Test
+  public void testNoMatches() {
+
+    SiriModuleDeliveryFilter filter = createFilter("12");
+
+    SituationExchangeDeliveryStructure sx = delivery(
+        networkSituation("a", "10"), journeySituation("b", "11"));
+
+    assertNull(filter.filter(new ServiceDelivery(), sx));
+  }
+
+  @Test
+  public void testNoLineRef() {
+
+    SiriModuleDeliveryFilter filter = createFilter(null);
+
+    SituationExchangeDeliveryStructure sx = delivery(
+        networkSituation("a", "10"), journeySituation("b", "11"));
+
+    assertSame(sx, filter.filter(new ServiceDelivery(), sx));
+    assertEquals(2, sx.getSituations().getPtSituationElement().size());
+  }
+
+  private SiriModuleDeliveryFilter createFilter(String lineId) {
+    SituationExchangeRequestStructure request = new SituationExchangeRequestStructure();
+    if (lineId != null)
+      request.setLineRef(SiriTypeFactory.lineRef(lineId));
+    SituationExchangeSubscriptionStructure subscription = new SituationExchangeSubscriptionStructure();
+    subscription.setSituationExchangeRequest(request);
+    return _factory.createFilter(ESiriModuleType.SITUATION_EXCHANGE,
+        subscription);
+  }
+
+  private SituationExchangeDeliveryStructure delivery(
+      PtSituationElementStructure... situations) {
+    SituationExchangeDeliveryStructure sx = new SituationExchangeDeliveryStructure();
+    Situations s = new Situations();
+    for (PtSituationElementStructure situation : situations)
+      s.getPtSituationElement().add(situation);
+    sx.setSituations(s);
+    return sx;
+  }
+
+  private PtSituationElementStructure networkSituation(String id, String lineId) {
+    AffectedLineStructure line = new AffectedLineStructure();
+    line.setLineRef(SiriTypeFactory.lineRef(lineId));
+    AffectedNetwork network = new AffectedNetwork();
+    network.getAffectedLine().add(line);
+    Networks networks = new Networks();
+    networks.getAffectedNetwork().add(network);
+    AffectsScopeStructure affects = new AffectsScopeStructure();
+    affects.setNetworks(networks);
+    return situation(id, affects);
+  }
+
+  private PtSituationElementStructure journeySituation(String id, String lineId) {
+    AffectedVehicleJourneyStructure journey = new AffectedVehicleJourneyStructure();
+    journey.setLineRef(SiriTypeFactory.lineRef(lineId));
+    VehicleJourneys journeys = new VehicleJourneys();
+    journeys.getAffectedVehicleJourney().add(journey);
+    AffectsScopeStructure affects = new AffectsScopeStructure();
+    affects.setVehicleJourneys(journeys);
+    return situation(id, affects);
+  }
+
+  private PtSituationElementStructure situation(String id,
+      AffectsScopeStructure affects) {
+    PtSituationElementStructure situation = new PtSituationElementStructure();
+    situation.setSituationNumber(SiriTypeFactory.entryQualifier(id));
+    situation.setAffects(affects);
+    return situation;
+  }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.onebusaway.siri.core.SiriTypeFactory;
+
+import uk.org.siri.siri.MonitoredCallStructure;
+import uk.org.siri.siri.MonitoredStopVisitStructure;
+import uk.org.siri.siri.MonitoredVehicleJourneyStructure;
+import uk.org.siri.siri.MonitoringRefStructure;
+import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.StopMonitoringDeliveryStructure;
+
+public class StopMonitoringDeliveryFilterTest {
+
+  @Test
+  public void testMonitoringRef() {
+
+    StopMonitoringDeliveryFilter filter = new StopMonitoringDeliveryFilter();
+    filter.setMonitoringRef("stopA");
+
+    StopMonitoringDeliveryStructure sm = delivery(visit("stopA", "10", 0),
+        visit("stopB", "10", 0), visit("stopA", "11", 0),
+        new MonitoredStopVisitStructure());
+
+    assertSame(sm, filter.filter(new ServiceDelivery(), sm));
+
+    List<MonitoredStopVisitStructure> visits = sm.getMonitoredStopVisit();
+    assertEquals(2, visits.size());
+    assertEquals("10", getLineId(visits.get(0)));
+    assertEquals("11", getLineId(visits.get(1)));
+  }
+
+  @Test
+  public void testMonitoringRefAndLineRef() {
+
+    StopMonitoringDeliveryFilter filter = new StopMonitoringDeliveryFilter();
+    filter.setMonitoringRef("stopA");
+    filter.setLineRef("11");
+
+    StopMonitoringDeliveryStructure sm = delivery(visit("stopA", "10", 0),
+        visit("stopB", "11", 0), visit("stopA", "11", 0));
+
+    assertSame(sm, filter.filter(new ServiceDelivery(), sm));
+
+    List<MonitoredStopVisitStructure> visits = sm.getMonitoredStopVisit();
+    assertEquals(1, visits.size());
+    assertEquals("stopA", visits.get(0).getMonitoringRef().getValue());
+  }
+
+  @Test
+  public void testPreviewIntervalAndMaximumStopVisits() {
+
+    StopMonitoringDeliveryFilter filter = new StopMonitoringDeliveryFilter();
+    filter.setPreviewInterval(10 * 60 * 1000);
+    filter.setMaximumStopVisits(2);
+
+    StopMonitoringDeliveryStructure sm = delivery(visit("stopA", "10", 5),
+        visit("stopA", "11", 20), visit("stopA", "12", 8),
+        visit("stopA", "13", 9));
+
+    filter.filter(new ServiceDelivery(), sm);
+
+    List<MonitoredStopVisitStructure> visits = sm.getMonitoredStopVisit();
+    assertEquals(2, visits.size());
+    assertEquals("10", getLineId(visits.get(0)));
+    assertEquals("12", getLineId(visits.get(1)));
+  }
+
+  @Test
+  public void testNoMatches() {
+    StopMonitoringDeliveryFilter filter = new StopMonitoringDeliveryFilter();
+    filter.setMonitoringRef("stopZ");
+    StopMonitoringDeliveryStructure sm = delivery(visit("stopA", "10", 0));
+    assertNull(filter.filter(new ServiceDelivery(), sm));
+  }
+
+  private StopMonitoringDeliveryStructure delivery(
+      MonitoredStopVisitStructure... visits) {
+    StopMonitoringDeliveryStructure sm = new StopMonitoringDeliveryStructure();
+    for (MonitoredStopVisitStructure visit : visits)
+      sm.getMonitoredStopVisit().add(visit);
+    return sm;
+  }
+
+  private MonitoredStopVisitStructure visit(String stopId, String lineId,
+      int arrivalInMinutes) {
+    MonitoredStopVisitStructure visit = new MonitoredStopVisitStructure();
+    MonitoringRefStructure monitoringRef = new MonitoringRefStructure();
+    monitoringRef.setValue(stopId);
+    visit.setMonitoringRef(monitoringRef);
+    MonitoredVehicleJourneyStructure mvj = new MonitoredVehicleJourneyStructure();
+    mvj.setLineRef(SiriTypeFactory.lineRef(lineId));
+    MonitoredCallStructure call = new MonitoredCallStructure();
+    call.setExpectedArrivalTime(new Date(System.currentTimeMillis()
+        + arrivalInMinutes * 60 * 1000));
+    mvj.setMonitoredCall(call);
+    visit.setMonitoredVehicleJourney(mvj);
+    return visit;
+  }
+
+  private String getLineId(MonitoredStopVisitStructure visit) {
+    return visit.getMonitoredVehicleJourney().getLineRef().getValue();
+  }
+}
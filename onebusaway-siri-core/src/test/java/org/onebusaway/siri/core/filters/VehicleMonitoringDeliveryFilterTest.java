@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.onebusaway.siri.core.SiriTypeFactory;
+
+import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.VehicleActivityStructure;
+import uk.org.siri.siri.VehicleActivityStructure.MonitoredVehicleJourney;
+import uk.org.siri.siri.VehicleMonitoringDeliveryStructure;
+
+public class VehicleMonitoringDeliveryFilterTest {
+
+  @Test
+  public void testLineRef() {
+
+    VehicleMonitoringDeliveryFilter filter = new VehicleMonitoringDeliveryFilter();
+    filter.setLineRef("10");
+
+    VehicleMonitoringDeliveryStructure vm = delivery(activity("a", "10"),
+        activity("b", "11"), activity("c", "10"), new VehicleActivityStructure());
+
+    assertSame(vm, filter.filter(new ServiceDelivery(), vm));
+
+    List<VehicleActivityStructure> activities = vm.getVehicleActivity();
+    assertEquals(2, activities.size());
+    assertEquals("a", getVehicleId(activities.get(0)));
+    assertEquals("c", getVehicleId(activities.get(1)));
+  }
+
+  @Test
+  public void testLineRefAndVehicleRef() {
+
+    VehicleMonitoringDeliveryFilter filter = new VehicleMonitoringDeliveryFilter();
+    filter.setLineRef("10");
+    filter.setVehicleRef("c");
+
+    VehicleMonitoringDeliveryStructure vm = delivery(activity("a", "10"),
+        activity("c", "11"), activity("c", "10"));
+
+    assertSame(vm, filter.filter(new ServiceDelivery(), vm));
+
+    List<VehicleActivityStructure> activities = vm.getVehicleActivity();
+    assertEquals(1, activities.size());
+    assertEquals("10",
+        activities.get(0).getMonitoredVehicleJourney().getLineRef().getValue());
+  }
+
+  @Test
+  public void testMaximumVehicles() {
+
+    VehicleMonitoringDeliveryFilter filter = new VehicleMonitoringDeliveryFilter();
+    filter.setMaximumVehicles(2);
+
+    VehicleMonitoringDeliveryStructure vm = delivery(activity("a", "10"),
+        activity("b", "11"), activity("c", "10"));
+    filter.filter(new ServiceDelivery(), vm);
+    assertEquals(2, vm.getVehicleActivity().size());
+
+    filter.setLineRef("10");
+    vm = delivery(activity("a", "10"), activity("b", "11"),
+        activity("c", "10"), activity("d", "10"));
+    filter.filter(new ServiceDelivery(), vm);
+
+    List<VehicleActivityStructure> activities = vm.getVehicleActivity();
+    assertEquals(2, activities.size());
+    assertEquals("a", getVehicleId(activities.get(0)));
+    assertEquals("c", getVehicleId(activities.get(1)));
+  }
+
+  @Test
+  public void testNoMatches() {
+    VehicleMonitoringDeliveryFilter filter = new VehicleMonitoringDeliveryFilter();
+    filter.setVehicleRef("z");
+    VehicleMonitoringDeliveryStructure vm = delivery(activity("a", "10"));
+    assertNull(filter.filter(new ServiceDelivery(), vm));
+  }
+
+  private VehicleMonitoringDeliveryStructure delivery(
+      VehicleActivityStructure... activities) {
+    VehicleMonitoringDeliveryStructure vm = new VehicleMonitoringDeliveryStructure();
+    for (VehicleActivityStructure activity : activities)
+      vm.getVehicleActivity().add(activity);
+    return vm;
+  }
+
+  private VehicleActivityStructure activity(String vehicleId, String lineId) {
+    VehicleActivityStructure activity = new VehicleActivityStructure();
+    MonitoredVehicleJourney mvj = new MonitoredVehicleJourney();
+    mvj.setVehicleRef(SiriTypeFactory.vehicleRef(vehicleId));
+    mvj.setLineRef(SiriTypeFactory.lineRef(lineId));
+    activity.setMonitoredVehicleJourney(mvj);
+    return activity;
+  }
+
+  private String getVehicleId(VehicleActivityStructure activity) {
+    return activity.getMonitoredVehicleJourney().getVehicleRef().getValue();
+  }
+}
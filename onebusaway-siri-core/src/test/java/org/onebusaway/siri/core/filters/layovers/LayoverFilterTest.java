@@ -46,6 +46,12 @@ public class LayoverFilterTest {
     _filter.setLayoverService(_layoverService);
   }
 
+  @Test
+  public void testStopLeavesInjectedService() {
+    _filter.stop();
+    Mockito.verify(_layoverService, Mockito.never()).stop();
+  }
+
   @Test
   public void testInLayover() throws JAXBException {
     ServiceDelivery delivery = constructVehicleActivity();
@@ -80,6 +86,30 @@ public class LayoverFilterTest {
     assertNull(activity.getExtensions());
   }
   
+  @Test
+  public void testEnrichThenFilter() throws JAXBException {
+    ServiceDelivery delivery = constructVehicleActivity();
+    VehicleMonitoringDeliveryStructure vm = delivery.getVehicleMonitoringDelivery().get(0);
+    VehicleActivityStructure activity = vm.getVehicleActivity().get(0);
+
+    Mockito.when(_layoverService.isVehiclePausedAtLayoverLocation("123")).thenReturn(
+        true);
+
+    _filter.enrich(delivery);
+    Mockito.verify(_layoverService).updateVehicle(activity);
+
+    /**
+     * Once enriched, filtering for each subscription should only read the
+     * layover state
+     */
+    _filter.filter(delivery, vm);
+    _filter.filter(delivery, vm);
+    Mockito.verify(_layoverService, Mockito.times(1)).updateVehicle(activity);
+
+    OneBusAwayVehicleActivity extension = (OneBusAwayVehicleActivity) activity.getExtensions().getAny();
+    assertTrue(extension.isLayover());
+  }
+
   private ServiceDelivery constructVehicleActivity() {
     MonitoredVehicleJourney mvj = new MonitoredVehicleJourney();
     mvj.setVehicleRef(SiriTypeFactory.vehicleRef("123"));
@@ -0,0 +1,83 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters.layovers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LayoverLocationIndexTest {
+
+  @Test
+  public void testLookup() {
+    LayoverLocationIndex index = new LayoverLocationIndex();
+    LayoverLocation a = new LayoverLocation(point(47.668523, -122.290170),
+        mins(0), 1);
+    LayoverLocation b = new LayoverLocation(point(47.668538, -122.284827),
+        mins(0), 5);
+    index.add(a);
+    index.add(b);
+    assertEquals(2, index.size());
+
+    // Neighboring grid cell
+    assertSame(a, index.getLayoverLocationIncludingPoint(
+        point(47.668538, -122.288475), false));
+    assertNull(index.getLayoverLocationIncludingPoint(
+        point(47.668538, -122.288475), true));
+    assertNull(index.getLayoverLocationIncludingPoint(
+        point(47.668509, -122.287112), false));
+    assertSame(b, index.getLayoverLocationIncludingPoint(
+        point(47.668538, -122.284827), true));
+  }
+
+  @Test
+  public void testMoveAndPrune() {
+    LayoverLocationIndex index = new LayoverLocationIndex();
+    LayoverLocation a = new LayoverLocation(point(47.668523, -122.290170),
+        mins(0), 1);
+    index.add(a);
+
+    /**
+     * Drag the centroid across a cell boundary
+     */
+    for (int i = 0; i < 20; ++i) {
+      CoordinatePoint previous = a.getCentroid();
+      a.update(point(47.668523, -122.289000), mins(i + 1));
+      index.handleLocationMoved(a, previous);
+    }
+    assertSame(a, index.getLayoverLocationIncludingPoint(
+        point(47.668523, -122.287900), false));
+
+    List<LayoverLocation> removed = index.removeStaleLocations(mins(
+        8 * 24 * 60).getTime());
+    assertEquals(1, removed.size());
+    assertEquals(0, index.size());
+    assertNull(index.getLayoverLocationIncludingPoint(a.getCentroid(), false));
+  }
+
+  private CoordinatePoint point(double lat, double lng) {
+    return new CoordinatePoint(lat, lng);
+  }
+
+  private Date mins(int minutes) {
+    return new Date(minutes * 60 * 1000L);
+  }
+}
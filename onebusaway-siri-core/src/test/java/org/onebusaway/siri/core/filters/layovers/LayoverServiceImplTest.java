@@ -17,14 +17,15 @@ package org.onebusaway.siri.core.filters.layovers;
 
 import static org.junit.Assert.*;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.junit.Test;
 import org.onebusaway.siri.core.SiriTypeFactory;
@@ -86,6 +87,9 @@ public class LayoverServiceImplTest {
     tmpFile.deleteOnExit();
     saveStringToFile(line, tmpFile);
 
+    /**
+     * Data files in the older text format are still read
+     */
     _service.loadLayoverLocations(tmpFile);
     _service.setDataPath(tmpFile);
 
@@ -99,9 +103,106 @@ public class LayoverServiceImplTest {
 
     tmpFile.delete();
     _service.saveLayoverLocations();
-    
-    String newLine = readStringFromFile(tmpFile);
-    assertEquals(line, newLine);
+    assertTrue(tmpFile.exists());
+    assertFalse(new File(tmpFile.getPath() + ".tmp").exists());
+    new File(tmpFile.getPath() + ".journal").deleteOnExit();
+
+    LayoverServiceImpl service = new LayoverServiceImpl();
+    service.loadLayoverLocations(tmpFile);
+    locations = service.getLayoverLocationsForLineRef("10");
+    assertEquals(1, locations.size());
+    location = locations.get(0);
+    p = location.getCentroid();
+    assertEquals(47.668509, p.getLat(), 0.0);
+    assertEquals(-122.290192, p.getLng(), 0.0);
+    assertEquals(5, location.getSamples());
+  }
+
+  @Test
+  public void testJournal() throws IOException {
+    File tmpFile = File.createTempFile(
+        LayoverServiceImplTest.class.getName() + "-", ".dat");
+    tmpFile.deleteOnExit();
+    tmpFile.delete();
+    File journalFile = new File(tmpFile.getPath() + ".journal");
+    journalFile.deleteOnExit();
+
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+    _service.setHousekeepingExecutor(new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        tasks.add(command);
+      }
+    });
+    _service.setDataPath(tmpFile);
+
+    _service.updateVehicle(activity(0, 47.668509, -122.290192, "t0"));
+    _service.updateVehicle(activity(6, 47.668509, -122.290192, "t1"));
+    _service.updateVehicle(activity(7, 47.668514, -122.289640, "t1"));
+    assertEquals(1, _service.getLayoverLocationsForLineRef("10").size());
+
+    /**
+     * The new sample is journaled in the background
+     */
+    assertEquals(1, tasks.size());
+    assertFalse(journalFile.exists());
+    tasks.get(0).run();
+    assertTrue(journalFile.exists());
+
+    /**
+     * Simulate a crash part way through writing the next journal record
+     */
+    FileOutputStream out = new FileOutputStream(journalFile, true);
+    out.write(new byte[] {0, 0});
+    out.close();
+
+    LayoverServiceImpl service = new LayoverServiceImpl();
+    service.loadLayoverLocations(tmpFile);
+    List<LayoverLocation> locations = service.getLayoverLocationsForLineRef("10");
+    assertEquals(1, locations.size());
+    assertEquals(1, locations.get(0).getSamples());
+
+    /**
+     * Once a snapshot is written, the journal is reset so that samples aren't
+     * counted twice
+     */
+    service.saveLayoverLocations();
+    service = new LayoverServiceImpl();
+    service.loadLayoverLocations(tmpFile);
+    locations = service.getLayoverLocationsForLineRef("10");
+    assertEquals(1, locations.size());
+    assertEquals(1, locations.get(0).getSamples());
+  }
+
+  @Test
+  public void testBackgroundHousekeeping() {
+    final List<Runnable> tasks = new ArrayList<Runnable>();
+    _service.setHousekeepingExecutor(new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        tasks.add(command);
+      }
+    });
+
+    _service.updateVehicle(activity(0, 47.668509, -122.290192, "t0"));
+    _service.updateVehicle(activity(6, 47.668509, -122.290192, "t0"));
+    assertTrue(_service.isVehiclePaused("1234"));
+    assertEquals(0, tasks.size());
+
+    VehicleActivityStructure other = activity(120, 47.668509, -122.290192,
+        "t0");
+    other.getMonitoredVehicleJourney().setVehicleRef(
+        SiriTypeFactory.vehicleRef("5678"));
+    _service.updateVehicle(other);
+
+    /**
+     * Housekeeping is handed off rather than run inline
+     */
+    assertEquals(1, tasks.size());
+    assertTrue(_service.isVehiclePaused("1234"));
+
+    tasks.get(0).run();
+    assertFalse(_service.isVehiclePaused("1234"));
   }
 
   private VehicleActivityStructure activity(int time_mins, double lat,
@@ -135,15 +236,4 @@ public class LayoverServiceImplTest {
     writer.close();
   }
 
-  private String readStringFromFile(File file) throws IOException {
-    StringBuilder b = new StringBuilder();
-    String line = null;
-    BufferedReader reader = new BufferedReader(new FileReader(file));
-    while ((line = reader.readLine()) != null) {
-      b.append(line).append("\n");
-    }
-    reader.close();
-    return b.toString();
-  }
-
 }
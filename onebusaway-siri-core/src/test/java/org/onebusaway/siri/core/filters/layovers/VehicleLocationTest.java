@@ -199,6 +199,34 @@ public class VehicleLocationTest {
     assertEquals(1, paused.getUpdatesSinceTripChange());
   }
 
+  @Test
+  public void testStaleUpdateResetsMergedLocations() {
+    VehicleLocation location = new VehicleLocation(VEHICLE_REF);
+
+    location.update(mins(0), mvj("t0", 47.668523, -122.290170),
+        _locationListener);
+    location.update(mins(6), mvj("t0", 47.668524, -122.290163),
+        _locationListener);
+    assertTrue(location.isPaused());
+
+    // A long gap in updates resets the vehicle, flushing the paused location.
+    location.update(mins(20), mvj("t0", 47.668519, -122.289948),
+        _locationListener);
+    assertFalse(location.isPaused());
+    assertEquals(mins(20), location.getLastLocationUpdateTime());
+
+    ArgumentCaptor<PausedLocation> captor = ArgumentCaptor.forClass(PausedLocation.class);
+    Mockito.verify(_locationListener).handlePausedLocation(captor.capture());
+    PausedLocation paused = captor.getValue();
+    assertEquals(mins(0), paused.getStartTime());
+    assertEquals(mins(6), paused.getEndTime());
+
+    // Only the new location contributes to the centroid.
+    CoordinatePoint centroid = location.getLocationCentroid();
+    assertEquals(47.668519, centroid.getLat(), 0.0);
+    assertEquals(-122.289948, centroid.getLng(), 0.0);
+  }
+
   private Date mins(int minutes) {
     return new Date(minutes * 60 * 1000);
   }
@@ -0,0 +1,152 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.filters.regions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import uk.org.siri.siri.LocationStructure;
+import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.VehicleActivityCancellationStructure;
+import uk.org.siri.siri.VehicleActivityStructure;
+import uk.org.siri.siri.VehicleActivityStructure.MonitoredVehicleJourney;
+import uk.org.siri.siri.VehicleMonitoringDeliveryStructure;
+
+public class SubscriptionRegionIndexTest {
+
+  @Test
+  public void testCircle() {
+    SubscriptionRegion region = SubscriptionRegion.circle(47.61, -122.33, 500);
+    assertTrue(region.contains(47.61, -122.33));
+    assertTrue(region.contains(47.613, -122.33));
+    assertFalse(region.contains(47.616, -122.33));
+    assertFalse(region.contains(47.6135, -122.3255));
+  }
+
+  @Test
+  public void testIndex() {
+
+    RegionModuleDeliveryFilter downtown = new RegionModuleDeliveryFilter(
+        SubscriptionRegion.bounds(47.60, -122.34, 47.62, -122.32));
+    RegionModuleDeliveryFilter northgate = new RegionModuleDeliveryFilter(
+        SubscriptionRegion.circle(47.706, -122.325, 1000));
+    RegionModuleDeliveryFilter everything = new RegionModuleDeliveryFilter(
+        SubscriptionRegion.bounds(-90, -180, 90, 180));
+
+    SubscriptionRegionIndex index = new SubscriptionRegionIndex();
+    assertTrue(index.isEmpty());
+    index.setRegionFilters(Arrays.asList(downtown, northgate));
+    assertFalse(index.isEmpty());
+
+    Set<RegionModuleDeliveryFilter> matches = index.getRegionFiltersForDeliveries(Collections.singletonList(delivery(
+        activity(47.61, -122.33), activity(40.0, -100.0))));
+    assertEquals(Collections.singleton(downtown), matches);
+
+    index.setRegionFilters(Arrays.asList(downtown, northgate, everything));
+    matches = index.getRegionFiltersForDeliveries(Collections.singletonList(delivery(
+        activity(47.705, -122.326), new VehicleActivityStructure())));
+    assertEquals(2, matches.size());
+    assertTrue(matches.contains(northgate));
+    assertTrue(matches.contains(everything));
+
+    VehicleMonitoringDeliveryStructure vm = delivery(activity(47.61, -122.33));
+    vm.getVehicleActivityCancellation().add(
+        new VehicleActivityCancellationStructure());
+    assertNull(index.getRegionFiltersForDeliveries(Collections.singletonList(vm)));
+  }
+
+  @Test
+  public void testAddAndRemove() {
+
+    RegionModuleDeliveryFilter downtown = new RegionModuleDeliveryFilter(
+        SubscriptionRegion.bounds(47.60, -122.34, 47.62, -122.32));
+    RegionModuleDeliveryFilter nearby = new RegionModuleDeliveryFilter(
+        SubscriptionRegion.circle(47.61, -122.33, 500));
+    RegionModuleDeliveryFilter everything = new RegionModuleDeliveryFilter(
+        SubscriptionRegion.bounds(-90, -180, 90, 180));
+
+    List<VehicleMonitoringDeliveryStructure> vms = Collections.singletonList(delivery(activity(
+        47.61, -122.33)));
+
+    SubscriptionRegionIndex index = new SubscriptionRegionIndex();
+    index.addRegionFilter(downtown);
+    index.addRegionFilter(nearby);
+    index.addRegionFilter(everything);
+    assertEquals(3, index.getRegionFiltersForDeliveries(vms).size());
+
+    index.removeRegionFilter(downtown);
+    Set<RegionModuleDeliveryFilter> matches = index.getRegionFiltersForDeliveries(vms);
+    assertEquals(2, matches.size());
+    assertFalse(matches.contains(downtown));
+
+    index.addRegionFilter(nearby);
+    index.removeRegionFilter(nearby);
+    assertTrue(index.getRegionFiltersForDeliveries(vms).contains(nearby));
+    index.removeRegionFilter(nearby);
+    assertEquals(Collections.singleton(everything),
+        index.getRegionFiltersForDeliveries(vms));
+
+    index.removeRegionFilter(everything);
+    assertTrue(index.isEmpty());
+  }
+
+  @Test
+  public void testFilter() {
+
+    RegionModuleDeliveryFilter filter = new RegionModuleDeliveryFilter(
+        SubscriptionRegion.bounds(47.60, -122.34, 47.62, -122.32));
+
+    VehicleMonitoringDeliveryStructure vm = delivery(activity(47.61, -122.33),
+        activity(47.65, -122.33), new VehicleActivityStructure(),
+        activity(47.605, -122.335));
+    filter.filter(new ServiceDelivery(), vm);
+
+    List<VehicleActivityStructure> activities = vm.getVehicleActivity();
+    assertEquals(2, activities.size());
+
+    vm = delivery(activity(47.65, -122.33));
+    assertNull(filter.filter(new ServiceDelivery(), vm));
+  }
+
+  private VehicleMonitoringDeliveryStructure delivery(
+      VehicleActivityStructure... activities) {
+    VehicleMonitoringDeliveryStructure vm = new VehicleMonitoringDeliveryStructure();
+    for (VehicleActivityStructure activity : activities)
+      vm.getVehicleActivity().add(activity);
+    return vm;
+  }
+
+  private VehicleActivityStructure activity(double lat, double lon) {
+    VehicleActivityStructure activity = new VehicleActivityStructure();
+    MonitoredVehicleJourney mvj = new MonitoredVehicleJourney();
+    LocationStructure location = new LocationStructure();
+    location.setLatitude(BigDecimal.valueOf(lat));
+    location.setLongitude(BigDecimal.valueOf(lon));
+    mvj.setVehicleLocation(location);
+    activity.setMonitoredVehicleJourney(mvj);
+    return activity;
+  }
+}
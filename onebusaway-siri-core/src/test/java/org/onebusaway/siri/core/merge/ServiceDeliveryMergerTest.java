@@ -0,0 +1,171 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.merge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.siri.core.SiriTypeFactory;
+
+import uk.org.siri.siri.EstimatedTimetableDeliveryStructure;
+import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.SituationExchangeDeliveryStructure;
+import uk.org.siri.siri.VehicleActivityStructure;
+import uk.org.siri.siri.VehicleActivityStructure.MonitoredVehicleJourney;
+import uk.org.siri.siri.VehicleMonitoringDeliveryStructure;
+
+public class ServiceDeliveryMergerTest {
+
+  private ServiceDeliveryMerger _merger;
+
+  @Before
+  public void setup() {
+    _merger = new ServiceDeliveryMerger();
+  }
+
+  @Test
+  public void testStaleAndDuplicate() {
+
+    ServiceDelivery delivery = delivery(activity("a", 10), activity("b", 10));
+    assertTrue(_merger.merge("A", delivery));
+    assertEquals(2, getActivities(delivery).size());
+
+    delivery = delivery(activity("a", 10), activity("b", 9),
+        activity("c", 10));
+    assertTrue(_merger.merge("B", delivery));
+    List<VehicleActivityStructure> activities = getActivities(delivery);
+    assertEquals(1, activities.size());
+    assertEquals("c",
+        activities.get(0).getMonitoredVehicleJourney().getVehicleRef().getValue());
+
+    delivery = delivery(activity("a", 10));
+    assertFalse(_merger.merge("A", delivery));
+    assertTrue(delivery.getVehicleMonitoringDelivery().isEmpty());
+
+    delivery = delivery(activity("a", 11));
+    assertTrue(_merger.merge("B", delivery));
+    assertEquals(1, getActivities(delivery).size());
+
+    Map<String, String> status = new HashMap<String, String>();
+    _merger.getStatus(status);
+    assertEquals("3", status.get("siri.merge.vehicles"));
+    assertEquals("4", status.get("siri.merge.acceptedCounter"));
+    assertEquals("1", status.get("siri.merge.staleCounter"));
+    assertEquals("2", status.get("siri.merge.duplicateCounter"));
+  }
+
+  @Test
+  public void testSourcePriority() {
+
+    _merger.setSourcePriority("A", 1);
+    _merger.setSourcePriorityTimeout(120);
+
+    assertTrue(_merger.merge("A", delivery(activity("a", 10))));
+    assertFalse(_merger.merge("B", delivery(activity("a", 11))));
+    assertTrue(_merger.merge("A", delivery(activity("a", 12))));
+
+    /**
+     * Once the higher priority source goes quiet, we fall back to the lower
+     * priority source
+     */
+    assertTrue(_merger.merge("B", delivery(activity("a", 15))));
+    assertFalse(_merger.merge("B", delivery(activity("a", 15))));
+  }
+
+  @Test
+  public void testMissingVehicleRef() {
+    VehicleActivityStructure activity = activity("a", 10);
+    activity.getMonitoredVehicleJourney().setVehicleRef(null);
+    assertTrue(_merger.merge("A", delivery(activity)));
+    assertTrue(_merger.merge("A", delivery(activity)));
+  }
+
+  @Test
+  public void testOtherModulesKept() {
+
+    assertTrue(_merger.merge("A", delivery(activity("a", 10))));
+
+    ServiceDelivery delivery = delivery(activity("a", 10));
+    delivery.getSituationExchangeDelivery().add(
+        new SituationExchangeDeliveryStructure());
+    delivery.getEstimatedTimetableDelivery().add(
+        new EstimatedTimetableDeliveryStructure());
+
+    assertTrue(_merger.merge("A", delivery));
+    assertTrue(delivery.getVehicleMonitoringDelivery().isEmpty());
+    assertEquals(1, delivery.getSituationExchangeDelivery().size());
+    assertEquals(1, delivery.getEstimatedTimetableDelivery().size());
+  }
+
+  @Test
+  public void testVehicleExpiration() {
+
+    _merger.setVehicleExpirationTimeout(10 * 60);
+
+    assertTrue(_merger.merge("A", delivery(activity("a", 10),
+        activity("b", 10))));
+
+    VehicleActivityStructure c = activity("c", 10);
+    c.setValidUntilTime(new Date(40 * 60 * 1000));
+    assertTrue(_merger.merge("A", delivery(c)));
+
+    assertTrue(_merger.merge("A", delivery(activity("a", 25))));
+
+    /**
+     * Vehicle b has been quiet for longer than the timeout, while vehicle c is
+     * still valid
+     */
+    Map<String, String> status = new HashMap<String, String>();
+    _merger.getStatus(status);
+    assertEquals("2", status.get("siri.merge.vehicles"));
+    assertEquals("1", status.get("siri.merge.expiredCounter"));
+
+    /**
+     * Once expired, an update for vehicle b is accepted even if it's older
+     */
+    assertTrue(_merger.merge("A", delivery(activity("b", 5))));
+  }
+
+  private List<VehicleActivityStructure> getActivities(ServiceDelivery delivery) {
+    return delivery.getVehicleMonitoringDelivery().get(0).getVehicleActivity();
+  }
+
+  private ServiceDelivery delivery(VehicleActivityStructure... activities) {
+    ServiceDelivery delivery = new ServiceDelivery();
+    VehicleMonitoringDeliveryStructure vm = new VehicleMonitoringDeliveryStructure();
+    delivery.getVehicleMonitoringDelivery().add(vm);
+    for (VehicleActivityStructure activity : activities)
+      vm.getVehicleActivity().add(activity);
+    return delivery;
+  }
+
+  private VehicleActivityStructure activity(String vehicleId, int time_mins) {
+    VehicleActivityStructure activity = new VehicleActivityStructure();
+    activity.setRecordedAtTime(new Date(time_mins * 60 * 1000));
+    MonitoredVehicleJourney mvj = new MonitoredVehicleJourney();
+    mvj.setVehicleRef(SiriTypeFactory.vehicleRef(vehicleId));
+    activity.setMonitoredVehicleJourney(mvj);
+    return activity;
+  }
+}
@@ -0,0 +1,211 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.partitions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.onebusaway.siri.core.SiriTypeFactory;
+
+import uk.org.siri.siri.EstimatedTimetableDeliveryStructure;
+import uk.org.siri.siri.GeneralMessageDeliveryStructure;
+import uk.org.siri.siri.MonitoredStopVisitStructure;
+import uk.org.siri.siri.MonitoringRefStructure;
+import uk.org.siri.siri.ServiceDelivery;
+import uk.org.siri.siri.StopMonitoringDeliveryStructure;
+import uk.org.siri.siri.VehicleActivityStructure;
+import uk.org.siri.siri.VehicleActivityStructure.MonitoredVehicleJourney;
+import uk.org.siri.siri.VehicleMonitoringDeliveryStructure;
+
+public class ServiceDeliveryPartitionerTest {
+
+  @Test
+  public void testSinglePartition() {
+    ServiceDelivery delivery = delivery("a", "b", "c");
+    ServiceDelivery[] partitions = ServiceDeliveryPartitioner.partition(
+        delivery, 1);
+    assertEquals(1, partitions.length);
+    assertSame(delivery, partitions[0]);
+  }
+
+  @Test
+  public void testEmptyDelivery() {
+    ServiceDelivery delivery = new ServiceDelivery();
+    ServiceDelivery[] partitions = ServiceDeliveryPartitioner.partition(
+        delivery, 4);
+    int defaultPartition = ServiceDeliveryPartitioner.getPartitionForKey(null,
+        4);
+    assertSame(delivery, partitions[defaultPartition]);
+  }
+
+  @Test
+  public void testPartitionByVehicle() {
+
+    String[] vehicleIds = {"a", "b", "c", "d", "e", "f", "g", "h", "a", "c"};
+    ServiceDelivery delivery = delivery(vehicleIds);
+
+    int partitionCount = 3;
+    ServiceDelivery[] partitions = ServiceDeliveryPartitioner.partition(
+        delivery, partitionCount);
+
+    int total = 0;
+
+    for (int i = 0; i < partitionCount; ++i) {
+
+      ServiceDelivery partition = partitions[i];
+      if (partition == null)
+        continue;
+
+      assertSame(delivery.getResponseTimestamp(),
+          partition.getResponseTimestamp());
+
+      List<VehicleMonitoringDeliveryStructure> vms = partition.getVehicleMonitoringDelivery();
+      assertEquals(1, vms.size());
+
+      List<String> previous = new ArrayList<String>();
+
+      for (VehicleActivityStructure activity : vms.get(0).getVehicleActivity()) {
+        String vehicleId = activity.getMonitoredVehicleJourney().getVehicleRef().getValue();
+        assertEquals(i,
+            ServiceDeliveryPartitioner.getPartitionForKey(vehicleId,
+                partitionCount));
+        previous.add(vehicleId);
+        total++;
+      }
+
+      /**
+       * Make sure the relative order of the elements is preserved
+       */
+      List<String> expected = new ArrayList<String>();
+      for (String vehicleId : vehicleIds) {
+        if (ServiceDeliveryPartitioner.getPartitionForKey(vehicleId,
+            partitionCount) == i)
+          expected.add(vehicleId);
+      }
+      assertEquals(expected, previous);
+    }
+
+    assertEquals(vehicleIds.length, total);
+  }
+
+  @Test
+  public void testSameVehicle() {
+    ServiceDelivery delivery = delivery("a", "a", "a");
+    ServiceDelivery[] partitions = ServiceDeliveryPartitioner.partition(
+        delivery, 8);
+    int partition = ServiceDeliveryPartitioner.getPartitionForKey("a", 8);
+    for (int i = 0; i < partitions.length; ++i) {
+      if (i == partition)
+        assertSame(delivery, partitions[i]);
+      else
+        assertNull(partitions[i]);
+    }
+  }
+
+  @Test
+  public void testUnsplitModulesCarriedThrough() {
+
+    String[] vehicleIds = {"a", "b", "c", "d", "e", "f", "g", "h"};
+    ServiceDelivery delivery = delivery(vehicleIds);
+    EstimatedTimetableDeliveryStructure et = new EstimatedTimetableDeliveryStructure();
+    delivery.getEstimatedTimetableDelivery().add(et);
+    GeneralMessageDeliveryStructure gm = new GeneralMessageDeliveryStructure();
+    delivery.getGeneralMessageDelivery().add(gm);
+
+    int partitionCount = 4;
+    ServiceDelivery[] partitions = ServiceDeliveryPartitioner.partition(
+        delivery, partitionCount);
+    int defaultPartition = ServiceDeliveryPartitioner.getPartitionForKey(null,
+        partitionCount);
+
+    for (int i = 0; i < partitionCount; ++i) {
+      ServiceDelivery partition = partitions[i];
+      if (partition == null)
+        continue;
+      if (i == defaultPartition) {
+        assertEquals(1, partition.getEstimatedTimetableDelivery().size());
+        assertSame(et, partition.getEstimatedTimetableDelivery().get(0));
+        assertEquals(1, partition.getGeneralMessageDelivery().size());
+        assertSame(gm, partition.getGeneralMessageDelivery().get(0));
+      } else {
+        assertTrue(partition.getEstimatedTimetableDelivery().isEmpty());
+        assertTrue(partition.getGeneralMessageDelivery().isEmpty());
+      }
+    }
+  }
+
+  @Test
+  public void testPartitionByMonitoringRef() {
+
+    String[] stopIds = {"a", "b", "c", "d", "e", "f", "g", "h", "a"};
+
+    StopMonitoringDeliveryStructure sm = new StopMonitoringDeliveryStructure();
+    for (String stopId : stopIds) {
+      MonitoredStopVisitStructure visit = new MonitoredStopVisitStructure();
+      MonitoringRefStructure monitoringRef = new MonitoringRefStructure();
+      monitoringRef.setValue(stopId);
+      visit.setMonitoringRef(monitoringRef);
+      sm.getMonitoredStopVisit().add(visit);
+    }
+    ServiceDelivery delivery = new ServiceDelivery();
+    delivery.getStopMonitoringDelivery().add(sm);
+
+    int partitionCount = 3;
+    ServiceDelivery[] partitions = ServiceDeliveryPartitioner.partition(
+        delivery, partitionCount);
+
+    int total = 0;
+
+    for (int i = 0; i < partitionCount; ++i) {
+      ServiceDelivery partition = partitions[i];
+      if (partition == null)
+        continue;
+      List<StopMonitoringDeliveryStructure> sms = partition.getStopMonitoringDelivery();
+      assertEquals(1, sms.size());
+      for (MonitoredStopVisitStructure visit : sms.get(0).getMonitoredStopVisit()) {
+        String stopId = visit.getMonitoringRef().getValue();
+        assertEquals(i,
+            ServiceDeliveryPartitioner.getPartitionForKey(stopId,
+                partitionCount));
+        total++;
+      }
+    }
+
+    assertEquals(stopIds.length, total);
+  }
+
+  private ServiceDelivery delivery(String... vehicleIds) {
+    ServiceDelivery delivery = new ServiceDelivery();
+    delivery.setResponseTimestamp(new Date());
+    VehicleMonitoringDeliveryStructure vm = new VehicleMonitoringDeliveryStructure();
+    delivery.getVehicleMonitoringDelivery().add(vm);
+    for (String vehicleId : vehicleIds) {
+      VehicleActivityStructure activity = new VehicleActivityStructure();
+      MonitoredVehicleJourney mvj = new MonitoredVehicleJourney();
+      mvj.setVehicleRef(SiriTypeFactory.vehicleRef(vehicleId));
+      activity.setMonitoredVehicleJourney(mvj);
+      vm.getVehicleActivity().add(activity);
+    }
+    return delivery;
+  }
+}
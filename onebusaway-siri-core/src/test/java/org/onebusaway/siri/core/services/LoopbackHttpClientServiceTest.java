@@ -0,0 +1,210 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.core.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.util.EntityUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.onebusaway.siri.core.HttpCompressionSupport;
+import org.onebusaway.siri.core.PublicationStreamSupport;
+import org.onebusaway.siri.core.handlers.SiriRawHandler;
+
+public class LoopbackHttpClientServiceTest {
+
+  private static final String URL = "http://localhost:8080/server.xml";
+
+  private LoopbackHttpClientService _service;
+
+  private HttpClientService _delegate;
+
+  private EchoHandler _handler;
+
+  @Before
+  public void setup() {
+    _service = new LoopbackHttpClientService();
+    _delegate = mock(HttpClientService.class);
+    _service.setDelegate(_delegate);
+    _handler = new EchoHandler();
+    _service.register(URL, _handler);
+  }
+
+  @Test
+  public void testLoopbackRequest() throws IOException {
+
+    HttpPost post = new HttpPost(URL);
+    post.setEntity(HttpCompressionSupport.createEntity(
+        "<Siri/>".getBytes("UTF-8"), "text/xml", false));
+
+    HttpResponse response = _service.executeHttpMethod(null, post);
+    assertEquals(200, response.getStatusLine().getStatusCode());
+    assertEquals("echo:<Siri/>", EntityUtils.toString(response.getEntity()));
+
+    assertEquals(1, _handler.requests.size());
+    assertEquals("<Siri/>", _handler.requests.get(0));
+  }
+
+  @Test
+  public void testCompressedLoopbackRequest() throws IOException {
+
+    HttpPost post = new HttpPost(URL);
+    post.setEntity(HttpCompressionSupport.createEntity(
+        "<Siri/>".getBytes("UTF-8"), "text/xml", true));
+
+    HttpResponse response = _service.executeHttpMethod(null, post);
+    assertEquals(200, response.getStatusLine().getStatusCode());
+    assertEquals("<Siri/>", _handler.requests.get(0));
+  }
+
+  @Test
+  public void testDelegatedRequest() {
+
+    HttpPost post = new HttpPost("http://localhost:8080/other.xml");
+    HttpResponse delegateResponse = mock(HttpResponse.class);
+    when(_delegate.executeHttpMethod(null, post)).thenReturn(delegateResponse);
+
+    assertSame(delegateResponse, _service.executeHttpMethod(null, post));
+    verify(_delegate).executeHttpMethod(null, post);
+    assertEquals(0, _handler.requests.size());
+
+    _service.unregister(URL);
+    post = new HttpPost(URL);
+    _service.executeHttpMethod(null, post);
+    verify(_delegate).executeHttpMethod(null, post);
+
+    Map<String, String> status = new HashMap<String, String>();
+    _service.getStatus(status);
+    assertEquals("0", status.get("siri.loopback.registeredUrls"));
+    assertEquals("2", status.get("siri.loopback.delegatedRequestCounter"));
+  }
+
+  @Test
+  public void testHandlerError() throws IOException {
+
+    HttpPost post = new HttpPost(URL);
+    post.setEntity(HttpCompressionSupport.createEntity(
+        "fail".getBytes("UTF-8"), "text/xml", false));
+
+    HttpResponse response = _service.executeHttpMethod(null, post);
+    assertEquals(500, response.getStatusLine().getStatusCode());
+    assertEquals("bad request", EntityUtils.toString(response.getEntity()));
+  }
+
+  @Test
+  public void testPublicationStream() throws IOException {
+
+    HttpPost post = new HttpPost(URL);
+    post.setEntity(new FrameEntity("<Siri>a</Siri>", "", "fail",
+        "<Siri>b</Siri>"));
+
+    HttpResponse response = _service.executeHttpMethod(null, post);
+    assertEquals(200, response.getStatusLine().getStatusCode());
+
+    /**
+     * The keep-alive frame is skipped and the bad frame doesn't stop the stream
+     */
+    assertEquals(3, _handler.requests.size());
+    assertEquals("<Siri>a</Siri>", _handler.requests.get(0));
+    assertEquals("fail", _handler.requests.get(1));
+    assertEquals("<Siri>b</Siri>", _handler.requests.get(2));
+
+    Map<String, String> status = new HashMap<String, String>();
+    _service.getStatus(status);
+    assertEquals("1", status.get("siri.loopback.loopbackRequestCounter"));
+    assertEquals("3", status.get("siri.loopback.loopbackFrameCounter"));
+  }
+
+  private static class EchoHandler implements SiriRawHandler {
+
+    private List<String> requests = new ArrayList<String>();
+
+    @Override
+    public void handleRawRequest(Reader reader, Writer writer) {
+      try {
+        String content = new BufferedReader(reader).readLine();
+        requests.add(content);
+        if (content.equals("fail"))
+          throw new IllegalStateException("bad request");
+        writer.write("echo:" + content);
+      } catch (IOException ex) {
+        throw new IllegalStateException(ex);
+      }
+    }
+  }
+
+  /**
+   * Writes a sequence of frames, flushing after each one, as a publication
+   * stream would
+   */
+  private static class FrameEntity extends AbstractHttpEntity {
+
+    private final String[] _frames;
+
+    public FrameEntity(String... frames) {
+      _frames = frames;
+      setContentType(PublicationStreamSupport.CONTENT_TYPE);
+      setChunked(true);
+    }
+
+    @Override
+    public boolean isRepeatable() {
+      return false;
+    }
+
+    @Override
+    public long getContentLength() {
+      return -1;
+    }
+
+    @Override
+    public InputStream getContent() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+      for (String frame : _frames) {
+        PublicationStreamSupport.writeFrame(out,
+            PublicationStreamSupport.getContentAsFrame(frame));
+        out.flush();
+      }
+    }
+
+    @Override
+    public boolean isStreaming() {
+      return true;
+    }
+  }
+}
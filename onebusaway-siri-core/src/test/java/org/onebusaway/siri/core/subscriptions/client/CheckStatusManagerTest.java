@@ -372,4 +372,85 @@ public class CheckStatusManagerTest {
     Mockito.verify(_subscriptionManager).handleChannelDisconnectAndReconnect(
         channel);
   }
+
+  @Test
+  public void testCheckStatusTaskSharedByEndpoint() {
+
+    ClientSubscriptionChannel channelA = new ClientSubscriptionChannel(
+        "http://localhost/a", ESiriVersion.V1_0);
+    channelA.setCheckStatusUrl("http://localhost/status");
+
+    ClientSubscriptionChannel channelB = new ClientSubscriptionChannel(
+        "http://localhost/b", ESiriVersion.V1_0);
+    channelB.setCheckStatusUrl("http://localhost/status");
+
+    @SuppressWarnings("unchecked")
+    ScheduledFuture<Object> taskMonitor = Mockito.mock(ScheduledFuture.class);
+    ArgumentCaptor<Runnable> taskArgument = ArgumentCaptor.forClass(Runnable.class);
+
+    Mockito.when(
+        _schedulingService.scheduleAtFixedRate(taskArgument.capture(),
+            Mockito.anyLong(), Mockito.anyLong(), Mockito.any(TimeUnit.class))).thenReturn(
+        taskMonitor);
+
+    _checkStatusManager.resetCheckStatusTask(channelA, 30);
+    _checkStatusManager.resetCheckStatusTask(channelB, 30);
+
+    /**
+     * Verify that only a single task is scheduled for the shared endpoint
+     */
+    Mockito.verify(_schedulingService, Mockito.times(1)).scheduleAtFixedRate(
+        Mockito.any(Runnable.class), Mockito.anyLong(), Mockito.anyLong(),
+        Mockito.any(TimeUnit.class));
+    assertSame(taskMonitor, channelA.getCheckStatusTask());
+    assertSame(taskMonitor, channelB.getCheckStatusTask());
+
+    @SuppressWarnings("unchecked")
+    ScheduledFuture<Object> timeoutTaskMonitor = Mockito.mock(ScheduledFuture.class);
+    Mockito.when(
+        _schedulingService.scheduleResponseTimeoutTask(Mockito.any(Runnable.class))).thenReturn(
+        timeoutTaskMonitor);
+
+    /**
+     * Initiate the CheckStatus request twice: the second run should be skipped,
+     * since the first request is still pending
+     */
+    Runnable task = taskArgument.getValue();
+    task.run();
+    task.run();
+
+    ArgumentCaptor<SiriClientRequest> requestArgument = ArgumentCaptor.forClass(SiriClientRequest.class);
+    Mockito.verify(_client, Mockito.times(1)).handleRequest(
+        requestArgument.capture());
+
+    SiriClientRequest request = requestArgument.getValue();
+    assertEquals("http://localhost/status", request.getTargetUrl());
+
+    Siri siri = request.getPayload();
+    MessageQualifierStructure messageId = siri.getCheckStatusRequest().getMessageIdentifier();
+
+    CheckStatusResponseStructure checkStatusResponse = new CheckStatusResponseStructure();
+    checkStatusResponse.setRequestMessageRef(SiriTypeFactory.messageRef(messageId.getValue()));
+    checkStatusResponse.setStatus(Boolean.FALSE);
+
+    _checkStatusManager.handleCheckStatusResponse(checkStatusResponse);
+
+    /**
+     * Verify that the error is applied to both channels
+     */
+    Mockito.verify(_subscriptionManager).handleChannelDisconnectAndReconnect(
+        channelA);
+    Mockito.verify(_subscriptionManager).handleChannelDisconnectAndReconnect(
+        channelB);
+
+    /**
+     * The endpoint task is only canceled once the last channel is removed
+     */
+    _checkStatusManager.resetCheckStatusTask(channelA, 0);
+    Mockito.verify(taskMonitor, Mockito.never()).cancel(true);
+    assertNull(channelA.getCheckStatusTask());
+
+    _checkStatusManager.resetCheckStatusTask(channelB, 0);
+    Mockito.verify(taskMonitor).cancel(true);
+  }
 }
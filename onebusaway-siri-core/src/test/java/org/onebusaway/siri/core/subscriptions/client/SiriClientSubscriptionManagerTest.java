@@ -17,7 +17,9 @@ package org.onebusaway.siri.core.subscriptions.client;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Date;
@@ -115,6 +117,58 @@ public class SiriClientSubscriptionManagerTest {
     assertEquals("CONTEXT", info.getContext());
   }
 
+  @Test
+  public void testResolveServiceDelivery() {
+
+    SubscriptionResponseStructure response = new SubscriptionResponseStructure();
+    StatusResponseStructure status = new StatusResponseStructure();
+    SubscriptionId subscriptionId = new SubscriptionId("subscriberA",
+        "subscriptionB");
+    ESiriModuleType moduleType = ESiriModuleType.VEHICLE_MONITORING;
+    SiriClientRequest originalSubscriptionRequest = new SiriClientRequest();
+    originalSubscriptionRequest.setTargetUrl("http://localhost/");
+    originalSubscriptionRequest.setChannelContext("CONTEXT");
+
+    _manager.upgradePendingSubscription(response, status, subscriptionId,
+        moduleType, originalSubscriptionRequest);
+
+    ServiceDelivery serviceDelivery = new ServiceDelivery();
+    serviceDelivery.setAddress("http://localhost/");
+    VehicleMonitoringDeliveryStructure vm = new VehicleMonitoringDeliveryStructure();
+    vm.setSubscriberRef(SiriTypeFactory.particpantRef("subscriberA"));
+    vm.setSubscriptionRef(SiriTypeFactory.subscriptionId("subscriptionB"));
+    serviceDelivery.getVehicleMonitoringDelivery().add(vm);
+
+    SiriChannelInfo info = _manager.resolveServiceDelivery(serviceDelivery);
+    assertEquals("CONTEXT", info.getContext());
+    assertEquals(1, info.getSiriClientRequests().size());
+    assertSame(originalSubscriptionRequest, info.getSiriClientRequests().get(0));
+
+    /**
+     * Each delivery gets its own channel info, such that a handler changing
+     * one can't affect another
+     */
+    info.setContext("CHANGED");
+    SiriChannelInfo next = _manager.resolveServiceDelivery(serviceDelivery);
+    assertNotSame(info, next);
+    assertEquals("CONTEXT", next.getContext());
+    assertSame(originalSubscriptionRequest, next.getSiriClientRequests().get(0));
+
+    Map<String, String> statusMap = new HashMap<String, String>();
+    _manager.getStatus(statusMap);
+    assertEquals(
+        "2",
+        statusMap.get("siri.server.activeSubscription[subscriberA,subscriptionB].serviceDeliveryCount"));
+
+    /**
+     * Once the subscription is removed, it's no longer resolved
+     */
+    _manager.removeSubscription(subscriptionId);
+    assertFalse(_manager.isSubscriptionActiveForModuleDelivery(vm));
+    info = _manager.resolveServiceDelivery(serviceDelivery);
+    assertTrue(info.getSiriClientRequests().isEmpty());
+  }
+
   @Test
   public void testGetModuleTypeForSubscriptionId() {
 
@@ -17,6 +17,7 @@ package org.onebusaway.siri.core.subscriptions.server;
 
 import static org.junit.Assert.assertEquals;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -25,14 +26,28 @@ import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.onebusaway.collections.tuple.T2;
+import org.onebusaway.collections.tuple.Tuples;
+import org.onebusaway.siri.core.ESiriModuleType;
 import org.onebusaway.siri.core.SiriTypeFactory;
+import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilter;
+import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilterMatcher;
 import org.onebusaway.siri.core.subscriptions.SubscriptionId;
 import org.onebusaway.siri.core.subscriptions.SubscriptionSupport;
 import org.onebusaway.siri.core.versioning.ESiriVersion;
 
+import uk.org.siri.siri.AbstractServiceDeliveryStructure;
+import uk.org.siri.siri.AbstractSubscriptionStructure;
+import uk.org.siri.siri.ConnectionMonitoringDistributorDeliveryStructure;
+import uk.org.siri.siri.ConnectionMonitoringFeederDeliveryStructure;
+import uk.org.siri.siri.ConnectionMonitoringSubscriptionRequestStructure;
 import uk.org.siri.siri.ServiceDelivery;
 import uk.org.siri.siri.StatusResponseStructure;
 import uk.org.siri.siri.SubscriptionRequest;
+import uk.org.siri.siri.VehicleActivityStructure;
+import uk.org.siri.siri.VehicleActivityStructure.MonitoredVehicleJourney;
+import uk.org.siri.siri.VehicleMonitoringDeliveryStructure;
+import uk.org.siri.siri.VehicleMonitoringRequestStructure;
 import uk.org.siri.siri.VehicleMonitoringSubscriptionStructure;
 
 public class SiriServerSubscriptionManagerTest {
@@ -81,4 +96,207 @@ public class SiriServerSubscriptionManagerTest {
         status.get("siri.server.activeChannel[10.0.0.1].creationTime"));
   }
 
+  @Test
+  public void testRecordPublicationStatisticsWithCompression() {
+
+    VehicleMonitoringSubscriptionStructure vmRequest = new VehicleMonitoringSubscriptionStructure();
+    vmRequest.setSubscriberRef(SiriTypeFactory.particpantRef("alpha"));
+    vmRequest.setSubscriptionIdentifier(SiriTypeFactory.subscriptionId("beta"));
+
+    SubscriptionRequest request = new SubscriptionRequest();
+    request.setAddress("10.0.0.1");
+    request.getVehicleMonitoringSubscriptionRequest().add(vmRequest);
+
+    List<StatusResponseStructure> statuses = new ArrayList<StatusResponseStructure>();
+    _manager.handleSubscriptionRequest(request, ESiriVersion.V1_3, statuses);
+
+    ServiceDelivery delivery = new ServiceDelivery();
+    delivery.setResponseTimestamp(new Date());
+
+    SiriServerSubscriptionEvent event = new SiriServerSubscriptionEvent(
+        new SubscriptionId("alpha", "beta"), "10.0.0.1", ESiriVersion.V1_3,
+        delivery);
+    _manager.recordPublicationStatistics(event, 10, false, 12000, 1000);
+    _manager.recordPublicationStatistics(event, 10, false, 13000, 1000);
+
+    Map<String, String> status = new HashMap<String, String>();
+    _manager.getStatus(status);
+
+    assertEquals("25000",
+        status.get("siri.server.activeChannel[10.0.0.1].publishedBytes"));
+    assertEquals("2000",
+        status.get("siri.server.activeChannel[10.0.0.1].transferredBytes"));
+    assertEquals("12.5",
+        status.get("siri.server.activeChannel[10.0.0.1].compressionRatio"));
+  }
+
+  @Test
+  public void testSetModuleDeliveryFilters() {
+
+    VehicleMonitoringSubscriptionStructure vmRequest = new VehicleMonitoringSubscriptionStructure();
+    vmRequest.setSubscriberRef(SiriTypeFactory.particpantRef("alpha"));
+    vmRequest.setSubscriptionIdentifier(SiriTypeFactory.subscriptionId("beta"));
+
+    SubscriptionRequest request = new SubscriptionRequest();
+    request.setAddress("10.0.0.1");
+    request.getVehicleMonitoringSubscriptionRequest().add(vmRequest);
+
+    List<StatusResponseStructure> statuses = new ArrayList<StatusResponseStructure>();
+    _manager.handleSubscriptionRequest(request, ESiriVersion.V1_3, statuses);
+
+    ServiceDelivery delivery = new ServiceDelivery();
+    VehicleMonitoringDeliveryStructure vm = new VehicleMonitoringDeliveryStructure();
+    VehicleActivityStructure activity = new VehicleActivityStructure();
+    MonitoredVehicleJourney mvj = new MonitoredVehicleJourney();
+    mvj.setVehicleRef(SiriTypeFactory.vehicleRef("1234"));
+    activity.setMonitoredVehicleJourney(mvj);
+    vm.getVehicleActivity().add(activity);
+    delivery.getVehicleMonitoringDelivery().add(vm);
+
+    assertEquals(1, _manager.publish(delivery).size());
+
+    /**
+     * Swap in a filter table that drops everything for the existing
+     * subscription
+     */
+    List<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>> filters = new ArrayList<T2<SiriModuleDeliveryFilterMatcher, SiriModuleDeliveryFilter>>();
+    filters.add(Tuples.tuple((SiriModuleDeliveryFilterMatcher) new MatchAll(),
+        (SiriModuleDeliveryFilter) new DropAll()));
+    _manager.setModuleDeliveryFilters(filters);
+
+    assertEquals(0, _manager.publish(delivery).size());
+
+    /**
+     * And back again
+     */
+    filters.clear();
+    _manager.setModuleDeliveryFilters(filters);
+
+    assertEquals(1, _manager.publish(delivery).size());
+  }
+
+  @Test
+  public void testConnectionMonitoringSubscription() {
+
+    ConnectionMonitoringSubscriptionRequestStructure cmRequest = new ConnectionMonitoringSubscriptionRequestStructure();
+    cmRequest.setSubscriberRef(SiriTypeFactory.particpantRef("alpha"));
+    cmRequest.setSubscriptionIdentifier(SiriTypeFactory.subscriptionId("beta"));
+
+    SubscriptionRequest request = new SubscriptionRequest();
+    request.setAddress("10.0.0.1");
+    request.getConnectionMonitoringSubscriptionRequest().add(cmRequest);
+
+    List<StatusResponseStructure> statuses = new ArrayList<StatusResponseStructure>();
+    _manager.handleSubscriptionRequest(request, ESiriVersion.V1_3, statuses);
+
+    Map<String, String> status = new HashMap<String, String>();
+    _manager.getStatus(status);
+    assertEquals("1", status.get("siri.server.activeSubscriptions"));
+
+    /**
+     * Both feeder and distributor deliveries reach the single subscription
+     */
+    ServiceDelivery delivery = new ServiceDelivery();
+    delivery.getConnectionMonitoringFeederDelivery().add(
+        new ConnectionMonitoringFeederDeliveryStructure());
+    List<SiriServerSubscriptionEvent> events = _manager.publish(delivery);
+    assertEquals(1, events.size());
+    assertEquals(1,
+        events.get(0).getDelivery().getConnectionMonitoringFeederDelivery().size());
+
+    delivery = new ServiceDelivery();
+    delivery.getConnectionMonitoringDistributorDelivery().add(
+        new ConnectionMonitoringDistributorDeliveryStructure());
+    events = _manager.publish(delivery);
+    assertEquals(1, events.size());
+    assertEquals(
+        1,
+        events.get(0).getDelivery().getConnectionMonitoringDistributorDelivery().size());
+
+    /**
+     * Once terminated, nothing is published to the subscriber
+     */
+    _manager.terminateSubscriptionChannelWithAddress("10.0.0.1");
+
+    status.clear();
+    _manager.getStatus(status);
+    assertEquals("0", status.get("siri.server.activeSubscriptions"));
+
+    delivery = new ServiceDelivery();
+    delivery.getConnectionMonitoringFeederDelivery().add(
+        new ConnectionMonitoringFeederDeliveryStructure());
+    delivery.getConnectionMonitoringDistributorDelivery().add(
+        new ConnectionMonitoringDistributorDeliveryStructure());
+    assertEquals(0, _manager.publish(delivery).size());
+  }
+
+  @Test
+  public void testCombineEvents() {
+
+    VehicleMonitoringRequestStructure vmRequestBody = new VehicleMonitoringRequestStructure();
+    vmRequestBody.setMaximumVehicles(BigInteger.valueOf(3));
+
+    VehicleMonitoringSubscriptionStructure vmRequest = new VehicleMonitoringSubscriptionStructure();
+    vmRequest.setSubscriberRef(SiriTypeFactory.particpantRef("alpha"));
+    vmRequest.setSubscriptionIdentifier(SiriTypeFactory.subscriptionId("beta"));
+    vmRequest.setVehicleMonitoringRequest(vmRequestBody);
+
+    SubscriptionRequest request = new SubscriptionRequest();
+    request.setAddress("10.0.0.1");
+    request.getVehicleMonitoringSubscriptionRequest().add(vmRequest);
+
+    List<StatusResponseStructure> statuses = new ArrayList<StatusResponseStructure>();
+    _manager.handleSubscriptionRequest(request, ESiriVersion.V1_3, statuses);
+
+    /**
+     * Two fragments of the same delivery, each within the vehicle limit on its
+     * own, but not once they are combined
+     */
+    List<SiriServerSubscriptionEvent> events = new ArrayList<SiriServerSubscriptionEvent>();
+    events.addAll(_manager.publish(vehicleDelivery("a", "b")));
+    events.addAll(_manager.publish(vehicleDelivery("c", "d")));
+    assertEquals(2, events.size());
+
+    List<SiriServerSubscriptionEvent> combined = _manager.combineEvents(events);
+    assertEquals(1, combined.size());
+
+    SiriServerSubscriptionEvent event = combined.get(0);
+    assertEquals(new SubscriptionId("alpha", "beta"), event.getSubscriptionId());
+
+    List<VehicleMonitoringDeliveryStructure> vms = event.getDelivery().getVehicleMonitoringDelivery();
+    assertEquals(2, vms.size());
+    assertEquals(2, vms.get(0).getVehicleActivity().size());
+    assertEquals(1, vms.get(1).getVehicleActivity().size());
+  }
+
+  private ServiceDelivery vehicleDelivery(String... vehicleIds) {
+    VehicleMonitoringDeliveryStructure vm = new VehicleMonitoringDeliveryStructure();
+    for (String vehicleId : vehicleIds) {
+      MonitoredVehicleJourney mvj = new MonitoredVehicleJourney();
+      mvj.setVehicleRef(SiriTypeFactory.vehicleRef(vehicleId));
+      VehicleActivityStructure activity = new VehicleActivityStructure();
+      activity.setMonitoredVehicleJourney(mvj);
+      vm.getVehicleActivity().add(activity);
+    }
+    ServiceDelivery delivery = new ServiceDelivery();
+    delivery.getVehicleMonitoringDelivery().add(vm);
+    return delivery;
+  }
+
+  private static class MatchAll implements SiriModuleDeliveryFilterMatcher {
+    @Override
+    public boolean isMatch(SubscriptionRequest subscriptionRequest,
+        ESiriModuleType moduleType,
+        AbstractSubscriptionStructure moduleSubscription) {
+      return true;
+    }
+  }
+
+  private static class DropAll implements SiriModuleDeliveryFilter {
+    @Override
+    public AbstractServiceDeliveryStructure filter(ServiceDelivery delivery,
+        AbstractServiceDeliveryStructure moduleDelivery) {
+      return null;
+    }
+  }
 }
@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.jetty;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Wraps a request {@link InputStream}, failing any read once more than a
+ * maximum number of bytes have been read or once a maximum time has elapsed
+ * since the stream was opened. This guards the SIRI endpoint against
+ * oversized requests and against clients that trickle a request in slowly.
+ * 
+ * @author agent
+ */
+class LimitedInputStream extends FilterInputStream {
+
+  private final long _maxBytes;
+
+  private final long _deadline;
+
+  private long _bytesRead = 0;
+
+  /**
+   * 
+   * @param in the underlying stream
+   * @param maxBytes the maximum number of bytes that can be read, or zero for
+   *          no limit
+   * @param timeout the maximum time, in ms, after which reads will fail, or
+   *          zero for no limit
+   */
+  public LimitedInputStream(InputStream in, long maxBytes, long timeout) {
+    super(in);
+    _maxBytes = maxBytes;
+    _deadline = timeout > 0 ? System.currentTimeMillis() + timeout
+        : Long.MAX_VALUE;
+  }
+
+  @Override
+  public int read() throws IOException {
+    checkDeadline();
+    int b = super.read();
+    if (b != -1)
+      countBytes(1);
+    return b;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    checkDeadline();
+    int rc = super.read(b, off, len);
+    if (rc > 0)
+      countBytes(rc);
+    return rc;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    checkDeadline();
+    long rc = super.skip(n);
+    if (rc > 0)
+      countBytes(rc);
+    return rc;
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private void checkDeadline() throws RequestTimeoutException {
+    if (System.currentTimeMillis() > _deadline)
+      throw new RequestTimeoutException();
+  }
+
+  private void countBytes(long count) throws RequestTooLargeException {
+    _bytesRead += count;
+    if (_maxBytes > 0 && _bytesRead > _maxBytes)
+      throw new RequestTooLargeException(_maxBytes);
+  }
+
+  /****
+   * Internal Classes
+   ****/
+
+  public static class RequestTooLargeException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RequestTooLargeException(long maxBytes) {
+      super("request exceeded the maximum size of " + maxBytes + " bytes");
+    }
+  }
+
+  public static class RequestTimeoutException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public RequestTimeoutException() {
+      super("request was not read before the request timeout");
+    }
+  }
+}
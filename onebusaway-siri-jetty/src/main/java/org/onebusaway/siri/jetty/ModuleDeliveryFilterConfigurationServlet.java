@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.jetty;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.security.MessageDigest;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.onebusaway.siri.core.exceptions.SiriException;
+import org.onebusaway.siri.core.filters.ModuleDeliveryFilterConfigurationManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admin endpoint for the {@link ModuleDeliveryFilterConfigurationManager}. A
+ * GET returns the current filter configuration. A POST with a "reload"
+ * parameter reloads the configuration file, while a POST with a body replaces
+ * the filter configuration with the contents of the body.
+ * 
+ * Access is denied unless explicitly enabled. Either set an admin token, which
+ * must then be sent in the {@value #TOKEN_HEADER} header of every request, or
+ * allow requests from the loopback interface, or both.
+ * 
+ * @author agent
+ */
+class ModuleDeliveryFilterConfigurationServlet extends HttpServlet {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final Logger _log = LoggerFactory.getLogger(ModuleDeliveryFilterConfigurationServlet.class);
+
+  static final String TOKEN_HEADER = "X-Siri-Admin-Token";
+
+  private ModuleDeliveryFilterConfigurationManager _manager;
+
+  private byte[] _adminToken = null;
+
+  private boolean _allowLoopback = false;
+
+  public void setManager(ModuleDeliveryFilterConfigurationManager manager) {
+    _manager = manager;
+  }
+
+  /**
+   * 
+   * @param adminToken a shared secret that grants access when sent in the
+   *          {@value #TOKEN_HEADER} header, or null to disable token access
+   */
+  public void setAdminToken(String adminToken) {
+    _adminToken = adminToken == null || adminToken.length() == 0 ? null
+        : getBytes(adminToken);
+  }
+
+  /**
+   * 
+   * @param allowLoopback if true, requests from the loopback interface are
+   *          allowed without a token
+   */
+  public void setAllowLoopback(boolean allowLoopback) {
+    _allowLoopback = allowLoopback;
+  }
+
+  @Override
+  protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+      throws ServletException, IOException {
+    if (!checkAccess(req, resp))
+      return;
+    writeFilterSpecs(resp);
+  }
+
+  @Override
+  protected void doPost(HttpServletRequest req, HttpServletResponse resp)
+      throws ServletException, IOException {
+
+    if (!checkAccess(req, resp))
+      return;
+
+    try {
+      if (req.getParameter("reload") != null) {
+        _log.info("filter configuration reload requested");
+        _manager.reload();
+      } else {
+        StringBuilder b = new StringBuilder();
+        BufferedReader reader = req.getReader();
+        String line = null;
+        while ((line = reader.readLine()) != null)
+          b.append(line).append('\n');
+        reader.close();
+        _log.info("filter configuration update requested");
+        _manager.setFilterConfiguration(b.toString());
+      }
+    } catch (SiriException ex) {
+      _log.warn("error applying filter configuration", ex);
+      resp.sendError(HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+      return;
+    }
+
+    writeFilterSpecs(resp);
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private boolean checkAccess(HttpServletRequest req, HttpServletResponse resp)
+      throws IOException {
+
+    if (_adminToken == null && !_allowLoopback) {
+      _log.warn("rejecting filter configuration request from "
+          + req.getRemoteAddr() + ": access is not enabled");
+      resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return false;
+    }
+
+    if (_allowLoopback && isLoopback(req.getRemoteAddr()))
+      return true;
+
+    String token = req.getHeader(TOKEN_HEADER);
+    /**
+     * Compare in constant time, such that the token can't be guessed from the
+     * response time
+     */
+    if (_adminToken != null && token != null
+        && MessageDigest.isEqual(_adminToken, getBytes(token)))
+      return true;
+
+    _log.warn("rejecting unauthorized filter configuration request from "
+        + req.getRemoteAddr());
+    resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+    return false;
+  }
+
+  private static boolean isLoopback(String remoteAddr) {
+    if (remoteAddr == null)
+      return false;
+    try {
+      /**
+       * The remote address is an IP literal, so no lookup is performed
+       */
+      return InetAddress.getByName(remoteAddr).isLoopbackAddress();
+    } catch (UnknownHostException ex) {
+      return false;
+    }
+  }
+
+  private static byte[] getBytes(String value) {
+    try {
+      return value.getBytes("UTF-8");
+    } catch (IOException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  private void writeFilterSpecs(HttpServletResponse resp) throws IOException {
+    resp.setContentType("text/plain");
+    PrintWriter writer = resp.getWriter();
+    for (String filterSpec : _manager.getFilterSpecs())
+      writer.println(filterSpec);
+    writer.close();
+  }
+}
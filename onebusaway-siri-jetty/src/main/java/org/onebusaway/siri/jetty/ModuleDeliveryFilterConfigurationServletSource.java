@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.jetty;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.servlet.Servlet;
+
+import org.onebusaway.guice.jetty_exporter.ServletSource;
+import org.onebusaway.siri.core.exceptions.SiriException;
+import org.onebusaway.siri.core.filters.ModuleDeliveryFilterConfigurationManager;
+
+/**
+ * Exports the filter configuration admin endpoint (see
+ * {@link ModuleDeliveryFilterConfigurationManager}) at a configurable url. To
+ * enable the endpoint, request an instance from the injector and set the url
+ * before the Jetty exporter is started. The endpoint then rejects every request
+ * until access is enabled with {@link #setAdminToken(String)} or
+ * {@link #setAllowLoopback(boolean)}.
+ * 
+ * @author agent
+ */
+@Singleton
+public class ModuleDeliveryFilterConfigurationServletSource implements
+    ServletSource {
+
+  private ModuleDeliveryFilterConfigurationServlet _servlet = new ModuleDeliveryFilterConfigurationServlet();
+
+  private URL _url;
+
+  @Inject
+  public void setManager(ModuleDeliveryFilterConfigurationManager manager) {
+    _servlet.setManager(manager);
+  }
+
+  public void setUrl(String url) {
+    try {
+      _url = new URL(url);
+    } catch (MalformedURLException ex) {
+      throw new SiriException("bad filter configuration url: " + url, ex);
+    }
+  }
+
+  /**
+   * 
+   * @param adminToken a shared secret that clients must send in the
+   *          "X-Siri-Admin-Token" header
+   */
+  public void setAdminToken(String adminToken) {
+    _servlet.setAdminToken(adminToken);
+  }
+
+  /**
+   * 
+   * @param allowLoopback if true, requests from the loopback interface are
+   *          allowed without a token
+   */
+  public void setAllowLoopback(boolean allowLoopback) {
+    _servlet.setAllowLoopback(allowLoopback);
+  }
+
+  @Override
+  public URL getUrl() {
+    return _url;
+  }
+
+  @Override
+  public Servlet getServlet() {
+    return _servlet;
+  }
+}
@@ -0,0 +1,330 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.jetty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.onebusaway.siri.core.SiriCommon;
+import org.onebusaway.siri.core.exceptions.SiriException;
+
+/**
+ * Configuration for the embedded Jetty server hosting the {@link SiriCommon}
+ * (client and server) endpoints. By default, the endpoints are hosted by the
+ * shared Jetty exporter, which cannot be tuned. When a dedicated server is
+ * enabled, the endpoints are instead hosted by a Jetty server with the thread
+ * pool and NIO connector settings specified here.
+ * 
+ * Note that the dedicated server binds the ports of the SIRI endpoints, so any
+ * other exported servlets, such as the status servlet, must use a different
+ * port.
+ * 
+ * @author agent
+ */
+public class SiriJettyConfiguration {
+
+  private boolean _dedicatedServer = false;
+
+  private int _minThreads = 8;
+
+  private int _maxThreads = 254;
+
+  /**
+   * A negative value indicates an unbounded queue
+   */
+  private int _maxQueued = -1;
+
+  /**
+   * Time, in seconds
+   */
+  private int _threadIdleTimeout = 60;
+
+  private int _acceptors = 1;
+
+  /**
+   * Zero indicates the operating system default
+   */
+  private int _acceptQueueSize = 0;
+
+  /**
+   * Time, in seconds, that an idle connection, including a keep-alive
+   * connection between requests, is kept open
+   */
+  private int _maxIdleTime = 200;
+
+  /**
+   * Time, in seconds, that an idle connection is kept open when the server is
+   * low on resources. Zero indicates the regular max idle time.
+   */
+  private int _lowResourcesMaxIdleTime = 0;
+
+  /**
+   * Size, in bytes. Zero indicates no limit.
+   */
+  private long _maxRequestSize = 10 * 1024 * 1024;
+
+  /**
+   * Time, in seconds. Zero indicates no limit.
+   */
+  private int _requestTimeout = 30;
+
+  /**
+   * If true, responses are gzip compressed when the client accepts it
+   */
+  private boolean _compressResponses = true;
+
+  /**
+   * Create a configuration from a map of configuration parameters, as parsed
+   * from a "key=value,key=value" command line argument. Any parameter for the
+   * Jetty server enables the dedicated server, unless "dedicatedServer=false"
+   * is specified.
+   * 
+   * @param args the configuration parameters
+   * @return the configuration
+   * @throws SiriException if any parameters are unknown or invalid
+   */
+  public static SiriJettyConfiguration create(Map<String, String> args) {
+
+    SiriJettyConfiguration config = new SiriJettyConfiguration();
+
+    if (args.containsKey("minThreads"))
+      config.setMinThreads(getInt(args, "minThreads"));
+    if (args.containsKey("maxThreads"))
+      config.setMaxThreads(getInt(args, "maxThreads"));
+    if (args.containsKey("maxQueued"))
+      config.setMaxQueued(getInt(args, "maxQueued"));
+    if (args.containsKey("threadIdleTimeout"))
+      config.setThreadIdleTimeout(getInt(args, "threadIdleTimeout"));
+    if (args.containsKey("acceptors"))
+      config.setAcceptors(getInt(args, "acceptors"));
+    if (args.containsKey("acceptQueueSize"))
+      config.setAcceptQueueSize(getInt(args, "acceptQueueSize"));
+    if (args.containsKey("maxIdleTime"))
+      config.setMaxIdleTime(getInt(args, "maxIdleTime"));
+    if (args.containsKey("lowResourcesMaxIdleTime"))
+      config.setLowResourcesMaxIdleTime(getInt(args, "lowResourcesMaxIdleTime"));
+    if (args.containsKey("maxRequestSize"))
+      config.setMaxRequestSize(getInt(args, "maxRequestSize"));
+    if (args.containsKey("requestTimeout"))
+      config.setRequestTimeout(getInt(args, "requestTimeout"));
+    if (args.containsKey("compressResponses"))
+      config.setCompressResponses(Boolean.parseBoolean(args.remove("compressResponses")));
+
+    /**
+     * An explicit "dedicatedServer" parameter takes precedence, with a
+     * parameter without a value treated as "true"
+     */
+    if (args.containsKey("dedicatedServer")) {
+      String value = args.remove("dedicatedServer");
+      config.setDedicatedServer(value == null || Boolean.parseBoolean(value));
+    }
+
+    if (!args.isEmpty()) {
+      List<String> keys = new ArrayList<String>(args.keySet());
+      Collections.sort(keys);
+      throw new SiriException("the following jetty parameters were unknown: "
+          + keys);
+    }
+
+    return config;
+  }
+
+  public boolean isDedicatedServer() {
+    return _dedicatedServer;
+  }
+
+  /**
+   * 
+   * @param dedicatedServer if true, the SIRI endpoints are hosted by a
+   *          dedicated Jetty server, using the settings of this configuration
+   */
+  public void setDedicatedServer(boolean dedicatedServer) {
+    _dedicatedServer = dedicatedServer;
+  }
+
+  public int getMinThreads() {
+    return _minThreads;
+  }
+
+  /**
+   * Enables the dedicated server.
+   * 
+   * @param minThreads the minimum number of request threads
+   */
+  public void setMinThreads(int minThreads) {
+    _minThreads = minThreads;
+    _dedicatedServer = true;
+  }
+
+  public int getMaxThreads() {
+    return _maxThreads;
+  }
+
+  /**
+   * Enables the dedicated server.
+   * 
+   * @param maxThreads the maximum number of request threads
+   */
+  public void setMaxThreads(int maxThreads) {
+    _maxThreads = maxThreads;
+    _dedicatedServer = true;
+  }
+
+  public int getMaxQueued() {
+    return _maxQueued;
+  }
+
+  /**
+   * Enables the dedicated server.
+   * 
+   * @param maxQueued the maximum number of requests queued while waiting for a
+   *          request thread, or a negative value for no limit
+   */
+  public void setMaxQueued(int maxQueued) {
+    _maxQueued = maxQueued;
+    _dedicatedServer = true;
+  }
+
+  public int getThreadIdleTimeout() {
+    return _threadIdleTimeout;
+  }
+
+  /**
+   * Enables the dedicated server.
+   * 
+   * @param threadIdleTimeout time, in seconds, after which an idle request
+   *          thread above the minimum number of threads is stopped
+   */
+  public void setThreadIdleTimeout(int threadIdleTimeout) {
+    _threadIdleTimeout = threadIdleTimeout;
+    _dedicatedServer = true;
+  }
+
+  public int getAcceptors() {
+    return _acceptors;
+  }
+
+  /**
+   * Enables the dedicated server.
+   * 
+   * @param acceptors the number of acceptor threads, which also determines the
+   *          number of NIO selector sets
+   */
+  public void setAcceptors(int acceptors) {
+    _acceptors = acceptors;
+    _dedicatedServer = true;
+  }
+
+  public int getAcceptQueueSize() {
+    return _acceptQueueSize;
+  }
+
+  /**
+   * Enables the dedicated server.
+   * 
+   * @param acceptQueueSize the size of the server socket accept queue, or zero
+   *          for the operating system default
+   */
+  public void setAcceptQueueSize(int acceptQueueSize) {
+    _acceptQueueSize = acceptQueueSize;
+    _dedicatedServer = true;
+  }
+
+  public int getMaxIdleTime() {
+    return _maxIdleTime;
+  }
+
+  /**
+   * Enables the dedicated server.
+   * 
+   * @param maxIdleTime time, in seconds, that an idle connection, including a
+   *          keep-alive connection between requests, is kept open
+   */
+  public void setMaxIdleTime(int maxIdleTime) {
+    _maxIdleTime = maxIdleTime;
+    _dedicatedServer = true;
+  }
+
+  public int getLowResourcesMaxIdleTime() {
+    return _lowResourcesMaxIdleTime;
+  }
+
+  /**
+   * Enables the dedicated server.
+   * 
+   * @param lowResourcesMaxIdleTime time, in seconds, that an idle connection
+   *          is kept open when the server is low on request threads, or zero
+   *          to use the regular max idle time
+   */
+  public void setLowResourcesMaxIdleTime(int lowResourcesMaxIdleTime) {
+    _lowResourcesMaxIdleTime = lowResourcesMaxIdleTime;
+    _dedicatedServer = true;
+  }
+
+  public long getMaxRequestSize() {
+    return _maxRequestSize;
+  }
+
+  /**
+   * 
+   * @param maxRequestSize the maximum size, in bytes, of an incoming request,
+   *          or zero for no limit
+   */
+  public void setMaxRequestSize(long maxRequestSize) {
+    _maxRequestSize = maxRequestSize;
+  }
+
+  public int getRequestTimeout() {
+    return _requestTimeout;
+  }
+
+  /**
+   * 
+   * @param requestTimeout the maximum time, in seconds, for reading an incoming
+   *          request, or zero for no limit
+   */
+  public void setRequestTimeout(int requestTimeout) {
+    _requestTimeout = requestTimeout;
+  }
+
+  public boolean isCompressResponses() {
+    return _compressResponses;
+  }
+
+  /**
+   * 
+   * @param compressResponses if true (the default), responses are gzip
+   *          compressed when the client indicates that it accepts it
+   */
+  public void setCompressResponses(boolean compressResponses) {
+    _compressResponses = compressResponses;
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private static int getInt(Map<String, String> args, String key) {
+    String value = args.remove(key);
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException ex) {
+      throw new SiriException("invalid jetty parameter " + key + "=" + value);
+    }
+  }
+}
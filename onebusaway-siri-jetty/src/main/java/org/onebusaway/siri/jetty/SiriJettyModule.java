@@ -18,6 +18,7 @@ package org.onebusaway.siri.jetty;
 import java.net.URL;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.servlet.Servlet;
 
@@ -30,6 +31,7 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Module;
 import com.google.inject.TypeLiteral;
 import com.google.inject.matcher.Matchers;
+import com.google.inject.name.Names;
 import com.google.inject.spi.InjectionListener;
 import com.google.inject.spi.TypeEncounter;
 import com.google.inject.spi.TypeListener;
@@ -37,20 +39,51 @@ import com.google.inject.spi.TypeListener;
 public class SiriJettyModule extends AbstractModule {
 
   public static void addModuleAndDependencies(Set<Module> modules) {
+    addModuleAndDependencies(modules, new SiriJettyConfiguration());
+  }
+
+  /**
+   * 
+   * @param modules
+   * @param configuration configuration for the Jetty server hosting the SIRI
+   *          endpoints, which must be complete before the injector is created
+   */
+  public static void addModuleAndDependencies(Set<Module> modules,
+      SiriJettyConfiguration configuration) {
     JettyExporterModule module = JettyExporterModule.addModuleAndDependencies(modules);
-    modules.add(new SiriJettyModule(module.getSources()));
+    modules.add(new SiriJettyModule(module.getSources(), configuration));
     StatusJettyExporterModule.addModuleAndDependencies(modules);
   }
 
   final List<ServletSource> _sources;
 
+  final SiriJettyConfiguration _configuration;
+
+  /**
+   * Sources hosted by the dedicated {@link SiriJettyServerService}, as opposed
+   * to the shared Jetty exporter
+   */
+  final List<ServletSource> _dedicatedSources = new CopyOnWriteArrayList<ServletSource>();
+
   public SiriJettyModule(List<ServletSource> sources) {
+    this(sources, new SiriJettyConfiguration());
+  }
+
+  public SiriJettyModule(List<ServletSource> sources,
+      SiriJettyConfiguration configuration) {
     _sources = sources;
+    _configuration = configuration;
   }
 
   @Override
   protected void configure() {
 
+    bind(SiriJettyConfiguration.class).toInstance(_configuration);
+    bind(new TypeLiteral<List<ServletSource>>() {}).annotatedWith(
+        Names.named(SiriJettyServerService.SOURCES_NAME)).toInstance(
+        _dedicatedSources);
+    bind(SiriJettyServerService.class).asEagerSingleton();
+
     /**
      * The underlying {@link JettyExporterModule} will listen for
      * {@link ServletSource} instances, but we also want to listen for
@@ -65,7 +98,10 @@ public class SiriJettyModule extends AbstractModule {
         Class<? super I> type = injectableType.getRawType();
 
         if (SiriCommon.class.isAssignableFrom(type)) {
-          encounter.register(new InjectionListenerImpl<I>(_sources));
+          List<ServletSource> sources = _configuration.isDedicatedServer()
+              ? _dedicatedSources : _sources;
+          encounter.register(new InjectionListenerImpl<I>(sources,
+              _configuration));
         }
       }
     });
@@ -93,8 +129,12 @@ public class SiriJettyModule extends AbstractModule {
 
     private final List<ServletSource> _sources;
 
-    public InjectionListenerImpl(List<ServletSource> sources) {
+    private final SiriJettyConfiguration _configuration;
+
+    public InjectionListenerImpl(List<ServletSource> sources,
+        SiriJettyConfiguration configuration) {
       _sources = sources;
+      _configuration = configuration;
     }
 
     @Override
@@ -102,6 +142,10 @@ public class SiriJettyModule extends AbstractModule {
       SiriCommon common = (SiriCommon) injectee;
       SubscriptionServerServlet servlet = new SubscriptionServerServlet();
       servlet.setSiriListener(common);
+      servlet.setMaxRequestSize(_configuration.getMaxRequestSize());
+      servlet.setRequestTimeout(_configuration.getRequestTimeout());
+      servlet.setCompressResponses(_configuration.isCompressResponses());
+      common.addStatusProvider(servlet);
       ServletSource source = new SiriCommonServletSource(common, servlet);
       _sources.add(source);
     }
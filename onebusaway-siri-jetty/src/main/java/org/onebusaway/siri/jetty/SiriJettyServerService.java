@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.jetty;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.nio.SelectChannelConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.onebusaway.guice.jetty_exporter.ServletSource;
+import org.onebusaway.siri.core.exceptions.SiriException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hosts the SIRI endpoint servlets on dedicated Jetty servers, one per port,
+ * tuned according to the {@link SiriJettyConfiguration}. Only used when the
+ * dedicated server is enabled in the configuration.
+ * 
+ * @author agent
+ */
+@Singleton
+public class SiriJettyServerService {
+
+  static final String SOURCES_NAME = "org.onebusaway.siri.jetty.SiriJettyServerService.sources";
+
+  private static Logger _log = LoggerFactory.getLogger(SiriJettyServerService.class);
+
+  private SiriJettyConfiguration _configuration;
+
+  private List<ServletSource> _sources;
+
+  private List<Server> _servers = new ArrayList<Server>();
+
+  @Inject
+  public void setConfiguration(SiriJettyConfiguration configuration) {
+    _configuration = configuration;
+  }
+
+  @Inject
+  public void setSources(@Named(SOURCES_NAME) List<ServletSource> sources) {
+    _sources = sources;
+  }
+
+  @PostConstruct
+  public void start() throws Exception {
+
+    Map<Integer, List<ServletSource>> sourcesByPort = new TreeMap<Integer, List<ServletSource>>();
+
+    for (ServletSource source : _sources) {
+      URL url = source.getUrl();
+      if (url == null)
+        continue;
+      int port = url.getPort();
+      if (port == -1)
+        port = url.getDefaultPort();
+      List<ServletSource> sources = sourcesByPort.get(port);
+      if (sources == null) {
+        sources = new ArrayList<ServletSource>();
+        sourcesByPort.put(port, sources);
+      }
+      sources.add(source);
+    }
+
+    for (Map.Entry<Integer, List<ServletSource>> entry : sourcesByPort.entrySet()) {
+      Server server = createServer(entry.getKey(), entry.getValue());
+      server.start();
+      _servers.add(server);
+    }
+  }
+
+  @PreDestroy
+  public void stop() {
+    for (Server server : _servers) {
+      try {
+        server.stop();
+      } catch (Exception ex) {
+        _log.warn("error stopping jetty server", ex);
+      }
+    }
+    _servers.clear();
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private Server createServer(int port, List<ServletSource> sources) {
+
+    SiriJettyConfiguration config = _configuration;
+
+    QueuedThreadPool threadPool = new QueuedThreadPool();
+    threadPool.setName("siri-jetty-" + port);
+    threadPool.setMinThreads(config.getMinThreads());
+    threadPool.setMaxThreads(config.getMaxThreads());
+    threadPool.setMaxQueued(config.getMaxQueued());
+    threadPool.setMaxIdleTimeMs(config.getThreadIdleTimeout() * 1000);
+
+    SelectChannelConnector connector = new SelectChannelConnector();
+    connector.setPort(port);
+    connector.setAcceptors(config.getAcceptors());
+    connector.setAcceptQueueSize(config.getAcceptQueueSize());
+    connector.setMaxIdleTime(config.getMaxIdleTime() * 1000);
+    if (config.getLowResourcesMaxIdleTime() > 0)
+      connector.setLowResourcesMaxIdleTime(config.getLowResourcesMaxIdleTime() * 1000);
+
+    Server server = new Server();
+    server.setThreadPool(threadPool);
+    server.setConnectors(new Connector[] {connector});
+
+    ServletContextHandler context = new ServletContextHandler(
+        ServletContextHandler.NO_SESSIONS);
+    context.setContextPath("/");
+
+    for (ServletSource source : sources) {
+      String path = source.getUrl().getPath();
+      if (path == null || path.length() == 0)
+        throw new SiriException("servlet url must include a path: "
+            + source.getUrl());
+      _log.info("binding siri endpoint: port=" + port + " path=" + path);
+      context.addServlet(new ServletHolder(source.getServlet()), path);
+    }
+
+    server.setHandler(context);
+    return server;
+  }
+}
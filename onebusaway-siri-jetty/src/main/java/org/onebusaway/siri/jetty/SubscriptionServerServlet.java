@@ -16,19 +16,61 @@
 package org.onebusaway.siri.jetty;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.onebusaway.siri.core.HttpCompressionSupport;
+import org.onebusaway.siri.core.PublicationStreamSupport;
 import org.onebusaway.siri.core.handlers.SiriRawHandler;
+import org.onebusaway.siri.core.handlers.SiriRawStreamHandler;
+import org.onebusaway.siri.jetty.LimitedInputStream.RequestTimeoutException;
+import org.onebusaway.siri.jetty.LimitedInputStream.RequestTooLargeException;
+import org.onebusaway.status_exporter.StatusProviderService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-class SubscriptionServerServlet extends HttpServlet {
+/**
+ * Exposes a {@link SiriRawHandler} over HTTP. If the handler is also a
+ * {@link SiriRawStreamHandler}, the raw request bytes are passed straight
+ * through to the handler, without decoding them to characters first.
+ * 
+ * Requests larger than the maximum request size are rejected with a 413
+ * response, and requests that are not read within the request timeout are
+ * rejected with a 408 response. Note that the request timeout is checked as
+ * the request is read, so a single blocked read is bounded by the idle timeout
+ * of the connector instead.
+ * 
+ * Requests with a "gzip" or "deflate" Content-Encoding are decompressed, with
+ * the maximum request size applied to the decompressed content as well, and
+ * responses are gzip compressed when the client indicates that it accepts it.
+ * 
+ * A request with the publication stream content type is read as a sequence of
+ * frames, each of which is handled as a separate request, until the stream
+ * ends. The maximum request size is applied to each frame, while the request
+ * timeout doesn't apply. See {@link PublicationStreamSupport}. A frame that
+ * fails to be handled is logged and counted in the servlet status, and the
+ * rest of the stream is still read.
+ * 
+ * @author bdferris
+ */
+class SubscriptionServerServlet extends HttpServlet implements
+    StatusProviderService {
   
   private static final long serialVersionUID = 1L;
 
@@ -36,10 +78,55 @@ class SubscriptionServerServlet extends HttpServlet {
 
   private SiriRawHandler _siriListener;
 
+  /**
+   * Size, in bytes. Zero indicates no limit.
+   */
+  private long _maxRequestSize = 10 * 1024 * 1024;
+
+  /**
+   * Time, in ms. Zero indicates no limit.
+   */
+  private long _requestTimeout = 30 * 1000;
+
+  private boolean _compressResponses = true;
+
+  private final AtomicLong _publicationStreamCount = new AtomicLong();
+
+  private final AtomicLong _publicationStreamFrameCount = new AtomicLong();
+
+  private final AtomicLong _publicationStreamFrameErrorCount = new AtomicLong();
+
   public void setSiriListener(SiriRawHandler siriListener) {
     _siriListener = siriListener;
   }
 
+  /**
+   * 
+   * @param maxRequestSize the maximum size, in bytes, of an incoming request,
+   *          or zero for no limit
+   */
+  public void setMaxRequestSize(long maxRequestSize) {
+    _maxRequestSize = maxRequestSize;
+  }
+
+  /**
+   * 
+   * @param requestTimeout the maximum time, in seconds, for reading an incoming
+   *          request, or zero for no limit
+   */
+  public void setRequestTimeout(int requestTimeout) {
+    _requestTimeout = requestTimeout * 1000L;
+  }
+
+  /**
+   * 
+   * @param compressResponses if true (the default), responses are gzip
+   *          compressed when the client indicates that it accepts it
+   */
+  public void setCompressResponses(boolean compressResponses) {
+    _compressResponses = compressResponses;
+  }
+
   @Override
   protected void doGet(HttpServletRequest req, HttpServletResponse resp)
       throws ServletException, IOException {
@@ -52,12 +139,211 @@ class SubscriptionServerServlet extends HttpServlet {
     
     _log.debug("path: {}", req.getRequestURI());
 
-    BufferedReader reader = req.getReader();
-    PrintWriter writer = resp.getWriter();
-    
+    int contentLength = req.getContentLength();
+    if (_maxRequestSize > 0 && contentLength > _maxRequestSize) {
+      _log.warn("rejecting request of size " + contentLength + " from "
+          + req.getRemoteAddr());
+      resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+      return;
+    }
+
+    try {
+      if (isPublicationStream(req)) {
+        handlePublicationStream(req, resp);
+      } else if (_siriListener instanceof SiriRawStreamHandler) {
+        handleStreamRequest(req, resp);
+      } else {
+        handleReaderRequest(req, resp);
+      }
+    } catch (RuntimeException ex) {
+      if (!handleRequestLimitExceeded(req, resp, ex))
+        throw ex;
+    } catch (IOException ex) {
+      /**
+       * Decompressing the request can hit the request limits directly
+       */
+      if (!handleRequestLimitExceeded(req, resp, ex))
+        throw ex;
+    }
+  }
+
+  /****
+   * {@link StatusProviderService} Interface
+   ****/
+
+  @Override
+  public void getStatus(Map<String, String> status) {
+    status.put("siri.jetty.publicationStreamCounter",
+        Long.toString(_publicationStreamCount.get()));
+    status.put("siri.jetty.publicationStreamFrameCounter",
+        Long.toString(_publicationStreamFrameCount.get()));
+    status.put("siri.jetty.publicationStreamFrameErrorCounter",
+        Long.toString(_publicationStreamFrameErrorCount.get()));
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private boolean handleRequestLimitExceeded(HttpServletRequest req,
+      HttpServletResponse resp, Throwable ex) throws IOException {
+    Throwable cause = ex;
+    while (cause != null) {
+      if (cause instanceof RequestTooLargeException) {
+        _log.warn("rejecting request from " + req.getRemoteAddr() + ": "
+            + cause.getMessage());
+        resp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        return true;
+      }
+      if (cause instanceof RequestTimeoutException) {
+        _log.warn("rejecting request from " + req.getRemoteAddr() + ": "
+            + cause.getMessage());
+        resp.sendError(HttpServletResponse.SC_REQUEST_TIMEOUT);
+        return true;
+      }
+      cause = cause.getCause();
+    }
+    return false;
+  }
+
+  private boolean isPublicationStream(HttpServletRequest req) {
+    String contentType = req.getContentType();
+    return contentType != null
+        && contentType.startsWith(PublicationStreamSupport.CONTENT_TYPE);
+  }
+
+  private void handlePublicationStream(HttpServletRequest req,
+      HttpServletResponse resp) throws IOException {
+
+    _log.info("publication stream opened from " + req.getRemoteAddr());
+    _publicationStreamCount.incrementAndGet();
+
+    InputStream input = req.getInputStream();
+    long frameCount = 0;
+    long errorCount = 0;
+
+    while (true) {
+
+      byte[] frame = PublicationStreamSupport.readFrame(input, _maxRequestSize);
+      if (frame == null)
+        break;
+
+      /**
+       * An empty frame is a keep-alive
+       */
+      if (frame.length == 0)
+        continue;
+
+      frameCount++;
+      _publicationStreamFrameCount.incrementAndGet();
+
+      /**
+       * A bad frame shouldn't bring down the rest of the stream
+       */
+      try {
+        handlePublicationStreamFrame(frame);
+      } catch (RuntimeException ex) {
+        errorCount++;
+        _publicationStreamFrameErrorCount.incrementAndGet();
+        _log.warn("error handling publication stream frame from "
+            + req.getRemoteAddr(), ex);
+      }
+    }
+
+    input.close();
+    resp.setStatus(HttpServletResponse.SC_OK);
+
+    _log.info("publication stream closed from " + req.getRemoteAddr()
+        + " after " + frameCount + " frames (" + errorCount + " errors)");
+  }
+
+  private void handlePublicationStreamFrame(byte[] frame) throws IOException {
+    if (_siriListener instanceof SiriRawStreamHandler) {
+      SiriRawStreamHandler handler = (SiriRawStreamHandler) _siriListener;
+      handler.handleRawRequest(new ByteArrayInputStream(frame),
+          new ByteArrayOutputStream());
+    } else {
+      String content = new String(frame, PublicationStreamSupport.CHARSET);
+      _siriListener.handleRawRequest(new StringReader(content),
+          new StringWriter());
+    }
+  }
+
+  private void handleStreamRequest(HttpServletRequest req,
+      HttpServletResponse resp) throws IOException {
+
+    SiriRawStreamHandler handler = (SiriRawStreamHandler) _siriListener;
+
+    InputStream input = getInputStream(req);
+
+    resp.setContentType("text/xml;charset=UTF-8");
+    OutputStream output = getOutputStream(req, resp);
+
+    handler.handleRawRequest(input, output);
+
+    input.close();
+    output.close();
+  }
+
+  private void handleReaderRequest(HttpServletRequest req,
+      HttpServletResponse resp) throws IOException {
+
+    String requestCharset = req.getCharacterEncoding();
+    if (requestCharset == null)
+      requestCharset = "ISO-8859-1";
+
+    /**
+     * We always decode the raw bytes ourselves, rather than using
+     * req.getReader(), such that the request size limit and timeout apply
+     */
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+        getInputStream(req), requestCharset));
+
+    PrintWriter writer = null;
+    if (isCompressResponse(req))
+      writer = new PrintWriter(new OutputStreamWriter(getOutputStream(req,
+          resp), resp.getCharacterEncoding()));
+    else
+      writer = resp.getWriter();
+
     _siriListener.handleRawRequest(reader, writer);
-    
+
     reader.close();
     writer.close();
   }
+
+  /**
+   * The request size limit is applied to the raw request content and, if the
+   * request is compressed, to the decompressed content as well, such that a
+   * small compressed request can't expand without bound.
+   */
+  private InputStream getInputStream(HttpServletRequest req)
+      throws IOException {
+
+    InputStream input = new LimitedInputStream(req.getInputStream(),
+        _maxRequestSize, _requestTimeout);
+
+    String contentEncoding = req.getHeader(HttpCompressionSupport.HEADER_CONTENT_ENCODING);
+    if (!HttpCompressionSupport.isDecodable(contentEncoding))
+      return input;
+
+    input = HttpCompressionSupport.getDecodedInputStream(input,
+        contentEncoding);
+    return new LimitedInputStream(input, _maxRequestSize, 0);
+  }
+
+  private OutputStream getOutputStream(HttpServletRequest req,
+      HttpServletResponse resp) throws IOException {
+    if (!isCompressResponse(req))
+      return resp.getOutputStream();
+    resp.setHeader(HttpCompressionSupport.HEADER_CONTENT_ENCODING,
+        HttpCompressionSupport.ENCODING_GZIP);
+    resp.addHeader("Vary", HttpCompressionSupport.HEADER_ACCEPT_ENCODING);
+    return new GZIPOutputStream(resp.getOutputStream());
+  }
+
+  private boolean isCompressResponse(HttpServletRequest req) {
+    return _compressResponses
+        && HttpCompressionSupport.isGzipAccepted(req.getHeader(HttpCompressionSupport.HEADER_ACCEPT_ENCODING));
+  }
 }
@@ -0,0 +1,68 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.jetty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+import org.onebusaway.siri.jetty.LimitedInputStream.RequestTimeoutException;
+import org.onebusaway.siri.jetty.LimitedInputStream.RequestTooLargeException;
+
+public class LimitedInputStreamTest {
+
+  @Test
+  public void testWithinLimit() throws IOException {
+    InputStream in = new LimitedInputStream(new ByteArrayInputStream(
+        new byte[10]), 10, 0);
+    assertEquals(10, in.read(new byte[20]));
+    assertEquals(-1, in.read());
+  }
+
+  @Test
+  public void testTooLarge() throws IOException {
+    InputStream in = new LimitedInputStream(new ByteArrayInputStream(
+        new byte[11]), 10, 0);
+    assertEquals(10, in.read(new byte[10]));
+    try {
+      in.read();
+      fail();
+    } catch (RequestTooLargeException ex) {
+
+    }
+  }
+
+  @Test
+  public void testTimeout() throws IOException {
+    InputStream in = new LimitedInputStream(new ByteArrayInputStream(
+        new byte[10]), 0, 1);
+    try {
+      Thread.sleep(10);
+    } catch (InterruptedException ex) {
+      throw new IllegalStateException(ex);
+    }
+    try {
+      in.read();
+      fail();
+    } catch (RequestTimeoutException ex) {
+
+    }
+  }
+}
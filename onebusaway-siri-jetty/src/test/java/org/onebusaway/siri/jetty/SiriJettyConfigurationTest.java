@@ -0,0 +1,63 @@
+/**
+ * Copyright (C) 2026 agent <agent@local>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.onebusaway.siri.jetty;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.onebusaway.siri.core.SiriLibrary;
+import org.onebusaway.siri.core.exceptions.SiriException;
+
+public class SiriJettyConfigurationTest {
+
+  @Test
+  public void testCreate() {
+
+    SiriJettyConfiguration config = SiriJettyConfiguration.create(SiriLibrary.getLineAsMap("minThreads=16,maxThreads=512,maxQueued=1000,acceptors=4,acceptQueueSize=1024,maxIdleTime=30"));
+    assertTrue(config.isDedicatedServer());
+    assertEquals(16, config.getMinThreads());
+    assertEquals(512, config.getMaxThreads());
+    assertEquals(1000, config.getMaxQueued());
+    assertEquals(4, config.getAcceptors());
+    assertEquals(1024, config.getAcceptQueueSize());
+    assertEquals(30, config.getMaxIdleTime());
+    assertTrue(config.isCompressResponses());
+
+    config = SiriJettyConfiguration.create(SiriLibrary.getLineAsMap("maxRequestSize=1024,requestTimeout=5,compressResponses=false"));
+    assertFalse(config.isDedicatedServer());
+    assertEquals(1024, config.getMaxRequestSize());
+    assertEquals(5, config.getRequestTimeout());
+    assertFalse(config.isCompressResponses());
+
+    config = SiriJettyConfiguration.create(SiriLibrary.getLineAsMap("dedicatedServer"));
+    assertTrue(config.isDedicatedServer());
+
+    config = SiriJettyConfiguration.create(SiriLibrary.getLineAsMap("maxThreads=10,dedicatedServer=false"));
+    assertFalse(config.isDedicatedServer());
+  }
+
+  @Test(expected = SiriException.class)
+  public void testUnknownParameter() {
+    SiriJettyConfiguration.create(SiriLibrary.getLineAsMap("maxThreadz=10"));
+  }
+
+  @Test(expected = SiriException.class)
+  public void testInvalidParameter() {
+    SiriJettyConfiguration.create(SiriLibrary.getLineAsMap("maxThreads=many"));
+  }
+}
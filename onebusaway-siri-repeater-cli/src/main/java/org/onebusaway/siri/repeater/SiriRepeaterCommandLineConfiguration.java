@@ -17,6 +17,7 @@
 package org.onebusaway.siri.repeater;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -40,12 +41,16 @@ import org.onebusaway.siri.core.SiriCoreModule;
 import org.onebusaway.siri.core.SiriLibrary;
 import org.onebusaway.siri.core.SiriServer;
 import org.onebusaway.siri.core.exceptions.SiriException;
+import org.onebusaway.siri.core.filters.ModuleDeliveryFilterConfigurationManager;
 import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilter;
 import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilterFactoryImpl;
 import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilterMatcher;
 import org.onebusaway.siri.core.filters.SiriModuleDeliveryFilterMatcherFactoryImpl;
+import org.onebusaway.siri.core.merge.ServiceDeliveryMerger;
 import org.onebusaway.siri.core.services.SchedulingService;
 import org.onebusaway.siri.core.subscriptions.server.SiriServerSubscriptionManager;
+import org.onebusaway.siri.jetty.ModuleDeliveryFilterConfigurationServletSource;
+import org.onebusaway.siri.jetty.SiriJettyConfiguration;
 import org.onebusaway.siri.jetty.SiriJettyModule;
 import org.onebusaway.status_exporter.StatusServletSource;
 import org.slf4j.Logger;
@@ -71,6 +76,14 @@ public class SiriRepeaterCommandLineConfiguration {
 
   private static final String ARG_FILTER = "filter";
 
+  private static final String ARG_FILTER_CONFIG = "filterConfig";
+
+  private static final String ARG_FILTER_ADMIN_URL = "filterAdminUrl";
+
+  private static final String ARG_FILTER_ADMIN_TOKEN = "filterAdminToken";
+
+  private static final String ARG_FILTER_ADMIN_LOCALHOST = "filterAdminLocalhost";
+
   private static final String ARG_REQUESTOR_CONSUMER_ADDRESS_DEFAULT = "requestorConsumerAddressDefault";
 
   private static final String ARG_LOG_RAW_XML = "logRawXml";
@@ -83,6 +96,16 @@ public class SiriRepeaterCommandLineConfiguration {
 
   private static final String ARG_NO_SUBSCRIPTIONS = "noSubscriptions";
 
+  private static final String ARG_PARTITIONS = "partitions";
+
+  private static final String ARG_MERGE = "merge";
+
+  private static final String ARG_SOURCE_PRIORITY = "sourcePriority";
+
+  private static final String ARG_JETTY = "jetty";
+
+  private static final String ARG_COMPRESS_CONSUMER_ADDRESS = "compressConsumerAddress";
+
   public Injector configure(String[] args) throws Exception {
 
     if (needsHelp(args)) {
@@ -109,7 +132,8 @@ public class SiriRepeaterCommandLineConfiguration {
 
     Set<Module> modules = new HashSet<Module>();
     SiriCoreModule.addModuleAndDependencies(modules);
-    SiriJettyModule.addModuleAndDependencies(modules);
+    SiriJettyModule.addModuleAndDependencies(modules,
+        getJettyConfiguration(cli));
     Injector injector = Guice.createInjector(modules);
 
     handleCommandLineOptions(cli, injector);
@@ -161,6 +185,17 @@ public class SiriRepeaterCommandLineConfiguration {
     options.addOption(ARG_CONNECTION_TIMEOUT, true, "connection timeout");
     options.addOption(ARG_NO_SUBSCRIPTIONS, false, "no subscriptions");
     options.addOption(ARG_FILTER, true, "filter specification");
+    options.addOption(ARG_FILTER_CONFIG, true, "filter configuration file");
+    options.addOption(ARG_FILTER_ADMIN_URL, true, "filter admin url");
+    options.addOption(ARG_FILTER_ADMIN_TOKEN, true, "filter admin token");
+    options.addOption(ARG_FILTER_ADMIN_LOCALHOST, false,
+        "allow filter admin requests from localhost");
+    options.addOption(ARG_PARTITIONS, true, "publish partition count");
+    options.addOption(ARG_MERGE, false, "merge data from multiple sources");
+    options.addOption(ARG_SOURCE_PRIORITY, true, "source priority");
+    options.addOption(ARG_JETTY, true, "jetty server configuration");
+    options.addOption(ARG_COMPRESS_CONSUMER_ADDRESS, true,
+        "compress publications to consumer address");
   }
 
   protected void handleCommandLineOptions(CommandLine cli, Injector injector) {
@@ -190,6 +225,11 @@ public class SiriRepeaterCommandLineConfiguration {
 
     addRequestorConsumerAddressDefaults(cli, subscriptionManager);
 
+    if (cli.hasOption(ARG_COMPRESS_CONSUMER_ADDRESS)) {
+      for (String address : cli.getOptionValues(ARG_COMPRESS_CONSUMER_ADDRESS))
+        siriServer.setCompressPublicationsForConsumerAddress(address, true);
+    }
+
     if (cli.hasOption(ARG_LOG_RAW_XML)) {
       String value = cli.getOptionValue(ARG_LOG_RAW_XML);
       ELogRawXmlType type = ELogRawXmlType.valueOf(value.toUpperCase());
@@ -212,10 +252,24 @@ public class SiriRepeaterCommandLineConfiguration {
       siriServer.setConnectionTimeout(connectionTimeout);
     }
 
+    if (cli.hasOption(ARG_PARTITIONS)) {
+      int partitionCount = Integer.parseInt(cli.getOptionValue(ARG_PARTITIONS));
+      _log.info("setting partitions=" + partitionCount);
+      siriRepeater.setPartitionCount(partitionCount);
+    }
+
+    if (cli.hasOption(ARG_MERGE) || cli.hasOption(ARG_SOURCE_PRIORITY)) {
+      ServiceDeliveryMerger merger = new ServiceDeliveryMerger();
+      addSourcePriorities(cli, merger);
+      siriRepeater.setServiceDeliveryMerger(merger);
+    }
+
     /**
      * Filters
      */
-    if (cli.hasOption(ARG_FILTER)) {
+    if (cli.hasOption(ARG_FILTER_CONFIG) || cli.hasOption(ARG_FILTER_ADMIN_URL)) {
+      handleReloadableFilters(cli, injector);
+    } else if (cli.hasOption(ARG_FILTER)) {
       for (String filterSpec : cli.getOptionValues(ARG_FILTER)) {
         Map<String, String> filterArgs = SiriLibrary.getLineAsMap(filterSpec);
 
@@ -242,6 +296,47 @@ public class SiriRepeaterCommandLineConfiguration {
     }
   }
 
+  private SiriJettyConfiguration getJettyConfiguration(CommandLine cli) {
+    if (!cli.hasOption(ARG_JETTY))
+      return new SiriJettyConfiguration();
+    Map<String, String> jettyArgs = SiriLibrary.getLineAsMap(cli.getOptionValue(ARG_JETTY));
+    return SiriJettyConfiguration.create(jettyArgs);
+  }
+
+  /**
+   * When a filter configuration file or admin url is specified, filters are
+   * managed by the {@link ModuleDeliveryFilterConfigurationManager} so they can
+   * be reloaded at runtime. Any filters specified with "-filter" are kept as
+   * static filters that survive a reload.
+   */
+  private void handleReloadableFilters(CommandLine cli, Injector injector) {
+
+    ModuleDeliveryFilterConfigurationManager manager = injector.getInstance(ModuleDeliveryFilterConfigurationManager.class);
+
+    if (cli.hasOption(ARG_FILTER)) {
+      for (String filterSpec : cli.getOptionValues(ARG_FILTER))
+        manager.addStaticFilterSpec(filterSpec);
+    }
+
+    if (cli.hasOption(ARG_FILTER_CONFIG)) {
+      File path = new File(cli.getOptionValue(ARG_FILTER_CONFIG));
+      _log.info("watching filter configuration " + path);
+      manager.setPath(path);
+    }
+
+    if (cli.hasOption(ARG_FILTER_ADMIN_URL)) {
+      ModuleDeliveryFilterConfigurationServletSource source = injector.getInstance(ModuleDeliveryFilterConfigurationServletSource.class);
+      source.setUrl(cli.getOptionValue(ARG_FILTER_ADMIN_URL));
+      if (cli.hasOption(ARG_FILTER_ADMIN_TOKEN))
+        source.setAdminToken(cli.getOptionValue(ARG_FILTER_ADMIN_TOKEN));
+      source.setAllowLoopback(cli.hasOption(ARG_FILTER_ADMIN_LOCALHOST));
+      if (!cli.hasOption(ARG_FILTER_ADMIN_TOKEN)
+          && !cli.hasOption(ARG_FILTER_ADMIN_LOCALHOST))
+        _log.warn("filter admin endpoint is exported but will reject all requests: specify -"
+            + ARG_FILTER_ADMIN_TOKEN + " or -" + ARG_FILTER_ADMIN_LOCALHOST);
+    }
+  }
+
   protected SiriModuleDeliveryFilterMatcher createFilterMatcherForArgs(
       Map<String, String> filterArgs) {
 
@@ -256,6 +351,30 @@ public class SiriRepeaterCommandLineConfiguration {
     return factory.create(filterArgs);
   }
 
+  private void addSourcePriorities(CommandLine cli,
+      ServiceDeliveryMerger merger) {
+
+    if (cli.hasOption(ARG_SOURCE_PRIORITY)) {
+
+      String[] values = cli.getOptionValues(ARG_SOURCE_PRIORITY);
+
+      for (String value : values) {
+        int index = value.lastIndexOf('=');
+        if (index == -1) {
+          System.err.println("invalid " + ARG_SOURCE_PRIORITY + " arg: "
+              + value + " (expected format: url=priority)");
+          printUsage();
+          System.exit(-1);
+        }
+
+        String source = value.substring(0, index);
+        int priority = Integer.parseInt(value.substring(index + 1));
+
+        merger.setSourcePriority(source, priority);
+      }
+    }
+  }
+
   private void addRequestorConsumerAddressDefaults(CommandLine cli,
       SiriServerSubscriptionManager subscriptionManager) {
 
@@ -17,7 +17,11 @@
 package org.onebusaway.siri.repeater;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
@@ -29,6 +33,11 @@ import org.onebusaway.siri.core.SiriClient;
 import org.onebusaway.siri.core.SiriClientRequest;
 import org.onebusaway.siri.core.SiriServer;
 import org.onebusaway.siri.core.handlers.SiriServiceDeliveryHandler;
+import org.onebusaway.siri.core.merge.ServiceDeliveryMerger;
+import org.onebusaway.siri.core.partitions.PartitionedExecutor;
+import org.onebusaway.siri.core.partitions.ServiceDeliveryPartitioner;
+import org.onebusaway.siri.core.subscriptions.server.SiriServerSubscriptionEvent;
+import org.onebusaway.status_exporter.StatusProviderService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,7 +53,7 @@ import uk.org.siri.siri.ServiceDelivery;
  * @author bdferris
  */
 @Singleton
-public class SiriRepeater {
+public class SiriRepeater implements StatusProviderService {
   
   
   private static final Logger _log = LoggerFactory.getLogger(SiriRepeater.class);
@@ -64,6 +73,27 @@ public class SiriRepeater {
 
   private List<SiriClientRequest> _startupRequests = new ArrayList<SiriClientRequest>();
 
+  /**
+   * The number of partition lanes used to publish incoming deliveries. When
+   * zero (the default), deliveries are published directly on the thread that
+   * received them.
+   */
+  private int _partitionCount = 0;
+
+  private volatile PartitionedExecutor _partitionedExecutor = null;
+
+  /**
+   * Publishes the gathered fragments of each incoming delivery in the order the
+   * deliveries were received. Replaced along with the partitioned executor.
+   */
+  private volatile PublicationSequencer _publicationSequencer = null;
+
+  /**
+   * If set, incoming deliveries are merged across sources before they are
+   * published, dropping stale and duplicate vehicle updates
+   */
+  private ServiceDeliveryMerger _serviceDeliveryMerger = null;
+
   @Inject
   public void setClient(SiriClient siriClient) {
     _siriClient = siriClient;
@@ -78,19 +108,61 @@ public class SiriRepeater {
     _startupRequests.add(request);
   }
 
+  /**
+   * Set the number of partition lanes used to publish incoming deliveries.
+   * Each incoming {@link ServiceDelivery} is split by VehicleRef (or
+   * MonitoringRef, or SituationNumber) and each piece is published on the lane
+   * that owns that entity, where it's matched against the server's
+   * subscriptions. Once every piece is done, the results are combined such
+   * that each subscriber still gets one publication per incoming delivery.
+   * Combined results are published in the order the deliveries were received,
+   * so a subscriber never sees an older update after a newer one. Each lane
+   * has a bounded queue, so a backed-up lane blocks the receiving thread.
+   * See {@link ServiceDeliveryPartitioner} for more details.
+   * 
+   * @param partitionCount the number of partition lanes, or zero to publish
+   *          directly on the receiving thread
+   */
+  public void setPartitionCount(int partitionCount) {
+    _partitionCount = partitionCount;
+  }
+
+  /**
+   * Set a merger to combine the data from multiple overlapping startup
+   * requests before it's republished. Sources are identified by the target url
+   * of their {@link SiriClientRequest}, which is what you should use when
+   * calling {@link ServiceDeliveryMerger#setSourcePriority(String, int)}.
+   * 
+   * @param serviceDeliveryMerger the merger, or null to disable merging
+   */
+  public void setServiceDeliveryMerger(
+      ServiceDeliveryMerger serviceDeliveryMerger) {
+    _serviceDeliveryMerger = serviceDeliveryMerger;
+  }
+
+  public ServiceDeliveryMerger getServiceDeliveryMerger() {
+    return _serviceDeliveryMerger;
+  }
+
   @PostConstruct
   public void start() {
 
+    if (_partitionCount > 0) {
+      _publicationSequencer = new PublicationSequencer();
+      _partitionedExecutor = new PartitionedExecutor(_partitionCount,
+          "siri-repeater");
+    }
+
     /**
      * Register our ServiceDelivery repeater handler with the client
      */
     _siriClient.addServiceDeliveryHandler(_serviceDeliveryRepeater);
 
     /**
-     * Fire off our client requests
+     * Fire off our client requests, merging subscription requests to the same
+     * endpoint
      */
-    for (SiriClientRequest request : _startupRequests)
-      _siriClient.handleRequest(request);
+    _siriClient.handleRequests(_startupRequests);
   }
 
   @PreDestroy
@@ -100,6 +172,35 @@ public class SiriRepeater {
      * Unregister our ServiceDelivery repeater handler
      */
     _siriClient.removeServiceDeliveryHandler(_serviceDeliveryRepeater);
+
+    if (_partitionedExecutor != null) {
+      _partitionedExecutor.shutdown();
+      _partitionedExecutor = null;
+      _publicationSequencer = null;
+    }
+  }
+
+  /****
+   * {@link StatusProviderService} Interface
+   ****/
+
+  @Override
+  public void getStatus(Map<String, String> status) {
+    if (_serviceDeliveryMerger != null)
+      _serviceDeliveryMerger.getStatus(status);
+  }
+
+  /****
+   * Private Methods
+   ****/
+
+  private String getSourceForChannel(SiriChannelInfo channelInfo) {
+    if (channelInfo == null)
+      return null;
+    List<SiriClientRequest> requests = channelInfo.getSiriClientRequests();
+    if (requests.isEmpty())
+      return null;
+    return requests.get(0).getTargetUrl();
   }
 
   /**
@@ -114,7 +215,168 @@ public class SiriRepeater {
     public void handleServiceDelivery(SiriChannelInfo channelInfo,
         ServiceDelivery serviceDelivery) {
       _log.debug("service delivery");
-      _siriServer.publish(serviceDelivery);
+
+      ServiceDeliveryMerger merger = _serviceDeliveryMerger;
+      if (merger != null) {
+        String source = getSourceForChannel(channelInfo);
+        if (!merger.merge(source, serviceDelivery)) {
+          _log.debug("service delivery dropped by merge");
+          return;
+        }
+      }
+
+      PartitionedExecutor executor = _partitionedExecutor;
+      PublicationSequencer sequencer = _publicationSequencer;
+
+      if (executor == null || sequencer == null) {
+        _siriServer.publish(serviceDelivery);
+        return;
+      }
+
+      ServiceDelivery[] partitions = ServiceDeliveryPartitioner.partition(
+          serviceDelivery, executor.getPartitionCount());
+
+      int fragmentCount = 0;
+      for (ServiceDelivery partition : partitions) {
+        if (partition != null)
+          fragmentCount++;
+      }
+
+      PublicationGather gather = sequencer.createGather(fragmentCount);
+
+      /**
+       * Every gather must eventually complete, or the gathers after it will
+       * never be published. A delivery with no fragments completes right away,
+       * and fragments that can't be submitted are counted as done.
+       */
+      if (fragmentCount == 0) {
+        gather.complete();
+        return;
+      }
+
+      for (int i = 0; i < partitions.length; ++i) {
+        if (partitions[i] == null)
+          continue;
+        try {
+          executor.submit(i, new PublishFragmentTask(partitions[i], gather));
+        } catch (RuntimeException ex) {
+          _log.warn("error submitting service delivery fragment", ex);
+          gather.fragmentDone();
+        }
+      }
+    }
+  }
+
+  /**
+   * Publishes completed gathers in sequence order. Lanes finish the fragments
+   * of different deliveries in any order, so a completed gather is held until
+   * every gather before it has been published.
+   */
+  private class PublicationSequencer {
+
+    private final AtomicLong _nextSequence = new AtomicLong();
+
+    /**
+     * Completed gathers waiting on an earlier gather, keyed by sequence number.
+     * Guarded by this.
+     */
+    private final Map<Long, List<SiriServerSubscriptionEvent>> _completed = new HashMap<Long, List<SiriServerSubscriptionEvent>>();
+
+    /**
+     * The sequence number of the next gather to publish. Guarded by this.
+     */
+    private long _nextToPublish = 0;
+
+    public PublicationGather createGather(int fragmentCount) {
+      return new PublicationGather(this, _nextSequence.getAndIncrement(),
+          fragmentCount);
+    }
+
+    public synchronized void gatherComplete(long sequence,
+        List<SiriServerSubscriptionEvent> events) {
+      _completed.put(sequence, events);
+      while (true) {
+        List<SiriServerSubscriptionEvent> next = _completed.remove(_nextToPublish);
+        if (next == null)
+          break;
+        _nextToPublish++;
+        try {
+          _siriServer.publishEvents(next);
+        } catch (Throwable ex) {
+          _log.warn("error publishing service delivery", ex);
+        }
+      }
+    }
+  }
+
+  /**
+   * Collects the publication events for the fragments of a single incoming
+   * delivery, such that the events can be combined and published once the last
+   * fragment is done. This way each subscriber gets one publication per
+   * incoming delivery, no matter how many partitions it was split across.
+   */
+  private class PublicationGather {
+
+    private final PublicationSequencer _sequencer;
+
+    private final long _sequence;
+
+    private final AtomicInteger _remaining;
+
+    private final List<SiriServerSubscriptionEvent> _events = new ArrayList<SiriServerSubscriptionEvent>();
+
+    public PublicationGather(PublicationSequencer sequencer, long sequence,
+        int fragmentCount) {
+      _sequencer = sequencer;
+      _sequence = sequence;
+      _remaining = new AtomicInteger(fragmentCount);
+    }
+
+    public void addEvents(List<SiriServerSubscriptionEvent> events) {
+      synchronized (_events) {
+        _events.addAll(events);
+      }
+    }
+
+    public void fragmentDone() {
+      if (_remaining.decrementAndGet() == 0)
+        complete();
+    }
+
+    public void complete() {
+      List<SiriServerSubscriptionEvent> events;
+      synchronized (_events) {
+        events = new ArrayList<SiriServerSubscriptionEvent>(_events);
+      }
+      _sequencer.gatherComplete(_sequence, events);
+    }
+  }
+
+  private class PublishFragmentTask implements Runnable {
+
+    private final ServiceDelivery _delivery;
+
+    private final PublicationGather _gather;
+
+    public PublishFragmentTask(ServiceDelivery delivery,
+        PublicationGather gather) {
+      _delivery = delivery;
+      _gather = gather;
+    }
+
+    @Override
+    public void run() {
+      try {
+        _gather.addEvents(_siriServer.getPublicationEvents(_delivery));
+      } catch (Throwable ex) {
+        _log.warn("error publishing service delivery", ex);
+      } finally {
+        try {
+          _gather.fragmentDone();
+        } catch (Throwable ex) {
+          _log.warn("error publishing service delivery", ex);
+        }
+      }
     }
   }
 